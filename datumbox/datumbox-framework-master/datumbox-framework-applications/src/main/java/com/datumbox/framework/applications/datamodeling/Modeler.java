@@ -24,6 +24,7 @@ import com.datumbox.framework.core.machinelearning.common.abstracts.datatransfor
 import com.datumbox.framework.core.machinelearning.common.abstracts.featureselectors.AbstractFeatureSelector;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractModeler;
 import com.datumbox.framework.core.machinelearning.common.abstracts.wrappers.AbstractWrapper;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.ValidationMetrics;
 
 /**
@@ -33,7 +34,7 @@ import com.datumbox.framework.core.machinelearning.common.interfaces.ValidationM
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class Modeler extends AbstractWrapper<Modeler.ModelParameters, Modeler.TrainingParameters> {
+public class Modeler extends AbstractWrapper<Modeler.ModelParameters, Modeler.TrainingParameters> implements IncrementallyTrainable {
     
     /**
      * It contains all the Model Parameters which are learned during the training.
@@ -145,47 +146,60 @@ public class Modeler extends AbstractWrapper<Modeler.ModelParameters, Modeler.Tr
         }
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public void _partialFit(Dataframe trainingData) {
+        initializeComponents();
+        
+        Modeler.TrainingParameters trainingParameters = kb().getTrainingParameters();
+        
+        //the data transformer and the feature selector are not refitted
+        boolean transformData = (trainingParameters.getDataTransformerClass()!=null);
+        if(transformData) {
+            setParallelized(dataTransformer);
+        
+            dataTransformer.transform(trainingData);
+        }
+        
+        boolean selectFeatures = (trainingParameters.getFeatureSelectorClass()!=null);
+        if(selectFeatures) {
+            setParallelized(featureSelector);
+            
+            featureSelector.transform(trainingData);
+        }
+        
+        setParallelized(modeler);
+        
+        //update the modeler with the new data
+        modeler.partialFit(trainingData);
+        
+        if(transformData) {
+            dataTransformer.denormalize(trainingData); //optional denormalization
+        }
+    }
+    
     private ValidationMetrics evaluateData(Dataframe data, boolean estimateValidationMetrics) {
         //ensure db loaded
         kb().load();
-        Modeler.TrainingParameters trainingParameters = kb().getTrainingParameters();
+        initializeComponents();
         
-        Configuration conf = kb().getConf();
-        
-        Class dtClass = trainingParameters.getDataTransformerClass();
+        Modeler.TrainingParameters trainingParameters = kb().getTrainingParameters();
         
-        boolean transformData = (dtClass!=null);
+        boolean transformData = (trainingParameters.getDataTransformerClass()!=null);
         if(transformData) {
-            if(dataTransformer==null) {
-                dataTransformer = Trainable.<AbstractTransformer>newInstance(dtClass, dbName, conf);
-            }        
-            
             setParallelized(dataTransformer);
         
             dataTransformer.transform(data);
         }
         
-        Class fsClass = trainingParameters.getFeatureSelectorClass();
-        
-        boolean selectFeatures = (fsClass!=null);
+        boolean selectFeatures = (trainingParameters.getFeatureSelectorClass()!=null);
         if(selectFeatures) {
-            if(featureSelector==null) {
-                featureSelector = Trainable.<AbstractFeatureSelector>newInstance(fsClass, dbName, conf);
-            }
-            
             setParallelized(featureSelector);
             
             //remove unnecessary features
             featureSelector.transform(data);
         }
         
-        
-        //initialize modeler
-        if(modeler==null) {
-            Class mlClass = trainingParameters.getModelerClass();
-            modeler = Trainable.<AbstractModeler>newInstance(mlClass, dbName, conf); 
-        }
-        
         setParallelized(modeler);
         
         //call predict of the modeler for the new dataset
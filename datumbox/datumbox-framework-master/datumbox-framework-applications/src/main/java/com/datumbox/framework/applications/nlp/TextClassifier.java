@@ -28,6 +28,7 @@ import com.datumbox.framework.core.machinelearning.common.abstracts.featureselec
 import com.datumbox.framework.core.machinelearning.common.abstracts.featureselectors.AbstractFeatureSelector;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractModeler;
 import com.datumbox.framework.core.machinelearning.common.abstracts.wrappers.AbstractWrapper;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.ValidationMetrics;
 import com.datumbox.framework.core.utilities.text.extractors.AbstractTextExtractor;
 
@@ -44,7 +45,7 @@ import java.util.Map;
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParameters, TextClassifier.TrainingParameters> {
+public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParameters, TextClassifier.TrainingParameters> implements IncrementallyTrainable {
     
     /**
      * It contains all the Model AbstractParameters which are learned during the training.
@@ -118,6 +119,11 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
 
     }
 
+    /**
+     * The Text Extractor which is used to parse the text of the predictions.
+     */
+    private AbstractTextExtractor textExtractor = null;
+    
     /**
      * Constructor for the TextClassifier class. It accepts as arguments the name of the
      * database were the results are stored and the Database Configuration.
@@ -150,6 +156,28 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
         trainingData.delete();
     }
     
+    /**
+     * Updates incrementally a previously trained modeler using the provided 
+     * dataset files. The data map should have as index the names of each class
+     * and as values the URIs of the training files. The texts are parsed with 
+     * the Text Extractor of the original training.
+     * 
+     * @param datasets 
+     */
+    public void partialFit(Map<Object, URI> datasets) { 
+        //ensure db loaded
+        kb().load();
+        if(kb().getTrainingParameters() == null) {
+            throw new IllegalArgumentException("The wrapper must be trained with fit() before it can be updated incrementally.");
+        }
+        
+        Dataframe trainingData = Dataframe.Builder.parseTextFiles(datasets, getTextExtractor(), kb().getConf());
+        
+        partialFit(trainingData);
+        
+        trainingData.delete();
+    }
+    
     /**
      * Generates predictions for the provided dataset.
      * 
@@ -180,12 +208,7 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
         Map<Object, URI> dataset = new HashMap<>();
         dataset.put(null, datasetURI);
         
-        TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
-        
-        Dataframe testDataset = Dataframe.Builder.parseTextFiles(dataset, 
-                AbstractTextExtractor.newInstance(trainingParameters.getTextExtractorClass(), trainingParameters.getTextExtractorParameters()), 
-                kb().getConf()
-        );
+        Dataframe testDataset = Dataframe.Builder.parseTextFiles(dataset, getTextExtractor(), kb().getConf());
         
         predict(testDataset);
         
@@ -195,31 +218,19 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
     /**
      * It generates a prediction for a particular string. It returns a Record
      * object which contains the observation data, the predicted class and 
-     * probabilities.
+     * probabilities. The prediction is estimated in memory and the method is
+     * safe to be called concurrently.
      * 
      * @param text
      * @return 
      */
-    public Record predict(String text) {         
+    public Record predict(String text) {
         //ensure db loaded
         kb().load();
         
-        TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
-        
-        Dataframe testDataset = new Dataframe(kb().getConf());
-        
-        testDataset.add(new Record(new AssociativeArray(
-                AbstractTextExtractor.newInstance(trainingParameters.getTextExtractorClass(), trainingParameters.getTextExtractorParameters())
-                        .extract(StringCleaner.clear(text))), null)
-        );
-        
-        predict(testDataset);
-        
-        Record r = testDataset.iterator().next();
-        
-        testDataset.delete();
+        Record r = new Record(new AssociativeArray(getTextExtractor().extract(StringCleaner.clear(text))), null);
         
-        return r;
+        return predictRecord(r);
     }
     
     /**
@@ -254,14 +265,8 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
         //ensure db loaded
         kb().load();
         
-        TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
-        
         //build the testDataset
-        Dataframe testDataset = Dataframe.Builder.parseTextFiles(
-                datasets, 
-                AbstractTextExtractor.newInstance(trainingParameters.getTextExtractorClass(), trainingParameters.getTextExtractorParameters()), 
-                kb().getConf()
-        );
+        Dataframe testDataset = Dataframe.Builder.parseTextFiles(datasets, getTextExtractor(), kb().getConf());
         
         ValidationMetrics vm = validate(testDataset);
         
@@ -274,6 +279,12 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
     @Override
     protected void _fit(Dataframe trainingDataset) {
         TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
+        
+        //discard any cached extractor; it will be rebuilt with the new parameters
+        synchronized(this) {
+            textExtractor = null;
+        }
+        
         Configuration conf = kb().getConf();
         Class dtClass = trainingParameters.getDataTransformerClass();
         
@@ -315,43 +326,55 @@ public class TextClassifier extends AbstractWrapper<TextClassifier.ModelParamete
         }
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public void _partialFit(Dataframe trainingDataset) {
+        //the data transformer and the feature selector are not refitted
+        preprocessTestDataset(trainingDataset);
+        
+        //update the modeler with the new data
+        modeler.partialFit(trainingDataset);
+        
+        if(kb().getTrainingParameters().getDataTransformerClass()!=null) {
+            dataTransformer.denormalize(trainingDataset); //optional denormalization
+        }
+    }
+    
     private void preprocessTestDataset(Dataframe testDataset) {
-        TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
-        Configuration conf = kb().getConf();
+        initializeComponents();
         
-        Class dtClass = trainingParameters.getDataTransformerClass();
+        TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
         
-        boolean transformData = (dtClass!=null);
+        boolean transformData = (trainingParameters.getDataTransformerClass()!=null);
         if(transformData) {
-            if(dataTransformer==null) {
-                dataTransformer = Trainable.<AbstractTransformer>newInstance(dtClass, dbName, conf);
-            }        
-            
             setParallelized(dataTransformer);
             
             dataTransformer.transform(testDataset);
         }
-
-        Class fsClass = trainingParameters.getFeatureSelectorClass();
         
-        boolean selectFeatures = (fsClass!=null);
+        boolean selectFeatures = (trainingParameters.getFeatureSelectorClass()!=null);
         if(selectFeatures) {
-            if(featureSelector==null) {
-                featureSelector = Trainable.<AbstractFeatureSelector>newInstance(fsClass, dbName, conf);
-            }
-            
             setParallelized(featureSelector);
 
             //remove unnecessary features
             featureSelector.transform(testDataset);
         }
         
-        //initialize modeler
-        if(modeler==null) {
-            modeler = Trainable.<AbstractModeler>newInstance((Class<AbstractModeler>) trainingParameters.getModelerClass(), dbName, conf); 
-        }
-        
         setParallelized(modeler);
     }
     
+    /**
+     * Returns the Text Extractor of the classifier. The extractor is stateless
+     * and thus it is constructed once and it is shared across all the calls.
+     * 
+     * @return 
+     */
+    private synchronized AbstractTextExtractor getTextExtractor() {
+        if(textExtractor==null) {
+            TextClassifier.TrainingParameters trainingParameters = kb().getTrainingParameters();
+            textExtractor = AbstractTextExtractor.newInstance(trainingParameters.getTextExtractorClass(), trainingParameters.getTextExtractorParameters());
+        }
+        return textExtractor;
+    }
+    
 }
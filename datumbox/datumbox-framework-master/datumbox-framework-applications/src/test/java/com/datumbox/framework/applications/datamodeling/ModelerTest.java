@@ -17,8 +17,10 @@ package com.datumbox.framework.applications.datamodeling;
 
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.FlatDataList;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.classification.MultinomialNaiveBayes;
+import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable.Prediction;
 import com.datumbox.framework.core.machinelearning.datatransformation.DummyXMinMaxNormalizer;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
@@ -26,10 +28,14 @@ import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  * Test cases for Modeler.
@@ -113,4 +119,146 @@ public class ModelerTest extends AbstractTest {
         validationData.delete();
     }
     
+    /**
+     * Test of predict method for single records, of class Modeler.
+     */
+    @Test
+    public void testPredictRecord() {
+        logger.info("testPredictRecord");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.carsNumeric(conf);
+        Dataframe trainingData = data[0];
+        
+        Dataframe validationData = data[1];
+        
+        
+        String dbName = this.getClass().getSimpleName() + "Record";
+        
+        Modeler instance = new Modeler(dbName, conf);
+        Modeler.TrainingParameters trainingParameters = new Modeler.TrainingParameters();
+        
+        trainingParameters.setModelerClass(MultinomialNaiveBayes.class);
+        MultinomialNaiveBayes.TrainingParameters modelTrainingParameters = new MultinomialNaiveBayes.TrainingParameters();
+        modelTrainingParameters.setMultiProbabilityWeighted(true);
+        trainingParameters.setModelerTrainingParameters(modelTrainingParameters);
+
+        trainingParameters.setDataTransformerClass(DummyXMinMaxNormalizer.class);
+        trainingParameters.setDataTransformerTrainingParameters(new DummyXMinMaxNormalizer.TrainingParameters());
+        
+        trainingParameters.setFeatureSelectorClass(null);
+        trainingParameters.setFeatureSelectorTrainingParameters(null);
+        
+        instance.fit(trainingData, trainingParameters);
+        instance.close();
+        
+        
+        instance = new Modeler(dbName, conf);
+        
+        //predict every record concurrently before touching the dataframe
+        final Modeler modeler = instance;
+        Map<Integer, Prediction> predictions = new ConcurrentHashMap<>();
+        List<Integer> ids = new ArrayList<>();
+        validationData.index().forEach(ids::add);
+        ids.parallelStream().forEach(rId -> predictions.put(rId, modeler.predict(validationData.get(rId).getX())));
+        
+        instance.predict(validationData);
+        
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Record r = e.getValue();
+            Prediction p = predictions.get(e.getKey());
+            assertEquals(r.getYPredicted(), p.getYPredicted());
+            assertEquals(r.getYPredictedProbabilities(), p.getYPredictedProbabilities());
+        }
+        
+        instance.delete();
+        
+        trainingData.delete();
+        validationData.delete();
+    }
+    
+    /**
+     * Test of partialFit method, of class Modeler.
+     */
+    @Test
+    public void testPartialFit() {
+        logger.info("testPartialFit");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.carsNumeric(conf);
+        Dataframe trainingData = data[0];
+        
+        Dataframe validationData = data[1];
+        
+        FlatDataList firstIds = new FlatDataList();
+        FlatDataList secondIds = new FlatDataList();
+        for(Integer rId : trainingData.index()) {
+            if(firstIds.size()<trainingData.size()/2) {
+                firstIds.add(rId);
+            }
+            else {
+                secondIds.add(rId);
+            }
+        }
+        Dataframe firstData = trainingData.getSubset(firstIds);
+        Dataframe secondData = trainingData.getSubset(secondIds);
+        
+        
+        String dbName = this.getClass().getSimpleName() + "Partial";
+        
+        Modeler.TrainingParameters trainingParameters = new Modeler.TrainingParameters();
+        
+        trainingParameters.setModelerClass(MultinomialNaiveBayes.class);
+        MultinomialNaiveBayes.TrainingParameters modelTrainingParameters = new MultinomialNaiveBayes.TrainingParameters();
+        modelTrainingParameters.setMultiProbabilityWeighted(true);
+        trainingParameters.setModelerTrainingParameters(modelTrainingParameters);
+        
+        trainingParameters.setDataTransformerClass(null);
+        trainingParameters.setDataTransformerTrainingParameters(null);
+        
+        trainingParameters.setFeatureSelectorClass(null);
+        trainingParameters.setFeatureSelectorTrainingParameters(null);
+        
+        Modeler instance = new Modeler(dbName, conf);
+        try {
+            instance.partialFit(firstData);
+            fail("The untrained wrapper should not be updated.");
+        }
+        catch(IllegalArgumentException ex) {
+            //expected; the components of the wrapper are not known
+        }
+        
+        instance.fit(firstData, trainingParameters);
+        instance.close();
+        
+        instance = new Modeler(dbName, conf);
+        instance.partialFit(secondData);
+        assertEquals(trainingData.size(), instance.getModelParameters().getN().intValue());
+        
+        Modeler full = new Modeler(dbName + "Full", conf);
+        full.fit(trainingData, trainingParameters);
+        
+        Dataframe expResult = validationData.copy();
+        full.predict(expResult);
+        instance.predict(validationData);
+        
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Record r = e.getValue();
+            Record expR = expResult.get(e.getKey());
+            assertEquals(expR.getYPredicted(), r.getYPredicted());
+            assertEquals(expR.getYPredictedProbabilities(), r.getYPredictedProbabilities());
+        }
+        
+        full.delete();
+        instance.delete();
+        
+        expResult.delete();
+        firstData.delete();
+        secondData.delete();
+        trainingData.delete();
+        validationData.delete();
+    }
+    
 }
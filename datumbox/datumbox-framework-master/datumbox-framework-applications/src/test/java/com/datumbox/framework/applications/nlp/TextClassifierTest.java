@@ -30,15 +30,20 @@ import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for TextClassifier.
@@ -258,6 +263,61 @@ public class TextClassifierTest extends AbstractTest {
         );
     }
     
+    /**
+     * Test of partialFit method, of class TextClassifier.
+     */
+    @Test
+    public void testPartialFit() {
+        logger.info("testPartialFit");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        String dbName = this.getClass().getSimpleName() + "Partial";
+        
+        Map<Object, URI> negative = new HashMap<>();
+        Map<Object, URI> positive = new HashMap<>();
+        try {
+            negative.put("negative", this.getClass().getClassLoader().getResource("datasets/sentimentAnalysis.neg.txt").toURI());
+            positive.put("positive", this.getClass().getClassLoader().getResource("datasets/sentimentAnalysis.pos.txt").toURI());
+        }
+        catch(UncheckedIOException | URISyntaxException ex) {
+            logger.warn("Unable to download datasets, skipping test.");
+            throw new RuntimeException(ex);
+        }
+        
+        TextClassifier.TrainingParameters trainingParameters = new TextClassifier.TrainingParameters();
+        
+        trainingParameters.setModelerClass(MultinomialNaiveBayes.class);
+        trainingParameters.setModelerTrainingParameters(new MultinomialNaiveBayes.TrainingParameters());
+        
+        trainingParameters.setDataTransformerClass(null);
+        trainingParameters.setDataTransformerTrainingParameters(null);
+        
+        trainingParameters.setFeatureSelectorClass(null);
+        trainingParameters.setFeatureSelectorTrainingParameters(null);
+        
+        trainingParameters.setTextExtractorClass(NgramsExtractor.class);
+        trainingParameters.setTextExtractorParameters(new NgramsExtractor.Parameters());
+        
+        TextClassifier instance = new TextClassifier(dbName, conf);
+        instance.fit(negative, trainingParameters);
+        int n = instance.getModelParameters().getN();
+        instance.close();
+        
+        //the second class is learned incrementally
+        instance = new TextClassifier(dbName, conf);
+        instance.partialFit(positive);
+        assertTrue(instance.getModelParameters().getN()>n);
+        
+        Map<Object, URI> dataset = new HashMap<>();
+        dataset.putAll(negative);
+        dataset.putAll(positive);
+        ValidationMetrics vm = instance.validate(dataset);
+        assertTrue(((AbstractClassifier.AbstractValidationMetrics)vm).getMacroF1()>0.5);
+        
+        instance.delete();
+    }
+    
     /**
      * Trains and validates a model with the provided modeler and feature selector.
      * 
@@ -327,10 +387,13 @@ public class TextClassifierTest extends AbstractTest {
         
         instance = new TextClassifier(dbName, conf);
         Dataframe validationData = null;
+        List<String> lines;
         try {
-            validationData = instance.predict(this.getClass().getClassLoader().getResource("datasets/sentimentAnalysis.unlabelled.txt").toURI());
+            URI unlabelledURI = this.getClass().getClassLoader().getResource("datasets/sentimentAnalysis.unlabelled.txt").toURI();
+            validationData = instance.predict(unlabelledURI);
+            lines = Files.readAllLines(Paths.get(unlabelledURI), StandardCharsets.UTF_8);
         }
-        catch(UncheckedIOException | URISyntaxException ex) {
+        catch(IOException | URISyntaxException ex) {
             logger.warn("Unable to download datasets, skipping test.");
             throw new RuntimeException(ex);
         }
@@ -339,6 +402,11 @@ public class TextClassifierTest extends AbstractTest {
         int i = 0;
         for(Record r : validationData.values()) {
             assertEquals(expResult.get(i), r.getYPredicted());
+            
+            //the single record predictions must match the ones of the dataframe
+            Record singleR = instance.predict(lines.get(i));
+            assertEquals(r.getYPredicted(), singleR.getYPredicted());
+            assertEquals(r.getYPredictedProbabilities(), singleR.getYPredictedProbabilities());
             ++i;
         }
         
@@ -17,7 +17,10 @@ package com.datumbox.framework.common.concurrency;
 
 import com.datumbox.framework.common.interfaces.Configurable;
 
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The ConcurrencyConfiguration class is used to store the concurrency settings
@@ -32,10 +35,25 @@ public class ConcurrencyConfiguration implements Configurable {
      */
     public static final int AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
     
+    /**
+     * The registry of the shared pools, one for each level of parallelism. The
+     * pools are created lazily and they are reused by all the tasks of the
+     * framework until the JVM is terminated.
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            shutdownPools();
+        }));
+    }
+    
     private boolean parallelized = true;
     
     private Integer maxNumberOfThreadsPerTask = AVAILABLE_PROCESSORS;
     
+    private Integer maxNumberOfConcurrentModels = 1;
+    
     /**
      * Protected constructor.
      */
@@ -91,6 +109,65 @@ public class ConcurrencyConfiguration implements Configurable {
         }
     }
     
+    /**
+     * Returns the maximum number of independent models (for example the folds 
+     * of the k-fold cross validation) which can be trained concurrently on the
+     * shared pool. Each concurrent model keeps its own training data and 
+     * parameters in memory, so the value bounds the memory consumption.
+     * 
+     * @return 
+     */
+    public Integer getMaxNumberOfConcurrentModels() {
+        return maxNumberOfConcurrentModels;
+    }
+    
+    /**
+     * Setter for the maximum number of independent models which can be trained
+     * concurrently. By convention if the value is 0, it is set equal to the
+     * maximum number of threads per task. Use 1 to train the models one after
+     * the other.
+     * 
+     * @param maxNumberOfConcurrentModels 
+     */
+    public void setMaxNumberOfConcurrentModels(Integer maxNumberOfConcurrentModels) {
+        if(maxNumberOfConcurrentModels<0) {
+            throw new IllegalArgumentException("The max number of concurrent models can not be negative.");
+        }
+        else if(maxNumberOfConcurrentModels==0) {
+            this.maxNumberOfConcurrentModels = maxNumberOfThreadsPerTask;
+        }
+        else {
+            this.maxNumberOfConcurrentModels = maxNumberOfConcurrentModels;
+        }
+    }
+    
+    /**
+     * Returns the shared ForkJoinPool which has parallelism level equal to the
+     * maximum number of threads per task. The pool is created on the first call
+     * and it is reused by all subsequent calls and configuration objects with
+     * the same concurrency level.
+     * 
+     * @return 
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return POOLS.computeIfAbsent(maxNumberOfThreadsPerTask, parallelism -> new ForkJoinPool(parallelism));
+    }
+    
+    /**
+     * Shuts down all the shared pools. Tasks which are already submitted are
+     * completed but no new tasks are accepted by the old pools; pools requested
+     * after this call are recreated. The method is called automatically before 
+     * the JVM is terminated.
+     */
+    public static void shutdownPools() {
+        for(Integer parallelism : POOLS.keySet()) {
+            ForkJoinPool pool = POOLS.remove(parallelism);
+            if(pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void load(Properties properties) {
@@ -102,6 +179,10 @@ public class ConcurrencyConfiguration implements Configurable {
         else if(getMaxNumberOfThreadsPerTask()==1) {
             setParallelized(false);
         }
+        setMaxNumberOfConcurrentModels(Integer.parseInt(properties.getProperty("concurrencyConfig.maxNumberOfConcurrentModels", "1")));
+        if(isParallelized()==false) {
+            setMaxNumberOfConcurrentModels(1);
+        }
     }
     
 }
@@ -25,7 +25,8 @@ import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
 /**
- * This class can be used to process a Stream in parallel using a custom ForkJoinPool.
+ * This class can be used to process a Stream in parallel using the shared ForkJoinPool
+ * of the ConcurrencyConfiguration.
  *
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
@@ -28,8 +28,8 @@ public class ThreadMethods {
     
     /**
      * Takes the items of the stream in a throttled way and provides them to the 
-     * consumer. It uses as many threads as the available processors and it does
-     * not start more tasks than 2 times the previous number.
+     * consumer. It uses the shared pool of the configuration and it does not 
+     * start more tasks than 2 times the maximum number of threads.
      * 
      * @param <T>
      * @param stream
@@ -37,12 +37,26 @@ public class ThreadMethods {
      * @param concurrencyConfig 
      */
     public static <T> void throttledExecution(Stream<T> stream, Consumer<T> consumer, ConcurrencyConfiguration concurrencyConfig) {
-        if(concurrencyConfig.isParallelized()) {
-            int maxThreads = concurrencyConfig.getMaxNumberOfThreadsPerTask();
-            int maxTasks = 2*maxThreads; 
-
-            ExecutorService executorService = Executors.newFixedThreadPool(maxThreads);
-            ThrottledExecutor executor = new ThrottledExecutor(executorService, maxTasks);
+        throttledExecution(stream, consumer, concurrencyConfig, 2*concurrencyConfig.getMaxNumberOfThreadsPerTask());
+    }
+    
+    /**
+     * Takes the items of the stream in a throttled way and provides them to the 
+     * consumer. It uses the shared pool of the configuration and it does not 
+     * start more tasks than the provided limit. It is useful when every task
+     * requires a lot of memory. If the current thread already belongs to the 
+     * shared pool, the items are consumed directly to avoid blocking the 
+     * workers of the pool.
+     * 
+     * @param <T>
+     * @param stream
+     * @param consumer 
+     * @param concurrencyConfig 
+     * @param maxTasks 
+     */
+    public static <T> void throttledExecution(Stream<T> stream, Consumer<T> consumer, ConcurrencyConfiguration concurrencyConfig, int maxTasks) {
+        if(concurrencyConfig.isParallelized() && maxTasks>1 && ForkJoinTask.getPool() != concurrencyConfig.getForkJoinPool()) {
+            ThrottledExecutor executor = new ThrottledExecutor(concurrencyConfig.getForkJoinPool(), maxTasks);
 
             stream.sequential().forEach(i -> {
                 executor.execute(() -> {
@@ -50,13 +64,7 @@ public class ThreadMethods {
                 });
             });
 
-            executorService.shutdown();
-            try {
-                executorService.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-            } 
-            catch (InterruptedException ex) {
-                throw new RuntimeException(ex);
-            }
+            executor.awaitCompletion();
         }
         else {
             Runnable runnable = () -> stream.forEach(consumer);
@@ -65,8 +73,9 @@ public class ThreadMethods {
     }
     
     /**
-     * Alternative to parallelStreams() which executes a callable in a separate
-     * pool.
+     * Alternative to parallelStreams() which executes a callable in the shared
+     * pool of the configuration. If the current thread already belongs to the 
+     * shared pool, the callable is executed directly.
      * 
      * @param <T>
      * @param callable 
@@ -76,30 +85,29 @@ public class ThreadMethods {
      */
     public static <T> T forkJoinExecution(Callable<T> callable, ConcurrencyConfiguration concurrencyConfig, boolean parallelStream) {
         if(parallelStream && concurrencyConfig.isParallelized()) {
-            try {
-                ForkJoinPool pool = new ForkJoinPool(concurrencyConfig.getMaxNumberOfThreadsPerTask());
-                
-                T results = pool.submit(callable).get();
-                pool.shutdown();
-                return results;
-            } 
-            catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+            ForkJoinPool pool = concurrencyConfig.getForkJoinPool();
+            if(ForkJoinTask.getPool() != pool) {
+                try {
+                    return pool.submit(callable).get();
+                } 
+                catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
             }
         }
-        else {
-            try {
-                return callable.call();
-            } 
-            catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
+        //Either the execution is sequential or we are already in a worker of the shared pool
+        try {
+            return callable.call();
+        } 
+        catch (Exception ex) {
+            throw new RuntimeException(ex);
         }
     }
     
     /**
-     * Alternative to parallelStreams() which executes a runnable in a separate
-     * pool.
+     * Alternative to parallelStreams() which executes a runnable in the shared
+     * pool of the configuration. If the current thread already belongs to the 
+     * shared pool, the runnable is executed directly.
      * 
      * @param runnable 
      * @param concurrencyConfig 
@@ -107,17 +115,18 @@ public class ThreadMethods {
      */
     public static void forkJoinExecution(Runnable runnable, ConcurrencyConfiguration concurrencyConfig, boolean parallelStream) {
         if(parallelStream && concurrencyConfig.isParallelized()) {
-            try {
-                ForkJoinPool pool = new ForkJoinPool(concurrencyConfig.getMaxNumberOfThreadsPerTask());
-                pool.submit(runnable).get();
-                pool.shutdown();
-            } 
-            catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+            ForkJoinPool pool = concurrencyConfig.getForkJoinPool();
+            if(ForkJoinTask.getPool() != pool) {
+                try {
+                    pool.submit(runnable).get();
+                } 
+                catch (InterruptedException | ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return;
             }
         }
-        else {
-            runnable.run();
-        }
+        //Either the execution is sequential or we are already in a worker of the shared pool
+        runnable.run();
     }
 }
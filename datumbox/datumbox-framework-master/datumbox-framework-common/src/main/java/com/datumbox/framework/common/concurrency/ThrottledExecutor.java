@@ -32,6 +32,8 @@ public class ThrottledExecutor implements Executor {
     
     private final Semaphore semaphore;
     
+    private final int maxConcurrentTasks;
+    
     /**
      * This Executor will block the main thread (when execute() is called) if the 
      * number of submitted and unfinished tasks reaches the provided limit. This
@@ -43,6 +45,7 @@ public class ThrottledExecutor implements Executor {
     public ThrottledExecutor(Executor executor, int maxConcurrentTasks) {
         this.wrappedExecutor = executor;
         this.semaphore = new Semaphore(maxConcurrentTasks);
+        this.maxConcurrentTasks = maxConcurrentTasks;
     }
     
     /** {@inheritDoc} */
@@ -70,4 +73,19 @@ public class ThrottledExecutor implements Executor {
             throw new RuntimeException(ex);
         }
     }
+    
+    /**
+     * Blocks the current thread until all the submitted tasks are completed. 
+     * Unlike ExecutorService.awaitTermination() it does not require shutting 
+     * down the wrapped executor, so shared pools can be reused.
+     */
+    public void awaitCompletion() {
+        try {
+            semaphore.acquire(maxConcurrentTasks);
+        } 
+        catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+        semaphore.release(maxConcurrentTasks);
+    }
 }
\ No newline at end of file
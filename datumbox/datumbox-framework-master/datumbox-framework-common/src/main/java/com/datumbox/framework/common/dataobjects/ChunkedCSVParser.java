@@ -0,0 +1,925 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import com.datumbox.framework.common.concurrency.StreamMethods;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * The ChunkedCSVParser splits the contents of a CSV file into chunks of whole
+ * records and parses every chunk independently, so that the chunks can be 
+ * parsed in parallel. The file is read either from a Reader or, when it is a
+ * local UTF-8 file, from memory-mapped regions of the file.
+ * 
+ * The parser follows the RFC4180 format: the fields can be enclosed in quotes,
+ * the quotes inside quoted fields are escaped by doubling them and the records
+ * are terminated by LF, CRLF or CR. Since the quoted fields can contain record
+ * separators, the chunks are split by a light scanner which tracks the quoting
+ * state of the data. The numerical and ordinal values are parsed directly from
+ * the characters of the chunk without creating intermediate Strings.
+ * 
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+final class ChunkedCSVParser {
+    
+    /**
+     * The default minimum size of a chunk in characters (or bytes for mapped files).
+     */
+    static final int CHUNK_SIZE = 1<<20;
+    
+    /**
+     * The minimum size of the chunks of the iterators which are created next.
+     * It is package-private so that the tests can split small files in many 
+     * chunks; the parsed records do not depend on it.
+     */
+    static volatile int chunkSize = CHUNK_SIZE;
+    
+    private static final int MAPPING_SIZE = 1<<26; //the mapped files are read in windows of 64MB
+    
+    private static final int READ_SIZE = 1<<16;
+    
+    //the powers of ten which are represented exactly as doubles
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    
+    private static final long MAX_EXACT_MANTISSA = 1L<<53;
+    
+    //states of the scanner and the parser
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTED_QUOTE = 3;
+    
+    private final char delimiter;
+    
+    private final char quote;
+    
+    /**
+     * Package-private constructor which accepts the delimiter of the fields and
+     * the quote character.
+     * 
+     * @param delimiter
+     * @param quote 
+     */
+    ChunkedCSVParser(char delimiter, char quote) {
+        if(delimiter == quote || delimiter == '\n' || delimiter == '\r' || quote == '\n' || quote == '\r') {
+            throw new IllegalArgumentException("Invalid delimiter or quote character.");
+        }
+        this.delimiter = delimiter;
+        this.quote = quote;
+    }
+    
+    /**
+     * Checks whether the files can be scanned directly on their UTF-8 bytes, 
+     * which requires ASCII delimiter and quote characters.
+     * 
+     * @return 
+     */
+    boolean isMappable() {
+        return delimiter < 0x80 && quote < 0x80;
+    }
+    
+    /**
+     * Returns the chunks of the data of the reader.
+     * 
+     * @param reader
+     * @return 
+     */
+    ChunkIterator chunks(Reader reader) {
+        return new ReaderChunkIterator(reader);
+    }
+    
+    /**
+     * Returns the chunks of a UTF-8 file which is read from memory-mapped 
+     * regions. 
+     * 
+     * @param file
+     * @return 
+     * @throws IOException 
+     */
+    ChunkIterator chunks(Path file) throws IOException {
+        if(!isMappable()) {
+            throw new IllegalArgumentException("The delimiter and the quote must be ASCII characters.");
+        }
+        return new MappedChunkIterator(file);
+    }
+    
+    /**
+     * Parses the records of the chunk and passes them to the handler along with 
+     * their number. The Fields object is reused between the records.
+     * 
+     * @param chunk
+     * @param handler 
+     */
+    void parse(Chunk chunk, RecordHandler handler) {
+        chunk = chunk.decode();
+        char[] chars = chunk.chars;
+        int from = chunk.from;
+        int to = chunk.to;
+        
+        Fields fields = new Fields(chars);
+        long recordNumber = chunk.firstRecord;
+        int i = from;
+        while(i < to) {
+            i = parseRecord(chars, i, to, fields, recordNumber);
+            handler.accept(recordNumber++, fields);
+        }
+    }
+    
+    /**
+     * Parses a single record which starts at the provided position and returns
+     * the position after its terminator.
+     * 
+     * @param chars
+     * @param i
+     * @param to
+     * @param fields
+     * @param recordNumber
+     * @return 
+     */
+    private int parseRecord(char[] chars, int i, int to, Fields fields, long recordNumber) {
+        fields.size = 0;
+        int state = FIELD_START;
+        int start = i;
+        StringBuilder sb = null;
+        while(true) {
+            if(i == to) {
+                if(state == QUOTED) {
+                    throw new UncheckedIOException(new IOException("(record " + (recordNumber+1) + ") EOF reached before encapsulated token finished"));
+                }
+                if(state != QUOTED_QUOTE) {
+                    fields.add(start, i, sb);
+                }
+                return i;
+            }
+            char c = chars[i];
+            if(state == QUOTED) {
+                if(c != quote) {
+                    i++;
+                }
+                else if(i+1 < to && chars[i+1] == quote) {
+                    //escaped quote; keep the first and skip the second
+                    if(sb == null) {
+                        sb = new StringBuilder();
+                    }
+                    sb.append(chars, start, i+1-start);
+                    i += 2;
+                    start = i;
+                }
+                else {
+                    fields.add(start, i, sb);
+                    sb = null;
+                    state = QUOTED_QUOTE;
+                    i++;
+                }
+                continue;
+            }
+            
+            if(c == delimiter) {
+                if(state != QUOTED_QUOTE) {
+                    fields.add(start, i, null);
+                }
+                state = FIELD_START;
+                start = ++i;
+            }
+            else if(c == '\n' || c == '\r') {
+                if(state != QUOTED_QUOTE) {
+                    fields.add(start, i, null);
+                }
+                return (c == '\r' && i+1 < to && chars[i+1] == '\n')?i+2:i+1;
+            }
+            else if(state == QUOTED_QUOTE) {
+                throw new UncheckedIOException(new IOException("(record " + (recordNumber+1) + ") invalid char between encapsulated token and delimiter"));
+            }
+            else if(state == FIELD_START && c == quote) {
+                state = QUOTED;
+                start = ++i;
+            }
+            else {
+                state = UNQUOTED;
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * Parses a double from the characters using the exact fast path for 
+     * decimals of at most 53 significant bits and small exponents. It returns
+     * NaN when the value is not handled by the fast path.
+     * 
+     * @param chars
+     * @param from
+     * @param to
+     * @return 
+     */
+    static double parseDouble(char[] chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if(chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            i++;
+        }
+        
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        for(; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            hasDigits = true;
+            if(digits > 0 || chars[i] != '0') {
+                if(++digits > 18) {
+                    return Double.NaN;
+                }
+                mantissa = 10*mantissa + (chars[i] - '0');
+            }
+        }
+        if(i < to && chars[i] == '.') {
+            for(i++; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                hasDigits = true;
+                if(digits > 0 || chars[i] != '0') {
+                    if(++digits > 18) {
+                        return Double.NaN;
+                    }
+                    mantissa = 10*mantissa + (chars[i] - '0');
+                }
+                exponent--;
+            }
+        }
+        if(!hasDigits) {
+            return Double.NaN;
+        }
+        if(i < to && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if(i < to && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            int e = 0;
+            int start = i;
+            for(; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                e = 10*e + (chars[i] - '0');
+                if(e > 1000) {
+                    return Double.NaN;
+                }
+            }
+            if(i == start) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent?-e:e;
+        }
+        if(i != to) {
+            return Double.NaN;
+        }
+        
+        double value;
+        if(mantissa == 0) {
+            value = 0.0;
+        }
+        else if(mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return Double.NaN;
+        }
+        else if(exponent < 0) {
+            value = mantissa / POW10[-exponent];
+        }
+        else {
+            value = mantissa * POW10[exponent];
+        }
+        return negative?-value:value;
+    }
+    
+    /**
+     * Parses a short from the characters. It returns Integer.MIN_VALUE when
+     * the characters are not a valid short.
+     * 
+     * @param chars
+     * @param from
+     * @param to
+     * @return 
+     */
+    static int parseShort(char[] chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if(chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            i++;
+        }
+        if(i == to || to-i > 5) {
+            return Integer.MIN_VALUE;
+        }
+        int value = 0;
+        for(; i < to; i++) {
+            char c = chars[i];
+            if(c < '0' || c > '9') {
+                return Integer.MIN_VALUE;
+            }
+            value = 10*value + (c - '0');
+        }
+        if(negative) {
+            value = -value;
+        }
+        return (value < Short.MIN_VALUE || value > Short.MAX_VALUE)?Integer.MIN_VALUE:value;
+    }
+    
+    /**
+     * Receives the parsed records of a chunk.
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        
+        /**
+         * Accepts the fields of a record and its number. The records are 
+         * numbered from 0 and the header is excluded.
+         * 
+         * @param recordNumber
+         * @param fields 
+         */
+        void accept(long recordNumber, Fields fields);
+    }
+    
+    /**
+     * The fields of a parsed record. The values are converted on demand from
+     * the characters of the chunk.
+     */
+    static final class Fields {
+        private final char[] chars;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private String[] texts = new String[16];
+        private int size = 0;
+        
+        /**
+         * Private constructor which accepts the characters of the chunk.
+         * 
+         * @param chars 
+         */
+        private Fields(char[] chars) {
+            this.chars = chars;
+        }
+        
+        /**
+         * Adds a field; the text is provided only when the field contained
+         * escaped quotes.
+         * 
+         * @param start
+         * @param end
+         * @param sb 
+         */
+        private void add(int start, int end, StringBuilder sb) {
+            if(size == starts.length) {
+                starts = Arrays.copyOf(starts, 2*size);
+                ends = Arrays.copyOf(ends, 2*size);
+                texts = Arrays.copyOf(texts, 2*size);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            texts[size] = (sb!=null)?sb.append(chars, start, end-start).toString():null;
+            size++;
+        }
+        
+        /**
+         * Returns the number of fields of the record.
+         * 
+         * @return 
+         */
+        int size() {
+            return size;
+        }
+        
+        /**
+         * Returns the text of the field.
+         * 
+         * @param i
+         * @return 
+         */
+        String get(int i) {
+            String text = texts[i];
+            return (text!=null)?text:new String(chars, starts[i], ends[i]-starts[i]);
+        }
+        
+        /**
+         * Returns the value of the field converted to the provided DataType. The
+         * conversion is equivalent to TypeInference.DataType.parse().
+         * 
+         * @param i
+         * @param dataType
+         * @return 
+         */
+        Object get(int i, TypeInference.DataType dataType) {
+            if(texts[i] == null) {
+                int from = starts[i];
+                int to = ends[i];
+                if(from == to) {
+                    return null;
+                }
+                if(dataType == TypeInference.DataType.NUMERICAL) {
+                    double value = parseDouble(chars, from, to);
+                    if(!Double.isNaN(value)) {
+                        return value;
+                    }
+                }
+                else if(dataType == TypeInference.DataType.ORDINAL) {
+                    int value = parseShort(chars, from, to);
+                    if(value != Integer.MIN_VALUE) {
+                        return (short)value;
+                    }
+                }
+            }
+            return TypeInference.DataType.parse(get(i), dataType);
+        }
+    }
+    
+    /**
+     * A chunk of whole records; its data are either characters or UTF-8 bytes.
+     */
+    static final class Chunk {
+        private final long firstRecord;
+        private final int numberOfRecords;
+        private final char[] chars;
+        private final int from;
+        private final int to;
+        private final ByteBuffer bytes;
+        
+        /**
+         * Private constructor.
+         * 
+         * @param firstRecord
+         * @param numberOfRecords
+         * @param chars
+         * @param from
+         * @param to
+         * @param bytes 
+         */
+        private Chunk(long firstRecord, int numberOfRecords, char[] chars, int from, int to, ByteBuffer bytes) {
+            this.firstRecord = firstRecord;
+            this.numberOfRecords = numberOfRecords;
+            this.chars = chars;
+            this.from = from;
+            this.to = to;
+            this.bytes = bytes;
+        }
+        
+        /**
+         * Returns the number of the first record of the chunk.
+         * 
+         * @return 
+         */
+        long getFirstRecord() {
+            return firstRecord;
+        }
+        
+        /**
+         * Returns the number of records of the chunk.
+         * 
+         * @return 
+         */
+        int getNumberOfRecords() {
+            return numberOfRecords;
+        }
+        
+        /**
+         * Returns a chunk with the same records which keeps the data as 
+         * characters. The UTF-8 bytes of mapped chunks are decoded.
+         * 
+         * @return 
+         */
+        Chunk decode() {
+            if(chars != null) {
+                return this;
+            }
+            CharBuffer cb = StandardCharsets.UTF_8.decode(bytes.duplicate());
+            int offset = cb.arrayOffset() + cb.position();
+            return new Chunk(firstRecord, numberOfRecords, cb.array(), offset, offset + cb.remaining(), null);
+        }
+    }
+    
+    /**
+     * Tracks the quoting state of the data and detects the ends of the records.
+     */
+    private final class Scanner {
+        private int state = FIELD_START;
+        private boolean afterCR = false;
+        private boolean open = false;
+        
+        /**
+         * Feeds the next character and returns true if it terminates a record.
+         * 
+         * @param c
+         * @return 
+         */
+        private boolean feed(int c) {
+            if(state == QUOTED) {
+                if(c == quote) {
+                    state = QUOTED_QUOTE;
+                }
+                return false;
+            }
+            if(state == QUOTED_QUOTE && c == quote) {
+                state = QUOTED;
+                return false;
+            }
+            if(c == '\n') {
+                state = FIELD_START;
+                if(afterCR) {
+                    afterCR = false; //LF of CRLF
+                    return false;
+                }
+                open = false;
+                return true;
+            }
+            afterCR = false;
+            if(c == '\r') {
+                state = FIELD_START;
+                afterCR = true;
+                open = false;
+                return true;
+            }
+            open = true;
+            if(c == delimiter) {
+                state = FIELD_START;
+            }
+            else if(c == quote && state == FIELD_START) {
+                state = QUOTED;
+            }
+            else {
+                state = UNQUOTED;
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Iterates through the chunks of the data. The header is read when the 
+     * iterator is created.
+     */
+    abstract class ChunkIterator implements Iterator<Chunk>, Closeable {
+        
+        /**
+         * The scanner of the data.
+         */
+        protected final Scanner scanner = new Scanner();
+        
+        /**
+         * Whether the last returned chunk ended with a CR.
+         */
+        protected boolean endsWithCR = false;
+        
+        /**
+         * The minimum size of the chunks.
+         */
+        protected final int minChunkSize = chunkSize;
+        
+        private long nextRecord = 0;
+        
+        private List<String> header;
+        
+        private final Deque<Chunk> pushedBack = new ArrayDeque<>();
+        
+        private Chunk next;
+        
+        /**
+         * Reads the header of the data.
+         */
+        protected void readHeader() {
+            header = new ArrayList<>();
+            Chunk chunk = readChunk(1);
+            if(chunk != null) {
+                parse(chunk, (recordNumber, fields) -> {
+                    for(int i=0;i<fields.size();i++) {
+                        header.add(fields.get(i));
+                    }
+                });
+            }
+        }
+        
+        /**
+         * Returns the names of the columns of the header.
+         * 
+         * @return 
+         */
+        List<String> getHeader() {
+            return header;
+        }
+        
+        /**
+         * Returns a sequential stream with the chunks which contain records 
+         * in the provided range. The chunks which end before the range are
+         * scanned but not returned and the reading stops after the range.
+         * 
+         * @param fromRecord
+         * @param toRecord
+         * @return 
+         */
+        Stream<Chunk> stream(long fromRecord, long toRecord) {
+            Iterator<Chunk> it = new Iterator<Chunk>() {
+                private Chunk next = null;
+                
+                /** {@inheritDoc} */
+                @Override
+                public boolean hasNext() {
+                    while(next == null && ChunkIterator.this.hasNext()) {
+                        Chunk chunk = ChunkIterator.this.next();
+                        if(chunk.firstRecord >= toRecord) {
+                            break;
+                        }
+                        if(chunk.firstRecord + chunk.numberOfRecords > fromRecord) {
+                            next = chunk;
+                        }
+                    }
+                    return next != null;
+                }
+                
+                /** {@inheritDoc} */
+                @Override
+                public Chunk next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Chunk chunk = next;
+                    next = null;
+                    return chunk;
+                }
+            };
+            return StreamMethods.stream(it, false);
+        }
+        
+        /**
+         * Returns chunks which were already read back to the iterator. They
+         * are returned again, in the same order, before any new chunk is read.
+         * 
+         * @param chunks 
+         */
+        void pushBack(List<Chunk> chunks) {
+            if(next != null) {
+                throw new IllegalStateException("The chunks must be pushed back before reading the next chunk.");
+            }
+            for(int i=chunks.size()-1;i>=0;i--) {
+                pushedBack.addFirst(chunks.get(i));
+            }
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            if(next == null && !pushedBack.isEmpty()) {
+                next = pushedBack.pollFirst();
+            }
+            if(next == null) {
+                next = readChunk(minChunkSize);
+                if(next != null) {
+                    //the records of the header are not numbered
+                    next = new Chunk(nextRecord, next.numberOfRecords, next.chars, next.from, next.to, next.bytes);
+                    nextRecord += next.numberOfRecords;
+                }
+            }
+            return next != null;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public Chunk next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Chunk chunk = next;
+            next = null;
+            return chunk;
+        }
+        
+        /**
+         * Reads the next chunk, which contains the records up to the first
+         * record terminator after the provided minimum length, or returns 
+         * null if there are no more data.
+         * 
+         * @param minLength
+         * @return 
+         */
+        protected abstract Chunk readChunk(int minLength);
+    }
+    
+    /**
+     * Reads the chunks from a Reader. Every chunk is a separate char array.
+     */
+    private final class ReaderChunkIterator extends ChunkIterator {
+        private final Reader reader;
+        private char[] buffer = new char[minChunkSize+READ_SIZE];
+        private int length = 0;
+        private int scanned = 0;
+        private boolean eof = false;
+        
+        /**
+         * Private constructor which accepts the reader.
+         * 
+         * @param reader 
+         */
+        private ReaderChunkIterator(Reader reader) {
+            this.reader = reader;
+            readHeader();
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        protected Chunk readChunk(int minLength) {
+            int cut;
+            int records = 0;
+            while(true) {
+                boolean found = false;
+                while(scanned < length) {
+                    if(scanner.feed(buffer[scanned++])) {
+                        records++;
+                        if(scanned >= minLength) {
+                            found = true;
+                            break;
+                        }
+                    }
+                }
+                if(found) {
+                    cut = scanned;
+                    break;
+                }
+                if(eof) {
+                    cut = length;
+                    if(scanner.open) {
+                        records++; //the last record is not terminated
+                    }
+                    break;
+                }
+                if(length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2*buffer.length);
+                }
+                try {
+                    int n = reader.read(buffer, length, Math.min(READ_SIZE, buffer.length-length));
+                    if(n < 0) {
+                        eof = true;
+                    }
+                    else {
+                        length += n;
+                    }
+                }
+                catch(IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            
+            int from = (endsWithCR && cut > 0 && buffer[0] == '\n')?1:0;
+            endsWithCR = cut > from && buffer[cut-1] == '\r';
+            
+            Chunk chunk = (cut > from)?new Chunk(0, records, buffer, from, cut, null):null;
+            
+            //move the remaining data to a new buffer; the current one belongs to the chunk
+            char[] remaining = new char[Math.max(minChunkSize+READ_SIZE, length-cut+READ_SIZE)];
+            System.arraycopy(buffer, cut, remaining, 0, length-cut);
+            buffer = remaining;
+            length -= cut;
+            scanned -= cut;
+            return chunk;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Reads the chunks from windows of a memory-mapped UTF-8 file. Every chunk
+     * is a slice of a mapped window.
+     */
+    private final class MappedChunkIterator extends ChunkIterator {
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart = 0;
+        private long windowEnd = 0;
+        private long position = 0;
+        private long scanned = 0;
+        
+        /**
+         * Private constructor which accepts the file.
+         * 
+         * @param file
+         * @throws IOException 
+         */
+        private MappedChunkIterator(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            fileSize = channel.size();
+            readHeader();
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        protected Chunk readChunk(int minLength) {
+            long cut;
+            int records = 0;
+            while(true) {
+                if(scanned == fileSize) {
+                    cut = fileSize;
+                    if(scanner.open) {
+                        records++; //the last record is not terminated
+                    }
+                    break;
+                }
+                if(scanned == windowEnd) {
+                    map(Math.max(MAPPING_SIZE, 2*(scanned-position)));
+                }
+                
+                boolean found = false;
+                int i = (int)(scanned-windowStart);
+                int limit = (int)(windowEnd-windowStart);
+                while(i < limit) {
+                    if(scanner.feed(window.get(i++))) {
+                        records++;
+                        if(windowStart+i-position >= minLength) {
+                            found = true;
+                            break;
+                        }
+                    }
+                }
+                scanned = windowStart+i;
+                if(found) {
+                    cut = scanned;
+                    break;
+                }
+            }
+            
+            long from = position;
+            if(endsWithCR && from < cut && window.get((int)(from-windowStart)) == '\n') {
+                from++;
+            }
+            endsWithCR = cut > from && window.get((int)(cut-1-windowStart)) == '\r';
+            
+            Chunk chunk = null;
+            if(cut > from) {
+                ByteBuffer bytes = window.duplicate();
+                bytes.limit((int)(cut-windowStart));
+                bytes.position((int)(from-windowStart));
+                chunk = new Chunk(0, records, null, 0, 0, bytes.slice());
+            }
+            position = cut;
+            return chunk;
+        }
+        
+        /**
+         * Maps a window of the file which starts at the beginning of the 
+         * current chunk.
+         * 
+         * @param size 
+         */
+        private void map(long size) {
+            size = Math.min(Math.min(size, fileSize-position), Integer.MAX_VALUE);
+            if(position+size <= scanned) {
+                throw new IllegalArgumentException("The record is too large.");
+            }
+            try {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            windowStart = position;
+            windowEnd = position+size;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+}
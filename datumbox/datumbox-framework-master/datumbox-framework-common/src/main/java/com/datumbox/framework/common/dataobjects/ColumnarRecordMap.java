@@ -0,0 +1,779 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.DoubleStream;
+
+/**
+ * The ColumnarRecordMap is the storage of the Dataframe when the COLUMNAR
+ * StorageMode is used. Instead of keeping a Record object per row, it encodes
+ * the values of the records in primitive arrays:
+ *
+ * - The columns which are declared when the map is empty (typically the columns
+ *   of a CSV file) are stored densely. Numerical columns are kept in contiguous
+ *   double[] arrays and the rest (categorical, ordinal, boolean) are dictionary
+ *   encoded into int[] arrays.
+ * - The columns which are discovered later (typically the features of text
+ *   documents) are stored sparsely in a compact per-row array of column ids and
+ *   values.
+ *
+ * The Records are materialized lazily when they are requested. Numerical values
+ * are materialized as Doubles and NaN values are treated as nulls. The map is
+ * thread-safe; writes are serialized and reads can happen concurrently.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+final class ColumnarRecordMap extends AbstractMap<Integer, Record> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Stores the values and the dictionary of a single column.
+     */
+    private static final class Column {
+        private final Object name;
+        private final int id;
+        private final boolean dense;
+        private final TypeInference.DataType declaredDataType;
+
+        private boolean numerical;
+
+        //dictionary of the non-numerical columns
+        private List<Object> levels;
+        private Map<Object, Integer> levelIds;
+
+        //dense numerical storage; nulls are stored as NaN
+        private double[] values;
+        private BitSet present;
+
+        //dense dictionary storage; 0 means absent and k+1 points to the k-th level
+        private int[] codes;
+
+        private Column(Object name, int id, boolean dense, TypeInference.DataType declaredDataType, boolean numerical, int capacity) {
+            this.name = name;
+            this.id = id;
+            this.dense = dense;
+            this.declaredDataType = declaredDataType;
+            this.numerical = numerical;
+            if(numerical) {
+                if(dense) {
+                    values = new double[capacity];
+                    present = new BitSet(capacity);
+                }
+            }
+            else {
+                initDictionary();
+                if(dense) {
+                    codes = new int[capacity];
+                }
+            }
+        }
+
+        private void initDictionary() {
+            levels = new ArrayList<>();
+            levelIds = new HashMap<>();
+        }
+
+        private int encode(Object value) {
+            Integer code = levelIds.get(value);
+            if(code == null) {
+                code = levels.size();
+                levels.add(value);
+                levelIds.put(value, code);
+            }
+            return code;
+        }
+
+        private boolean accepts(Object value) {
+            return !numerical || value == null || TypeInference.getDataType(value) == TypeInference.DataType.NUMERICAL;
+        }
+
+        private void grow(int capacity) {
+            if(values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+            if(codes != null) {
+                codes = Arrays.copyOf(codes, capacity);
+            }
+        }
+
+        private boolean isPresent(int slot) {
+            return numerical?present.get(slot):codes[slot]!=0;
+        }
+
+        private Object getDense(int slot) {
+            if(numerical) {
+                double v = values[slot];
+                return Double.isNaN(v)?null:v;
+            }
+            return levels.get(codes[slot]-1);
+        }
+
+        private void setDense(int slot, Object value) {
+            if(numerical) {
+                Double v = TypeInference.toDouble(value);
+                values[slot] = (v==null)?Double.NaN:v;
+                present.set(slot);
+            }
+            else {
+                codes[slot] = encode(value)+1;
+            }
+        }
+
+        private void clearDense(int slot) {
+            if(numerical) {
+                present.clear(slot);
+            }
+            else {
+                codes[slot] = 0;
+            }
+        }
+
+        private double encodeSparse(Object value) {
+            if(numerical) {
+                Double v = TypeInference.toDouble(value);
+                return (v==null)?Double.NaN:v;
+            }
+            return encode(value);
+        }
+
+        private Object decodeSparse(double value) {
+            if(numerical) {
+                return Double.isNaN(value)?null:value;
+            }
+            return levels.get((int)value);
+        }
+    }
+
+    /**
+     * Read-only list over the values of a column which were captured under the
+     * read lock.
+     */
+    private abstract static class ColumnView extends AbstractList<Object> implements RandomAccess {
+        private final int size;
+
+        private ColumnView(int size) {
+            this.size = size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Integer, Integer> slots = new ConcurrentSkipListMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int nextSlot = 0;
+    private int capacity = INITIAL_CAPACITY;
+
+    private final Map<Object, Column> columns = new HashMap<>();
+    private final List<Column> columnList = new ArrayList<>();
+    private final List<Column> denseColumns = new ArrayList<>();
+
+    private Object[] y = new Object[INITIAL_CAPACITY];
+    private Object[] yPredicted = new Object[INITIAL_CAPACITY];
+    private AssociativeArray[] yPredictedProbabilities = new AssociativeArray[INITIAL_CAPACITY];
+    private int[][] sparseColumnIds = new int[INITIAL_CAPACITY][];
+    private double[][] sparseValues = new double[INITIAL_CAPACITY][];
+
+    /**
+     * Declares the columns which will be stored densely. The columns can only be
+     * declared while the map is empty.
+     *
+     * @param columnTypes
+     */
+    void addDenseColumns(Map<?, TypeInference.DataType> columnTypes) {
+        lock.writeLock().lock();
+        try {
+            if(!slots.isEmpty()) {
+                throw new IllegalStateException("The dense columns can only be declared on an empty map.");
+            }
+            for(Map.Entry<?, TypeInference.DataType> entry : columnTypes.entrySet()) {
+                Object name = entry.getKey();
+                if(columns.containsKey(name)) {
+                    continue;
+                }
+                TypeInference.DataType dataType = entry.getValue();
+                Column c = new Column(name, columnList.size(), true, dataType, dataType==TypeInference.DataType.NUMERICAL, capacity);
+                columns.put(name, c);
+                columnList.add(c);
+                denseColumns.add(c);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the declared types of the dense columns.
+     *
+     * @return
+     */
+    Map<Object, TypeInference.DataType> getDenseColumnTypes() {
+        lock.readLock().lock();
+        try {
+            Map<Object, TypeInference.DataType> columnTypes = new LinkedHashMap<>();
+            for(Column c : denseColumns) {
+                columnTypes.put(c.name, c.declaredDataType);
+            }
+            return columnTypes;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        return slots.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return slots.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record get(Object key) {
+        Integer slot = slots.get(key);
+        if(slot == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return materialize(slot);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record put(Integer key, Record r) {
+        lock.writeLock().lock();
+        try {
+            return putUnlocked(key, r);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores all the records of the map while holding the write lock once.
+     *
+     * @param m
+     */
+    @Override
+    public void putAll(Map<? extends Integer, ? extends Record> m) {
+        lock.writeLock().lock();
+        try {
+            for(Map.Entry<? extends Integer, ? extends Record> entry : m.entrySet()) {
+                putUnlocked(entry.getKey(), entry.getValue());
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record remove(Object key) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(key);
+            if(slot == null) {
+                return null;
+            }
+            Record previous = materialize(slot);
+            clearSlot(slot);
+            freeSlots.push(slot);
+            return previous;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all the records and the sparse columns. The declared dense columns
+     * are retained.
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            freeSlots.clear();
+            nextSlot = 0;
+            capacity = INITIAL_CAPACITY;
+
+            y = new Object[capacity];
+            yPredicted = new Object[capacity];
+            yPredictedProbabilities = new AssociativeArray[capacity];
+            sparseColumnIds = new int[capacity][];
+            sparseValues = new double[capacity][];
+
+            columns.clear();
+            columnList.clear();
+            List<Column> oldDenseColumns = new ArrayList<>(denseColumns);
+            denseColumns.clear();
+            for(Column old : oldDenseColumns) {
+                Column c = new Column(old.name, columnList.size(), true, old.declaredDataType, old.declaredDataType==TypeInference.DataType.NUMERICAL, capacity);
+                columns.put(c.name, c);
+                columnList.add(c);
+                denseColumns.add(c);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only view of the keys. Unlike the default implementation
+     * of AbstractMap, the records are not materialized.
+     *
+     * @return
+     */
+    @Override
+    public Set<Integer> keySet() {
+        return Collections.unmodifiableSet(slots.keySet());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<Integer, Record>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, Record>>() {
+
+            /** {@inheritDoc} */
+            @Override
+            public Iterator<Map.Entry<Integer, Record>> iterator() {
+                Iterator<Map.Entry<Integer, Integer>> it = slots.entrySet().iterator();
+                return new Iterator<Map.Entry<Integer, Record>>() {
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public Map.Entry<Integer, Record> next() {
+                        Map.Entry<Integer, Integer> e = it.next();
+                        lock.readLock().lock();
+                        try {
+                            return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), materialize(e.getValue()));
+                        }
+                        finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+                };
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public int size() {
+                return slots.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only view over the values of a column for all the records,
+     * in the order of their ids. Missing values are returned as nulls. The slots
+     * of the records and the array of a dense numerical column are captured
+     * under the read lock and the values are read from that array without
+     * copying, so the view is not affected if the array is later grown or
+     * replaced. The dictionary codes of the other dense columns are captured
+     * along with the slots and the values of the sparse columns are copied.
+     *
+     * @param column
+     * @return
+     */
+    List<Object> getColumn(Object column) {
+        lock.readLock().lock();
+        try {
+            Column c = columns.get(column);
+            if(c == null) {
+                return Collections.nCopies(slots.size(), null);
+            }
+            else if(c.dense && c.numerical) {
+                final int[] rowSlots = getRowSlots(c);
+                final double[] values = c.values;
+                return new ColumnView(rowSlots.length) {
+                    @Override
+                    public Object get(int index) {
+                        int slot = rowSlots[index];
+                        if(slot<0) {
+                            return null;
+                        }
+                        double v = values[slot];
+                        return Double.isNaN(v)?null:v;
+                    }
+                };
+            }
+            else if(c.dense) {
+                final int[] rowCodes = new int[slots.size()];
+                int row = 0;
+                for(Integer slot : slots.values()) {
+                    rowCodes[row++] = c.codes[slot];
+                }
+                final Object[] levels = c.levels.toArray();
+                return new ColumnView(rowCodes.length) {
+                    @Override
+                    public Object get(int index) {
+                        int code = rowCodes[index];
+                        return (code==0)?null:levels[code-1];
+                    }
+                };
+            }
+            else {
+                List<Object> list = new ArrayList<>(slots.size());
+                for(Integer slot : slots.values()) {
+                    list.add(getValue(c, slot));
+                }
+                return Collections.unmodifiableList(list);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a stream over the values of a numerical column, in the order of
+     * the record ids. Missing values and nulls are returned as zeros. For dense
+     * numerical columns the internal array is read directly without copying.
+     * The stream reads the slots and the array which were captured under the
+     * read lock.
+     *
+     * @param column
+     * @return
+     */
+    DoubleStream getDoubleColumnStream(Object column) {
+        lock.readLock().lock();
+        try {
+            Column c = columns.get(column);
+            if(c == null) {
+                return DoubleStream.generate(() -> 0.0).limit(slots.size());
+            }
+            else if(c.dense && c.numerical) {
+                final int[] rowSlots = getRowSlots(c);
+                final double[] values = c.values;
+                return Arrays.stream(rowSlots).mapToDouble(slot -> {
+                    if(slot<0) {
+                        return 0.0;
+                    }
+                    double v = values[slot];
+                    return Double.isNaN(v)?0.0:v;
+                });
+            }
+            else {
+                return getColumn(column).stream().mapToDouble(v -> {
+                    Double d = TypeInference.toDouble(v);
+                    return (d==null)?0.0:d;
+                });
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fills the provided X matrix and Y vector directly from the columnar
+     * storage. The mappings between the record ids and the rows and between the
+     * columns and the features of the matrix are stored in the references.
+     *
+     * @param X
+     * @param Y
+     * @param extractY
+     * @param featureId
+     * @param recordIdsReference
+     * @param featureIdsReference
+     */
+    void fillMatrix(RealMatrix X, RealVector Y, boolean extractY, int featureId, Map<Integer, Integer> recordIdsReference, Map<Object, Integer> featureIdsReference) {
+        lock.readLock().lock();
+        try {
+            int[] slotRows = new int[nextSlot];
+            List<Integer> rowSlots = new ArrayList<>(slots.size());
+            int rowId = 0;
+            for(Map.Entry<Integer, Integer> e : slots.entrySet()) {
+                Integer rId = e.getKey();
+                int slot = e.getValue();
+                if(recordIdsReference != null) {
+                    recordIdsReference.put(rId, rowId);
+                }
+                if(extractY) {
+                    Y.setEntry(rowId, TypeInference.toDouble(y[slot]));
+                }
+                slotRows[slot] = rowId;
+                rowSlots.add(slot);
+                ++rowId;
+            }
+
+            //dense columns are copied column by column
+            for(Column c : denseColumns) {
+                Integer columnId = null;
+                for(int row=0;row<rowSlots.size();row++) {
+                    int slot = rowSlots.get(row);
+                    if(!c.isPresent(slot)) {
+                        continue;
+                    }
+                    if(columnId == null) {
+                        columnId = featureId++;
+                        featureIdsReference.put(c.name, columnId);
+                    }
+                    Double value = TypeInference.toDouble(c.getDense(slot));
+                    if(value != null) {
+                        X.setEntry(row, columnId, value);
+                    }//else the X matrix maintains the 0.0 default value
+                }
+            }
+
+            //sparse columns are copied row by row
+            for(int row=0;row<rowSlots.size();row++) {
+                int slot = rowSlots.get(row);
+                int[] ids = sparseColumnIds[slot];
+                if(ids == null) {
+                    continue;
+                }
+                double[] vals = sparseValues[slot];
+                for(int i=0;i<ids.length;i++) {
+                    Column c = columnList.get(ids[i]);
+                    Integer columnId = featureIdsReference.get(c.name);
+                    if(columnId == null) {
+                        columnId = featureId++;
+                        featureIdsReference.put(c.name, columnId);
+                    }
+                    Double value = TypeInference.toDouble(c.decodeSparse(vals[i]));
+                    if(value != null) {
+                        X.setEntry(slotRows[slot], columnId, value);
+                    }//else the X matrix maintains the 0.0 default value
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the slots of the records in the order of their ids, or -1 for
+     * the records which have no value in the dense column. The read lock must
+     * be held.
+     *
+     * @param c
+     * @return
+     */
+    private int[] getRowSlots(Column c) {
+        int[] rowSlots = new int[slots.size()];
+        int row = 0;
+        for(Integer slot : slots.values()) {
+            rowSlots[row++] = c.present.get(slot)?slot:-1;
+        }
+        return rowSlots;
+    }
+
+    private Object getValue(Column c, int slot) {
+        if(c.dense) {
+            return c.isPresent(slot)?c.getDense(slot):null;
+        }
+        int[] ids = sparseColumnIds[slot];
+        if(ids != null) {
+            for(int i=0;i<ids.length;i++) {
+                if(ids[i]==c.id) {
+                    return c.decodeSparse(sparseValues[slot][i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Record putUnlocked(Integer key, Record r) {
+        Integer slot = slots.get(key);
+        Record previous = null;
+        if(slot == null) {
+            slot = allocateSlot();
+        }
+        else {
+            previous = materialize(slot);
+            clearSlot(slot);
+        }
+        store(slot, r);
+        slots.put(key, slot);
+        return previous;
+    }
+
+    private int allocateSlot() {
+        Integer slot = freeSlots.poll();
+        if(slot != null) {
+            return slot;
+        }
+        if(nextSlot >= capacity) {
+            grow(Math.max(2*capacity, nextSlot+1));
+        }
+        return nextSlot++;
+    }
+
+    private void grow(int newCapacity) {
+        y = Arrays.copyOf(y, newCapacity);
+        yPredicted = Arrays.copyOf(yPredicted, newCapacity);
+        yPredictedProbabilities = Arrays.copyOf(yPredictedProbabilities, newCapacity);
+        sparseColumnIds = Arrays.copyOf(sparseColumnIds, newCapacity);
+        sparseValues = Arrays.copyOf(sparseValues, newCapacity);
+        for(Column c : denseColumns) {
+            c.grow(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private void clearSlot(int slot) {
+        y[slot] = null;
+        yPredicted[slot] = null;
+        yPredictedProbabilities[slot] = null;
+        sparseColumnIds[slot] = null;
+        sparseValues[slot] = null;
+        for(Column c : denseColumns) {
+            c.clearDense(slot);
+        }
+    }
+
+    private void store(int slot, Record r) {
+        y[slot] = r.getY();
+        yPredicted[slot] = r.getYPredicted();
+        yPredictedProbabilities[slot] = r.getYPredictedProbabilities();
+
+        AssociativeArray x = r.getX();
+        int[] ids = null;
+        double[] vals = null;
+        int nnz = 0;
+        for(Map.Entry<Object, Object> entry : x.entrySet()) {
+            Object name = entry.getKey();
+            Object value = entry.getValue();
+
+            Column c = columns.get(name);
+            if(c == null) {
+                boolean numerical = (value == null || TypeInference.getDataType(value) == TypeInference.DataType.NUMERICAL);
+                c = new Column(name, columnList.size(), false, null, numerical, capacity);
+                columns.put(name, c);
+                columnList.add(c);
+            }
+            else if(!c.accepts(value)) {
+                convertToDictionary(c);
+            }
+
+            if(c.dense) {
+                c.setDense(slot, value);
+            }
+            else {
+                if(ids == null) {
+                    ids = new int[x.size()];
+                    vals = new double[x.size()];
+                }
+                ids[nnz] = c.id;
+                vals[nnz] = c.encodeSparse(value);
+                ++nnz;
+            }
+        }
+
+        if(nnz > 0) {
+            sparseColumnIds[slot] = (nnz==ids.length)?ids:Arrays.copyOf(ids, nnz);
+            sparseValues[slot] = (nnz==vals.length)?vals:Arrays.copyOf(vals, nnz);
+        }
+    }
+
+    /**
+     * Converts a numerical column to a dictionary encoded one. This happens when
+     * a non-numerical value is stored in a column which until now had only
+     * numerical values.
+     *
+     * @param c
+     */
+    private void convertToDictionary(Column c) {
+        c.numerical = false;
+        c.initDictionary();
+        if(c.dense) {
+            int[] codes = new int[capacity];
+            for(int slot=c.present.nextSetBit(0);slot>=0;slot=c.present.nextSetBit(slot+1)) {
+                double v = c.values[slot];
+                codes[slot] = c.encode(Double.isNaN(v)?null:v)+1;
+            }
+            c.codes = codes;
+            c.values = null;
+            c.present = null;
+        }
+        else {
+            for(int slot=0;slot<nextSlot;slot++) {
+                int[] ids = sparseColumnIds[slot];
+                if(ids == null) {
+                    continue;
+                }
+                double[] vals = sparseValues[slot];
+                for(int i=0;i<ids.length;i++) {
+                    if(ids[i]==c.id) {
+                        double v = vals[i];
+                        vals[i] = c.encode(Double.isNaN(v)?null:v);
+                    }
+                }
+            }
+        }
+    }
+
+    private Record materialize(int slot) {
+        AssociativeArray x = new AssociativeArray();
+        for(Column c : denseColumns) {
+            if(c.isPresent(slot)) {
+                x.put(c.name, c.getDense(slot));
+            }
+        }
+        int[] ids = sparseColumnIds[slot];
+        if(ids != null) {
+            double[] vals = sparseValues[slot];
+            for(int i=0;i<ids.length;i++) {
+                Column c = columnList.get(ids[i]);
+                x.put(c.name, c.decodeSparse(vals[i]));
+            }
+        }
+        return new Record(x, y[slot], yPredicted[slot], yPredictedProbabilities[slot]);
+    }
+}
@@ -25,16 +25,19 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.common.utilities.StringCleaner;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
 /**
@@ -57,12 +60,43 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
      */
     public static final String COLUMN_NAME_CONSTANT = "~CONSTANT";
     
+    /**
+     * The supported storage modes of the Records of the Dataframe.
+     */
+    public enum StorageMode {
+        /**
+         * The Records are stored as objects in a BigMap of the DatabaseConnector.
+         */
+        ROW_BASED,
+        
+        /**
+         * The Records are encoded in primitive arrays on the heap; numerical 
+         * columns are stored in double[] arrays, the rest of the columns are 
+         * dictionary encoded in int[] arrays and the columns which are not known
+         * when the Dataframe is created (for example the features of text 
+         * documents) are stored sparsely. The Records are materialized lazily 
+         * when they are accessed and numerical values are returned as Doubles.
+         */
+        COLUMNAR;
+    }
+    
     /**
      * The Builder is a utility class which can help you build Dataframe from
  Text files and CSV files.
      */
     public static class Builder {
         
+        /**
+         * The number of parsed records which are inserted together.
+         */
+        private static final int BATCH_SIZE = 1000;
+        
+        /**
+         * The maximum number of chunks which are read to infer the DataTypes
+         * of the columns of a CSV file.
+         */
+        private static final int SAMPLING_CHUNKS = 4;
+        
         /**
          * It builds a Dataframe object from a provided list of text files. The data
  map should have as index the names of each class and as values the URIs
@@ -81,7 +115,22 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
          * @return 
          */
         public static Dataframe parseTextFiles(Map<Object, URI> textFilesMap, Extractable textExtractor, Configuration conf) {
-            Dataframe dataset = new Dataframe(conf);
+            return parseTextFiles(textFilesMap, textExtractor, StorageMode.ROW_BASED, conf);
+        }
+        
+        /**
+         * It builds a Dataframe object from a provided list of text files using
+         * the specified StorageMode.
+         * 
+         * @param textFilesMap
+         * @param textExtractor
+         * @param storageMode
+         * @param conf
+         * @return 
+         * @see #parseTextFiles(java.util.Map, com.datumbox.framework.common.interfaces.Extractable, com.datumbox.framework.common.Configuration) 
+         */
+        public static Dataframe parseTextFiles(Map<Object, URI> textFilesMap, Extractable textExtractor, StorageMode storageMode, Configuration conf) {
+            Dataframe dataset = new Dataframe(conf, storageMode);
             Logger logger = LoggerFactory.getLogger(Dataframe.Builder.class);
             
             for (Map.Entry<Object, URI> entry : textFilesMap.entrySet()) {
@@ -137,6 +186,352 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
          */
         public static Dataframe parseCSVFile(Reader reader, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, 
                                            char delimiter, char quote, String recordSeparator, Long skip, Long limit, Configuration conf) {
+            return parseCSVFile(reader, yVariable, headerDataTypes, delimiter, quote, recordSeparator, skip, limit, StorageMode.ROW_BASED, conf);
+        }
+        
+        /**
+         * It builds a Dataframe object from a CSV file using the specified 
+         * StorageMode. When the COLUMNAR mode is used, all the columns of the
+         * header are stored densely.
+         * 
+         * The contents of the reader are read in chunks of whole records which
+         * are parsed in parallel and inserted in the Dataframe in batches.
+         * 
+         * @param reader
+         * @param yVariable
+         * @param headerDataTypes
+         * @param delimiter
+         * @param quote
+         * @param recordSeparator
+         * @param skip
+         * @param limit
+         * @param storageMode
+         * @param conf
+         * @return 
+         * @see #parseCSVFile(java.io.Reader, java.lang.String, java.util.LinkedHashMap, char, char, java.lang.String, java.lang.Long, java.lang.Long, com.datumbox.framework.common.Configuration) 
+         */
+        public static Dataframe parseCSVFile(Reader reader, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, 
+                                           char delimiter, char quote, String recordSeparator, Long skip, Long limit, StorageMode storageMode, Configuration conf) {
+            ChunkedCSVParser parser = new ChunkedCSVParser(delimiter, quote);
+            try (ChunkedCSVParser.ChunkIterator chunks = parser.chunks(reader)) { 
+                return parseCSVChunks(parser, chunks, yVariable, headerDataTypes, skip, limit, storageMode, conf, null);
+            } 
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        /**
+         * It builds a Dataframe object from a UTF-8 CSV file which is located
+         * at the provided URI. 
+         * 
+         * @param csvFile
+         * @param yVariable
+         * @param headerDataTypes
+         * @param delimiter
+         * @param quote
+         * @param recordSeparator
+         * @param skip
+         * @param limit
+         * @param conf
+         * @return 
+         * @see #parseCSVFile(java.io.Reader, java.lang.String, java.util.LinkedHashMap, char, char, java.lang.String, java.lang.Long, java.lang.Long, com.datumbox.framework.common.Configuration) 
+         */
+        public static Dataframe parseCSVFile(URI csvFile, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, 
+                                           char delimiter, char quote, String recordSeparator, Long skip, Long limit, Configuration conf) {
+            return parseCSVFile(csvFile, yVariable, headerDataTypes, delimiter, quote, recordSeparator, skip, limit, StorageMode.ROW_BASED, conf);
+        }
+        
+        /**
+         * It builds a Dataframe object from a UTF-8 CSV file which is located
+         * at the provided URI using the specified StorageMode. Local files are 
+         * memory-mapped and split in chunks directly on their bytes; the rest 
+         * of the URIs are read as streams.
+         * 
+         * @param csvFile
+         * @param yVariable
+         * @param headerDataTypes
+         * @param delimiter
+         * @param quote
+         * @param recordSeparator
+         * @param skip
+         * @param limit
+         * @param storageMode
+         * @param conf
+         * @return 
+         * @see #parseCSVFile(java.io.Reader, java.lang.String, java.util.LinkedHashMap, char, char, java.lang.String, java.lang.Long, java.lang.Long, com.datumbox.framework.common.dataobjects.Dataframe.StorageMode, com.datumbox.framework.common.Configuration) 
+         */
+        public static Dataframe parseCSVFile(URI csvFile, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, 
+                                           char delimiter, char quote, String recordSeparator, Long skip, Long limit, StorageMode storageMode, Configuration conf) {
+            ChunkedCSVParser parser = new ChunkedCSVParser(delimiter, quote);
+            try (ChunkedCSVParser.ChunkIterator chunks = openChunks(parser, csvFile)) { 
+                return parseCSVChunks(parser, chunks, yVariable, headerDataTypes, skip, limit, storageMode, conf, null);
+            } 
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        /**
+         * It builds a Dataframe object from a CSV file without requiring the 
+         * DataTypes of its columns. The DataTypes are inferred from the first
+         * records, as in the inferCSVDataTypes() method, and the chunks which
+         * were read for the inference are reused by the parsing. The 
+         * values are parsed strictly; since the Reader can not be read again,
+         * an IllegalArgumentException is thrown if any value does not match 
+         * the DataType which was inferred for its column. In that case either
+         * provide the DataTypes of the columns or parse the file from its URI.
+         * 
+         * @param reader
+         * @param yVariable
+         * @param delimiter
+         * @param quote
+         * @param recordSeparator
+         * @param skip
+         * @param limit
+         * @param sampleSize
+         * @param storageMode
+         * @param conf
+         * @return 
+         * @see #inferCSVDataTypes(java.io.Reader, char, char, int) 
+         */
+        public static Dataframe parseCSVFile(Reader reader, String yVariable, char delimiter, char quote, String recordSeparator, 
+                                           Long skip, Long limit, int sampleSize, StorageMode storageMode, Configuration conf) {
+            ChunkedCSVParser parser = new ChunkedCSVParser(delimiter, quote);
+            Map<String, TypeInference.DataType> mismatches = new ConcurrentHashMap<>();
+            try (ChunkedCSVParser.ChunkIterator chunks = parser.chunks(reader)) { 
+                LinkedHashMap<String, TypeInference.DataType> headerDataTypes = inferCSVDataTypes(parser, chunks, sampleSize);
+                Dataframe dataset = parseCSVChunks(parser, chunks, yVariable, headerDataTypes, skip, limit, storageMode, conf, mismatches);
+                if(!mismatches.isEmpty()) {
+                    dataset.delete();
+                    throw new IllegalArgumentException("The values of the columns " + mismatches.keySet() + " do not match the DataTypes which were inferred from the sample.");
+                }
+                return dataset;
+            } 
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        /**
+         * It builds a Dataframe object from a UTF-8 CSV file which is located
+         * at the provided URI without requiring the DataTypes of its columns.
+         * The values are parsed strictly; if the records after the sampled ones
+         * contain values which do not match the inferred DataTypes, the DataTypes of their columns are
+         * widened and the file is parsed again.
+         * 
+         * @param csvFile
+         * @param yVariable
+         * @param delimiter
+         * @param quote
+         * @param recordSeparator
+         * @param skip
+         * @param limit
+         * @param sampleSize
+         * @param storageMode
+         * @param conf
+         * @return 
+         * @see #parseCSVFile(java.io.Reader, java.lang.String, char, char, java.lang.String, java.lang.Long, java.lang.Long, int, com.datumbox.framework.common.dataobjects.Dataframe.StorageMode, com.datumbox.framework.common.Configuration) 
+         */
+        public static Dataframe parseCSVFile(URI csvFile, String yVariable, char delimiter, char quote, String recordSeparator, 
+                                           Long skip, Long limit, int sampleSize, StorageMode storageMode, Configuration conf) {
+            ChunkedCSVParser parser = new ChunkedCSVParser(delimiter, quote);
+            LinkedHashMap<String, TypeInference.DataType> headerDataTypes = null;
+            Map<String, TypeInference.DataType> mismatches = new ConcurrentHashMap<>();
+            while(true) {
+                try (ChunkedCSVParser.ChunkIterator chunks = openChunks(parser, csvFile)) { 
+                    if(headerDataTypes == null) {
+                        headerDataTypes = inferCSVDataTypes(parser, chunks, sampleSize);
+                    }
+                    Dataframe dataset = parseCSVChunks(parser, chunks, yVariable, headerDataTypes, skip, limit, storageMode, conf, mismatches);
+                    if(mismatches.isEmpty()) {
+                        return dataset;
+                    }
+                    dataset.delete();
+                } 
+                catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                
+                //every pass widens at least one column, so the loop ends after a few passes
+                LoggerFactory.getLogger(Dataframe.Builder.class).warn("WARNING: The sample did not cover the values of the columns {}. Parsing again with wider DataTypes.", mismatches.keySet());
+                for(Map.Entry<String, TypeInference.DataType> entry : mismatches.entrySet()) {
+                    headerDataTypes.merge(entry.getKey(), entry.getValue(), Builder::widen);
+                }
+                mismatches.clear();
+            }
+        }
+        
+        /**
+         * Infers the DataTypes of the columns of a CSV file from its first 
+         * records. The chunks of the file are read until they contain at least
+         * sampleSize consistent records or the maximum number of sampled 
+         * chunks is reached, and every consistent record of these chunks is 
+         * used; thus the result is deterministic and the memory is bounded by
+         * the size of the chunks. A column is BOOLEAN if all its values are 
+         * true/false or yes/no, ORDINAL if they are integers in the range of 
+         * short, NUMERICAL if they are numbers and CATEGORICAL otherwise; thus
+         * columns of 0 and 1 are ORDINAL. The missing values are ignored and 
+         * the columns without values are CATEGORICAL. The returned map keeps 
+         * the order of the header and it can be passed to the parseCSVFile() 
+         * methods.
+         * 
+         * @param reader
+         * @param delimiter
+         * @param quote
+         * @param sampleSize
+         * @return 
+         */
+        public static LinkedHashMap<String, TypeInference.DataType> inferCSVDataTypes(Reader reader, char delimiter, char quote, int sampleSize) {
+            ChunkedCSVParser parser = new ChunkedCSVParser(delimiter, quote);
+            try (ChunkedCSVParser.ChunkIterator chunks = parser.chunks(reader)) { 
+                return inferCSVDataTypes(parser, chunks, sampleSize);
+            } 
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        
+        /**
+         * Infers the DataTypes of the columns from every consistent record of
+         * the first chunks. The DataTypes are widened record by record, so 
+         * only one DataType per column is kept. The chunks are decoded once 
+         * and pushed back to the iterator, so that the parsing continues from
+         * the first record without reading them again.
+         * 
+         * @param parser
+         * @param chunks
+         * @param sampleSize
+         * @return 
+         */
+        private static LinkedHashMap<String, TypeInference.DataType> inferCSVDataTypes(ChunkedCSVParser parser, ChunkedCSVParser.ChunkIterator chunks, int sampleSize) {
+            if(sampleSize <= 0) {
+                throw new IllegalArgumentException("The sample size must be positive.");
+            }
+            
+            List<String> header = chunks.getHeader();
+            int numberOfColumns = header.size();
+            
+            TypeInference.DataType[] dataTypes = new TypeInference.DataType[numberOfColumns];
+            AtomicLong counter = new AtomicLong(0);
+            
+            List<ChunkedCSVParser.Chunk> sampledChunks = new ArrayList<>();
+            while(sampledChunks.size() < SAMPLING_CHUNKS && counter.get() < sampleSize && chunks.hasNext()) {
+                ChunkedCSVParser.Chunk chunk = chunks.next().decode();
+                sampledChunks.add(chunk);
+                
+                parser.parse(chunk, (recordNumber, fields) -> {
+                    if(fields.size() != numberOfColumns) {
+                        return; //the inconsistent records are skipped by the parsing
+                    }
+                    counter.incrementAndGet();
+                    for(int i=0;i<numberOfColumns;i++) {
+                        String value = fields.get(i);
+                        if(TypeInference.DataType.parse(value, TypeInference.DataType.CATEGORICAL) == null) {
+                            continue; //missing value
+                        }
+                        TypeInference.DataType valueType = inferDataType(value);
+                        dataTypes[i] = (dataTypes[i] == null)?valueType:widen(dataTypes[i], valueType);
+                    }
+                });
+            }
+            chunks.pushBack(sampledChunks);
+            
+            LinkedHashMap<String, TypeInference.DataType> headerDataTypes = new LinkedHashMap<>();
+            for(int i=0;i<numberOfColumns;i++) {
+                headerDataTypes.put(header.get(i), (dataTypes[i] == null)?TypeInference.DataType.CATEGORICAL:dataTypes[i]);
+            }
+            return headerDataTypes;
+        }
+        
+        /**
+         * Returns the narrowest DataType which can hold the provided value. 
+         * Only the true/false and yes/no values are considered BOOLEAN.
+         * 
+         * @param value
+         * @return 
+         */
+        private static TypeInference.DataType inferDataType(String value) {
+            switch(value.toLowerCase(Locale.ENGLISH)) {
+                case "true":
+                case "false":
+                case "yes":
+                case "no":
+                    return TypeInference.DataType.BOOLEAN;
+            }
+            try {
+                Short.parseShort(value);
+                return TypeInference.DataType.ORDINAL;
+            }
+            catch(NumberFormatException ex) {
+                //not an ordinal
+            }
+            try {
+                Double.parseDouble(value);
+                return TypeInference.DataType.NUMERICAL;
+            }
+            catch(NumberFormatException ex) {
+                return TypeInference.DataType.CATEGORICAL;
+            }
+        }
+        
+        /**
+         * Returns the narrowest DataType which can hold the values of both 
+         * DataTypes. ORDINAL values are widened to NUMERICAL and every other 
+         * combination to CATEGORICAL.
+         * 
+         * @param a
+         * @param b
+         * @return 
+         */
+        private static TypeInference.DataType widen(TypeInference.DataType a, TypeInference.DataType b) {
+            if(a == b) {
+                return a;
+            }
+            boolean aNumber = (a == TypeInference.DataType.ORDINAL || a == TypeInference.DataType.NUMERICAL);
+            boolean bNumber = (b == TypeInference.DataType.ORDINAL || b == TypeInference.DataType.NUMERICAL);
+            return (aNumber && bNumber)?TypeInference.DataType.NUMERICAL:TypeInference.DataType.CATEGORICAL;
+        }
+        
+        /**
+         * Opens the chunks of a UTF-8 CSV file. Local files are memory-mapped 
+         * and the rest of the URIs are read as streams.
+         * 
+         * @param parser
+         * @param csvFile
+         * @return
+         * @throws IOException 
+         */
+        private static ChunkedCSVParser.ChunkIterator openChunks(ChunkedCSVParser parser, URI csvFile) throws IOException {
+            if("file".equals(csvFile.getScheme()) && parser.isMappable()) {
+                return parser.chunks(Paths.get(csvFile));
+            }
+            return parser.chunks(new InputStreamReader(csvFile.toURL().openStream(), StandardCharsets.UTF_8));
+        }
+        
+        /**
+         * Parses the chunks of a CSV file in parallel. Every chunk is parsed by
+         * a separate task and its records are inserted in batches without 
+         * updating the meta data of the Dataframe, which are set from the 
+         * provided DataTypes. The records keep their position in the file as
+         * id even when some of them are skipped. If a map of mismatches is 
+         * provided, the values are parsed strictly and the columns which have
+         * values that do not match their DataType are stored in it along with 
+         * their widened DataType; the returned Dataframe is then incomplete.
+         * 
+         * @param parser
+         * @param chunks
+         * @param yVariable
+         * @param headerDataTypes
+         * @param skip
+         * @param limit
+         * @param storageMode
+         * @param conf
+         * @param mismatches
+         * @return 
+         */
+        private static Dataframe parseCSVChunks(ChunkedCSVParser parser, ChunkedCSVParser.ChunkIterator chunks, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, 
+                                           Long skip, Long limit, StorageMode storageMode, Configuration conf, Map<String, TypeInference.DataType> mismatches) {
             Logger logger = LoggerFactory.getLogger(Dataframe.Builder.class);
             
             if(skip == null) {
@@ -153,58 +548,141 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
                 logger.warn("WARNING: The file is missing the response variable column {}.", yVariable);
             }
             
+            //find the positions of the columns in the header
+            List<String> header = chunks.getHeader();
+            Map<String, Integer> headerPositions = new HashMap<>();
+            for(int i=0;i<header.size();i++) {
+                if(headerPositions.put(header.get(i), i) != null) {
+                    throw new IllegalArgumentException("The header contains a duplicate name: " + header.get(i));
+                }
+            }
+            
+            int numberOfColumns = headerDataTypes.size();
+            String[] columns = new String[numberOfColumns];
+            TypeInference.DataType[] dataTypes = new TypeInference.DataType[numberOfColumns];
+            int[] positions = new int[numberOfColumns];
+            int yColumn = -1;
+            int c = 0;
+            for (Map.Entry<String, TypeInference.DataType> entry : headerDataTypes.entrySet()) {
+                String column = entry.getKey();
+                Integer position = headerPositions.get(column);
+                if(position == null) {
+                    throw new IllegalArgumentException("The column " + column + " is missing from the header " + header + ".");
+                }
+                if (yVariable != null && yVariable.equals(column)) {
+                    yColumn = c;
+                }
+                columns[c] = column;
+                dataTypes[c] = entry.getValue();
+                positions[c] = position;
+                c++;
+            }
+            final int headerSize = header.size();
+            final int responseColumn = yColumn;
+            final int xCapacity = (int)(numberOfColumns/0.75f)+1;
+            
             TypeInference.DataType yDataType = headerDataTypes.get(yVariable);
             Map<String, TypeInference.DataType> xDataTypes = new HashMap<>(headerDataTypes); //copy header types
             xDataTypes.remove(yVariable); //remove the response variable from xDataTypes
-            Dataframe dataset = new Dataframe(conf, yDataType, xDataTypes); //use the private constructor to pass DataTypes directly and avoid updating them on the fly
+            Dataframe dataset = new Dataframe(conf, storageMode, yDataType, xDataTypes); //use the private constructor to pass DataTypes directly and avoid updating them on the fly
             
+            final long firstRecord = skip;
+            final long lastRecord = (limit > Long.MAX_VALUE - skip)?Long.MAX_VALUE:skip + limit;
             
-            CSVFormat format = CSVFormat
-                                .RFC4180
-                                .withHeader()
-                                .withDelimiter(delimiter)
-                                .withQuote(quote)
-                                .withRecordSeparator(recordSeparator);
+            //the failures of the tasks are not propagated by the pool, so the first one is kept and rethrown
+            AtomicReference<RuntimeException> failure = new AtomicReference<>();
             
-            try (final CSVParser parser = new CSVParser(reader, format)) { 
-                ThreadMethods.throttledExecution(StreamMethods.enumerate(StreamMethods.stream(parser.spliterator(), false)).skip(skip).limit(limit), e -> { 
-                    Integer rId = e.getKey();
-                    CSVRecord row = e.getValue();
+            ThreadMethods.throttledExecution(chunks.stream(firstRecord, lastRecord), chunk -> { 
+                if(failure.get() != null) {
+                    return;
+                }
+                Map<Integer, Record> batch = new LinkedHashMap<>();
                 
-                    if (!row.isConsistent()) {
-                        logger.warn("WARNING: Skipping row {} because its size does not match the header size.", row.getRecordNumber());
-                    }
-                    else {
-                        Object y = null;
-                        AssociativeArray xData = new AssociativeArray();
-                        for (Map.Entry<String, TypeInference.DataType> entry : headerDataTypes.entrySet()) {
-                            String column = entry.getKey();
-                            TypeInference.DataType dataType = entry.getValue();
+                try {
+                    parser.parse(chunk, (recordNumber, fields) -> {
+                        if(recordNumber < firstRecord || recordNumber >= lastRecord) {
+                            return;
+                        }
+                        if (fields.size() != headerSize) {
+                            logger.warn("WARNING: Skipping row {} because its size does not match the header size.", recordNumber+1);
+                            return;
+                        }
 
-                            Object value = TypeInference.DataType.parse(row.get(column), dataType); //parse the string value according to the DataType
-                            if (yVariable != null && yVariable.equals(column)) {
+                        Object y = null;
+                        AssociativeArray xData = new AssociativeArray(new LinkedHashMap<>(xCapacity));
+                        for (int i=0;i<numberOfColumns;i++) {
+                            Object value;
+                            if(mismatches == null) {
+                                value = fields.get(positions[i], dataTypes[i]); //parse the string value according to the DataType
+                            }
+                            else {
+                                value = parseStrictly(fields, positions[i], dataTypes[i], columns[i], mismatches);
+                            }
+                            if (i == responseColumn) {
                                 y = value;
                             } 
                             else {
-                                xData.put(column, value);
+                                xData.put(columns[i], value);
                             }
                         }
-                        
-                        Record r = new Record(xData, y);
-                        
-                        //use the internal unsafe methods to avoid the update of the Metas. 
-                        //The Metas are already set in the construction of the Dataframe.
-                        dataset._unsafe_set(rId, r);
-                    }
-                }, conf.getConcurrencyConfig());
-            } 
-            catch (IOException ex) {
-                throw new RuntimeException(ex);
+                        batch.put((int)recordNumber, new Record(xData, y));
+
+                        if(batch.size() >= BATCH_SIZE) {
+                            dataset._unsafe_setAll(batch);
+                            batch.clear();
+                        }
+                    });
+
+                    //use the internal unsafe methods to avoid the update of the Metas. 
+                    //The Metas are already set in the construction of the Dataframe.
+                    dataset._unsafe_setAll(batch);
+                }
+                catch(RuntimeException ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            }, conf.getConcurrencyConfig());
+            
+            if(failure.get() != null) {
+                dataset.delete();
+                throw failure.get();
             }
+            
             return dataset;
         }
+        
+        /**
+         * Parses the value of the field according to the DataType. If the 
+         * value does not match the DataType, the widened DataType of the column
+         * is stored in the mismatches and null is returned.
+         * 
+         * @param fields
+         * @param position
+         * @param dataType
+         * @param column
+         * @param mismatches
+         * @return 
+         */
+        private static Object parseStrictly(ChunkedCSVParser.Fields fields, int position, TypeInference.DataType dataType, String column, Map<String, TypeInference.DataType> mismatches) {
+            try {
+                Object value = fields.get(position, dataType);
+                if(value != null || dataType != TypeInference.DataType.BOOLEAN) {
+                    return value;
+                }
+            }
+            catch(NumberFormatException ex) {
+                //the value is not a number of the DataType
+            }
+            
+            String text = fields.get(position);
+            if(TypeInference.DataType.parse(text, TypeInference.DataType.CATEGORICAL) == null) {
+                return null; //missing value
+            }
+            mismatches.merge(column, widen(dataType, inferDataType(text)), Builder::widen);
+            return null;
+        }
 
     }    
+
     
     private TypeInference.DataType yDataType; 
     private Map<Object, TypeInference.DataType> xDataTypes;
@@ -213,6 +691,7 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
     
     private final DatabaseConnector dbc; 
     private final Configuration conf; 
+    private final StorageMode storageMode;
     
     /**
      * This executor is used for the parallel processing of streams with custom 
@@ -226,14 +705,31 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
      * @param conf 
      */
     public Dataframe(Configuration conf) {
+        this(conf, StorageMode.ROW_BASED);
+    }
+    
+    /**
+     * Public constructor of Dataframe which specifies the StorageMode of the 
+     * Records.
+     * 
+     * @param conf 
+     * @param storageMode 
+     */
+    public Dataframe(Configuration conf, StorageMode storageMode) {
         this.conf = conf;
+        this.storageMode = storageMode;
         
         //we dont need to have a unique name, because it is not used by the connector on the current implementations
         //String dbName = "dts_"+new BigInteger(130, RandomGenerator.getThreadLocalRandom()).toString(32);
         String dbName = "dts";
         dbc = this.conf.getDbConfig().getConnector(dbName);
         
-        records = dbc.getBigMap("tmp_records", MapType.TREEMAP, StorageHint.IN_DISK, true, true);
+        if(storageMode == StorageMode.COLUMNAR) {
+            records = new ColumnarRecordMap();
+        }
+        else {
+            records = dbc.getBigMap("tmp_records", MapType.TREEMAP, StorageHint.IN_DISK, true, true);
+        }
         
         yDataType = null;
         xDataTypes = dbc.getBigMap("tmp_xDataTypes", MapType.HASHMAP, StorageHint.IN_MEMORY, true, true);
@@ -245,13 +741,41 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
      * Private constructor used by the Builder inner static class.
      * 
      * @param conf
+     * @param storageMode
      * @param yDataType
      * @param xDataTypes 
      */
-    private Dataframe(Configuration conf, TypeInference.DataType yDataType, Map<String, TypeInference.DataType> xDataTypes) {
-        this(conf);
+    private Dataframe(Configuration conf, StorageMode storageMode, TypeInference.DataType yDataType, Map<String, TypeInference.DataType> xDataTypes) {
+        this(conf, storageMode);
         this.yDataType = yDataType;
         this.xDataTypes.putAll(xDataTypes);
+        if(storageMode == StorageMode.COLUMNAR) {
+            ((ColumnarRecordMap)records).addDenseColumns(xDataTypes);
+        }
+    }
+    
+    /**
+     * Private constructor used by the getView() method. The view reads the 
+     * Records of the parent and its meta data are estimated from the selected
+     * Records.
+     * 
+     * @param parent
+     * @param parentIds 
+     */
+    private Dataframe(Dataframe parent, int[] parentIds) {
+        conf = parent.conf;
+        storageMode = StorageMode.ROW_BASED;
+        
+        dbc = conf.getDbConfig().getConnector("dts");
+        records = new SubsetRecordMap(parent.records, parentIds);
+        atomicNextAvailableRecordId.set(parentIds.length);
+        
+        yDataType = null;
+        xDataTypes = dbc.getBigMap("tmp_xDataTypes", MapType.HASHMAP, StorageHint.IN_MEMORY, true, true);
+        
+        streamExecutor = new ForkJoinStream(conf.getConcurrencyConfig());
+        
+        recalculateMeta();
     }
     
     
@@ -540,12 +1064,19 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
     
     /**
      * It extracts the values of a particular column from all records and
-     * stores them into an FlatDataList.
+     * stores them into an FlatDataList. When the COLUMNAR StorageMode is used,
+     * the returned list is a read-only view over the internal arrays of the
+     * column.
      * 
      * @param column
      * @return 
      */
     public FlatDataList getXColumn(Object column) {
+        if(storageMode == StorageMode.COLUMNAR) {
+            //view the values of the column without materializing the records
+            return new FlatDataList(((ColumnarRecordMap)records).getColumn(column));
+        }
+        
         FlatDataList flatDataList = new FlatDataList();
         
         for(Record r : values()) {
@@ -555,6 +1086,26 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
         return flatDataList;
     }
     
+    /**
+     * It returns a stream over the values of a numerical column for all records.
+     * Similarly to the Descriptives methods, missing and null values are 
+     * treated as zeros. When the COLUMNAR StorageMode is used, the values of 
+     * dense columns are read directly from the internal arrays.
+     * 
+     * @param column
+     * @return 
+     */
+    public DoubleStream getXColumnAsDoubleStream(Object column) {
+        if(storageMode == StorageMode.COLUMNAR) {
+            return ((ColumnarRecordMap)records).getDoubleColumnStream(column);
+        }
+        
+        return stream().mapToDouble(r -> {
+            Double value = r.getX().getDouble(column);
+            return (value==null)?0.0:value;
+        });
+    }
+    
     /**
      * It extracts the values of the response variables from all observations and
      * stores them into an FlatDataList.
@@ -614,7 +1165,7 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
      * @return 
      */
     public Dataframe getSubset(FlatDataList idsCollection) {
-        Dataframe d = new Dataframe(conf);
+        Dataframe d = newEmptyInstance();
         
         for(Object id : idsCollection) {
             d.add(get((Integer)id)); 
@@ -622,6 +1173,27 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
         return d;
     }
     
+    /**
+     * It generates and returns a lightweight view over a subset of this Dataframe.
+     * Unlike getSubset(), the Records are not copied; the view keeps only the 
+     * ids of the selected Records and reads them from this Dataframe. Similarly 
+     * to getSubset(), the Records of the view have the ids 0 to n-1 and any 
+     * modification on the view (for example storing predictions) does not 
+     * affect this Dataframe. The Records of this Dataframe must not be modified
+     * while the view is in use. The method is used for k-fold cross validation.
+     * 
+     * @param idsCollection
+     * @return 
+     */
+    public Dataframe getView(FlatDataList idsCollection) {
+        int[] parentIds = new int[idsCollection.size()];
+        int i = 0;
+        for(Object id : idsCollection) {
+            parentIds[i++] = (Integer)id;
+        }
+        return new Dataframe(this, parentIds);
+    }
+    
     /**
      * It forces the recalculation of Meta data using the Records of the dataset.
      */
@@ -636,7 +1208,7 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
     /** {@inheritDoc} */
     @Override
     public Dataframe copy() {
-        Dataframe d = new Dataframe(conf);
+        Dataframe d = newEmptyInstance();
         
         for(Map.Entry<Integer, Record> e : entries()) {
             Integer rId = e.getKey();
@@ -651,7 +1223,12 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
      * dataset, the instance can no longer be used.
      */
     public void delete() {
-        dbc.dropBigMap("tmp_records", records);
+        if(storageMode == StorageMode.COLUMNAR || records instanceof SubsetRecordMap) {
+            records.clear();
+        }
+        else {
+            dbc.dropBigMap("tmp_records", records);
+        }
         dbc.dropBigMap("tmp_xDataTypes", xDataTypes);
         dbc.clear();
         try {
@@ -774,6 +1351,25 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
         return records.put(rId, r);
     }
     
+    /**
+     * Sets a batch of records WITHOUT updating the internal meta-info. It is 
+     * used by the Builder to insert the parsed records and it has the same
+     * restrictions as the _unsafe_set() method.
+     * 
+     * @param batch 
+     */
+    private void _unsafe_setAll(Map<Integer, Record> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+        int maxId = Collections.max(batch.keySet());
+        
+        //move ahead the next id
+        atomicNextAvailableRecordId.updateAndGet(x -> (x<maxId)?Math.max(x+1,maxId+1):x);
+        
+        records.putAll(batch);
+    }
+    
     /**
      * Adds the record in the dataset without updating the Meta. The add method 
      * returns the id of the new record.
@@ -788,6 +1384,40 @@ public class Dataframe implements Collection<Record>, Copyable<Dataframe> {
         return newId;
     }
     
+    /**
+     * Returns the StorageMode of the Records of the Dataframe.
+     * 
+     * @return 
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+    
+    /**
+     * Returns the columnar storage of the Records or null if the Dataframe is
+     * not using the COLUMNAR StorageMode. It is used by the MatrixDataframe.
+     * 
+     * @return 
+     */
+    ColumnarRecordMap getColumnarRecords() {
+        return (storageMode == StorageMode.COLUMNAR)?(ColumnarRecordMap)records:null;
+    }
+    
+    /**
+     * Creates an empty Dataframe with the same configuration and StorageMode.
+     * In the COLUMNAR mode the dense columns of this Dataframe are also declared
+     * on the new one.
+     * 
+     * @return 
+     */
+    private Dataframe newEmptyInstance() {
+        Dataframe d = new Dataframe(conf, storageMode);
+        if(storageMode == StorageMode.COLUMNAR) {
+            ((ColumnarRecordMap)d.records).addDenseColumns(((ColumnarRecordMap)records).getDenseColumnTypes());
+        }
+        return d;
+    }
+    
     /**
      * Protected getter for the DatabaseConnector of the Dataframe. It is used
      * by the DataframeMatrix.
@@ -15,12 +15,16 @@
  */
 package com.datumbox.framework.common.dataobjects;
 
+import com.datumbox.framework.common.concurrency.StreamMethods;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.OpenMapRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
+import java.util.Arrays;
 import java.util.Map;
+import java.util.stream.Collector;
 
 /**
  * The MatrixDataframe class is responsible for converting a Dataframe object to a
@@ -28,12 +32,25 @@ import java.util.Map;
  matrices and this class provides the tools to achieve the necessary conversions.
  The major drawback of using this class is that all the data from the Dataframe
  object are brought in memory and this limits the amount of data that we can
- use.
+ use. Depending on the density of the data, the matrices are stored either in
+ a dense array or in a sparse map. Algorithms which need only the X'X and X'Y
+ products should use the crossProduct() method which streams the Dataframe 
+ without building the X matrix.
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
 public class MatrixDataframe {
     
+    /**
+     * The minimum ratio of non-zero values for which the dense storage is used.
+     */
+    private static final double DENSITY_THRESHOLD = 0.25;
+    
+    /**
+     * The number of records which are used to estimate the density of the data.
+     */
+    private static final int DENSITY_SAMPLE_SIZE = 1000;
+    
     private final RealMatrix X;
     private final RealVector Y;
      
@@ -96,7 +113,7 @@ public class MatrixDataframe {
             ++d;
         }
         
-        MatrixDataframe m = new MatrixDataframe(new OpenMapRealMatrix(n, d), new ArrayRealVector(n));
+        MatrixDataframe m = new MatrixDataframe(newMatrix(dataset, n, d, addConstantColumn), new ArrayRealVector(n));
         
         
         if(dataset.isEmpty()) {
@@ -114,6 +131,13 @@ public class MatrixDataframe {
             ++featureId; 
         }
         
+        ColumnarRecordMap columnarRecords = dataset.getColumnarRecords();
+        if(columnarRecords != null) {
+            //copy the data directly from the columns without materializing the records
+            columnarRecords.fillMatrix(m.X, m.Y, extractY, featureId, recordIdsReference, featureIdsReference);
+            return m;
+        }
+        
         int rowId = 0;
         for(Map.Entry<Integer, Record> e : dataset.entries()) {
             Integer rId = e.getKey();
@@ -166,7 +190,7 @@ public class MatrixDataframe {
         int n = newData.size();
         int d = featureIdsReference.size();
         
-        MatrixDataframe m = new MatrixDataframe(new OpenMapRealMatrix(n, d), new ArrayRealVector(n));
+        MatrixDataframe m = new MatrixDataframe(newMatrix(newData, n, d, featureIdsReference.containsKey(Dataframe.COLUMN_NAME_CONSTANT)), new ArrayRealVector(n));
         
         if(newData.isEmpty()) {
             return m;
@@ -220,15 +244,31 @@ public class MatrixDataframe {
             throw new IllegalArgumentException("The featureIdsReference map should not be empty.");
         }
         
-        int d = featureIdsReference.size();
+        return new ArrayRealVector(parseRecord(r, featureIdsReference, new double[featureIdsReference.size()]), false);
+    }
+    
+    /**
+     * Parses a single Record into the provided primitive array by using an 
+     * already existing mapping between feature names and column ids. The array
+     * is overwritten, which allows reusing it across calls, and it is returned.
+     * 
+     * @param r
+     * @param featureIdsReference
+     * @param v
+     * @return 
+     */
+    public static double[] parseRecord(Record r, Map<Object, Integer> featureIdsReference, double[] v) {
+        if(featureIdsReference.isEmpty()) {
+            throw new IllegalArgumentException("The featureIdsReference map should not be empty.");
+        }
         
-        RealVector v = new ArrayRealVector(d);
+        Arrays.fill(v, 0.0);
         
         boolean addConstantColumn = featureIdsReference.containsKey(Dataframe.COLUMN_NAME_CONSTANT);
         
 
         if(addConstantColumn) {
-            v.setEntry(0, 1.0);  //add the constant column
+            v[0] = 1.0;  //add the constant column
         }
         for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
             Object feature = entry.getKey();
@@ -236,7 +276,7 @@ public class MatrixDataframe {
             if(value!=null) {
                 Integer featureId = featureIdsReference.get(feature);
                 if(featureId!=null) {//if the feature exists in our database
-                    v.setEntry(featureId, value);
+                    v[featureId] = value;
                 }
             }
             else {
@@ -246,4 +286,225 @@ public class MatrixDataframe {
         
         return v;
     }
+    
+    /**
+     * Assigns column ids to the features of the Dataframe without building the
+     * X matrix. The ids are identical to the ones of the newInstance() method
+     * for the row based Dataframes. Typically used along with the 
+     * crossProduct() method.
+     * 
+     * @param dataset
+     * @param addConstantColumn
+     * @param featureIdsReference 
+     */
+    public static void indexFeatures(Dataframe dataset, boolean addConstantColumn, Map<Object, Integer> featureIdsReference) {
+        if(!featureIdsReference.isEmpty()) {
+            throw new IllegalArgumentException("The featureIdsReference map should be empty.");
+        }
+        
+        int featureId=0; 
+        if(addConstantColumn) {
+            featureIdsReference.put(Dataframe.COLUMN_NAME_CONSTANT, featureId);
+            ++featureId; 
+        }
+        
+        for(Record r : dataset.values()) {
+            for(Object feature : r.getX().keySet()) {
+                if(!featureIdsReference.containsKey(feature)) {
+                    featureIdsReference.put(feature, featureId);
+                    ++featureId;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Estimates the means of the columns of the X matrix in a single streaming 
+     * pass over the Dataframe.
+     * 
+     * @param dataset
+     * @param featureIdsReference
+     * @param parallelized
+     * @return 
+     */
+    public static double[] columnMeans(Dataframe dataset, Map<Object, Integer> featureIdsReference, boolean parallelized) {
+        int n = dataset.size();
+        int d = featureIdsReference.size();
+        boolean addConstantColumn = featureIdsReference.containsKey(Dataframe.COLUMN_NAME_CONSTANT);
+        
+        double[] means = dataset.streamExecutor.collect(StreamMethods.stream(dataset.values(), parallelized), Collector.of(
+            () -> new double[d], 
+            (a, r) -> {
+                if(addConstantColumn) {
+                    a[0] += 1.0;
+                }
+                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                    Integer featureId = featureIdsReference.get(entry.getKey());
+                    Double value = TypeInference.toDouble(entry.getValue());
+                    if(featureId!=null && value!=null) {
+                        a[featureId] += value;
+                    }
+                }
+            }, 
+            (a, b) -> {
+                for(int i=0;i<d;i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+        ));
+        
+        if(n>0) {
+            for(int i=0;i<d;i++) {
+                means[i] /= n;
+            }
+        }
+        return means;
+    }
+    
+    /**
+     * Calculates the X'X matrix and optionally the X'Y vector in a single 
+     * streaming pass over the Dataframe, without building the X matrix. The 
+     * records are processed in parallel and every thread accumulates its own 
+     * partial sums. If the means are provided, they are subtracted from the 
+     * columns of X before the multiplication (the constant column is not 
+     * supported in this case). The X'Y vector is filled only if it is not 
+     * null and the response variable is numerical.
+     * 
+     * @param dataset
+     * @param featureIdsReference
+     * @param means
+     * @param XtY
+     * @param parallelized
+     * @return 
+     */
+    public static RealMatrix crossProduct(Dataframe dataset, Map<Object, Integer> featureIdsReference, double[] means, RealVector XtY, boolean parallelized) {
+        int d = featureIdsReference.size();
+        boolean addConstantColumn = featureIdsReference.containsKey(Dataframe.COLUMN_NAME_CONSTANT);
+        boolean extractY = XtY!=null && dataset.getYDataType()==TypeInference.DataType.NUMERICAL;
+        
+        //the upper triangle of X'X is stored in the first d*d elements and X'Y in the last d
+        double[] sums = dataset.streamExecutor.collect(StreamMethods.stream(dataset.values(), parallelized), Collector.of(
+            () -> new double[d*d+d], 
+            (a, r) -> {
+                double y = extractY?TypeInference.toDouble(r.getY()):0.0;
+                
+                if(means!=null) {
+                    //the centered records are dense
+                    double[] row = new double[d];
+                    for(int i=0;i<d;i++) {
+                        row[i] = -means[i];
+                    }
+                    for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                        Integer featureId = featureIdsReference.get(entry.getKey());
+                        Double value = TypeInference.toDouble(entry.getValue());
+                        if(featureId!=null && value!=null) {
+                            row[featureId] += value;
+                        }
+                    }
+                    for(int i=0;i<d;i++) {
+                        double vi = row[i];
+                        if(vi==0.0) {
+                            continue;
+                        }
+                        int offset = i*d;
+                        for(int j=i;j<d;j++) {
+                            a[offset+j] += vi*row[j];
+                        }
+                        a[d*d+i] += vi*y;
+                    }
+                }
+                else {
+                    //only the non-zero values of the record are multiplied
+                    int[] ids = new int[r.getX().size()+1];
+                    double[] values = new double[ids.length];
+                    int k = 0;
+                    if(addConstantColumn) {
+                        ids[k] = 0;
+                        values[k++] = 1.0;
+                    }
+                    for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                        Integer featureId = featureIdsReference.get(entry.getKey());
+                        Double value = TypeInference.toDouble(entry.getValue());
+                        if(featureId!=null && value!=null && value!=0.0) {
+                            ids[k] = featureId;
+                            values[k++] = value;
+                        }
+                    }
+                    for(int p=0;p<k;p++) {
+                        int i = ids[p];
+                        double vi = values[p];
+                        for(int q=0;q<k;q++) {
+                            int j = ids[q];
+                            if(i<=j) {
+                                a[i*d+j] += vi*values[q];
+                            }
+                        }
+                        a[d*d+i] += vi*y;
+                    }
+                }
+            }, 
+            (a, b) -> {
+                for(int i=0;i<a.length;i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+        ));
+        
+        double[][] XtX = new double[d][d];
+        for(int i=0;i<d;i++) {
+            for(int j=i;j<d;j++) {
+                XtX[i][j] = sums[i*d+j];
+                XtX[j][i] = sums[i*d+j];
+            }
+        }
+        
+        if(extractY) {
+            for(int i=0;i<d;i++) {
+                XtY.setEntry(i, sums[d*d+i]);
+            }
+        }
+        
+        return new Array2DRowRealMatrix(XtX, false);
+    }
+    
+    /**
+     * Creates an empty n x d matrix. The density of the data is estimated from
+     * a sample of the records; dense data are stored in an array while sparse 
+     * data are stored in a map.
+     * 
+     * @param dataset
+     * @param n
+     * @param d
+     * @param addConstantColumn
+     * @return 
+     */
+    private static RealMatrix newMatrix(Dataframe dataset, int n, int d, boolean addConstantColumn) {
+        if(n==0 || d==0) {
+            return new OpenMapRealMatrix(n, d);
+        }
+        
+        long nonZeros = 0;
+        int sampled = 0;
+        for(Record r : dataset.values()) {
+            if(addConstantColumn) {
+                ++nonZeros;
+            }
+            for(Object value : r.getX().values()) {
+                if(value!=null) {
+                    ++nonZeros;
+                }
+            }
+            if(++sampled>=DENSITY_SAMPLE_SIZE) {
+                break;
+            }
+        }
+        
+        double density = nonZeros/((double)sampled*d);
+        if(density>=DENSITY_THRESHOLD && (long)n*d<=Integer.MAX_VALUE) {
+            return new Array2DRowRealMatrix(n, d);
+        }
+        return new OpenMapRealMatrix(n, d);
+    }
 }
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.DoubleBuffer;
+
+/**
+ * Immutable array of doubles which is backed either by an array on the heap or
+ * by a region of a memory-mapped file. The models store their large frozen 
+ * parameters in it, so that they can be served directly from the page cache
+ * without copying them on the heap.
+ *
+ * The class is thread-safe.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public final class ReadOnlyDoubleArray implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private transient DoubleBuffer buffer;
+
+    private ReadOnlyDoubleArray(DoubleBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Wraps the array without copying it. The array must not be modified 
+     * afterwards.
+     *
+     * @param array
+     * @return
+     */
+    public static ReadOnlyDoubleArray wrap(double[] array) {
+        return new ReadOnlyDoubleArray(DoubleBuffer.wrap(array));
+    }
+
+    /**
+     * Wraps the remaining elements of the buffer without copying them. The 
+     * buffer is typically a view of a memory-mapped file.
+     *
+     * @param buffer
+     * @return
+     */
+    public static ReadOnlyDoubleArray wrap(DoubleBuffer buffer) {
+        return new ReadOnlyDoubleArray(buffer.slice());
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return
+     */
+    public int length() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns the element at the provided position.
+     *
+     * @param i
+     * @return
+     */
+    public double get(int i) {
+        return buffer.get(i);
+    }
+
+    /**
+     * Returns a read-only view of the elements.
+     *
+     * @return
+     */
+    public DoubleBuffer asBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether the elements are stored outside of the heap, for example 
+     * in a memory-mapped file.
+     *
+     * @return
+     */
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * Returns a copy of the elements in a new array.
+     *
+     * @return
+     */
+    public double[] toArray() {
+        double[] array = new double[length()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+        oos.writeObject(toArray());
+    }
+
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        buffer = DoubleBuffer.wrap((double[])ois.readObject());
+    }
+
+}
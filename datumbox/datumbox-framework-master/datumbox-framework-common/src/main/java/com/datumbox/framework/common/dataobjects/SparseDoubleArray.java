@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import java.util.Arrays;
+
+/**
+ * Sparse array of doubles which accumulates values on non-negative indexes and
+ * stores only the indexes which were touched. It is an open addressing hash 
+ * table of primitives, so its memory depends on the number of touched indexes
+ * and not on the length of the dense array it represents. The algorithms use 
+ * it to aggregate partial sums in parallel without allocating dense buffers 
+ * for every task.
+ *
+ * The class is not thread-safe.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public final class SparseDoubleArray {
+    
+    /**
+     * Receives the touched indexes and their values.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        
+        /**
+         * Accepts an index and its value.
+         * 
+         * @param index
+         * @param value 
+         */
+        public void accept(int index, double value);
+    }
+    
+    private static final int EMPTY = -1;
+    
+    private int[] indexes;
+    
+    private double[] values;
+    
+    private int size = 0;
+    
+    /**
+     * Public constructor.
+     */
+    public SparseDoubleArray() {
+        indexes = new int[16];
+        Arrays.fill(indexes, EMPTY);
+        values = new double[16];
+    }
+    
+    /**
+     * Adds the value on the provided index.
+     * 
+     * @param index
+     * @param value 
+     */
+    public void add(int index, double value) {
+        if(index<0) {
+            throw new IllegalArgumentException("The index must not be negative.");
+        }
+        int mask = indexes.length-1;
+        int slot = slot(index, mask);
+        while(true) {
+            int current = indexes[slot];
+            if(current==index) {
+                values[slot] += value;
+                return;
+            }
+            else if(current==EMPTY) {
+                indexes[slot] = index;
+                values[slot] = value;
+                if(++size*2>indexes.length) {
+                    resize();
+                }
+                return;
+            }
+            slot = (slot+1) & mask;
+        }
+    }
+    
+    /**
+     * Returns the value of the provided index; the indexes which were not 
+     * touched are zero.
+     * 
+     * @param index
+     * @return 
+     */
+    public double get(int index) {
+        int mask = indexes.length-1;
+        int slot = slot(index, mask);
+        while(true) {
+            int current = indexes[slot];
+            if(current==index) {
+                return values[slot];
+            }
+            else if(current==EMPTY) {
+                return 0.0;
+            }
+            slot = (slot+1) & mask;
+        }
+    }
+    
+    /**
+     * Returns the number of touched indexes.
+     * 
+     * @return 
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Passes the touched indexes and their values to the consumer, in no 
+     * particular order.
+     * 
+     * @param consumer 
+     */
+    public void forEach(EntryConsumer consumer) {
+        for(int slot=0;slot<indexes.length;slot++) {
+            if(indexes[slot]!=EMPTY) {
+                consumer.accept(indexes[slot], values[slot]);
+            }
+        }
+    }
+    
+    /**
+     * Adds the values of the two arrays and returns the result. The smaller 
+     * array is added on the larger one, which is modified and returned; it 
+     * can be used as the combiner of a Collector.
+     * 
+     * @param left
+     * @param right
+     * @return 
+     */
+    public static SparseDoubleArray merge(SparseDoubleArray left, SparseDoubleArray right) {
+        if(left.size<right.size) {
+            left.forEach(right::add);
+            return right;
+        }
+        right.forEach(left::add);
+        return left;
+    }
+    
+    private void resize() {
+        int[] oldIndexes = indexes;
+        double[] oldValues = values;
+        indexes = new int[oldIndexes.length*2];
+        Arrays.fill(indexes, EMPTY);
+        values = new double[oldValues.length*2];
+        size = 0;
+        for(int slot=0;slot<oldIndexes.length;slot++) {
+            if(oldIndexes[slot]!=EMPTY) {
+                add(oldIndexes[slot], oldValues[slot]);
+            }
+        }
+    }
+    
+    private static int slot(int index, int mask) {
+        int h = index*0x9E3779B9;
+        return (h ^ (h>>>16)) & mask;
+    }
+}
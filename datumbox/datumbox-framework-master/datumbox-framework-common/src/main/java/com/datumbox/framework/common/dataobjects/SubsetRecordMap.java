@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The SubsetRecordMap is the storage of the Dataframe views. Instead of copying
+ * the Records, it keeps an array with the ids of the selected Records of the
+ * parent Dataframe and it reads them on request. The Records of the view get
+ * the ids 0 to n-1, following the order of the provided ids.
+ *
+ * The parent Records are never modified. Any Record which is set, added or
+ * removed on the view is stored in an overlay map, so modifications such as
+ * the storage of predictions remain local to the view. The map is thread-safe
+ * as long as the parent Dataframe is not modified while the view is used.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+final class SubsetRecordMap extends AbstractMap<Integer, Record> {
+
+    /**
+     * Marks the Records of the parent which were removed from the view.
+     */
+    private static final Record REMOVED = new Record(new AssociativeArray(), null);
+
+    private final Map<Integer, Record> parentRecords;
+
+    private int[] parentIds;
+
+    private final ConcurrentSkipListMap<Integer, Record> overlay = new ConcurrentSkipListMap<>();
+
+    private final AtomicInteger size;
+
+    /**
+     * Package-private constructor which receives the Records of the parent and
+     * the ids of the selected Records.
+     *
+     * @param parentRecords
+     * @param parentIds
+     */
+    SubsetRecordMap(Map<Integer, Record> parentRecords, int[] parentIds) {
+        this.parentRecords = parentRecords;
+        this.parentIds = parentIds;
+        size = new AtomicInteger(parentIds.length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key)!=null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record get(Object key) {
+        if(!(key instanceof Integer)) {
+            return null;
+        }
+        Integer id = (Integer)key;
+        return resolve(id, overlay.get(id));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record put(Integer key, Record value) {
+        Record previous = resolve(key, overlay.put(key, value));
+        if(previous==null) {
+            size.incrementAndGet();
+        }
+        return previous;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Record remove(Object key) {
+        if(!(key instanceof Integer)) {
+            return null;
+        }
+        Integer id = (Integer)key;
+        Record previous = (isParentId(id))?overlay.put(id, REMOVED):overlay.remove(id);
+        previous = resolve(id, previous);
+        if(previous!=null) {
+            size.decrementAndGet();
+        }
+        return previous;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        parentIds = new int[0];
+        overlay.clear();
+        size.set(0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<Integer, Record>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, Record>>() {
+
+            /** {@inheritDoc} */
+            @Override
+            public int size() {
+                return SubsetRecordMap.this.size();
+            }
+
+            /** {@inheritDoc} */
+            @Override
+            public Iterator<Map.Entry<Integer, Record>> iterator() {
+                return new Iterator<Map.Entry<Integer, Record>>() {
+                    private final int n = parentIds.length;
+                    private final Iterator<Map.Entry<Integer, Record>> overlayIt = overlay.tailMap(n).entrySet().iterator();
+                    private int nextId = 0;
+                    private Map.Entry<Integer, Record> next = advance();
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public boolean hasNext() {
+                        return next!=null;
+                    }
+
+                    /** {@inheritDoc} */
+                    @Override
+                    public Map.Entry<Integer, Record> next() {
+                        if(next==null) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<Integer, Record> current = next;
+                        next = advance();
+                        return current;
+                    }
+
+                    /**
+                     * Finds the next available entry, first on the Records
+                     * of the parent and then on the added Records.
+                     *
+                     * @return
+                     */
+                    private Map.Entry<Integer, Record> advance() {
+                        while(nextId<n) {
+                            Integer id = nextId++;
+                            Record r = resolve(id, overlay.get(id));
+                            if(r!=null) {
+                                return new AbstractMap.SimpleImmutableEntry<>(id, r);
+                            }
+                        }
+                        while(overlayIt.hasNext()) {
+                            Map.Entry<Integer, Record> e = overlayIt.next();
+                            if(e.getValue()!=REMOVED) {
+                                return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue());
+                            }
+                        }
+                        return null;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Checks if the id points to a Record of the parent.
+     *
+     * @param id
+     * @return
+     */
+    private boolean isParentId(Integer id) {
+        return id!=null && 0<=id && id<parentIds.length;
+    }
+
+    /**
+     * Resolves the value of the id given the value stored in the overlay.
+     *
+     * @param id
+     * @param overlayValue
+     * @return
+     */
+    private Record resolve(Integer id, Record overlayValue) {
+        if(overlayValue==REMOVED) {
+            return null;
+        }
+        else if(overlayValue!=null) {
+            return overlayValue;
+        }
+        else if(isParentId(id)) {
+            return parentRecords.get(parentIds[id]);
+        }
+        return null;
+    }
+
+}
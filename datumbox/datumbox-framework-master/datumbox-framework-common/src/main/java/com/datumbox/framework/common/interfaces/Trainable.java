@@ -73,6 +73,17 @@ public interface Trainable<MP extends Learnable, TP extends Parameterizable> ext
      * @param trainingParameters
      */
     public void fit(Dataframe trainingData, TP trainingParameters);
+    
+    /**
+     * Updates incrementally a previously trained model using the provided data.
+     * The training parameters of the original training are reused. If no model
+     * was trained before, a new one is trained with the default training 
+     * parameters. Algorithms which do not support incremental training throw 
+     * an UnsupportedOperationException.
+     * 
+     * @param trainingData
+     */
+    public void partialFit(Dataframe trainingData);
             
     /**
      * Deletes the database of the algorithm. 
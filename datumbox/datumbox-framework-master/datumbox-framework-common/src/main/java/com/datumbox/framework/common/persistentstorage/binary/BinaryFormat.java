@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Constants and class metadata which are shared by the BinaryObjectOutput and
+ * the BinaryObjectInput.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+final class BinaryFormat {
+
+    /**
+     * The magic number at the beginning of every file ("DBXM").
+     */
+    static final int MAGIC = 0x4442584D;
+
+    /**
+     * The current version of the format. Version 2 added the read-only arrays 
+     * and version 3 the flag of their byte order.
+     */
+    static final int VERSION = 3;
+
+    /**
+     * Flag which marks that the body of the file is compressed with Deflate.
+     */
+    static final int FLAG_COMPRESSED = 1;
+
+    /**
+     * Flag which marks that the read-only arrays are stored in little-endian 
+     * order; without it they are big-endian. The files store them in the native
+     * order of the machine which wrote them, so that the memory-mapped arrays 
+     * are read without swapping their bytes.
+     */
+    static final int FLAG_LITTLE_ENDIAN = 2;
+
+    /**
+     * The size of the internal buffers of the readers and writers.
+     */
+    static final int BUFFER_SIZE = 1<<16;
+
+    /**
+     * The minimum size in bytes of the read-only arrays which are memory-mapped
+     * instead of being copied on the heap.
+     */
+    static final int MAPPING_THRESHOLD = 1<<12;
+
+    //Tags which precede every value
+    static final byte TAG_NULL = 0;
+    static final byte TAG_REFERENCE = 1;
+    static final byte TAG_TRUE = 2;
+    static final byte TAG_FALSE = 3;
+    static final byte TAG_BYTE = 4;
+    static final byte TAG_SHORT = 5;
+    static final byte TAG_CHAR = 6;
+    static final byte TAG_INT = 7;
+    static final byte TAG_LONG = 8;
+    static final byte TAG_FLOAT = 9;
+    static final byte TAG_DOUBLE = 10;
+    static final byte TAG_STRING = 11;
+    static final byte TAG_ENUM = 12;
+    static final byte TAG_CLASS = 13;
+    static final byte TAG_BOOLEAN_ARRAY = 14;
+    static final byte TAG_BYTE_ARRAY = 15;
+    static final byte TAG_SHORT_ARRAY = 16;
+    static final byte TAG_CHAR_ARRAY = 17;
+    static final byte TAG_INT_ARRAY = 18;
+    static final byte TAG_LONG_ARRAY = 19;
+    static final byte TAG_FLOAT_ARRAY = 20;
+    static final byte TAG_DOUBLE_ARRAY = 21;
+    static final byte TAG_OBJECT_ARRAY = 22;
+    static final byte TAG_COLLECTION = 23;
+    static final byte TAG_MAP = 24;
+    static final byte TAG_OBJECT = 25;
+    static final byte TAG_JAVA = 26;
+    static final byte TAG_READONLY_INT_ARRAY = 27;
+    static final byte TAG_READONLY_DOUBLE_ARRAY = 28;
+
+    /**
+     * The collections which are written element by element. They are 
+     * recreated with their public no-argument constructors.
+     */
+    static final Set<Class<?>> COLLECTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            ArrayList.class, LinkedList.class, ArrayDeque.class, HashSet.class, LinkedHashSet.class, TreeSet.class, ConcurrentSkipListSet.class
+    )));
+
+    /**
+     * The maps which are written entry by entry. They are recreated with their
+     * public no-argument constructors.
+     */
+    static final Set<Class<?>> MAPS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            HashMap.class, LinkedHashMap.class, TreeMap.class, ConcurrentHashMap.class, ConcurrentSkipListMap.class
+    )));
+
+    private static final Map<Class<?>, ClassInfo> CLASS_INFO_CACHE = new ConcurrentHashMap<>();
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Returns the byte order of the read-only arrays which is marked by the 
+     * flags of a file.
+     *
+     * @param flags
+     * @return
+     */
+    static ByteOrder getArrayOrder(int flags) {
+        return ((flags & FLAG_LITTLE_ENDIAN)!=0)?ByteOrder.LITTLE_ENDIAN:ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Returns the flag which marks the provided byte order of the read-only 
+     * arrays.
+     *
+     * @param arrayOrder
+     * @return
+     */
+    static int getArrayOrderFlag(ByteOrder arrayOrder) {
+        return (arrayOrder==ByteOrder.LITTLE_ENDIAN)?FLAG_LITTLE_ENDIAN:0;
+    }
+
+    /**
+     * Returns the metadata of the class.
+     *
+     * @param klass
+     * @return
+     */
+    static ClassInfo getClassInfo(Class<?> klass) {
+        return CLASS_INFO_CACHE.computeIfAbsent(klass, ClassInfo::new);
+    }
+
+    /**
+     * The serializable fields of a class along with the way it is instantiated.
+     * Classes which customize their Java serialization are flagged, so that 
+     * they are stored with it.
+     */
+    static final class ClassInfo {
+
+        private final Class<?> klass;
+
+        private final boolean customSerialization;
+
+        private final Field[] fields;
+
+        private final Map<String, Field> fieldsByName;
+
+        private volatile Constructor<?> constructor;
+
+        //Java serialization stream of an instance without any field data; used when there is no no-argument constructor
+        private volatile byte[] emptyStream;
+
+        private ClassInfo(Class<?> klass) {
+            this.klass = klass;
+
+            boolean custom = Externalizable.class.isAssignableFrom(klass);
+            List<Field> fieldList = new ArrayList<>();
+            //Java serialization writes the fields of the serializable ancestors first
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for(Class<?> c = klass; c!=null && Serializable.class.isAssignableFrom(c); c = c.getSuperclass()) {
+                hierarchy.add(0, c);
+                custom |= hasCustomSerialization(c);
+            }
+            for(Class<?> c : hierarchy) {
+                for(Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fieldList.add(field);
+                }
+            }
+            customSerialization = custom;
+            fields = fieldList.toArray(new Field[fieldList.size()]);
+            fieldsByName = new HashMap<>();
+            for(Field field : fields) {
+                fieldsByName.put(fieldKey(field.getDeclaringClass().getName(), field.getName()), field);
+            }
+        }
+
+        /**
+         * Returns whether the class must be stored with Java serialization.
+         *
+         * @return
+         */
+        boolean isCustomSerialization() {
+            return customSerialization;
+        }
+
+        /**
+         * Returns the serializable fields of the class.
+         *
+         * @return
+         */
+        Field[] getFields() {
+            return fields;
+        }
+
+        /**
+         * Returns the field which is declared by the provided class or null if
+         * it does not exist any more.
+         *
+         * @param declaringClassName
+         * @param fieldName
+         * @return
+         */
+        Field getField(String declaringClassName, String fieldName) {
+            return fieldsByName.get(fieldKey(declaringClassName, fieldName));
+        }
+
+        /**
+         * Creates a new instance of the class. If the class declares a 
+         * no-argument constructor it is called, otherwise the instance is 
+         * created by Java serialization from a stream which contains no field 
+         * data; in that case only the no-argument constructor of the first 
+         * non-serializable ancestor runs. The fields are set afterwards.
+         *
+         * @return
+         * @throws InvalidClassException 
+         */
+        Object newInstance() throws InvalidClassException {
+            try {
+                if(constructor==null && emptyStream==null) {
+                    try {
+                        Constructor<?> c = klass.getDeclaredConstructor();
+                        c.setAccessible(true);
+                        constructor = c;
+                    }
+                    catch(NoSuchMethodException ex) {
+                        emptyStream = emptyStream(klass);
+                    }
+                }
+                if(constructor!=null) {
+                    return constructor.newInstance();
+                }
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(emptyStream)) {
+                    @Override
+                    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                        return desc.getName().equals(klass.getName())?klass:super.resolveClass(desc);
+                    }
+                }) {
+                    return ois.readObject();
+                }
+            }
+            catch(ReflectiveOperationException | IOException | RuntimeException ex) {
+                InvalidClassException ice = new InvalidClassException(klass.getName(), "Unable to instantiate the class.");
+                ice.initCause(ex);
+                throw ice;
+            }
+        }
+
+        /**
+         * Builds the Java serialization stream of an instance of the class 
+         * whose descriptor declares no fields and no superclasses.
+         *
+         * @param klass
+         * @return 
+         */
+        private static byte[] emptyStream(Class<?> klass) {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(bos);
+                dos.writeShort(ObjectStreamConstants.STREAM_MAGIC);
+                dos.writeShort(ObjectStreamConstants.STREAM_VERSION);
+                dos.writeByte(ObjectStreamConstants.TC_OBJECT);
+                dos.writeByte(ObjectStreamConstants.TC_CLASSDESC);
+                dos.writeUTF(klass.getName());
+                dos.writeLong(ObjectStreamClass.lookup(klass).getSerialVersionUID());
+                dos.writeByte(ObjectStreamConstants.SC_SERIALIZABLE);
+                dos.writeShort(0); //no fields
+                dos.writeByte(ObjectStreamConstants.TC_ENDBLOCKDATA);
+                dos.writeByte(ObjectStreamConstants.TC_NULL); //no superclass descriptor
+                dos.flush();
+                return bos.toByteArray();
+            }
+            catch(IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private static String fieldKey(String declaringClassName, String fieldName) {
+            return declaringClassName + '#' + fieldName;
+        }
+
+        private static boolean hasCustomSerialization(Class<?> c) {
+            return hasMethod(c, "writeObject", ObjectOutputStream.class) || hasMethod(c, "readObject", ObjectInputStream.class) 
+                    || hasMethod(c, "readObjectNoData") || hasMethod(c, "writeReplace") || hasMethod(c, "readResolve")
+                    || hasField(c, "serialPersistentFields");
+        }
+
+        private static boolean hasMethod(Class<?> c, String name, Class<?>... parameterTypes) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            }
+            catch(NoSuchMethodException ex) {
+                return false;
+            }
+        }
+
+        private static boolean hasField(Class<?> c, String name) {
+            try {
+                c.getDeclaredField(name);
+                return true;
+            }
+            catch(NoSuchFieldException ex) {
+                return false;
+            }
+        }
+    }
+
+}
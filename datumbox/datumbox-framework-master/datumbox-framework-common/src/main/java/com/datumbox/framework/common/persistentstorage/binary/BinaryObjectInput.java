@@ -0,0 +1,638 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.binary;
+
+import com.datumbox.framework.common.dataobjects.ReadOnlyDoubleArray;
+import com.datumbox.framework.common.dataobjects.ReadOnlyIntArray;
+import com.datumbox.framework.common.utilities.DeepCopy;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.datumbox.framework.common.persistentstorage.binary.BinaryFormat.*;
+
+/**
+ * Reads the object graphs which were written by the BinaryObjectOutput. The
+ * input is decoded while it is streamed, so the file is never loaded in memory
+ * as a whole. Fields which no longer exist in the classes are skipped and new
+ * fields keep their default values.
+ *
+ * When the input is read from a FileChannel, the large read-only arrays are
+ * memory-mapped instead of being copied on the heap. The mappings remain valid
+ * after the channel is closed. The read-only arrays are read in the byte order
+ * which was used by the BinaryObjectOutput.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class BinaryObjectInput implements Closeable {
+
+    private final InputStream in;
+
+    //non-null when the large read-only arrays are memory-mapped
+    private final FileChannel channel;
+
+    private final ByteOrder arrayOrder;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final List<String> strings = new ArrayList<>();
+
+    private final List<ClassDescriptor> classes = new ArrayList<>();
+
+    private final List<Object> references = new ArrayList<>();
+
+    private final Map<String, Class<?>> classCache = new HashMap<>();
+
+    /**
+     * Public constructor which accepts the stream from which the objects are read.
+     *
+     * @param in
+     */
+    public BinaryObjectInput(InputStream in) {
+        this(in, null, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Public constructor which accepts the stream from which the objects are read
+     * and the byte order of the read-only arrays.
+     *
+     * @param in
+     * @param arrayOrder
+     */
+    public BinaryObjectInput(InputStream in, ByteOrder arrayOrder) {
+        this(in, null, arrayOrder);
+    }
+
+    /**
+     * Public constructor which accepts the file channel from which the objects
+     * are read, starting at its current position. The large read-only arrays 
+     * are memory-mapped.
+     *
+     * @param channel
+     */
+    public BinaryObjectInput(FileChannel channel) {
+        this(channel, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Public constructor which accepts the file channel from which the objects
+     * are read, starting at its current position, and the byte order of the 
+     * read-only arrays. The large read-only arrays are memory-mapped.
+     *
+     * @param channel
+     * @param arrayOrder
+     */
+    public BinaryObjectInput(FileChannel channel, ByteOrder arrayOrder) {
+        this(Channels.newInputStream(channel), channel, arrayOrder);
+    }
+
+    private BinaryObjectInput(InputStream in, FileChannel channel, ByteOrder arrayOrder) {
+        this.in = in;
+        this.channel = channel;
+        this.arrayOrder = arrayOrder;
+        buffer.limit(0);
+    }
+
+    /**
+     * Reads the next object.
+     *
+     * @return
+     * @throws IOException
+     */
+    public Object readObject() throws IOException {
+        byte tag = readByte();
+        switch(tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_REFERENCE:
+                return references.get(readVarInt());
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_BYTE:
+                return readByte();
+            case TAG_SHORT:
+                ensure(Short.BYTES);
+                return buffer.getShort();
+            case TAG_CHAR:
+                ensure(Character.BYTES);
+                return buffer.getChar();
+            case TAG_INT:
+                return unZigZag(readVarInt());
+            case TAG_LONG:
+                return unZigZag(readVarLong());
+            case TAG_FLOAT:
+                ensure(Float.BYTES);
+                return buffer.getFloat();
+            case TAG_DOUBLE:
+                ensure(Double.BYTES);
+                return buffer.getDouble();
+            case TAG_STRING:
+                return readString();
+            case TAG_ENUM:
+                return readEnum();
+            case TAG_CLASS:
+                return resolveClass(readString());
+            case TAG_COLLECTION:
+                return readCollection();
+            case TAG_MAP:
+                return readMap();
+            case TAG_OBJECT:
+                return readFields();
+            case TAG_READONLY_DOUBLE_ARRAY:
+                return readReadOnlyDoubleArray();
+            case TAG_READONLY_INT_ARRAY:
+                return readReadOnlyIntArray();
+            case TAG_JAVA:
+                byte[] bytes = new byte[readVarInt()];
+                readBytes(bytes, 0, bytes.length);
+                Object obj = DeepCopy.deserialize(bytes);
+                references.add(obj);
+                return obj;
+            default:
+                return readArray(tag);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readEnum() throws IOException {
+        Class enumClass = resolveClass(readString());
+        String name = readString();
+        try {
+            return Enum.valueOf(enumClass, name);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new InvalidClassException(enumClass.getName(), "Unknown enum constant " + name + ".");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection() throws IOException {
+        Class<?> klass = resolveClass(readString());
+        int size = readVarInt();
+        Collection<Object> collection;
+        if(klass==ArrayList.class) {
+            collection = new ArrayList<>(size);
+        }
+        else if(klass==HashSet.class) {
+            collection = new HashSet<>(capacity(size));
+        }
+        else if(klass==LinkedHashSet.class) {
+            collection = new LinkedHashSet<>(capacity(size));
+        }
+        else {
+            collection = (Collection<Object>)newCollectionInstance(klass);
+        }
+        references.add(collection);
+        for(int i=0;i<size;i++) {
+            collection.add(readObject());
+        }
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readMap() throws IOException {
+        Class<?> klass = resolveClass(readString());
+        int size = readVarInt();
+        Map<Object, Object> map;
+        if(klass==HashMap.class) {
+            map = new HashMap<>(capacity(size));
+        }
+        else if(klass==LinkedHashMap.class) {
+            map = new LinkedHashMap<>(capacity(size));
+        }
+        else if(klass==ConcurrentHashMap.class) {
+            map = new ConcurrentHashMap<>(capacity(size));
+        }
+        else {
+            map = (Map<Object, Object>)newCollectionInstance(klass);
+        }
+        references.add(map);
+        for(int i=0;i<size;i++) {
+            Object key = readObject();
+            map.put(key, readObject());
+        }
+        return map;
+    }
+
+    private Object readFields() throws IOException {
+        ClassDescriptor descriptor = readClassDescriptor();
+        Object obj = descriptor.info.newInstance();
+        references.add(obj);
+        for(Field field : descriptor.fields) {
+            Object value = readObject();
+            if(field!=null) {
+                try {
+                    field.set(obj, value);
+                }
+                catch(IllegalArgumentException | IllegalAccessException ex) {
+                    InvalidClassException ice = new InvalidClassException(descriptor.klass.getName(), "Incompatible value for field " + field.getName() + ".");
+                    ice.initCause(ex);
+                    throw ice;
+                }
+            }
+        }
+        return obj;
+    }
+
+    private Object readArray(byte tag) throws IOException {
+        if(tag==TAG_OBJECT_ARRAY) {
+            Class<?> componentType = resolveClass(readString());
+            Object[] a = (Object[])Array.newInstance(componentType, readVarInt());
+            references.add(a);
+            for(int i=0;i<a.length;i++) {
+                a[i] = readObject();
+            }
+            return a;
+        }
+
+        int length = readVarInt();
+        switch(tag) {
+            case TAG_DOUBLE_ARRAY: {
+                double[] a = new double[length];
+                references.add(a);
+                readDoubles(a, ByteOrder.BIG_ENDIAN);
+                return a;
+            }
+            case TAG_INT_ARRAY: {
+                int[] a = new int[length];
+                references.add(a);
+                readInts(a, ByteOrder.BIG_ENDIAN);
+                return a;
+            }
+            case TAG_LONG_ARRAY: {
+                long[] a = new long[length];
+                references.add(a);
+                for(int off=0;off<length;) {
+                    int n = Math.min(length-off, ensureAvailable(Long.BYTES)/Long.BYTES);
+                    buffer.asLongBuffer().get(a, off, n);
+                    buffer.position(buffer.position()+n*Long.BYTES);
+                    off += n;
+                }
+                return a;
+            }
+            case TAG_FLOAT_ARRAY: {
+                float[] a = new float[length];
+                references.add(a);
+                for(int off=0;off<length;) {
+                    int n = Math.min(length-off, ensureAvailable(Float.BYTES)/Float.BYTES);
+                    buffer.asFloatBuffer().get(a, off, n);
+                    buffer.position(buffer.position()+n*Float.BYTES);
+                    off += n;
+                }
+                return a;
+            }
+            case TAG_SHORT_ARRAY: {
+                short[] a = new short[length];
+                references.add(a);
+                for(int off=0;off<length;) {
+                    int n = Math.min(length-off, ensureAvailable(Short.BYTES)/Short.BYTES);
+                    buffer.asShortBuffer().get(a, off, n);
+                    buffer.position(buffer.position()+n*Short.BYTES);
+                    off += n;
+                }
+                return a;
+            }
+            case TAG_CHAR_ARRAY: {
+                char[] a = new char[length];
+                references.add(a);
+                for(int off=0;off<length;) {
+                    int n = Math.min(length-off, ensureAvailable(Character.BYTES)/Character.BYTES);
+                    buffer.asCharBuffer().get(a, off, n);
+                    buffer.position(buffer.position()+n*Character.BYTES);
+                    off += n;
+                }
+                return a;
+            }
+            case TAG_BYTE_ARRAY: {
+                byte[] a = new byte[length];
+                references.add(a);
+                readBytes(a, 0, length);
+                return a;
+            }
+            case TAG_BOOLEAN_ARRAY: {
+                boolean[] a = new boolean[length];
+                references.add(a);
+                for(int i=0;i<length;i++) {
+                    a[i] = readByte()!=0;
+                }
+                return a;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag + ".");
+        }
+    }
+
+    private ReadOnlyDoubleArray readReadOnlyDoubleArray() throws IOException {
+        int length = readVarInt();
+        ReadOnlyDoubleArray a;
+        ByteBuffer mapped = mapRegion((long)length*Double.BYTES);
+        if(mapped!=null) {
+            a = ReadOnlyDoubleArray.wrap(mapped.order(arrayOrder).asDoubleBuffer());
+        }
+        else {
+            double[] array = new double[length];
+            readDoubles(array, arrayOrder);
+            a = ReadOnlyDoubleArray.wrap(array);
+        }
+        references.add(a);
+        return a;
+    }
+
+    private ReadOnlyIntArray readReadOnlyIntArray() throws IOException {
+        int length = readVarInt();
+        ReadOnlyIntArray a;
+        ByteBuffer mapped = mapRegion((long)length*Integer.BYTES);
+        if(mapped!=null) {
+            a = ReadOnlyIntArray.wrap(mapped.order(arrayOrder).asIntBuffer());
+        }
+        else {
+            int[] array = new int[length];
+            readInts(array, arrayOrder);
+            a = ReadOnlyIntArray.wrap(array);
+        }
+        references.add(a);
+        return a;
+    }
+
+    /**
+     * Maps the next bytes of the file and skips them. If the input is not 
+     * memory-mapped or the region is too small or too large to be mapped, null 
+     * is returned and nothing is skipped.
+     *
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    private ByteBuffer mapRegion(long bytes) throws IOException {
+        if(channel==null || bytes<MAPPING_THRESHOLD || bytes>Integer.MAX_VALUE) {
+            return null;
+        }
+        long offset = channel.position()-buffer.remaining();
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+
+        //skip the mapped bytes
+        if(bytes<=buffer.remaining()) {
+            buffer.position(buffer.position()+(int)bytes);
+        }
+        else {
+            channel.position(offset+bytes);
+            buffer.position(buffer.limit());
+        }
+        return mapped;
+    }
+
+    private void readDoubles(double[] a, ByteOrder order) throws IOException {
+        for(int off=0;off<a.length;) {
+            int n = Math.min(a.length-off, ensureAvailable(Double.BYTES)/Double.BYTES);
+            DoubleBuffer src = buffer.duplicate().order(order).asDoubleBuffer();
+            src.get(a, off, n);
+            buffer.position(buffer.position()+n*Double.BYTES);
+            off += n;
+        }
+    }
+
+    private void readInts(int[] a, ByteOrder order) throws IOException {
+        for(int off=0;off<a.length;) {
+            int n = Math.min(a.length-off, ensureAvailable(Integer.BYTES)/Integer.BYTES);
+            IntBuffer src = buffer.duplicate().order(order).asIntBuffer();
+            src.get(a, off, n);
+            buffer.position(buffer.position()+n*Integer.BYTES);
+            off += n;
+        }
+    }
+
+    /**
+     * Reads the class descriptor and resolves its fields in the current version
+     * of the class.
+     *
+     * @return
+     * @throws IOException
+     */
+    private ClassDescriptor readClassDescriptor() throws IOException {
+        int id = readVarInt();
+        if(id>0) {
+            return classes.get(id-1);
+        }
+
+        Class<?> klass = resolveClass(readString());
+        ClassInfo info = getClassInfo(klass);
+        Field[] fields = new Field[readVarInt()];
+        for(int i=0;i<fields.length;i++) {
+            String declaringClassName = readString();
+            fields[i] = info.getField(declaringClassName, readString());
+        }
+        ClassDescriptor descriptor = new ClassDescriptor(klass, info, fields);
+        classes.add(descriptor);
+        return descriptor;
+    }
+
+    private Object newCollectionInstance(Class<?> klass) throws IOException {
+        if(!COLLECTIONS.contains(klass) && !MAPS.contains(klass)) {
+            throw new InvalidClassException(klass.getName(), "Unsupported collection.");
+        }
+        try {
+            return klass.getConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException ex) {
+            InvalidClassException ice = new InvalidClassException(klass.getName(), "Unable to instantiate the collection.");
+            ice.initCause(ex);
+            throw ice;
+        }
+    }
+
+    private Class<?> resolveClass(String name) throws IOException {
+        Class<?> klass = classCache.get(name);
+        if(klass==null) {
+            try {
+                ClassLoader cl = Thread.currentThread().getContextClassLoader();
+                klass = Class.forName(name, false, (cl!=null)?cl:BinaryObjectInput.class.getClassLoader());
+            }
+            catch(ClassNotFoundException ex) {
+                InvalidClassException ice = new InvalidClassException(name, "Class not found.");
+                ice.initCause(ex);
+                throw ice;
+            }
+            classCache.put(name, klass);
+        }
+        return klass;
+    }
+
+    /**
+     * Reads a string of the dictionary.
+     *
+     * @return
+     * @throws IOException
+     */
+    private String readString() throws IOException {
+        int id = readVarInt();
+        if(id>0) {
+            return strings.get(id-1);
+        }
+
+        int length = readVarInt();
+        String s;
+        if(length<=buffer.capacity()) {
+            ensure(length);
+            s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position()+length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            readBytes(bytes, 0, length);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        strings.add(s);
+        return s;
+    }
+
+    private byte readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    private int readVarInt() throws IOException {
+        int v = 0;
+        for(int shift=0;shift<35;shift+=7) {
+            byte b = readByte();
+            v |= (b & 0x7F) << shift;
+            if(b>=0) {
+                return v;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer.");
+    }
+
+    private long readVarLong() throws IOException {
+        long v = 0L;
+        for(int shift=0;shift<70;shift+=7) {
+            byte b = readByte();
+            v |= (long)(b & 0x7F) << shift;
+            if(b>=0) {
+                return v;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer.");
+    }
+
+    private void readBytes(byte[] bytes, int off, int len) throws IOException {
+        while(len>0) {
+            int n = Math.min(len, ensureAvailable(1));
+            buffer.get(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static int unZigZag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1L);
+    }
+
+    private static int capacity(int size) {
+        return Math.max(16, (int)(size/0.75f)+1);
+    }
+
+    /**
+     * Ensures that the buffer holds at least the provided number of bytes.
+     *
+     * @param bytes
+     * @throws IOException
+     */
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining()>=bytes) {
+            return;
+        }
+        buffer.compact();
+        try {
+            while(buffer.position()<bytes) {
+                int n = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                if(n<0) {
+                    throw new EOFException();
+                }
+                buffer.position(buffer.position()+n);
+            }
+        }
+        finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Ensures that the buffer holds at least the provided number of bytes and
+     * returns the number of bytes which are available.
+     *
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    private int ensureAvailable(int bytes) throws IOException {
+        ensure(bytes);
+        return buffer.remaining();
+    }
+
+    /**
+     * The class descriptor of a stream, which maps the written fields to the 
+     * fields of the current version of the class.
+     */
+    private static class ClassDescriptor {
+
+        private final Class<?> klass;
+
+        private final ClassInfo info;
+
+        private final Field[] fields;
+
+        private ClassDescriptor(Class<?> klass, ClassInfo info, Field[] fields) {
+            this.klass = klass;
+            this.info = info;
+            this.fields = fields;
+        }
+    }
+
+}
@@ -0,0 +1,511 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.binary;
+
+import com.datumbox.framework.common.dataobjects.ReadOnlyDoubleArray;
+import com.datumbox.framework.common.dataobjects.ReadOnlyIntArray;
+import com.datumbox.framework.common.utilities.DeepCopy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import static com.datumbox.framework.common.persistentstorage.binary.BinaryFormat.*;
+
+/**
+ * Writes object graphs in a compact binary format. Primitive arrays and the 
+ * read-only arrays are written as length-prefixed blocks, strings are interned in a dictionary and written
+ * only once, the common collections are written entry by entry and the rest of 
+ * the serializable objects are written field by field. Shared references and 
+ * cycles are preserved. Classes which customize their Java serialization are 
+ * stored with it.
+ *
+ * The output is buffered internally; the stream is written in large blocks.
+ * The read-only arrays are written in the byte order which is provided to the
+ * constructor, so that they can be memory-mapped in the same order, and the 
+ * rest of the values in big-endian order.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class BinaryObjectOutput implements Closeable {
+
+    private final OutputStream out;
+
+    private final ByteOrder arrayOrder;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+
+    /**
+     * Public constructor which accepts the stream where the objects are written.
+     *
+     * @param out
+     */
+    public BinaryObjectOutput(OutputStream out) {
+        this(out, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Public constructor which accepts the stream where the objects are written
+     * and the byte order of the read-only arrays.
+     *
+     * @param out
+     * @param arrayOrder
+     */
+    public BinaryObjectOutput(OutputStream out, ByteOrder arrayOrder) {
+        this.out = out;
+        this.arrayOrder = arrayOrder;
+    }
+
+    /**
+     * Writes the object and everything it references.
+     *
+     * @param obj
+     * @throws IOException
+     */
+    public void writeObject(Object obj) throws IOException {
+        if(obj==null) {
+            writeTag(TAG_NULL);
+            return;
+        }
+
+        Class<?> klass = obj.getClass();
+        if(klass==String.class) {
+            writeTag(TAG_STRING);
+            writeString((String)obj);
+            return;
+        }
+        else if(writeBoxed(obj, klass)) {
+            return;
+        }
+        else if(obj instanceof Enum) {
+            writeTag(TAG_ENUM);
+            writeString(((Enum<?>)obj).getDeclaringClass().getName());
+            writeString(((Enum<?>)obj).name());
+            return;
+        }
+        else if(obj instanceof Class) {
+            writeTag(TAG_CLASS);
+            writeString(((Class<?>)obj).getName());
+            return;
+        }
+
+        Integer reference = references.get(obj);
+        if(reference!=null) {
+            writeTag(TAG_REFERENCE);
+            writeVarInt(reference);
+            return;
+        }
+        references.put(obj, references.size());
+
+        if(klass.isArray()) {
+            writeArray(obj, klass.getComponentType());
+        }
+        else if(klass==ReadOnlyDoubleArray.class) {
+            ReadOnlyDoubleArray a = (ReadOnlyDoubleArray)obj;
+            writeTag(TAG_READONLY_DOUBLE_ARRAY);
+            writeVarInt(a.length());
+            writeDoubles(a.asBuffer(), arrayOrder);
+        }
+        else if(klass==ReadOnlyIntArray.class) {
+            ReadOnlyIntArray a = (ReadOnlyIntArray)obj;
+            writeTag(TAG_READONLY_INT_ARRAY);
+            writeVarInt(a.length());
+            writeInts(a.asBuffer(), arrayOrder);
+        }
+        else if(COLLECTIONS.contains(klass) && !(obj instanceof SortedSet && ((SortedSet<?>)obj).comparator()!=null)) {
+            Object[] elements = ((Collection<?>)obj).toArray();
+            writeTag(TAG_COLLECTION);
+            writeString(klass.getName());
+            writeVarInt(elements.length);
+            for(Object element : elements) {
+                writeObject(element);
+            }
+        }
+        else if(MAPS.contains(klass) && !(obj instanceof SortedMap && ((SortedMap<?,?>)obj).comparator()!=null)) {
+            Object[] entries = ((Map<?,?>)obj).entrySet().toArray();
+            writeTag(TAG_MAP);
+            writeString(klass.getName());
+            writeVarInt(entries.length);
+            for(Object e : entries) {
+                Map.Entry<?,?> entry = (Map.Entry<?,?>)e;
+                writeObject(entry.getKey());
+                writeObject(entry.getValue());
+            }
+        }
+        else if(!(obj instanceof Serializable)) {
+            throw new NotSerializableException(klass.getName());
+        }
+        else {
+            ClassInfo info = getClassInfo(klass);
+            if(info.isCustomSerialization()) {
+                byte[] bytes = DeepCopy.serialize(obj);
+                writeTag(TAG_JAVA);
+                writeVarInt(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            }
+            else {
+                writeTag(TAG_OBJECT);
+                writeClassDescriptor(klass, info);
+                try {
+                    for(Field field : info.getFields()) {
+                        writeObject(field.get(obj));
+                    }
+                }
+                catch(IllegalAccessException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the boxed primitives and returns true if the object was one of them.
+     *
+     * @param obj
+     * @param klass
+     * @return
+     * @throws IOException
+     */
+    private boolean writeBoxed(Object obj, Class<?> klass) throws IOException {
+        if(klass==Double.class) {
+            ensure(9);
+            buffer.put(TAG_DOUBLE).putDouble((Double)obj);
+        }
+        else if(klass==Integer.class) {
+            writeTag(TAG_INT);
+            writeVarInt(zigZag((Integer)obj));
+        }
+        else if(klass==Long.class) {
+            writeTag(TAG_LONG);
+            writeVarLong(zigZag((Long)obj));
+        }
+        else if(klass==Boolean.class) {
+            writeTag((Boolean)obj?TAG_TRUE:TAG_FALSE);
+        }
+        else if(klass==Float.class) {
+            ensure(5);
+            buffer.put(TAG_FLOAT).putFloat((Float)obj);
+        }
+        else if(klass==Short.class) {
+            ensure(3);
+            buffer.put(TAG_SHORT).putShort((Short)obj);
+        }
+        else if(klass==Character.class) {
+            ensure(3);
+            buffer.put(TAG_CHAR).putChar((Character)obj);
+        }
+        else if(klass==Byte.class) {
+            ensure(2);
+            buffer.put(TAG_BYTE).put((Byte)obj);
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the array. The primitive arrays are written in bulk.
+     *
+     * @param array
+     * @param componentType
+     * @throws IOException
+     */
+    private void writeArray(Object array, Class<?> componentType) throws IOException {
+        if(componentType==double.class) {
+            double[] a = (double[])array;
+            writeTag(TAG_DOUBLE_ARRAY);
+            writeVarInt(a.length);
+            writeDoubles(DoubleBuffer.wrap(a), ByteOrder.BIG_ENDIAN);
+        }
+        else if(componentType==int.class) {
+            int[] a = (int[])array;
+            writeTag(TAG_INT_ARRAY);
+            writeVarInt(a.length);
+            writeInts(IntBuffer.wrap(a), ByteOrder.BIG_ENDIAN);
+        }
+        else if(componentType==long.class) {
+            long[] a = (long[])array;
+            writeTag(TAG_LONG_ARRAY);
+            writeVarInt(a.length);
+            for(int off=0;off<a.length;) {
+                int n = Math.min(a.length-off, ensureAvailable(Long.BYTES)/Long.BYTES);
+                buffer.asLongBuffer().put(a, off, n);
+                buffer.position(buffer.position()+n*Long.BYTES);
+                off += n;
+            }
+        }
+        else if(componentType==float.class) {
+            float[] a = (float[])array;
+            writeTag(TAG_FLOAT_ARRAY);
+            writeVarInt(a.length);
+            for(int off=0;off<a.length;) {
+                int n = Math.min(a.length-off, ensureAvailable(Float.BYTES)/Float.BYTES);
+                buffer.asFloatBuffer().put(a, off, n);
+                buffer.position(buffer.position()+n*Float.BYTES);
+                off += n;
+            }
+        }
+        else if(componentType==short.class) {
+            short[] a = (short[])array;
+            writeTag(TAG_SHORT_ARRAY);
+            writeVarInt(a.length);
+            for(int off=0;off<a.length;) {
+                int n = Math.min(a.length-off, ensureAvailable(Short.BYTES)/Short.BYTES);
+                buffer.asShortBuffer().put(a, off, n);
+                buffer.position(buffer.position()+n*Short.BYTES);
+                off += n;
+            }
+        }
+        else if(componentType==char.class) {
+            char[] a = (char[])array;
+            writeTag(TAG_CHAR_ARRAY);
+            writeVarInt(a.length);
+            for(int off=0;off<a.length;) {
+                int n = Math.min(a.length-off, ensureAvailable(Character.BYTES)/Character.BYTES);
+                buffer.asCharBuffer().put(a, off, n);
+                buffer.position(buffer.position()+n*Character.BYTES);
+                off += n;
+            }
+        }
+        else if(componentType==byte.class) {
+            byte[] a = (byte[])array;
+            writeTag(TAG_BYTE_ARRAY);
+            writeVarInt(a.length);
+            writeBytes(a, 0, a.length);
+        }
+        else if(componentType==boolean.class) {
+            boolean[] a = (boolean[])array;
+            writeTag(TAG_BOOLEAN_ARRAY);
+            writeVarInt(a.length);
+            for(boolean b : a) {
+                ensure(1);
+                buffer.put(b?(byte)1:(byte)0);
+            }
+        }
+        else {
+            Object[] a = (Object[])array;
+            writeTag(TAG_OBJECT_ARRAY);
+            writeString(componentType.getName());
+            writeVarInt(a.length);
+            for(Object element : a) {
+                writeObject(element);
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining doubles of the buffer in bulk in the provided order.
+     *
+     * @param src
+     * @param order
+     * @throws IOException
+     */
+    private void writeDoubles(DoubleBuffer src, ByteOrder order) throws IOException {
+        while(src.hasRemaining()) {
+            int n = Math.min(src.remaining(), ensureAvailable(Double.BYTES)/Double.BYTES);
+            DoubleBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position()+n);
+            buffer.duplicate().order(order).asDoubleBuffer().put(chunk);
+            buffer.position(buffer.position()+n*Double.BYTES);
+            src.position(src.position()+n);
+        }
+    }
+
+    /**
+     * Writes the remaining ints of the buffer in bulk in the provided order.
+     *
+     * @param src
+     * @param order
+     * @throws IOException
+     */
+    private void writeInts(IntBuffer src, ByteOrder order) throws IOException {
+        while(src.hasRemaining()) {
+            int n = Math.min(src.remaining(), ensureAvailable(Integer.BYTES)/Integer.BYTES);
+            IntBuffer chunk = src.duplicate();
+            chunk.limit(chunk.position()+n);
+            buffer.duplicate().order(order).asIntBuffer().put(chunk);
+            buffer.position(buffer.position()+n*Integer.BYTES);
+            src.position(src.position()+n);
+        }
+    }
+
+    /**
+     * Writes the name and the fields of the class the first time it is met and
+     * its id afterwards.
+     *
+     * @param klass
+     * @param info
+     * @throws IOException
+     */
+    private void writeClassDescriptor(Class<?> klass, ClassInfo info) throws IOException {
+        Integer id = classes.get(klass);
+        if(id!=null) {
+            writeVarInt(id+1);
+            return;
+        }
+        classes.put(klass, classes.size());
+
+        writeVarInt(0);
+        writeString(klass.getName());
+        Field[] fields = info.getFields();
+        writeVarInt(fields.length);
+        for(Field field : fields) {
+            writeString(field.getDeclaringClass().getName());
+            writeString(field.getName());
+        }
+    }
+
+    /**
+     * Writes the id of the string if it is already in the dictionary, otherwise 
+     * it adds it and writes its UTF-8 bytes.
+     *
+     * @param s
+     * @throws IOException
+     */
+    private void writeString(String s) throws IOException {
+        Integer id = strings.get(s);
+        if(id!=null) {
+            writeVarInt(id+1);
+            return;
+        }
+        strings.put(s, strings.size());
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(0);
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeTag(byte tag) throws IOException {
+        ensure(1);
+        buffer.put(tag);
+    }
+
+    private void writeVarInt(int v) throws IOException {
+        ensure(5);
+        while((v & ~0x7F)!=0) {
+            buffer.put((byte)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte)v);
+    }
+
+    private void writeVarLong(long v) throws IOException {
+        ensure(10);
+        while((v & ~0x7FL)!=0L) {
+            buffer.put((byte)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte)v);
+    }
+
+    private void writeBytes(byte[] bytes, int off, int len) throws IOException {
+        while(len>0) {
+            int n = Math.min(len, ensureAvailable(1));
+            buffer.put(bytes, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    /**
+     * Ensures that the buffer has room for the provided number of bytes.
+     *
+     * @param bytes
+     * @throws IOException
+     */
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining()<bytes) {
+            drain();
+        }
+    }
+
+    /**
+     * Ensures that the buffer has room for at least the provided number of
+     * bytes and returns the available room.
+     *
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    private int ensureAvailable(int bytes) throws IOException {
+        ensure(bytes);
+        return buffer.remaining();
+    }
+
+    /**
+     * Writes the contents of the buffer to the stream.
+     *
+     * @throws IOException
+     */
+    private void drain() throws IOException {
+        if(buffer.position()>0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.binary;
+
+import com.datumbox.framework.common.utilities.DeepCopy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.datumbox.framework.common.persistentstorage.binary.BinaryFormat.*;
+
+/**
+ * Stores serializable objects in a directory, one file per object, using the
+ * versioned binary format of the BinaryObjectOutput. Saving an object rewrites
+ * only its own file and loading it streams the file through a buffered NIO
+ * channel. The body of the files can be optionally compressed.
+ *
+ * The objects can be also loaded in memory-mapped mode, in which the large 
+ * read-only arrays are not copied on the heap but they are read directly from
+ * the page cache. This mode is intended for serving the models. The read-only
+ * arrays are stored in the native byte order of the machine which writes them
+ * and the order is recorded in the header of the file.
+ *
+ * Older versions of the framework stored all the objects of a database in a 
+ * single file with Java serialization. Such files are still read and they are
+ * converted to the new layout the next time an object is saved.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class ObjectFileStore {
+
+    private static final String EXTENSION = ".bin";
+
+    private static final String TMP_EXTENSION = ".tmp";
+
+    private static final short JAVA_SERIALIZATION_MAGIC = (short)0xACED;
+
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES + Byte.BYTES;
+
+    private final Path path;
+
+    private final boolean compressed;
+
+    /**
+     * Public constructor which accepts the path of the store and whether the
+     * files are compressed.
+     *
+     * @param path
+     * @param compressed
+     */
+    public ObjectFileStore(Path path, boolean compressed) {
+        this.path = path;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Stores the object under the provided name, replacing any previous object
+     * with the same name.
+     *
+     * @param name
+     * @param obj
+     */
+    public void save(String name, Object obj) {
+        try {
+            if(Files.isRegularFile(path)) {
+                migrateLegacyFile();
+            }
+            Files.createDirectories(path);
+
+            Path file = getFile(name);
+            Path tmpFile = path.resolve(name + TMP_EXTENSION);
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFile(Channels.newOutputStream(channel), obj);
+                channel.force(false);
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Loads the object which is stored under the provided name or returns null
+     * if there is no such object.
+     *
+     * @param <T>
+     * @param name
+     * @param klass
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String name, Class<T> klass) {
+        try {
+            if(Files.isRegularFile(path)) {
+                Map<String, Object> storedObjects = (Map<String, Object>)DeepCopy.deserialize(Files.readAllBytes(path));
+                return klass.cast(storedObjects.get(name));
+            }
+
+            Path file = getFile(name);
+            if(Files.notExists(file)) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return klass.cast(readFile(Channels.newInputStream(channel)));
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Loads the object which is stored under the provided name and memory-maps 
+     * its large read-only arrays. Files which are compressed or written in an 
+     * older format are loaded on the heap. If there is no such object null is 
+     * returned.
+     *
+     * @param <T>
+     * @param name
+     * @param klass
+     * @return
+     */
+    public <T> T loadMapped(String name, Class<T> klass) {
+        Path file = getFile(name);
+        if(!Files.isRegularFile(file)) {
+            return load(name, klass);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(header.hasRemaining()) {
+                if(channel.read(header)<0) {
+                    break;
+                }
+            }
+            header.flip();
+            if(header.remaining()<HEADER_BYTES || header.getInt()!=MAGIC || header.getShort()>VERSION) {
+                return load(name, klass);
+            }
+            int flags = header.get();
+            if((flags & FLAG_COMPRESSED)!=0) {
+                return load(name, klass);
+            }
+            return klass.cast(new BinaryObjectInput(channel, getArrayOrder(flags)).readObject());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Deletes all the stored objects.
+     */
+    public void clear() {
+        try {
+            if(Files.isDirectory(path)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+                    for(Path file : files) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            Files.deleteIfExists(path);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Path getFile(String name) {
+        return path.resolve(name + EXTENSION);
+    }
+
+    /**
+     * Converts the single Java serialized file of older versions to the 
+     * directory layout.
+     *
+     * @throws IOException 
+     */
+    @SuppressWarnings("unchecked")
+    private void migrateLegacyFile() throws IOException {
+        Map<String, Object> storedObjects = (Map<String, Object>)DeepCopy.deserialize(Files.readAllBytes(path));
+        Files.delete(path);
+        Files.createDirectories(path);
+        for(Map.Entry<String, Object> entry : storedObjects.entrySet()) {
+            save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the header and the body of a file.
+     *
+     * @param out
+     * @param obj
+     * @throws IOException 
+     */
+    private void writeFile(OutputStream out, Object obj) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        ByteOrder arrayOrder = ByteOrder.nativeOrder();
+        header.writeByte((compressed?FLAG_COMPRESSED:0) | getArrayOrderFlag(arrayOrder));
+        header.flush();
+
+        Deflater deflater = compressed?new Deflater(Deflater.BEST_SPEED):null;
+        try {
+            OutputStream body = compressed?new DeflaterOutputStream(out, deflater, BUFFER_SIZE):out;
+            BinaryObjectOutput output = new BinaryObjectOutput(body, arrayOrder);
+            output.writeObject(obj);
+            output.flush();
+            if(compressed) {
+                ((DeflaterOutputStream)body).finish();
+            }
+        }
+        finally {
+            if(deflater!=null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a file written in any of the supported formats.
+     *
+     * @param in
+     * @return
+     * @throws IOException 
+     */
+    private Object readFile(InputStream in) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(in, BUFFER_SIZE);
+        DataInputStream header = new DataInputStream(bis);
+
+        bis.mark(Integer.BYTES);
+        int magic = header.readInt();
+        if(magic!=MAGIC) {
+            bis.reset();
+            if((short)(magic>>>16)==JAVA_SERIALIZATION_MAGIC) {
+                return DeepCopy.deserialize(readAll(bis));
+            }
+            throw new StreamCorruptedException("Unknown file format.");
+        }
+        int version = header.readShort();
+        if(version>VERSION) {
+            throw new StreamCorruptedException("Unsupported format version " + version + ".");
+        }
+        int flags = header.readByte();
+        ByteOrder arrayOrder = getArrayOrder(flags);
+
+        if((flags & FLAG_COMPRESSED)==0) {
+            return new BinaryObjectInput(bis, arrayOrder).readObject();
+        }
+        Inflater inflater = new Inflater();
+        try {
+            return new BinaryObjectInput(new InflaterInputStream(bis, inflater, BUFFER_SIZE), arrayOrder).readObject();
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        int n;
+        while((n = in.read(chunk))>=0) {
+            bos.write(chunk, 0, n);
+        }
+        return bos.toByteArray();
+    }
+
+}
@@ -35,6 +35,10 @@ public class InMemoryConfiguration implements DatabaseConfiguration {
     //DB specific properties
     private String outputFolder = null;
     
+    private boolean compressed = false;
+    
+    private boolean memoryMapped = false;
+    
     /**
      * Default Constructor.
      */
@@ -58,6 +62,8 @@ public class InMemoryConfiguration implements DatabaseConfiguration {
     @Override
     public void load(Properties properties) {
         outputFolder = properties.getProperty("dbConfig.InMemoryConfiguration.outputFolder");
+        compressed = "true".equalsIgnoreCase(properties.getProperty("dbConfig.InMemoryConfiguration.compressed"));
+        memoryMapped = "true".equalsIgnoreCase(properties.getProperty("dbConfig.InMemoryConfiguration.memoryMapped"));
     }
     
     /**
@@ -77,4 +83,45 @@ public class InMemoryConfiguration implements DatabaseConfiguration {
     public void setOutputFolder(String outputFolder) {
         this.outputFolder = outputFolder;
     }
+    
+    /**
+     * Getter for the compression option.
+     * 
+     * @return 
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+    
+    /**
+     * Setter for the compression option. If turned on the stored objects will
+     * be compressed. It is turned off by default.
+     * 
+     * @param compressed 
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+    
+    /**
+     * Getter for the memory-mapped option.
+     * 
+     * @return 
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+    
+    /**
+     * Setter for the memory-mapped option. If turned on, the large read-only
+     * parameters of the loaded models are memory-mapped instead of being copied
+     * on the heap. This allows many processes to serve the same model from a 
+     * single copy in the page cache. It requires uncompressed storage and it
+     * is turned off by default.
+     * 
+     * @param memoryMapped 
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
 }
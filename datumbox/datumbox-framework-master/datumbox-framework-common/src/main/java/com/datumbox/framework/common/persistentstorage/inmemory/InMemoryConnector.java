@@ -16,13 +16,10 @@
 package com.datumbox.framework.common.persistentstorage.inmemory;
 
 import com.datumbox.framework.common.persistentstorage.abstracts.AbstractAutoCloseConnector;
-import com.datumbox.framework.common.utilities.DeepCopy;
+import com.datumbox.framework.common.persistentstorage.binary.ObjectFileStore;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
-import java.io.UncheckedIOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -43,6 +40,7 @@ public class InMemoryConnector extends AbstractAutoCloseConnector {
         
     private final String database;
     private final InMemoryConfiguration dbConf;
+    private final ObjectFileStore store;
     
     /** 
      * @param database
@@ -53,44 +51,21 @@ public class InMemoryConnector extends AbstractAutoCloseConnector {
         super();
         this.database = database;
         this.dbConf = dbConf;
+        store = new ObjectFileStore(getDefaultPath(), dbConf.isCompressed());
     }
     
     /** {@inheritDoc} */
     @Override
     public <T extends Serializable> void saveObject(String name, T serializableObject) {
         assertConnectionOpen();
-        try { 
-            Path defaultPath = getDefaultPath();
-            
-            Map<String, Object> storedObjects;
-            if(Files.exists(defaultPath)) {
-                storedObjects = (Map<String, Object>) DeepCopy.deserialize(Files.readAllBytes(defaultPath));
-            }
-            else {
-                storedObjects = new HashMap<>();
-            }
-            storedObjects.put(name, serializableObject);
-            
-            Files.write(defaultPath, DeepCopy.serialize(storedObjects));
-        } 
-        catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-        }
+        store.save(name, serializableObject);
     }
 
     /** {@inheritDoc} */
     @Override
-    @SuppressWarnings("unchecked")
     public <T extends Serializable> T loadObject(String name, Class<T> klass) {
         assertConnectionOpen();
-        try { 
-            //read the stored serialized object
-            Map<String, Object> storedObjects = (Map<String, Object>)DeepCopy.deserialize(Files.readAllBytes(getDefaultPath()));
-            return klass.cast(storedObjects.get(name));
-        }
-        catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-        }
+        return dbConf.isMemoryMapped()?store.loadMapped(name, klass):store.load(name, klass);
     }
     
     /** {@inheritDoc} */
@@ -106,12 +81,7 @@ public class InMemoryConnector extends AbstractAutoCloseConnector {
     @Override
     public void clear() {
         assertConnectionOpen();
-        try {
-            Files.deleteIfExists(getDefaultPath());
-        } 
-        catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-        }
+        store.clear();
     }
     
     /** {@inheritDoc} */
@@ -130,6 +100,13 @@ public class InMemoryConnector extends AbstractAutoCloseConnector {
         }
     }  
     
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        assertConnectionOpen();
+        //the Big Maps are not buffered
+    }
+    
     /** {@inheritDoc} */
     @Override
     public <T extends Map> void dropBigMap(String name, T map) {
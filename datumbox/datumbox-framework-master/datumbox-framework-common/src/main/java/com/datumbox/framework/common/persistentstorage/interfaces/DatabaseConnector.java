@@ -100,7 +100,9 @@ public interface DatabaseConnector extends AutoCloseable {
     public <T extends Serializable> T loadObject(String name, Class<T> klass);
     
     /**
-     * Creates or loads a Big Map collection. 
+     * Creates or loads a Big Map collection. The callers must not rely on the
+     * value which is returned by put(); some connectors do not read the 
+     * previous value to avoid deserializing it and they return null.
      * 
      * @param <K>
      * @param <V>
@@ -113,6 +115,12 @@ public interface DatabaseConnector extends AutoCloseable {
      */
     public <K,V> Map<K,V> getBigMap(String name, MapType type, StorageHint storageHint, boolean isConcurrent, boolean isTemporary);
     
+    /**
+     * Writes to the storage all the modifications of the Big Maps which are 
+     * buffered by the connector.
+     */
+    public void flush();
+    
     /**
      * Drops the Big Map.
      * 
@@ -42,6 +42,8 @@ public class MapDBConfiguration implements DatabaseConfiguration {
 
     private boolean hybridized = false;
     
+    private int writeBufferSize = 10000;
+    
     /**
      * Default Constructor.
      */
@@ -68,6 +70,7 @@ public class MapDBConfiguration implements DatabaseConfiguration {
         cacheSize = Integer.parseInt(properties.getProperty("dbConfig.MapDBConfiguration.cacheSize"));
         compressed = "true".equalsIgnoreCase(properties.getProperty("dbConfig.MapDBConfiguration.compressed"));
         hybridized = "true".equalsIgnoreCase(properties.getProperty("dbConfig.MapDBConfiguration.hybridized"));
+        writeBufferSize = Integer.parseInt(properties.getProperty("dbConfig.MapDBConfiguration.writeBufferSize"));
     }
 
     /**
@@ -147,4 +150,26 @@ public class MapDBConfiguration implements DatabaseConfiguration {
         this.hybridized = hybridized;
     }
     
+    /**
+     * Getter for the number of modified records which are buffered in memory
+     * for every disk-backed BigMap.
+     * 
+     * @return 
+     */
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+    
+    /**
+     * Setter for the number of modified records which are buffered in memory
+     * for every disk-backed BigMap. The buffered records are written to MapDB 
+     * in batches and repeated updates of the same key are written only once.
+     * Set it to 0 to write every record immediately.
+     * 
+     * @param writeBufferSize 
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+    
 }
@@ -81,6 +81,12 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
      */
     private final Map<DBType, DB> dbRegistry = new HashMap<>(); 
     
+    /**
+     * This map stores by name all the disk-backed BigMaps whose writes are 
+     * buffered by the connector.
+     */
+    private final Map<String, WriteBehindMap<?, ?>> writeBehindMaps = new HashMap<>();
+    
     /** 
      * @param database
      * @param dbConf
@@ -117,6 +123,17 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
     public void close() {
         super.close();
         
+        //persist the buffered writes of the permanent maps; the temporary ones are deleted anyway
+        for(Map.Entry<String, WriteBehindMap<?, ?>> entry : writeBehindMaps.entrySet()) {
+            if(getDatabaseTypeFromName(entry.getKey()) == DBType.PRIMARY_DB) {
+                entry.getValue().flush();
+            }
+            else {
+                entry.getValue().discard();
+            }
+        }
+        writeBehindMaps.clear();
+        
         closeDBRegistry();
     }
     
@@ -125,6 +142,11 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
     public void clear() {
         assertConnectionOpen();
         
+        for(WriteBehindMap<?, ?> map : writeBehindMaps.values()) {
+            map.discard();
+        }
+        writeBehindMaps.clear();
+        
         closeDBRegistry();
         
         try {
@@ -140,6 +162,7 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
     
     /** {@inheritDoc} */
     @Override
+    @SuppressWarnings("unchecked")
     public <K,V> Map<K,V> getBigMap(String name, DatabaseConnector.MapType type, DatabaseConnector.StorageHint storageHint, boolean isConcurrent, boolean isTemporary) {
         assertConnectionOpen();
         
@@ -158,6 +181,12 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
         else {
             //store in disk with optional LRU cache
             
+            //if the map is already open, return the same buffered map
+            WriteBehindMap<?, ?> writeBehindMap = writeBehindMaps.get(name);
+            if(writeBehindMap != null) {
+                return (Map<K,V>) writeBehindMap;
+            }
+            
             //first find if the particular collection exists and retrieve its dbType
             DBType dbType = getDatabaseTypeFromName(name);
             
@@ -205,15 +234,38 @@ public class MapDBConnector extends AbstractAutoCloseConnector {
             else {
                 throw new IllegalArgumentException("Unsupported MapType.");
             }
+            
+            if(dbConf.getWriteBufferSize()>0) {
+                //buffer the writes and flush them in batches
+                WriteBehindMap<K,V> bufferedMap = new WriteBehindMap<>(map, dbConf.getWriteBufferSize());
+                writeBehindMaps.put(name, bufferedMap);
+                map = bufferedMap;
+            }
             return map;
         }
     }   
     
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        assertConnectionOpen();
+        
+        for(WriteBehindMap<?, ?> map : writeBehindMaps.values()) {
+            map.flush();
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override
     public <T extends Map> void dropBigMap(String name, T map) {
         assertConnectionOpen();
         
+        //the buffered writes of a dropped map are not needed
+        writeBehindMaps.remove(name);
+        if(map instanceof WriteBehindMap) {
+            ((WriteBehindMap<?, ?>) map).discard();
+        }
+        
         DBType dbType = getDatabaseTypeFromName(name);
         
         if(dbType != null) {
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.mapdb;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Map which buffers the modified entries of a disk-backed map in memory and
+ * writes them to it in batches. Repeated puts on the same key are coalesced,
+ * so only the last value is serialized. The buffer is flushed when it reaches
+ * its capacity, before any bulk operation (size, iteration, etc) and when the
+ * flush() method is called. Removals are applied directly on the underlying map.
+ * The collection views are those of the underlying map, so they reflect the
+ * entries which are buffered later only after they are flushed.
+ *
+ * The buffer is a concurrent map, so gets and puts never block each other.
+ * Only the flushes, the removals and the clears are serialized by a lock; a
+ * flushed entry leaves the buffer after it is written and only if it was not
+ * put again in the meantime, so the readers always find the latest value 
+ * either in the buffer or in the underlying map. Every put buffers the value
+ * with a new stamp, so a value which is modified in place and put again 
+ * during a flush stays buffered and it is written again by the next flush, 
+ * even if the flush wrote an older or partially modified state of it. The 
+ * writers block on the lock only when the buffer grows to twice its capacity
+ * while a flush is in progress.
+ *
+ * The put() returns the previous value only if it is still buffered; the
+ * underlying map is not read. When the map is serialized, the underlying map
+ * and the buffered entries are serialized along with it. Null keys and values
+ * are not permitted.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ * @param <K>
+ * @param <V>
+ */
+class WriteBehindMap<K, V> extends AbstractMap<K, V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<K, V> store;
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<K, Stamped<V>> buffer;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile long writes = 0L;
+
+    private final AtomicLong stamps = new AtomicLong(0L);
+
+    /**
+     * A buffered value along with the stamp of the put which buffered it.
+     *
+     * @param <V>
+     */
+    private static final class Stamped<V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final V value;
+
+        private final long stamp;
+
+        /**
+         * Private constructor.
+         *
+         * @param value
+         * @param stamp
+         */
+        private Stamped(V value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Package-private constructor.
+     *
+     * @param store
+     * @param capacity
+     */
+    WriteBehindMap(Map<K, V> store, int capacity) {
+        if(capacity<=0) {
+            throw new IllegalArgumentException("The capacity of the buffer must be positive.");
+        }
+        this.store = store;
+        this.capacity = capacity;
+        buffer = new ConcurrentHashMap<>(capacity*4/3+1);
+    }
+
+    /**
+     * Writes all the buffered entries to the underlying map.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushUnlocked();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Drops all the buffered entries without writing them to the underlying map.
+     */
+    public void discard() {
+        flushLock.lock();
+        try {
+            buffer.clear();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries which are buffered.
+     *
+     * @return
+     */
+    int getBufferedSize() {
+        return buffer.size();
+    }
+
+    /**
+     * Returns the number of entries which were written to the underlying map.
+     *
+     * @return
+     */
+    long getWrites() {
+        return writes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V get(Object key) {
+        Stamped<V> buffered = buffer.get(key);
+        if(buffered != null) {
+            return buffered.value;
+        }
+        //not buffered, so the latest value is in the underlying map
+        return store.get(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return buffer.containsKey(key) || store.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V put(K key, V value) {
+        if(key == null || value == null) {
+            throw new NullPointerException("Null keys and values are not permitted.");
+        }
+        Stamped<V> previous = buffer.put(key, stamp(value));
+        flushIfFull();
+        return previous!=null?previous.value:null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for(Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            K key = entry.getKey();
+            V value = entry.getValue();
+            if(key == null || value == null) {
+                throw new NullPointerException("Null keys and values are not permitted.");
+            }
+            buffer.put(key, stamp(value));
+            flushIfFull();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V remove(Object key) {
+        flushLock.lock(); //a concurrent flush must not write back the removed value
+        try {
+            Stamped<V> buffered = buffer.remove(key);
+            V stored = store.remove(key);
+            return buffered!=null?buffered.value:stored;
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        flushLock.lock();
+        try {
+            buffer.clear();
+            store.clear();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        flush();
+        return store.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        return buffer.isEmpty() && store.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsValue(Object value) {
+        flush();
+        return store.containsValue(value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<K> keySet() {
+        flush();
+        return store.keySet();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Collection<V> values() {
+        flush();
+        return store.values();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        flush();
+        return store.entrySet();
+    }
+
+    /**
+     * Wraps the value with a new stamp.
+     *
+     * @param value
+     * @return
+     */
+    private Stamped<V> stamp(V value) {
+        return new Stamped<>(value, stamps.incrementAndGet());
+    }
+
+    /**
+     * Flushes the buffer once it reaches its capacity. If another thread is
+     * already flushing, the writer continues unless the buffer has grown to
+     * twice its capacity.
+     */
+    private void flushIfFull() {
+        int size = buffer.size();
+        if(size<capacity) {
+            return;
+        }
+        if(size>=2*capacity) {
+            flushLock.lock();
+        }
+        else if(!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            if(buffer.size()>=capacity) {
+                flushUnlocked();
+            }
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the buffered entries in a batch and removes from the buffer those
+     * which were not put again in the meantime. The flush lock must be held.
+     */
+    private void flushUnlocked() {
+        if(buffer.isEmpty()) {
+            return;
+        }
+        Map<K, Stamped<V>> stamped = new HashMap<>(buffer);
+        Map<K, V> batch = new HashMap<>(stamped.size()*4/3+1);
+        for(Map.Entry<K, Stamped<V>> entry : stamped.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue().value);
+        }
+        store.putAll(batch);
+        writes += batch.size();
+        for(Map.Entry<K, Stamped<V>> entry : stamped.entrySet()) {
+            //the stamps are compared, since the value may be the same object modified in place
+            buffer.computeIfPresent(entry.getKey(), (k, current) -> current.stamp==entry.getValue().stamp?null:current);
+        }
+    }
+
+}
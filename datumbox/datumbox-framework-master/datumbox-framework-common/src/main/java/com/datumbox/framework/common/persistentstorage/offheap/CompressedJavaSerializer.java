@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializer which uses the standard Java serialization and compresses the
+ * bytes with Deflate. It trades CPU for a smaller off-heap footprint.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class CompressedJavaSerializer extends JavaSerializer {
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] serialize(Object obj) {
+        byte[] arr = super.serialize(obj);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try(ByteArrayOutputStream bos = new ByteArrayOutputStream(arr.length/2+16)) {
+            deflater.setInput(arr);
+            deflater.finish();
+            byte[] buffer = new byte[4096];
+            while(!deflater.finished()) {
+                bos.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return bos.toByteArray();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object deserialize(byte[] arr) {
+        Inflater inflater = new Inflater();
+        try(ByteArrayOutputStream bos = new ByteArrayOutputStream(arr.length*2)) {
+            inflater.setInput(arr);
+            byte[] buffer = new byte[4096];
+            while(!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if(n==0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("The compressed data are truncated.");
+                }
+                bos.write(buffer, 0, n);
+            }
+            return super.deserialize(bos.toByteArray());
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        catch (DataFormatException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+}
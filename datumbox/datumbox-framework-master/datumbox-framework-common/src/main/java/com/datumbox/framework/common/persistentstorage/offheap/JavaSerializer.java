@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import com.datumbox.framework.common.utilities.DeepCopy;
+
+/**
+ * Serializer which uses the standard Java serialization.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class JavaSerializer implements Serializer {
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] serialize(Object obj) {
+        return DeepCopy.serialize(obj);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object deserialize(byte[] arr) {
+        return DeepCopy.deserialize(arr);
+    }
+
+}
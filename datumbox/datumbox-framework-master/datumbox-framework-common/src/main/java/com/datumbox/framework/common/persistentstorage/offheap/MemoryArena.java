@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Stores byte arrays in blocks of direct (off-heap) memory. Every block has a
+ * power-of-two capacity and it is addressed by a long handle which holds the
+ * index of its segment and its offset. Released blocks are kept in one free
+ * list per capacity and they are recycled by later writes, so values which are
+ * repeatedly overwritten do not grow the memory footprint.
+ *
+ * The segments start small and double in size up to the maximum segment size;
+ * blocks which do not fit in it are allocated in dedicated segments. Reads, 
+ * writes and releases of different blocks are thread-safe; the callers must
+ * ensure that a block is not released while it is read.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+class MemoryArena {
+
+    private static final int HEADER_BYTES = Integer.BYTES;
+
+    private static final int MIN_SIZE_CLASS = 4; //16 bytes
+
+    private static final int MAX_SIZE_CLASS = 30; //1GB
+
+    private static final int MIN_SEGMENT_SIZE = 1<<16;
+
+    private final int maxSegmentSize;
+
+    private final ConcurrentLinkedQueue<Long>[] freeLists;
+
+    //copied on write; segments are added rarely while reads are frequent
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+    //the segment where the new blocks are appended; -1 if there is none
+    private int currentSegment = -1;
+
+    private int currentOffset = 0;
+
+    /**
+     * Package-private constructor which accepts the maximum size of the
+     * segments in bytes.
+     *
+     * @param maxSegmentSize
+     */
+    @SuppressWarnings("unchecked")
+    MemoryArena(int maxSegmentSize) {
+        if(maxSegmentSize<=0) {
+            throw new IllegalArgumentException("The segment size must be positive.");
+        }
+        this.maxSegmentSize = Math.max(MIN_SEGMENT_SIZE, Integer.highestOneBit(Math.min(maxSegmentSize, 1<<MAX_SIZE_CLASS)));
+        freeLists = new ConcurrentLinkedQueue[MAX_SIZE_CLASS+1];
+        for(int c=MIN_SIZE_CLASS;c<=MAX_SIZE_CLASS;c++) {
+            freeLists[c] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Copies the bytes in a block and returns its handle.
+     *
+     * @param bytes
+     * @return
+     */
+    long write(byte[] bytes) {
+        int sizeClass = sizeClass(bytes.length+HEADER_BYTES);
+        Long recycled = freeLists[sizeClass].poll();
+        long handle = (recycled!=null)?recycled:allocate(1<<sizeClass);
+
+        ByteBuffer buffer = segments[segment(handle)].duplicate();
+        buffer.position(offset(handle));
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return handle;
+    }
+
+    /**
+     * Returns a copy of the bytes which are stored in the block.
+     *
+     * @param handle
+     * @return
+     */
+    byte[] read(long handle) {
+        ByteBuffer buffer = segments[segment(handle)].duplicate();
+        buffer.position(offset(handle));
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Releases the block so that it can be reused.
+     *
+     * @param handle
+     */
+    void free(long handle) {
+        int length = segments[segment(handle)].getInt(offset(handle));
+        freeLists[sizeClass(length+HEADER_BYTES)].offer(handle);
+    }
+
+    /**
+     * Releases all the blocks and drops the segments. The direct memory is 
+     * returned to the system once the segments are garbage collected.
+     */
+    synchronized void clear() {
+        for(int c=MIN_SIZE_CLASS;c<=MAX_SIZE_CLASS;c++) {
+            freeLists[c].clear();
+        }
+        segments = new ByteBuffer[0];
+        currentSegment = -1;
+        currentOffset = 0;
+    }
+
+    /**
+     * Returns the total number of bytes which are reserved by the segments.
+     *
+     * @return
+     */
+    long getReservedBytes() {
+        long total = 0L;
+        for(ByteBuffer segment : segments) {
+            total += segment.capacity();
+        }
+        return total;
+    }
+
+    /**
+     * Allocates a new block of the provided power-of-two size.
+     *
+     * @param blockSize
+     * @return
+     */
+    private synchronized long allocate(int blockSize) {
+        if(blockSize>=maxSegmentSize) {
+            return handle(addSegment(blockSize), 0);
+        }
+
+        if(currentSegment<0 || currentOffset+blockSize>segments[currentSegment].capacity()) {
+            int segmentSize = (currentSegment<0)?MIN_SEGMENT_SIZE:Math.min(maxSegmentSize, 2*segments[currentSegment].capacity());
+            while(segmentSize<blockSize) {
+                segmentSize *= 2;
+            }
+            currentSegment = addSegment(segmentSize);
+            currentOffset = 0;
+        }
+
+        long handle = handle(currentSegment, currentOffset);
+        currentOffset += blockSize;
+        return handle;
+    }
+
+    /**
+     * Allocates a new segment and returns its index.
+     *
+     * @param segmentSize
+     * @return
+     */
+    private int addSegment(int segmentSize) {
+        ByteBuffer[] newSegments = Arrays.copyOf(segments, segments.length+1);
+        newSegments[segments.length] = ByteBuffer.allocateDirect(segmentSize);
+        segments = newSegments;
+        return segments.length-1;
+    }
+
+    /**
+     * Returns the size class of the block which can store the provided number
+     * of bytes.
+     *
+     * @param size
+     * @return
+     */
+    private static int sizeClass(int size) {
+        if(size<0 || size>(1<<MAX_SIZE_CLASS)) {
+            throw new IllegalArgumentException("The value is too large to be stored off-heap.");
+        }
+        return Math.max(MIN_SIZE_CLASS, 32-Integer.numberOfLeadingZeros(size-1));
+    }
+
+    private static long handle(int segment, int offset) {
+        return ((long)segment<<32) | offset;
+    }
+
+    private static int segment(long handle) {
+        return (int)(handle>>>32);
+    }
+
+    private static int offset(long handle) {
+        return (int)handle;
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConfiguration;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
+
+import java.util.Properties;
+
+/**
+ * The OffHeapConfiguration class is used to configure the OffHeap persistence
+ * storage and generate new storage connections. OffHeap storage keeps the 
+ * values of the BigMaps serialized in direct memory, outside of the Java heap,
+ * and persists the data in serialized files.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class OffHeapConfiguration implements DatabaseConfiguration {
+    
+    //Mandatory constants
+    private static final String DBNAME_SEPARATOR = "_"; //NOT permitted characters are: <>:"/\|?*
+
+    //DB specific properties
+    private String outputFolder = null;
+    
+    private boolean compressed = false;
+    
+    private boolean memoryMapped = false;
+    
+    private int segmentSize = 16777216;
+    
+    private int concurrencyLevel = 16;
+    
+    private Class<? extends Serializer> serializerClass = JavaSerializer.class;
+    
+    private boolean hybridized = false;
+    
+    /**
+     * Default Constructor.
+     */
+    public OffHeapConfiguration() {
+        
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public DatabaseConnector getConnector(String database) {
+        return new OffHeapConnector(database, this);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public String getDBnameSeparator() {
+        return DBNAME_SEPARATOR;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void load(Properties properties) {
+        outputFolder = properties.getProperty("dbConfig.OffHeapConfiguration.outputFolder");
+        compressed = "true".equalsIgnoreCase(properties.getProperty("dbConfig.OffHeapConfiguration.compressed"));
+        memoryMapped = "true".equalsIgnoreCase(properties.getProperty("dbConfig.OffHeapConfiguration.memoryMapped"));
+        segmentSize = Integer.parseInt(properties.getProperty("dbConfig.OffHeapConfiguration.segmentSize"));
+        concurrencyLevel = Integer.parseInt(properties.getProperty("dbConfig.OffHeapConfiguration.concurrencyLevel"));
+        try {
+            serializerClass = (Class<? extends Serializer>) Class.forName(properties.getProperty("dbConfig.OffHeapConfiguration.serializerClassName"));
+        }
+        catch (ClassNotFoundException ex) {
+            throw new RuntimeException(ex);
+        }
+        hybridized = "true".equalsIgnoreCase(properties.getProperty("dbConfig.OffHeapConfiguration.hybridized"));
+    }
+    
+    /**
+     * Getter for the output folder where the OffHeap data files are stored.
+     * 
+     * @return 
+     */
+    public String getOutputFolder() {
+        return outputFolder;
+    }
+    
+    /**
+     * Setter for the output folder where the OffHeap data files are stored.
+     * 
+     * @param outputFolder 
+     */
+    public void setOutputFolder(String outputFolder) {
+        this.outputFolder = outputFolder;
+    }
+    
+    /**
+     * Getter for the compression option.
+     * 
+     * @return 
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+    
+    /**
+     * Setter for the compression option. If turned on the stored objects will
+     * be compressed. It is turned off by default.
+     * 
+     * @param compressed 
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+    
+    /**
+     * Getter for the memory-mapped option.
+     * 
+     * @return 
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+    
+    /**
+     * Setter for the memory-mapped option. If turned on, the large read-only
+     * parameters of the loaded models are memory-mapped instead of being copied
+     * on the heap. This allows many processes to serve the same model from a 
+     * single copy in the page cache. It requires uncompressed storage and it
+     * is turned off by default.
+     * 
+     * @param memoryMapped 
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+    
+    /**
+     * Getter for the maximum size in bytes of the direct memory segments which
+     * are allocated by every map.
+     * 
+     * @return 
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+    
+    /**
+     * Setter for the maximum size in bytes of the direct memory segments which 
+     * are allocated by every map. The segments start small and grow up to this
+     * size; values larger than it get a segment of their own.
+     * 
+     * @param segmentSize 
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+    
+    /**
+     * Getter for the number of lock stripes of every map.
+     * 
+     * @return 
+     */
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+    
+    /**
+     * Setter for the number of lock stripes of every concurrent map. Higher 
+     * values permit more threads to write at the same time. Non-concurrent maps
+     * always use a single stripe.
+     * 
+     * @param concurrencyLevel 
+     */
+    public void setConcurrencyLevel(int concurrencyLevel) {
+        this.concurrencyLevel = concurrencyLevel;
+    }
+    
+    /**
+     * Getter for the class of the Serializer which converts the values to bytes.
+     * 
+     * @return 
+     */
+    public Class<? extends Serializer> getSerializerClass() {
+        return serializerClass;
+    }
+    
+    /**
+     * Setter for the class of the Serializer which converts the values to bytes.
+     * It must have a public no-argument constructor.
+     * 
+     * @param serializerClass 
+     */
+    public void setSerializerClass(Class<? extends Serializer> serializerClass) {
+        this.serializerClass = serializerClass;
+    }
+    
+    /**
+     * Getter for the Hybridized option. 
+     * 
+     * @return 
+     */
+    public boolean isHybridized() {
+        return hybridized;
+    }
+    
+    /**
+     * Setter for the Hybridized option. If turned on, the maps which are hinted
+     * to be stored in memory are kept as regular collections on the heap, which
+     * avoids the serialization of their values.
+     * 
+     * @param hybridized 
+     */
+    public void setHybridized(boolean hybridized) {
+        this.hybridized = hybridized;
+    }
+    
+}
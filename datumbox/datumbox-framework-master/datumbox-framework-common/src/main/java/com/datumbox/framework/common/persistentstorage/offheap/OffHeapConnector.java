@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import com.datumbox.framework.common.persistentstorage.abstracts.AbstractAutoCloseConnector;
+import com.datumbox.framework.common.persistentstorage.binary.ObjectFileStore;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+
+/**
+ * The OffHeapConnector is responsible for saving and loading data in direct 
+ * memory, creating BigMaps and persisting data. The BigMaps of the OffHeapConnector
+ * keep their values serialized outside of the Java heap, which reduces the GC
+ * pressure of large collections, while their keys are indexed in lock-free 
+ * concurrent maps. All data are persisted in serialized files.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class OffHeapConnector extends AbstractAutoCloseConnector {
+        
+    private final String database;
+    private final OffHeapConfiguration dbConf;
+    private final ObjectFileStore store;
+    
+    /** 
+     * @param database
+     * @param dbConf
+     * @see AbstractAutoCloseConnector#AbstractAutoCloseConnector()
+     */
+    protected OffHeapConnector(String database, OffHeapConfiguration dbConf) {  
+        super();
+        this.database = database;
+        this.dbConf = dbConf;
+        store = new ObjectFileStore(getDefaultPath(), dbConf.isCompressed());
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public <T extends Serializable> void saveObject(String name, T serializableObject) {
+        assertConnectionOpen();
+        store.save(name, serializableObject);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public <T extends Serializable> T loadObject(String name, Class<T> klass) {
+        assertConnectionOpen();
+        return dbConf.isMemoryMapped()?store.loadMapped(name, klass):store.load(name, klass);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        if(isClosed()){
+            return; 
+        }
+        super.close();
+    }
+        
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        assertConnectionOpen();
+        store.clear();
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public <K,V> Map<K,V> getBigMap(String name, MapType type, StorageHint storageHint, boolean isConcurrent, boolean isTemporary) {
+        assertConnectionOpen();
+        
+        if(storageHint == StorageHint.IN_MEMORY && dbConf.isHybridized()) {
+            //store in memory
+            if(MapType.HASHMAP.equals(type)) {
+                return isConcurrent?new ConcurrentHashMap<>():new HashMap<>();
+            }
+            else if(MapType.TREEMAP.equals(type)) {
+                return isConcurrent?new ConcurrentSkipListMap<>():new TreeMap<>();
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported MapType.");
+            }
+        }
+        else {
+            //store in direct memory
+            if(!MapType.HASHMAP.equals(type) && !MapType.TREEMAP.equals(type)) {
+                throw new IllegalArgumentException("Unsupported MapType.");
+            }
+            
+            Serializer serializer;
+            try {
+                serializer = dbConf.getSerializerClass().newInstance();
+            } 
+            catch (InstantiationException | IllegalAccessException ex) {
+                throw new RuntimeException(ex);
+            }
+            
+            int concurrencyLevel = isConcurrent?dbConf.getConcurrencyLevel():1;
+            return new OffHeapMap<>(MapType.TREEMAP.equals(type), concurrencyLevel, dbConf.getSegmentSize(), serializer);
+        }
+    }  
+    
+    /** {@inheritDoc} */
+    @Override
+    public void flush() {
+        assertConnectionOpen();
+        //the Big Maps are not buffered
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public <T extends Map> void dropBigMap(String name, T map) {
+        assertConnectionOpen();
+        map.clear(); //for the off-heap maps this also releases their direct memory
+    } 
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDatabaseName() {
+        return database;
+    }
+    
+    private Path getDefaultPath() {
+        //get the default filepath of the permanet db file
+        String outputFolder = this.dbConf.getOutputFolder();
+
+        if(outputFolder == null || outputFolder.isEmpty()) {
+            outputFolder = System.getProperty("java.io.tmpdir"); //write them to the tmp directory
+        }
+
+        return Paths.get(outputFolder + File.separator + database);
+    }
+}
@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Map which keeps its keys in a lock-free concurrent index on the heap and its
+ * values serialized in direct memory. The keys are sorted when the map is 
+ * created as a tree map. The values are guarded by striped read/write locks,
+ * so reads never block each other and writes block only the keys of the same
+ * stripe. Values are serialized and deserialized outside the locks.
+ *
+ * Unlike the Map contract, put() does not return the previous value and it
+ * always returns null; deserializing the previous value would double the cost
+ * of every update while the callers rarely use it. Use get() before put() if
+ * the previous value is needed. The remove() returns the removed value.
+ *
+ * When the map is serialized its values are written as raw bytes; they are
+ * copied back in direct memory on deserialization. Null keys and values are
+ * not permitted.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ * @param <K>
+ * @param <V>
+ */
+class OffHeapMap<K, V> extends AbstractMap<K, V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final boolean sorted;
+
+    private final int concurrencyLevel;
+
+    private final int segmentSize;
+
+    private final Serializer serializer;
+
+    private transient ConcurrentMap<K, Long> index;
+
+    private transient ReentrantReadWriteLock[] locks;
+
+    private transient MemoryArena arena;
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Package-private constructor.
+     *
+     * @param sorted
+     * @param concurrencyLevel
+     * @param segmentSize
+     * @param serializer
+     */
+    OffHeapMap(boolean sorted, int concurrencyLevel, int segmentSize, Serializer serializer) {
+        if(concurrencyLevel<=0) {
+            throw new IllegalArgumentException("The concurrency level must be positive.");
+        }
+        int level = 1;
+        while(level<concurrencyLevel && level<(1<<16)) {
+            level <<= 1;
+        }
+        this.sorted = sorted;
+        this.concurrencyLevel = level;
+        this.segmentSize = segmentSize;
+        this.serializer = serializer;
+        initialize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        byte[] bytes;
+        Lock lock = stripe(key).readLock();
+        lock.lock();
+        try {
+            Long handle = index.get(key);
+            if(handle==null) {
+                return null;
+            }
+            bytes = arena.read(handle);
+        }
+        finally {
+            lock.unlock();
+        }
+        return (V)serializer.deserialize(bytes);
+    }
+
+    /**
+     * Associates the value with the key. The previous value is not read and 
+     * null is always returned.
+     * 
+     * @param key
+     * @param value
+     * @return 
+     */
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        byte[] bytes = serializer.serialize(value);
+
+        Lock lock = stripe(key).writeLock();
+        lock.lock();
+        try {
+            Long previous = index.put(key, arena.write(bytes));
+            if(previous!=null) {
+                arena.free(previous);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        byte[] previousBytes;
+        Lock lock = stripe(key).writeLock();
+        lock.lock();
+        try {
+            Long previous = index.remove(key);
+            if(previous==null) {
+                return null;
+            }
+            previousBytes = arena.read(previous);
+            arena.free(previous);
+        }
+        finally {
+            lock.unlock();
+        }
+        return (V)serializer.deserialize(previousBytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        for(ReentrantReadWriteLock l : locks) {
+            l.writeLock().lock();
+        }
+        try {
+            index.clear();
+            arena.clear();
+        }
+        finally {
+            for(ReentrantReadWriteLock l : locks) {
+                l.writeLock().unlock();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if(entrySet==null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory which are reserved by the map.
+     *
+     * @return
+     */
+    long getReservedBytes() {
+        return arena.getReservedBytes();
+    }
+
+    /**
+     * Initializes the transient fields.
+     */
+    private void initialize() {
+        index = sorted?new ConcurrentSkipListMap<>():new ConcurrentHashMap<>();
+        locks = new ReentrantReadWriteLock[concurrencyLevel];
+        for(int i=0;i<concurrencyLevel;i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        arena = new MemoryArena(segmentSize);
+    }
+
+    /**
+     * Returns the lock which guards the value of the key.
+     *
+     * @param key
+     * @return
+     */
+    private ReentrantReadWriteLock stripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h>>>16);
+        return locks[h & (concurrencyLevel-1)];
+    }
+
+    /**
+     * Reads the stored bytes of the key or returns null if the key does not 
+     * exist.
+     *
+     * @param key
+     * @return
+     */
+    private byte[] readBytes(Object key) {
+        Lock lock = stripe(key).readLock();
+        lock.lock();
+        try {
+            Long handle = index.get(key);
+            return (handle!=null)?arena.read(handle):null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        oos.defaultWriteObject();
+        for(K key : index.keySet()) {
+            byte[] bytes = readBytes(key);
+            if(bytes!=null) {
+                oos.writeObject(key);
+                oos.writeObject(bytes);
+            }
+        }
+        oos.writeObject(null); //keys are never null, so it marks the end of the entries
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        initialize();
+        Object key;
+        while((key = ois.readObject())!=null) {
+            index.put((K)key, arena.write((byte[])ois.readObject()));
+        }
+    }
+
+    /**
+     * View of the entries which is backed by the index. The values are read 
+     * lazily, so iterating the keys does not deserialize the values.
+     */
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<Map.Entry<K, V>>() {
+                private final Iterator<K> it = index.keySet().iterator();
+
+                private K lastKey = null;
+
+                /** {@inheritDoc} */
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                /** {@inheritDoc} */
+                @Override
+                public Map.Entry<K, V> next() {
+                    lastKey = it.next();
+                    return new Entry(lastKey);
+                }
+
+                /** {@inheritDoc} */
+                @Override
+                public void remove() {
+                    if(lastKey==null) {
+                        throw new IllegalStateException();
+                    }
+                    OffHeapMap.this.remove(lastKey);
+                    lastKey = null;
+                }
+            };
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return OffHeapMap.this.size();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void clear() {
+            OffHeapMap.this.clear();
+        }
+    }
+
+    /**
+     * Entry of the map which reads its value on demand.
+     */
+    private class Entry implements Map.Entry<K, V> {
+
+        private final K key;
+
+        private Entry(K key) {
+            this.key = key;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public V getValue() {
+            V value = get(key);
+            if(value==null) {
+                throw new NoSuchElementException("The entry was removed.");
+            }
+            return value;
+        }
+
+        /**
+         * Replaces the value of the entry. Like put(), it returns null.
+         * 
+         * @param value
+         * @return 
+         */
+        @Override
+        public V setValue(V value) {
+            return put(key, value);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+            return key.equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ getValue().hashCode();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+}
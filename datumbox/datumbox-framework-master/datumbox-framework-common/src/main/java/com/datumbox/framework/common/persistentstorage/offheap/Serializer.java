@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import java.io.Serializable;
+
+/**
+ * The Serializer converts the values of the off-heap maps to bytes and back.
+ * Implementations must be thread-safe and they are serialized together with the
+ * maps that use them.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public interface Serializer extends Serializable {
+
+    /**
+     * Serializes the object.
+     *
+     * @param obj
+     * @return
+     */
+    public byte[] serialize(Object obj);
+
+    /**
+     * Deserializes the byte array.
+     *
+     * @param arr
+     * @return
+     */
+    public Object deserialize(byte[] arr);
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.concurrency;
+
+import com.datumbox.framework.common.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of the per-call overhead of forkJoinExecution when using the
+ * shared pool versus creating a new pool on every call. It is not part of
+ * the unit tests; run it manually with its main method.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class ThreadMethodsBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadMethodsBenchmark.class);
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        ConcurrencyConfiguration concurrencyConfig = Configuration.getConfiguration().getConcurrencyConfig();
+        int calls = (args.length>0)?Integer.parseInt(args[0]):200;
+
+        long start = System.nanoTime();
+        long expResult = 0;
+        for(int i=0;i<calls;i++) {
+            ForkJoinPool pool = new ForkJoinPool(concurrencyConfig.getMaxNumberOfThreadsPerTask());
+            expResult += pool.submit(() -> IntStream.range(0, 100).parallel().asLongStream().sum()).get();
+            pool.shutdown();
+        }
+        long newPoolNanos = (System.nanoTime()-start)/calls;
+
+        start = System.nanoTime();
+        long result = 0;
+        for(int i=0;i<calls;i++) {
+            result += ThreadMethods.forkJoinExecution(() -> IntStream.range(0, 100).parallel().asLongStream().sum(), concurrencyConfig, true);
+        }
+        long sharedPoolNanos = (System.nanoTime()-start)/calls;
+
+        if(expResult!=result) {
+            throw new IllegalStateException("The shared pool returned a different result.");
+        }
+        logger.info("Per-call overhead: new pool {} us, shared pool {} us", newPoolNanos/1000, sharedPoolNanos/1000);
+    }
+
+}
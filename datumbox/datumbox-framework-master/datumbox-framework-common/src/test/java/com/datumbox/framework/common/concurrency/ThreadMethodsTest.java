@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.concurrency;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test cases for ThreadMethods.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class ThreadMethodsTest extends AbstractTest {
+
+    /**
+     * Test of throttledExecution method, of class ThreadMethods.
+     */
+    @Test
+    public void testThrottledExecution() {
+        logger.info("throttledExecution");
+        ConcurrencyConfiguration concurrencyConfig = Configuration.getConfiguration().getConcurrencyConfig();
+
+        AtomicLong sum = new AtomicLong(0);
+        ThreadMethods.throttledExecution(IntStream.range(0, 1000).boxed(), i -> sum.addAndGet(i), concurrencyConfig);
+        assertEquals(499500L, sum.get());
+
+        //a second call must reuse the same pool and still wait for all the tasks
+        sum.set(0);
+        ThreadMethods.throttledExecution(IntStream.range(0, 1000).boxed(), i -> sum.addAndGet(i), concurrencyConfig);
+        assertEquals(499500L, sum.get());
+    }
+
+    /**
+     * Test of forkJoinExecution method, of class ThreadMethods.
+     */
+    @Test
+    public void testForkJoinExecution() {
+        logger.info("forkJoinExecution");
+        ConcurrencyConfiguration concurrencyConfig = Configuration.getConfiguration().getConcurrencyConfig();
+
+        long expResult = 499500L;
+        long result = ThreadMethods.forkJoinExecution(() -> IntStream.range(0, 1000).parallel().asLongStream().sum(), concurrencyConfig, true);
+        assertEquals(expResult, result);
+
+        //nested calls are executed directly on the worker of the shared pool
+        result = ThreadMethods.forkJoinExecution(() -> {
+            return ThreadMethods.forkJoinExecution(() -> IntStream.range(0, 1000).parallel().asLongStream().sum(), concurrencyConfig, true);
+        }, concurrencyConfig, true);
+        assertEquals(expResult, result);
+
+        ConcurrencyConfiguration otherConfig = Configuration.getConfiguration().getConcurrencyConfig();
+        assertSame(concurrencyConfig.getForkJoinPool(), otherConfig.getForkJoinPool());
+    }
+
+    /**
+     * Test of throttledExecution method, of class ThreadMethods, when it is
+     * called from a worker of the shared pool. The inner executions must not
+     * wait on the workers which are blocked by the outer one.
+     */
+    @Test(timeout=10000)
+    public void testThrottledExecutionNested() {
+        logger.info("throttledExecutionNested");
+        ConcurrencyConfiguration concurrencyConfig = Configuration.getConfiguration().getConcurrencyConfig();
+        concurrencyConfig.setParallelized(true);
+        concurrencyConfig.setMaxNumberOfThreadsPerTask(2);
+
+        AtomicLong sum = new AtomicLong(0);
+        ThreadMethods.throttledExecution(IntStream.range(0, 8).boxed(), i -> {
+            ThreadMethods.throttledExecution(IntStream.range(0, 1000).boxed(), j -> sum.addAndGet(j), concurrencyConfig, 4);
+        }, concurrencyConfig, 4);
+        assertEquals(8*499500L, sum.get());
+    }
+
+}
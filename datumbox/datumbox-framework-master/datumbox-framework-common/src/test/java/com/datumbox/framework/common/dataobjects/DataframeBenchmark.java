@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.utilities.RandomGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+
+/**
+ * Benchmark of the throughput of the CSV parsing of the Dataframe. It compares
+ * the record-by-record parsing of commons-csv, which was used before, with the
+ * chunked parsing of a reader and of a memory-mapped file. It is not part of 
+ * the unit tests; run it manually with its main method.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class DataframeBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataframeBenchmark.class);
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Configuration conf = Configuration.getConfiguration();
+        int rows = (args.length>0)?Integer.parseInt(args[0]):150000;
+
+        LinkedHashMap<String, TypeInference.DataType> headerDataTypes = DataframeTest.getGeneratedCSVDataTypes();
+        Path file = Files.createTempFile("datumbox_dataframe", ".csv");
+        try {
+            DataframeTest.writeGeneratedCSV(file, rows, RandomGenerator.getThreadLocalRandom());
+            double megabytes = file.toFile().length()/(1024.0*1024.0);
+
+            long start = System.nanoTime();
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                DataframeTest.parseCSVFileRecordByRecord(fileReader, "y", headerDataTypes, ',', '"', conf).delete();
+            }
+            logger.info("Record-by-record parsing: {} MB/s", megabytes/((System.nanoTime()-start)/1e9));
+
+            start = System.nanoTime();
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Dataframe.Builder.parseCSVFile(fileReader, "y", headerDataTypes, ',', '"', "\r\n", null, null, conf).delete();
+            }
+            logger.info("Chunked parsing of reader: {} MB/s", megabytes/((System.nanoTime()-start)/1e9));
+
+            start = System.nanoTime();
+            Dataframe.Builder.parseCSVFile(file.toUri(), "y", headerDataTypes, ',', '"', "\r\n", null, null, conf).delete();
+            logger.info("Chunked parsing of mapped file: {} MB/s", megabytes/((System.nanoTime()-start)/1e9));
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+}
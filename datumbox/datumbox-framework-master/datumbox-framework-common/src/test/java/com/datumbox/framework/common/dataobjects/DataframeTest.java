@@ -16,20 +16,35 @@
 package com.datumbox.framework.common.dataobjects;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.StreamMethods;
+import com.datumbox.framework.common.concurrency.ThreadMethods;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.DoubleStream;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test cases for Dataframe.
@@ -121,6 +136,499 @@ public class DataframeTest extends AbstractTest {
         dataset.delete();
     }
     
+    /**
+     * Test of parseCSVFile method, of class Dataframe.Builder, using the 
+     * COLUMNAR StorageMode.
+     */
+    @Test
+    public void testParseCSVFileColumnar() {
+        logger.info("parseCSVFileColumnar");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        LinkedHashMap<String, TypeInference.DataType> headerDataTypes = new LinkedHashMap<>(); 
+        headerDataTypes.put("city", TypeInference.DataType.CATEGORICAL);
+        headerDataTypes.put("temperature", TypeInference.DataType.NUMERICAL);
+        headerDataTypes.put("is_sunny", TypeInference.DataType.BOOLEAN);
+        headerDataTypes.put("traffic_rank", TypeInference.DataType.ORDINAL);
+        headerDataTypes.put("is_capital", TypeInference.DataType.BOOLEAN);
+        headerDataTypes.put("name_of_port", TypeInference.DataType.CATEGORICAL);
+        headerDataTypes.put("metro_population", TypeInference.DataType.NUMERICAL);
+        
+        Dataframe expResult;
+        Dataframe dataset;
+        try (Reader fileReader1 = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8");
+             Reader fileReader2 = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8")) {
+            expResult = Dataframe.Builder.parseCSVFile(fileReader1, "metro_population", headerDataTypes, ',', '"', "\r\n", null, null, conf);
+            dataset = Dataframe.Builder.parseCSVFile(fileReader2, "metro_population", headerDataTypes, ',', '"', "\r\n", null, null, Dataframe.StorageMode.COLUMNAR, conf);
+        }
+        catch(UncheckedIOException | IOException ex) {
+            logger.warn("Unable to download datasets, skipping test.");
+            throw new RuntimeException(ex);
+        }
+        
+        assertEquals(Dataframe.StorageMode.COLUMNAR, dataset.getStorageMode());
+        assertEquals(expResult.size(), dataset.size());
+        for(Integer rId : expResult.index()) {
+            assertEquals(expResult.get(rId), dataset.get(rId));
+        }
+        assertEquals(expResult.getXColumn("temperature"), dataset.getXColumn("temperature"));
+        assertEquals(expResult.getXColumn("city"), dataset.getXColumn("city"));
+        assertEquals(expResult.getXColumnAsDoubleStream("temperature").sum(), dataset.getXColumnAsDoubleStream("temperature").sum(), 0.0);
+        assertEquals(expResult.getXDataTypes(), dataset.getXDataTypes());
+        
+        //the views and the streams are not affected by the later writes which grow or replace the arrays
+        FlatDataList temperatures = dataset.getXColumn("temperature");
+        DoubleStream temperatureStream = dataset.getXColumnAsDoubleStream("temperature");
+        int n = dataset.size();
+        for(int i=0;i<100;i++) {
+            AssociativeArray xData = new AssociativeArray();
+            xData.put("temperature", (double)i);
+            dataset.add(new Record(xData, null));
+        }
+        AssociativeArray xData = new AssociativeArray();
+        xData.put("temperature", "hot");
+        dataset.add(new Record(xData, null));
+        assertEquals(expResult.getXColumn("temperature"), temperatures);
+        assertEquals(expResult.getXColumnAsDoubleStream("temperature").sum(), temperatureStream.sum(), 0.0);
+        assertEquals(n+101, dataset.getXColumn("temperature").size());
+        
+        Dataframe copy = dataset.copy();
+        assertEquals(Dataframe.StorageMode.COLUMNAR, copy.getStorageMode());
+        assertEquals(dataset.get(0), copy.get(0));
+        
+        copy.delete();
+        expResult.delete();
+        dataset.delete();
+    }
+    
+    /**
+     * Test of inferCSVDataTypes method, of class Dataframe.Builder.
+     */
+    @Test
+    public void testInferCSVDataTypes() {
+        logger.info("inferCSVDataTypes");
+        
+        LinkedHashMap<String, TypeInference.DataType> expResult = new LinkedHashMap<>(); 
+        expResult.put("city", TypeInference.DataType.CATEGORICAL);
+        expResult.put("temperature", TypeInference.DataType.NUMERICAL);
+        expResult.put("is_sunny", TypeInference.DataType.BOOLEAN);
+        expResult.put("traffic_rank", TypeInference.DataType.ORDINAL);
+        expResult.put("is_capital", TypeInference.DataType.CATEGORICAL);
+        expResult.put("name_of_port", TypeInference.DataType.CATEGORICAL);
+        expResult.put("metro_population", TypeInference.DataType.NUMERICAL);
+        
+        LinkedHashMap<String, TypeInference.DataType> result;
+        try (Reader fileReader = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8")) {
+            result = Dataframe.Builder.inferCSVDataTypes(fileReader, ',', '"', 100);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+        assertEquals(new ArrayList<>(expResult.entrySet()), new ArrayList<>(result.entrySet()));
+    }
+    
+    /**
+     * Test of parseCSVFile method, of class Dataframe.Builder, which infers 
+     * the DataTypes of the columns.
+     */
+    @Test
+    public void testParseCSVFileInferred() {
+        logger.info("parseCSVFileInferred");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        LinkedHashMap<String, TypeInference.DataType> headerDataTypes;
+        Dataframe expResult;
+        Dataframe dataset;
+        try (Reader fileReader1 = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8");
+             Reader fileReader2 = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8");
+             Reader fileReader3 = new InputStreamReader(this.getClass().getClassLoader().getResourceAsStream("datasets/cities.csv"), "UTF-8")) {
+            headerDataTypes = Dataframe.Builder.inferCSVDataTypes(fileReader1, ',', '"', 100);
+            expResult = Dataframe.Builder.parseCSVFile(fileReader2, "metro_population", headerDataTypes, ',', '"', "\r\n", null, null, conf);
+            dataset = Dataframe.Builder.parseCSVFile(fileReader3, "metro_population", ',', '"', "\r\n", null, null, 100, Dataframe.StorageMode.ROW_BASED, conf);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+        assertEquals(4, dataset.size());
+        for(Integer rId : expResult.index()) {
+            assertEquals(expResult.get(rId), dataset.get(rId));
+        }
+        assertEquals(TypeInference.DataType.NUMERICAL, dataset.getYDataType());
+        assertEquals(expResult.getXDataTypes(), dataset.getXDataTypes());
+        assertEquals((short)3, dataset.get(0).getX().get("traffic_rank"));
+        assertEquals("INVALID_VALUE", dataset.get(3).getX().get("is_capital"));
+        
+        expResult.delete();
+        dataset.delete();
+    }
+    
+    /**
+     * Test of parseCSVFile method, of class Dataframe.Builder, which infers 
+     * the DataTypes of the columns, on a file whose records after the sampled
+     * chunks contain values that do not match the inferred DataTypes.
+     */
+    @Test
+    public void testParseCSVFileInferredOutOfSample() {
+        logger.info("parseCSVFileInferredOutOfSample");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        int n = 500;
+        Path file;
+        try {
+            file = Files.createTempFile("datumbox_dataframe", ".csv");
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("bin,rank,flag,y\r\n");
+                for(int i=0;i<n;i++) {
+                    boolean tail = i==n-1;
+                    writer.write((i%2) + "," + (tail?"2.5":String.valueOf(i%10)) + "," + (tail?"maybe":(i%3==0?"yes":"no")) + ",class" + (i%4) + "\r\n");
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+        int chunkSize = ChunkedCSVParser.chunkSize;
+        ChunkedCSVParser.chunkSize = 64; //the tail is far from the sampled chunks
+        try {
+            LinkedHashMap<String, TypeInference.DataType> headerDataTypes;
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                headerDataTypes = Dataframe.Builder.inferCSVDataTypes(fileReader, ',', '"', 100);
+            }
+            assertEquals(TypeInference.DataType.ORDINAL, headerDataTypes.get("bin"));
+            assertEquals(TypeInference.DataType.ORDINAL, headerDataTypes.get("rank"));
+            assertEquals(TypeInference.DataType.BOOLEAN, headerDataTypes.get("flag"));
+            
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Dataframe.Builder.parseCSVFile(fileReader, "y", ',', '"', "\r\n", null, null, 100, Dataframe.StorageMode.ROW_BASED, conf);
+                fail("The values which do not match the inferred DataTypes should be rejected.");
+            }
+            catch(IllegalArgumentException ex) {
+                assertTrue(ex.getMessage().contains("rank"));
+                assertTrue(ex.getMessage().contains("flag"));
+            }
+            
+            Dataframe dataset = Dataframe.Builder.parseCSVFile(file.toUri(), "y", ',', '"', "\r\n", null, null, 100, Dataframe.StorageMode.ROW_BASED, conf);
+            assertEquals(n, dataset.size());
+            assertEquals(TypeInference.DataType.ORDINAL, dataset.getXDataTypes().get("bin"));
+            assertEquals(TypeInference.DataType.NUMERICAL, dataset.getXDataTypes().get("rank"));
+            assertEquals(TypeInference.DataType.CATEGORICAL, dataset.getXDataTypes().get("flag"));
+            assertEquals((short)1, dataset.get(1).getX().get("bin"));
+            assertEquals(3.0, dataset.get(3).getX().get("rank"));
+            assertEquals("yes", dataset.get(3).getX().get("flag"));
+            assertEquals(2.5, dataset.get(n-1).getX().get("rank"));
+            assertEquals("maybe", dataset.get(n-1).getX().get("flag"));
+            dataset.delete();
+            
+            Files.delete(file);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            ChunkedCSVParser.chunkSize = chunkSize;
+        }
+    }
+    
+    /**
+     * Test of parseCSVFile method, of class Dataframe.Builder, which infers 
+     * the DataTypes of the columns, on a file whose first chunk contains more
+     * records than the sample size. All the records of the chunk are used, so
+     * a value after the first sampleSize records is always covered.
+     */
+    @Test
+    public void testParseCSVFileInferredSampledChunks() {
+        logger.info("parseCSVFileInferredSampledChunks");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        int n = 200;
+        int sampleSize = 10;
+        Path file;
+        try {
+            file = Files.createTempFile("datumbox_dataframe", ".csv");
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("rank,y\r\n");
+                for(int i=0;i<n;i++) {
+                    writer.write((i==15?"2.5":String.valueOf(i%10)) + ",class" + (i%4) + "\r\n");
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+        int chunkSize = ChunkedCSVParser.chunkSize;
+        ChunkedCSVParser.chunkSize = 256; //the first chunk holds more than sampleSize records
+        try {
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                LinkedHashMap<String, TypeInference.DataType> headerDataTypes = Dataframe.Builder.inferCSVDataTypes(fileReader, ',', '"', sampleSize);
+                assertEquals(TypeInference.DataType.NUMERICAL, headerDataTypes.get("rank"));
+            }
+            
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Dataframe dataset = Dataframe.Builder.parseCSVFile(fileReader, "y", ',', '"', "\r\n", null, null, sampleSize, Dataframe.StorageMode.ROW_BASED, conf);
+                assertEquals(n, dataset.size());
+                assertEquals(TypeInference.DataType.NUMERICAL, dataset.getXDataTypes().get("rank"));
+                assertEquals(2.5, dataset.get(15).getX().get("rank"));
+                assertEquals(3.0, dataset.get(3).getX().get("rank"));
+                dataset.delete();
+            }
+            
+            Files.delete(file);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            ChunkedCSVParser.chunkSize = chunkSize;
+        }
+    }
+    
+    /**
+     * Test of parseCSVFile method, of class Dataframe.Builder, on a generated
+     * file of several chunks. The chunked parsing of the reader and of the 
+     * memory-mapped file are compared with the record-by-record parsing of 
+     * commons-csv, which was used before. The chunks are shrunk so that many
+     * records and quoted fields cross their boundaries.
+     */
+    @Test
+    public void testParseCSVFileChunks() {
+        logger.info("parseCSVFileChunks");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        LinkedHashMap<String, TypeInference.DataType> headerDataTypes = getGeneratedCSVDataTypes();
+        
+        int chunkSize = ChunkedCSVParser.chunkSize;
+        ChunkedCSVParser.chunkSize = 1024;
+        
+        Dataframe expResult;
+        Dataframe dataset;
+        Dataframe mappedDataset;
+        Dataframe subset;
+        Dataframe inferredDataset;
+        try {
+            Path file = Files.createTempFile("datumbox_dataframe", ".csv");
+            writeGeneratedCSV(file, 3000, RandomGenerator.getThreadLocalRandom());
+            
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                expResult = parseCSVFileRecordByRecord(fileReader, "y", headerDataTypes, ',', '"', conf);
+            }
+            try (Reader fileReader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                dataset = Dataframe.Builder.parseCSVFile(fileReader, "y", headerDataTypes, ',', '"', "\r\n", null, null, conf);
+            }
+            mappedDataset = Dataframe.Builder.parseCSVFile(file.toUri(), "y", headerDataTypes, ',', '"', "\r\n", null, null, conf);
+            
+            subset = Dataframe.Builder.parseCSVFile(file.toUri(), "y", headerDataTypes, ',', '"', "\r\n", 800L, 1400L, conf);
+            
+            inferredDataset = Dataframe.Builder.parseCSVFile(file.toUri(), "y", ',', '"', "\r\n", null, null, 1000, Dataframe.StorageMode.ROW_BASED, conf);
+            
+            Files.delete(file);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        finally {
+            ChunkedCSVParser.chunkSize = chunkSize;
+        }
+        
+        assertEquals(3000-3, expResult.size());
+        assertEquals(expResult.size(), dataset.size());
+        assertEquals(expResult.size(), mappedDataset.size());
+        for(Integer rId : expResult.index()) {
+            Record r = expResult.get(rId);
+            assertEquals(r, dataset.get(rId));
+            assertEquals(r, mappedDataset.get(rId));
+            if(rId >= 800 && rId < 2200) {
+                assertEquals(r, subset.get(rId));
+            }
+        }
+        assertEquals(1400-1, subset.size());
+        assertEquals(expResult.getXDataTypes(), mappedDataset.getXDataTypes());
+        
+        assertEquals(expResult.size(), inferredDataset.size());
+        assertEquals(TypeInference.DataType.ORDINAL, inferredDataset.getXDataTypes().get("id")); //the ids fit in a short
+        assertEquals(TypeInference.DataType.NUMERICAL, inferredDataset.getXDataTypes().get("x1"));
+        assertEquals(TypeInference.DataType.BOOLEAN, inferredDataset.getXDataTypes().get("flag"));
+        assertEquals(expResult.get(2999).getX().get("x1"), inferredDataset.get(2999).getX().get("x1"));
+        
+        expResult.delete();
+        dataset.delete();
+        mappedDataset.delete();
+        subset.delete();
+        inferredDataset.delete();
+    }
+    
+    /**
+     * Returns the DataTypes of the columns of the generated CSV files.
+     * 
+     * @return 
+     */
+    static LinkedHashMap<String, TypeInference.DataType> getGeneratedCSVDataTypes() {
+        LinkedHashMap<String, TypeInference.DataType> headerDataTypes = new LinkedHashMap<>(); 
+        headerDataTypes.put("x1", TypeInference.DataType.NUMERICAL);
+        headerDataTypes.put("x2", TypeInference.DataType.NUMERICAL);
+        headerDataTypes.put("rank", TypeInference.DataType.ORDINAL);
+        headerDataTypes.put("flag", TypeInference.DataType.BOOLEAN);
+        headerDataTypes.put("name", TypeInference.DataType.CATEGORICAL);
+        headerDataTypes.put("y", TypeInference.DataType.CATEGORICAL);
+        return headerDataTypes;
+    }
+    
+    /**
+     * Writes a CSV file with the provided number of rows. The file contains
+     * quoted, escaped and multiline fields, empty and exponential numbers, 
+     * mixed line endings and one inconsistent row every 1000 rows.
+     * 
+     * @param file
+     * @param rows
+     * @param rnd
+     * @throws IOException 
+     */
+    static void writeGeneratedCSV(Path file, int rows, Random rnd) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,x1,x2,rank,flag,name,y\r\n");
+            for(int i=0;i<rows;i++) {
+                String name;
+                switch(i%50) {
+                    case 0:
+                        name = "\"quoted, \"\"escaped\"\"\nand multiline\"";
+                        break;
+                    case 1:
+                        name = "\"Piraeus\"";
+                        break;
+                    case 2:
+                        name = "null";
+                        break;
+                    default:
+                        name = "name" + rnd.nextInt(1000);
+                }
+                String x2;
+                switch(i%7) {
+                    case 0:
+                        x2 = "";
+                        break;
+                    case 1:
+                        x2 = (rnd.nextInt(2000)-1000) + "e-3";
+                        break;
+                    case 2:
+                        x2 = "14.";
+                        break;
+                    default:
+                        x2 = String.valueOf(rnd.nextGaussian()*1000);
+                }
+                writer.write(i + "," + rnd.nextDouble() + "," + x2 + "," + rnd.nextInt(10) + "," + (rnd.nextBoolean()?"yes":"no") + "," + name + ",class" + rnd.nextInt(5));
+                if(i%1000 == 345) {
+                    writer.write(",extra"); //inconsistent row
+                }
+                writer.write((i%3 == 0)?"\n":"\r\n");
+            }
+        }
+    }
+    
+    /**
+     * Parses the CSV file record by record using commons-csv. It is the parsing
+     * which was used by the Builder before the chunked parser.
+     * 
+     * @param reader
+     * @param yVariable
+     * @param headerDataTypes
+     * @param delimiter
+     * @param quote
+     * @param conf
+     * @return 
+     * @throws IOException 
+     */
+    static Dataframe parseCSVFileRecordByRecord(Reader reader, String yVariable, LinkedHashMap<String, TypeInference.DataType> headerDataTypes, char delimiter, char quote, Configuration conf) throws IOException {
+        Dataframe dataset = new Dataframe(conf);
+        
+        CSVFormat format = CSVFormat.RFC4180.withHeader().withDelimiter(delimiter).withQuote(quote);
+        try (final CSVParser parser = new CSVParser(reader, format)) { 
+            ThreadMethods.throttledExecution(StreamMethods.enumerate(StreamMethods.stream(parser.spliterator(), false)), e -> { 
+                Integer rId = e.getKey();
+                CSVRecord row = e.getValue();
+
+                if (row.isConsistent()) {
+                    Object y = null;
+                    AssociativeArray xData = new AssociativeArray();
+                    for (Map.Entry<String, TypeInference.DataType> entry : headerDataTypes.entrySet()) {
+                        String column = entry.getKey();
+                        Object value = TypeInference.DataType.parse(row.get(column), entry.getValue());
+                        if (yVariable.equals(column)) {
+                            y = value;
+                        } 
+                        else {
+                            xData.put(column, value);
+                        }
+                    }
+                    dataset._unsafe_set(rId, new Record(xData, y));
+                }
+            }, conf.getConcurrencyConfig());
+        }
+        dataset.recalculateMeta();
+        return dataset;
+    }
+    
+    /**
+     * Test of the sparse columns and the updates of the COLUMNAR StorageMode.
+     */
+    @Test
+    public void testColumnarUpdates() {
+        logger.info("columnarUpdates");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe dataset = new Dataframe(conf, Dataframe.StorageMode.COLUMNAR);
+        
+        AssociativeArray xData1 = new AssociativeArray();
+        xData1.put("a", 1.0);
+        xData1.put("b", "x");
+        Record r1 = new Record(xData1, "Class1");
+        dataset.add(r1);
+        
+        AssociativeArray xData2 = new AssociativeArray();
+        xData2.put("a", 2.0);
+        xData2.put("c", true);
+        Record r2 = new Record(xData2, "Class2");
+        dataset.add(r2);
+        
+        AssociativeArray xData3 = new AssociativeArray();
+        xData3.put("a", "text"); //forces the conversion of the numerical column to dictionary
+        xData3.put("d", null);
+        Record r3 = new Record(xData3, null);
+        dataset.add(r3);
+        
+        assertEquals(3, dataset.size());
+        assertEquals(r1, dataset.get(0));
+        assertEquals(r2, dataset.get(1));
+        assertEquals(r3, dataset.get(2));
+        assertEquals(new FlatDataList(Arrays.asList(new Object[]{1.0, 2.0, "text"})), dataset.getXColumn("a"));
+        assertEquals(new FlatDataList(Arrays.asList(new Object[]{null, true, null})), dataset.getXColumn("c"));
+        
+        AssociativeArray xData4 = new AssociativeArray();
+        xData4.put("b", "y");
+        Record r4 = new Record(xData4, "Class1", "Class2", null);
+        assertEquals(r2, dataset._unsafe_set(1, r4));
+        assertEquals(r4, dataset.get(1));
+        assertEquals("Class2", dataset.get(1).getYPredicted());
+        
+        dataset.remove(0);
+        assertEquals(2, dataset.size());
+        assertEquals(null, dataset.get(0));
+        
+        Integer rId = dataset.addRecord(r1);
+        assertEquals(r1, dataset.get(rId));
+        assertEquals(3, dataset.size());
+        
+        dataset.delete();
+    }
+    
     /**
      * Test of copyCollection2Array method, of class Dataframe.
      */
@@ -273,4 +781,51 @@ public class DataframeTest extends AbstractTest {
         dataset.delete();
     }
 
+    /**
+     * Test of getView method, of class Dataframe.
+     */
+    @Test
+    public void testGetView() {
+        logger.info("getView");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe dataset = new Dataframe(conf);
+        for(int i=0;i<5;i++) {
+            AssociativeArray xData = new AssociativeArray();
+            xData.put("x", (double)i);
+            if(i==3) {
+                xData.put("onlyIn3", true);
+            }
+            dataset.add(new Record(xData, "c"+i));
+        }
+        
+        Dataframe view = dataset.getView(new FlatDataList(Arrays.asList(4, 1, 2)));
+        assertEquals(3, view.size());
+        assertEquals(1, view.xColumnSize());
+        assertEquals("c4", view.get(0).getY());
+        assertEquals("c1", view.get(1).getY());
+        assertEquals("c2", view.get(2).getY());
+        
+        //modifications must not affect the parent
+        view.set(0, new Record(dataset.get(4).getX(), "c4", "predicted", null));
+        view.remove(1);
+        Integer newId = view.addRecord(new Record(new AssociativeArray(), "new"));
+        assertEquals(Integer.valueOf(3), newId);
+        assertEquals(3, view.size());
+        assertEquals("predicted", view.get(0).getYPredicted());
+        assertEquals(null, dataset.get(4).getYPredicted());
+        assertEquals(5, dataset.size());
+        
+        Iterator<Integer> it = view.index().iterator();
+        assertEquals(Integer.valueOf(0), it.next());
+        assertEquals(Integer.valueOf(2), it.next());
+        assertEquals(Integer.valueOf(3), it.next());
+        
+        view.delete();
+        assertEquals(5, dataset.size());
+        
+        dataset.delete();
+    }
+
 }
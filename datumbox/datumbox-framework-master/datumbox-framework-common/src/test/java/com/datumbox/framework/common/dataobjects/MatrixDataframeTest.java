@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.tests.Constants;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.OpenMapRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for MatrixDataframe.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MatrixDataframeTest extends AbstractTest {
+
+    /**
+     * Generates a small Dataframe with a numerical response variable.
+     *
+     * @param conf
+     * @param sparse
+     * @return
+     */
+    private Dataframe generateDataset(Configuration conf, boolean sparse) {
+        Dataframe dataset = new Dataframe(conf);
+        for(int i=0;i<20;i++) {
+            AssociativeArray xData = new AssociativeArray();
+            xData.put("x1", (double)i);
+            xData.put("x2", (double)((i*7)%5));
+            if(sparse) {
+                for(int j=0;j<20;j++) {
+                    xData.put("s"+j, (j==i)?1.0:null);
+                }
+            }
+            dataset.add(new Record(xData, 2.0*i-((i*7)%5)+1.0));
+        }
+        return dataset;
+    }
+
+    /**
+     * Test of newInstance method, of class MatrixDataframe.
+     */
+    @Test
+    public void testNewInstance() {
+        logger.info("newInstance");
+
+        Configuration conf = Configuration.getConfiguration();
+
+        Dataframe dense = generateDataset(conf, false);
+        MatrixDataframe m = MatrixDataframe.newInstance(dense, true, null, new HashMap<>());
+        assertTrue(m.getX() instanceof Array2DRowRealMatrix);
+        assertEquals(3, m.getX().getColumnDimension());
+        dense.delete();
+
+        Dataframe sparse = generateDataset(conf, true);
+        m = MatrixDataframe.newInstance(sparse, false, null, new HashMap<>());
+        assertTrue(m.getX() instanceof OpenMapRealMatrix);
+        assertEquals(22, m.getX().getColumnDimension());
+        sparse.delete();
+    }
+
+    /**
+     * Test of crossProduct method, of class MatrixDataframe.
+     */
+    @Test
+    public void testCrossProduct() {
+        logger.info("crossProduct");
+
+        Configuration conf = Configuration.getConfiguration();
+
+        Dataframe dataset = generateDataset(conf, true);
+
+        Map<Object, Integer> expFeatureIds = new HashMap<>();
+        MatrixDataframe m = MatrixDataframe.newInstance(dataset, true, null, expFeatureIds);
+        RealMatrix X = m.getX();
+
+        Map<Object, Integer> featureIds = new HashMap<>();
+        MatrixDataframe.indexFeatures(dataset, true, featureIds);
+        assertEquals(expFeatureIds, featureIds);
+
+        RealVector XtY = new ArrayRealVector(featureIds.size());
+        RealMatrix XtX = MatrixDataframe.crossProduct(dataset, featureIds, null, XtY, true);
+
+        RealMatrix expXtX = X.transpose().multiply(X);
+        for(int i=0;i<featureIds.size();i++) {
+            assertArrayEquals(expXtX.getRow(i), XtX.getRow(i), Constants.DOUBLE_ACCURACY_HIGH);
+        }
+        assertArrayEquals(X.transpose().operate(m.getY()).toArray(), XtY.toArray(), Constants.DOUBLE_ACCURACY_HIGH);
+
+        //centered cross product
+        featureIds = new HashMap<>();
+        MatrixDataframe.indexFeatures(dataset, false, featureIds);
+        double[] means = MatrixDataframe.columnMeans(dataset, featureIds, true);
+        assertEquals(9.5, means[featureIds.get("x1")], Constants.DOUBLE_ACCURACY_HIGH);
+
+        RealMatrix centeredXtX = MatrixDataframe.crossProduct(dataset, featureIds, means, null, true);
+        int x1 = featureIds.get("x1");
+        assertEquals(665.0, centeredXtX.getEntry(x1, x1), Constants.DOUBLE_ACCURACY_HIGH);
+
+        dataset.delete();
+    }
+
+}
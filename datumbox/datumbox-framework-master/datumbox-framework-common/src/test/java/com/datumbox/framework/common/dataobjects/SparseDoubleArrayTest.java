@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.dataobjects;
+
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test cases for SparseDoubleArray.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class SparseDoubleArrayTest extends AbstractTest {
+    
+    /**
+     * Test of add and get methods, of class SparseDoubleArray.
+     */
+    @Test
+    public void testAddGet() {
+        logger.info("addGet");
+        
+        SparseDoubleArray instance = new SparseDoubleArray();
+        for(int i=0;i<1000;i++) {
+            instance.add(i*7919, i);
+            instance.add(i*7919, 0.5);
+        }
+        assertEquals(1000, instance.size());
+        for(int i=0;i<1000;i++) {
+            assertEquals(i+0.5, instance.get(i*7919), 0.0);
+        }
+        assertEquals(0.0, instance.get(3), 0.0);
+    }
+    
+    /**
+     * Test of merge method, of class SparseDoubleArray.
+     */
+    @Test
+    public void testMerge() {
+        logger.info("merge");
+        
+        SparseDoubleArray left = new SparseDoubleArray();
+        SparseDoubleArray right = new SparseDoubleArray();
+        Map<Integer, Double> expResult = new HashMap<>();
+        for(int i=0;i<100;i++) {
+            left.add(i, 1.0);
+            expResult.merge(i, 1.0, Double::sum);
+        }
+        for(int i=50;i<60;i++) {
+            right.add(i*3, 2.0);
+            expResult.merge(i*3, 2.0, Double::sum);
+        }
+        
+        SparseDoubleArray result = SparseDoubleArray.merge(right, left);
+        assertSame(left, result); //the smaller is added on the larger
+        
+        Map<Integer, Double> entries = new HashMap<>();
+        result.forEach(entries::put);
+        assertEquals(expResult, entries);
+    }
+    
+}
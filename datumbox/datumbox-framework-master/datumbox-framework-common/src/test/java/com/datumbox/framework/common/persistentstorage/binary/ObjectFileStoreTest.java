@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.binary;
+
+import com.datumbox.framework.common.dataobjects.ReadOnlyDoubleArray;
+import com.datumbox.framework.common.dataobjects.ReadOnlyIntArray;
+import com.datumbox.framework.common.utilities.DeepCopy;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for ObjectFileStore and the binary format.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class ObjectFileStoreTest extends AbstractTest {
+
+    private static final int HEADER_FLAGS_OFFSET = Integer.BYTES + Short.BYTES;
+
+    /**
+     * Node of a graph which contains cycles.
+     */
+    private static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        private Node next;
+
+        private final List<Node> children = new ArrayList<>();
+
+        private Node(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Class with a no-argument constructor and a transient field.
+     */
+    private static class Counter implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private int count;
+
+        private transient List<String> log = new ArrayList<>();
+
+        private Counter() {
+        }
+    }
+
+    /**
+     * Class which customizes its Java serialization.
+     */
+    private static class Custom implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient String value;
+
+        private Custom(String value) {
+            this.value = value;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeUTF(value.toUpperCase());
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            value = in.readUTF();
+        }
+    }
+
+    /**
+     * Test of the graph round trip with cycles and shared references.
+     */
+    @Test
+    public void testCyclesAndSharedReferences() {
+        logger.info("cyclesAndSharedReferences");
+
+        Node a = new Node("a");
+        Node b = new Node("b");
+        a.next = b;
+        b.next = a;
+        a.children.add(b);
+        a.children.add(a);
+
+        Map<String, Object> graph = new HashMap<>();
+        graph.put("a", a);
+        graph.put("b", b);
+        graph.put("alias", a);
+
+        Map<String, Object> result = roundTrip(graph);
+
+        Node ra = (Node)result.get("a");
+        Node rb = (Node)result.get("b");
+        assertEquals("a", ra.name);
+        assertEquals("b", rb.name);
+        assertSame(ra, result.get("alias"));
+        assertSame(rb, ra.next);
+        assertSame(ra, rb.next);
+        assertSame(rb, ra.children.get(0));
+        assertSame(ra, ra.children.get(1));
+    }
+
+    /**
+     * Test of the round trip of the primitive and object arrays.
+     */
+    @Test
+    public void testPrimitiveArrays() {
+        logger.info("primitiveArrays");
+
+        int n = 100000; //larger than the internal buffers
+        double[] doubles = new double[n];
+        int[] ints = new int[n];
+        long[] longs = new long[n];
+        float[] floats = new float[n];
+        short[] shorts = new short[n];
+        char[] chars = new char[n];
+        byte[] bytes = new byte[n];
+        boolean[] booleans = new boolean[n];
+        for(int i=0;i<n;i++) {
+            doubles[i] = i*0.5-7.0;
+            ints[i] = i*31-n;
+            longs[i] = (long)i*Integer.MAX_VALUE;
+            floats[i] = i/3f;
+            shorts[i] = (short)i;
+            chars[i] = (char)(i%65536);
+            bytes[i] = (byte)i;
+            booleans[i] = i%3==0;
+        }
+        String[] strings = {"x", null, "x", "y"};
+
+        Object[] result = roundTrip(new Object[]{doubles, ints, longs, floats, shorts, chars, bytes, booleans, strings, new int[0]});
+
+        assertArrayEquals(doubles, (double[])result[0], 0.0);
+        assertArrayEquals(ints, (int[])result[1]);
+        assertArrayEquals(longs, (long[])result[2]);
+        assertArrayEquals(floats, (float[])result[3], 0f);
+        assertArrayEquals(shorts, (short[])result[4]);
+        assertArrayEquals(chars, (char[])result[5]);
+        assertArrayEquals(bytes, (byte[])result[6]);
+        assertTrue(Arrays.equals(booleans, (boolean[])result[7]));
+        assertArrayEquals(strings, (String[])result[8]);
+        assertEquals(0, ((int[])result[9]).length);
+    }
+
+    /**
+     * Test of the round trip of the sorted collections with comparators.
+     */
+    @Test
+    public void testMapsWithComparators() {
+        logger.info("mapsWithComparators");
+
+        TreeMap<String, Integer> map = new TreeMap<>(Comparator.reverseOrder());
+        TreeSet<Integer> set = new TreeSet<>(Comparator.reverseOrder());
+        for(int i=0;i<10;i++) {
+            map.put("k" + i, i);
+            set.add(i);
+        }
+
+        Object[] result = roundTrip(new Object[]{map, set, new TreeMap<>((Map<String, Integer>)map)});
+
+        @SuppressWarnings("unchecked")
+        TreeMap<String, Integer> rMap = (TreeMap<String, Integer>)result[0];
+        assertNotNull(rMap.comparator());
+        assertEquals("k9", rMap.firstKey());
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(rMap.entrySet()));
+        rMap.put("k95", 95);
+        assertEquals("k95", rMap.firstKey());
+
+        @SuppressWarnings("unchecked")
+        TreeSet<Integer> rSet = (TreeSet<Integer>)result[1];
+        assertEquals(new ArrayList<>(set), new ArrayList<>(rSet));
+        assertEquals(Integer.valueOf(9), rSet.first());
+
+        @SuppressWarnings("unchecked")
+        TreeMap<String, Integer> rNatural = (TreeMap<String, Integer>)result[2];
+        assertNull(rNatural.comparator());
+        assertEquals("k0", rNatural.firstKey());
+    }
+
+    /**
+     * Test of the Java serialization fallbacks of the format.
+     */
+    @Test
+    public void testJavaSerializationFallback() {
+        logger.info("javaSerializationFallback");
+
+        Counter counter = new Counter();
+        counter.count = 42;
+        Custom custom = new Custom("value");
+        Node node = new Node("no-arg constructor missing");
+
+        Object[] result = roundTrip(new Object[]{counter, custom, custom, node});
+
+        Counter rCounter = (Counter)result[0];
+        assertEquals(42, rCounter.count);
+        assertNotNull(rCounter.log); //the no-argument constructor was called
+
+        Custom rCustom = (Custom)result[1];
+        assertEquals("VALUE", rCustom.value); //the readObject() was called
+        assertSame(rCustom, result[2]);
+
+        Node rNode = (Node)result[3];
+        assertEquals(node.name, rNode.name);
+        assertTrue(rNode.children.isEmpty());
+    }
+
+    /**
+     * Test of save and load methods, of class ObjectFileStore.
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        logger.info("saveAndLoad");
+
+        for(boolean compressed : new boolean[]{false, true}) {
+            Path path = Files.createTempDirectory("datumbox").resolve("store");
+            ObjectFileStore store = new ObjectFileStore(path, compressed);
+
+            HashMap<String, Double> first = new HashMap<>();
+            first.put("a", 1.0);
+            store.save("first", first);
+            store.save("second", "text");
+            first.put("b", 2.0);
+            store.save("first", first);
+
+            assertEquals(first, store.load("first", HashMap.class));
+            assertEquals("text", store.load("second", String.class));
+            assertEquals("text", store.loadMapped("second", String.class));
+            assertNull(store.load("missing", String.class));
+
+            store.clear();
+            assertFalse(Files.exists(path));
+            Files.delete(path.getParent());
+        }
+    }
+
+    /**
+     * Test of loadMapped method, of class ObjectFileStore.
+     */
+    @Test
+    public void testLoadMapped() throws IOException {
+        logger.info("loadMapped");
+
+        Path path = Files.createTempDirectory("datumbox").resolve("store");
+        ObjectFileStore store = new ObjectFileStore(path, false);
+
+        int n = 10000; //above the mapping threshold
+        double[] doubles = new double[n];
+        int[] ints = new int[n];
+        for(int i=0;i<n;i++) {
+            doubles[i] = i*0.25-3.0;
+            ints[i] = i*31-n;
+        }
+        store.save("arrays", new Object[]{ReadOnlyDoubleArray.wrap(doubles), ReadOnlyIntArray.wrap(ints), ReadOnlyIntArray.wrap(new int[]{1, 2})});
+
+        //the arrays are stored in the native order, which is recorded in the header
+        byte flags = Files.readAllBytes(path.resolve("arrays.bin"))[HEADER_FLAGS_OFFSET];
+        assertEquals(ByteOrder.nativeOrder(), BinaryFormat.getArrayOrder(flags));
+
+        Object[] mapped = store.loadMapped("arrays", Object[].class);
+        ReadOnlyDoubleArray mappedDoubles = (ReadOnlyDoubleArray)mapped[0];
+        ReadOnlyIntArray mappedInts = (ReadOnlyIntArray)mapped[1];
+        assertTrue(mappedDoubles.isDirect());
+        assertTrue(mappedInts.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), mappedDoubles.asBuffer().order());
+        assertFalse(((ReadOnlyIntArray)mapped[2]).isDirect()); //below the mapping threshold
+
+        Object[] loaded = store.load("arrays", Object[].class);
+        ReadOnlyDoubleArray loadedDoubles = (ReadOnlyDoubleArray)loaded[0];
+        assertFalse(loadedDoubles.isDirect());
+        for(int i=0;i<n;i++) {
+            assertEquals(doubles[i], mappedDoubles.get(i), 0.0);
+            assertEquals(ints[i], mappedInts.get(i));
+            assertEquals(doubles[i], loadedDoubles.get(i), 0.0);
+        }
+        assertEquals(2, ((ReadOnlyIntArray)loaded[2]).get(1));
+
+        store.clear();
+        Files.delete(path.getParent());
+    }
+
+    /**
+     * Test of the migration of the legacy files, of class ObjectFileStore.
+     */
+    @Test
+    public void testMigrateLegacyFile() throws IOException {
+        logger.info("migrateLegacyFile");
+
+        Path path = Files.createTempDirectory("datumbox").resolve("store");
+
+        //older versions stored all the objects in a single Java serialized map
+        HashMap<String, Object> legacy = new HashMap<>();
+        legacy.put("modelParameters", new ArrayList<>(Arrays.asList(1, 2, 3)));
+        legacy.put("trainingParameters", "legacy");
+        Files.write(path, DeepCopy.serialize(legacy));
+
+        ObjectFileStore store = new ObjectFileStore(path, false);
+        assertEquals(legacy.get("modelParameters"), store.load("modelParameters", ArrayList.class));
+        assertEquals("legacy", store.loadMapped("trainingParameters", String.class));
+        assertTrue(Files.isRegularFile(path));
+
+        //saving converts the file to the directory layout
+        store.save("trainingParameters", "new");
+        assertTrue(Files.isDirectory(path));
+        assertEquals(legacy.get("modelParameters"), store.load("modelParameters", ArrayList.class));
+        assertEquals("new", store.load("trainingParameters", String.class));
+
+        //the migrated files are stored in the binary format
+        byte[] header = Arrays.copyOf(Files.readAllBytes(path.resolve("modelParameters.bin")), Integer.BYTES);
+        assertEquals(BinaryFormat.MAGIC, ByteBuffer.wrap(header).getInt());
+
+        store.clear();
+        Files.delete(path.getParent());
+    }
+
+    /**
+     * Writes the object with the BinaryObjectOutput and reads it back with the
+     * BinaryObjectInput.
+     *
+     * @param <T>
+     * @param obj
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T obj) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (BinaryObjectOutput out = new BinaryObjectOutput(bos)) {
+                out.writeObject(obj);
+            }
+            try (BinaryObjectInput in = new BinaryObjectInput(new ByteArrayInputStream(bos.toByteArray()))) {
+                return (T)in.readObject();
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.mapdb;
+
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the write buffers of MapDBConnector.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MapDBConnectorTest extends AbstractTest {
+
+    /**
+     * Test of close method, of class MapDBConnector.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testClose() throws Exception {
+        logger.info("close");
+        MapDBConfiguration dbConf = getConfiguration();
+
+        DatabaseConnector instance = dbConf.getConnector("MapDBConnectorTest");
+        Map<Integer, String> permanent = instance.getBigMap("permanent", MapType.HASHMAP, StorageHint.IN_DISK, false, false);
+        Map<Integer, String> temporary = instance.getBigMap("temporary", MapType.TREEMAP, StorageHint.IN_DISK, false, true);
+        assertSame(permanent, instance.getBigMap("permanent", MapType.HASHMAP, StorageHint.IN_DISK, false, false));
+        for(int i=0;i<50;i++) {
+            permanent.put(i, "value" + i);
+            temporary.put(i, "value" + i);
+        }
+        assertEquals(50, ((WriteBehindMap<?, ?>)permanent).getBufferedSize());
+        assertEquals(50, ((WriteBehindMap<?, ?>)temporary).getBufferedSize());
+        instance.close();
+
+        //the permanent map is flushed and the temporary is discarded
+        assertEquals(50L, ((WriteBehindMap<?, ?>)permanent).getWrites());
+        assertEquals(0L, ((WriteBehindMap<?, ?>)temporary).getWrites());
+        assertEquals(0, ((WriteBehindMap<?, ?>)temporary).getBufferedSize());
+
+        instance = dbConf.getConnector("MapDBConnectorTest");
+        Map<Integer, String> reopened = instance.getBigMap("permanent", MapType.HASHMAP, StorageHint.IN_DISK, false, false);
+        assertEquals(50, reopened.size());
+        assertEquals("value7", reopened.get(7));
+        instance.clear();
+        instance.close();
+        Files.delete(Paths.get(dbConf.getOutputFolder()));
+    }
+
+    /**
+     * Test of dropBigMap and clear methods, of class MapDBConnector.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDropBigMapAndClear() throws Exception {
+        logger.info("dropBigMapAndClear");
+        MapDBConfiguration dbConf = getConfiguration();
+
+        DatabaseConnector instance = dbConf.getConnector("MapDBConnectorTest");
+        Map<Integer, String> dropped = instance.getBigMap("dropped", MapType.HASHMAP, StorageHint.IN_DISK, false, false);
+        Map<Integer, String> cleared = instance.getBigMap("cleared", MapType.HASHMAP, StorageHint.IN_DISK, false, false);
+        for(int i=0;i<50;i++) {
+            dropped.put(i, "value" + i);
+            cleared.put(i, "value" + i);
+        }
+
+        //the buffered writes of a dropped map are discarded
+        instance.dropBigMap("dropped", dropped);
+        assertEquals(0, ((WriteBehindMap<?, ?>)dropped).getBufferedSize());
+        assertEquals(0L, ((WriteBehindMap<?, ?>)dropped).getWrites());
+        Map<Integer, String> recreated = instance.getBigMap("dropped", MapType.HASHMAP, StorageHint.IN_DISK, false, false);
+        assertNotSame(dropped, recreated);
+        assertTrue(recreated.isEmpty());
+
+        //and so are those of the maps of a cleared database
+        instance.clear();
+        assertEquals(0, ((WriteBehindMap<?, ?>)cleared).getBufferedSize());
+        assertEquals(0L, ((WriteBehindMap<?, ?>)cleared).getWrites());
+        instance.close();
+
+        instance = dbConf.getConnector("MapDBConnectorTest");
+        assertTrue(instance.getBigMap("cleared", MapType.HASHMAP, StorageHint.IN_DISK, false, false).isEmpty());
+        instance.clear();
+        instance.close();
+        Files.delete(Paths.get(dbConf.getOutputFolder()));
+    }
+
+    /**
+     * Returns a configuration which stores the maps on disk, in a temporary
+     * folder, with a buffer larger than the written entries.
+     *
+     * @return
+     * @throws Exception
+     */
+    private MapDBConfiguration getConfiguration() throws Exception {
+        MapDBConfiguration dbConf = new MapDBConfiguration();
+        dbConf.setOutputFolder(Files.createTempDirectory("datumbox").toString());
+        dbConf.setHybridized(false);
+        dbConf.setWriteBufferSize(100);
+        return dbConf;
+    }
+
+}
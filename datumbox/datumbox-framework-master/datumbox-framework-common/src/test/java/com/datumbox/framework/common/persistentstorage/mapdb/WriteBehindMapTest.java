@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.mapdb;
+
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for WriteBehindMap.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class WriteBehindMapTest extends AbstractTest {
+
+    /**
+     * Test of the coalescing of the repeated puts, of class WriteBehindMap.
+     */
+    @Test
+    public void testCoalescing() {
+        logger.info("coalescing");
+        Map<String, Integer> store = new HashMap<>();
+        WriteBehindMap<String, Integer> instance = new WriteBehindMap<>(store, 100);
+
+        for(int i=0;i<1000;i++) {
+            instance.put("a", i);
+            instance.put("b", -i);
+        }
+        assertEquals(0L, instance.getWrites());
+        assertTrue(store.isEmpty());
+
+        instance.flush();
+        assertEquals(2L, instance.getWrites()); //only the last values were written
+        assertEquals(Integer.valueOf(999), store.get("a"));
+        assertEquals(Integer.valueOf(-999), store.get("b"));
+        assertEquals(0, instance.getBufferedSize());
+    }
+
+    /**
+     * Test of the flush of the buffer when it reaches its capacity.
+     */
+    @Test
+    public void testFlushAtCapacity() {
+        logger.info("flushAtCapacity");
+        Map<Integer, Integer> store = new HashMap<>();
+        WriteBehindMap<Integer, Integer> instance = new WriteBehindMap<>(store, 10);
+
+        for(int i=0;i<9;i++) {
+            instance.put(i, i);
+        }
+        assertTrue(store.isEmpty());
+        assertEquals(9, instance.getBufferedSize());
+
+        instance.put(9, 9);
+        assertEquals(10, store.size());
+        assertEquals(0, instance.getBufferedSize());
+        assertEquals(10L, instance.getWrites());
+
+        Map<Integer, Integer> batch = new HashMap<>();
+        for(int i=10;i<35;i++) {
+            batch.put(i, i);
+        }
+        instance.putAll(batch);
+        assertEquals(30, store.size());
+        assertEquals(5, instance.getBufferedSize());
+    }
+
+    /**
+     * Test of get, containsKey, remove and size methods before a flush, of class WriteBehindMap.
+     */
+    @Test
+    public void testGetBeforeFlush() {
+        logger.info("getBeforeFlush");
+        Map<String, Double> store = new HashMap<>();
+        store.put("stored", 1.0);
+        WriteBehindMap<String, Double> instance = new WriteBehindMap<>(store, 100);
+
+        assertNull(instance.put("buffered", 2.0));
+        assertEquals(Double.valueOf(2.0), instance.put("buffered", 3.0)); //the previous value is still buffered
+        assertNull(instance.put("stored", 4.0)); //the underlying map is not read
+
+        assertFalse(store.containsKey("buffered"));
+        assertEquals(Double.valueOf(3.0), instance.get("buffered"));
+        assertEquals(Double.valueOf(4.0), instance.get("stored"));
+        assertTrue(instance.containsKey("buffered"));
+        assertNull(instance.get("missing"));
+        assertFalse(instance.isEmpty());
+
+        assertEquals(Double.valueOf(3.0), instance.remove("buffered"));
+        assertNull(instance.get("buffered"));
+
+        assertEquals(1, instance.size()); //flushes before counting
+        assertEquals(Double.valueOf(4.0), store.get("stored"));
+
+        instance.clear();
+        assertTrue(instance.isEmpty());
+        assertTrue(store.isEmpty());
+    }
+
+    /**
+     * Test of discard method, of class WriteBehindMap.
+     */
+    @Test
+    public void testDiscard() {
+        logger.info("discard");
+        Map<Integer, String> store = new HashMap<>();
+        WriteBehindMap<Integer, String> instance = new WriteBehindMap<>(store, 100);
+
+        instance.put(1, "flushed");
+        instance.flush();
+        instance.put(1, "discarded");
+        instance.put(2, "discarded");
+        instance.discard();
+
+        assertEquals(0, instance.getBufferedSize());
+        assertEquals(1L, instance.getWrites());
+        assertEquals("flushed", instance.get(1));
+        assertNull(instance.get(2));
+    }
+
+    /**
+     * Test of concurrent puts and gets, of class WriteBehindMap.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentPutGet() throws InterruptedException {
+        logger.info("concurrentPutGet");
+        Map<Integer, Integer> store = new ConcurrentHashMap<>();
+        WriteBehindMap<Integer, Integer> instance = new WriteBehindMap<>(store, 16);
+
+        int threads = 4;
+        int keys = 500;
+        int iterations = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for(int t=0;t<threads;t++) {
+            final int offset = t*keys;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for(int it=0;it<iterations;it++) {
+                        for(int k=0;k<keys;k++) {
+                            //every thread owns its keys, so it must always read its last write
+                            instance.put(offset+k, it);
+                            Integer value = instance.get(offset+k);
+                            if(value==null || value!=it) {
+                                throw new AssertionError("Lost write.");
+                            }
+                        }
+                    }
+                }
+                catch(Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(error.get());
+        instance.flush();
+        assertEquals(threads*keys, store.size());
+        for(Integer value : store.values()) {
+            assertEquals(Integer.valueOf(iterations-1), value);
+        }
+    }
+
+    /**
+     * Test of flush method, of class WriteBehindMap, when a value is modified 
+     * in place and put again while it is being flushed.
+     *
+     * @throws InterruptedException
+     */
+    @Test(timeout=10000)
+    public void testPutDuringFlush() throws InterruptedException {
+        logger.info("putDuringFlush");
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        Map<Integer, int[]> store = new ConcurrentHashMap<Integer, int[]>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void putAll(Map<? extends Integer, ? extends int[]> m) {
+                //the values are copied as they would be serialized by a disk-backed map
+                for(Map.Entry<? extends Integer, ? extends int[]> entry : m.entrySet()) {
+                    int[] value = entry.getValue();
+                    put(entry.getKey(), value.clone());
+                }
+                written.countDown();
+                try {
+                    resume.await();
+                }
+                catch(InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        WriteBehindMap<Integer, int[]> instance = new WriteBehindMap<>(store, 16);
+        instance.put(1, new int[]{1});
+
+        Thread flusher = new Thread(instance::flush);
+        flusher.start();
+        written.await();
+
+        //the flush has written the old state; the same object is modified and put again
+        int[] value = instance.get(1);
+        value[0] = 2;
+        instance.put(1, value);
+        resume.countDown();
+        flusher.join();
+
+        assertEquals(1, instance.getBufferedSize());
+        assertEquals(2, instance.get(1)[0]);
+
+        instance.flush();
+        assertEquals(0, instance.getBufferedSize());
+        assertEquals(2, store.get(1)[0]);
+        assertEquals(2, instance.get(1)[0]);
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for OffHeapConnector.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class OffHeapConnectorTest extends AbstractTest {
+
+    /**
+     * Object which holds Big Maps, like the model parameters of the algorithms.
+     */
+    private static class Parameters implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Map<Integer, String> sortedMap;
+
+        private Map<String, Double> inMemoryMap;
+
+        private int n;
+    }
+
+    /**
+     * Test of saveObject and loadObject methods, of class OffHeapConnector.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSaveLoad() throws Exception {
+        logger.info("saveLoad");
+
+        Path outputFolder = Files.createTempDirectory("datumbox");
+        for(boolean compressed : new boolean[]{false, true}) {
+            OffHeapConfiguration dbConf = new OffHeapConfiguration();
+            dbConf.setOutputFolder(outputFolder.toString());
+            dbConf.setCompressed(compressed);
+            dbConf.setHybridized(true);
+            dbConf.setSerializerClass(compressed?CompressedJavaSerializer.class:JavaSerializer.class);
+
+            DatabaseConnector instance = dbConf.getConnector("OffHeapConnectorTest");
+            Parameters parameters = new Parameters();
+            parameters.sortedMap = instance.getBigMap("sortedMap", MapType.TREEMAP, StorageHint.IN_DISK, true, false);
+            parameters.inMemoryMap = instance.getBigMap("inMemoryMap", MapType.HASHMAP, StorageHint.IN_MEMORY, true, false);
+            assertTrue(parameters.sortedMap instanceof OffHeapMap);
+            assertTrue(parameters.inMemoryMap instanceof ConcurrentHashMap); //hybridized
+            for(int i=0;i<1000;i++) {
+                parameters.sortedMap.put(999-i, "value" + i);
+                parameters.inMemoryMap.put("k" + i, (double)i);
+            }
+            parameters.n = 1000;
+            instance.flush();
+            instance.saveObject("parameters", parameters);
+            instance.close();
+            assertTrue(instance.isClosed());
+
+            instance = dbConf.getConnector("OffHeapConnectorTest");
+            Parameters result = instance.loadObject("parameters", Parameters.class);
+            assertEquals(1000, result.n);
+            assertTrue(result.sortedMap instanceof OffHeapMap);
+            assertEquals(parameters.sortedMap, result.sortedMap);
+            assertEquals(parameters.inMemoryMap, result.inMemoryMap);
+            assertEquals(0, result.sortedMap.keySet().iterator().next().intValue());
+            assertEquals("value999", result.sortedMap.get(0));
+
+            //the loaded maps are still writable
+            result.sortedMap.put(-1, "new");
+            assertEquals(-1, new ArrayList<>(result.sortedMap.keySet()).get(0).intValue());
+
+            instance.dropBigMap("sortedMap", result.sortedMap);
+            assertTrue(result.sortedMap.isEmpty());
+
+            instance.clear();
+            assertNull(instance.loadObject("parameters", Parameters.class));
+            instance.close();
+        }
+        assertFalse(Files.exists(outputFolder.resolve("OffHeapConnectorTest")));
+        Files.delete(outputFolder);
+    }
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.common.persistentstorage.offheap;
+
+import com.datumbox.framework.common.utilities.DeepCopy;
+import com.datumbox.framework.common.utilities.RandomGenerator;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for OffHeapMap.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class OffHeapMapTest extends AbstractTest {
+
+    /**
+     * Test of put, get and remove methods, of class OffHeapMap.
+     */
+    @Test
+    public void testPutGetRemove() {
+        logger.info("putGetRemove");
+        OffHeapMap<String, Object> instance = new OffHeapMap<>(false, 4, 1<<16, new JavaSerializer());
+
+        assertNull(instance.put("a", 1.0));
+        assertNull(instance.put("b", "text"));
+        assertNull(instance.put("a", new ArrayList<>(Arrays.asList(1, 2, 3)))); //the previous value is not returned
+        char[] large = new char[10000];
+        Arrays.fill(large, 'x');
+        instance.put("b", new String(large)); //moves to a larger block
+
+        assertEquals(2, instance.size());
+        assertTrue(instance.containsKey("a"));
+        assertEquals(Arrays.asList(1, 2, 3), instance.get("a"));
+        assertEquals(new String(large), instance.get("b"));
+        assertNull(instance.get("c"));
+
+        assertEquals(Arrays.asList(1, 2, 3), instance.remove("a"));
+        assertNull(instance.remove("a"));
+        assertFalse(instance.containsKey("a"));
+        assertEquals(1, instance.size());
+
+        Iterator<Map.Entry<String, Object>> it = instance.entrySet().iterator();
+        assertEquals("b", it.next().getKey());
+        it.remove();
+        assertTrue(instance.isEmpty());
+    }
+
+    /**
+     * Test of the ordering of the keys when the map is sorted.
+     */
+    @Test
+    public void testTreeMapOrdering() {
+        logger.info("treeMapOrdering");
+        OffHeapMap<Integer, Double> instance = new OffHeapMap<>(true, 1, 1<<16, new JavaSerializer());
+        TreeMap<Integer, Double> expResult = new TreeMap<>();
+
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        for(int i=0;i<1000;i++) {
+            int key = rnd.nextInt(100000)-50000;
+            double value = rnd.nextDouble();
+            instance.put(key, value);
+            expResult.put(key, value);
+        }
+
+        assertEquals(new ArrayList<>(expResult.keySet()), new ArrayList<>(instance.keySet()));
+        assertEquals(new ArrayList<>(expResult.values()), new ArrayList<>(instance.values()));
+        assertEquals(expResult, instance);
+    }
+
+    /**
+     * Test of concurrent puts and gets, of class OffHeapMap.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testConcurrentPutGet() throws InterruptedException {
+        logger.info("concurrentPutGet");
+        OffHeapMap<Integer, double[]> instance = new OffHeapMap<>(false, 16, 1<<16, new JavaSerializer());
+
+        int threads = 4;
+        int keys = 200;
+        int iterations = 20;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for(int t=0;t<threads;t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for(int it=0;it<iterations;it++) {
+                        for(int k=0;k<keys;k++) {
+                            //all the threads write the same keys; every value is consistent with its key
+                            instance.put(k, new double[]{k, k, k, k});
+                            double[] value = instance.get((k*7+it)%keys);
+                            if(value!=null && (value[0]!=value[3] || value[0]!=(k*7+it)%keys)) {
+                                throw new AssertionError("Corrupted value.");
+                            }
+                        }
+                    }
+                }
+                catch(Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(keys, instance.size());
+        for(int k=0;k<keys;k++) {
+            assertArrayEquals(new double[]{k, k, k, k}, instance.get(k), 0.0);
+        }
+    }
+
+    /**
+     * Test of the growth of the segments of the direct memory.
+     */
+    @Test
+    public void testSegmentGrowth() {
+        logger.info("segmentGrowth");
+        OffHeapMap<Integer, byte[]> instance = new OffHeapMap<>(false, 1, 1<<16, new JavaSerializer());
+
+        for(int i=0;i<2000;i++) {
+            byte[] value = new byte[100];
+            Arrays.fill(value, (byte)i);
+            instance.put(i, value);
+        }
+        long reserved = instance.getReservedBytes();
+        assertTrue(reserved>(1<<16)); //more than one segment was needed
+
+        //overwriting with values of the same size recycles the blocks; only the first overwrite needs a new block
+        for(int i=0;i<2000;i++) {
+            byte[] value = new byte[100];
+            Arrays.fill(value, (byte)(i+1));
+            instance.put(i, value);
+        }
+        assertTrue(instance.getReservedBytes()<=reserved+(1<<16));
+        reserved = instance.getReservedBytes();
+
+        //values larger than the segments get their own segment
+        byte[] large = new byte[1<<17];
+        Arrays.fill(large, (byte)7);
+        instance.put(-1, large);
+        assertTrue(instance.getReservedBytes()>=reserved+large.length);
+
+        assertArrayEquals(large, instance.get(-1));
+        for(int i=0;i<2000;i++) {
+            byte[] value = new byte[100];
+            Arrays.fill(value, (byte)(i+1));
+            assertArrayEquals(value, instance.get(i));
+        }
+    }
+
+    /**
+     * Test of clear method, of class OffHeapMap.
+     */
+    @Test
+    public void testClear() {
+        logger.info("clear");
+        OffHeapMap<Integer, String> instance = new OffHeapMap<>(true, 4, 1<<16, new CompressedJavaSerializer());
+
+        for(int i=0;i<5000;i++) {
+            instance.put(i, "value" + i);
+        }
+        assertTrue(instance.getReservedBytes()>0);
+
+        instance.clear();
+        assertEquals(0, instance.size());
+        assertEquals(0L, instance.getReservedBytes());
+        assertNull(instance.get(1));
+
+        instance.put(1, "again");
+        assertEquals("again", instance.get(1));
+    }
+
+    /**
+     * Test of the Java serialization, of class OffHeapMap.
+     */
+    @Test
+    public void testSerialization() {
+        logger.info("serialization");
+        OffHeapMap<String, Integer> instance = new OffHeapMap<>(true, 4, 1<<16, new CompressedJavaSerializer());
+        Map<String, Integer> expResult = new HashMap<>();
+        for(int i=0;i<100;i++) {
+            instance.put("k" + i, i);
+            expResult.put("k" + i, i);
+        }
+
+        OffHeapMap<String, Integer> result = DeepCopy.clone(instance);
+        assertEquals(expResult, result);
+        assertEquals("k0", result.keySet().iterator().next()); //still sorted
+    }
+
+}
@@ -16,7 +16,6 @@
 package com.datumbox.framework.core.machinelearning.classification;
 
 import com.datumbox.framework.common.Configuration;
-import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
@@ -24,6 +23,7 @@ import com.datumbox.framework.common.dataobjects.TypeInference;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.algorithms.AbstractNaiveBayes;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.FeatureClassMatrix;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 
@@ -55,6 +55,12 @@ public class BernoulliNaiveBayes extends AbstractNaiveBayes<BernoulliNaiveBayes.
             super(dbc);
         }
         
+        /** {@inheritDoc} */
+        @Override
+        protected void setLogLikelihoods(FeatureClassMatrix logLikelihoods) {
+            super.setLogLikelihoods(logLikelihoods);
+        }
+        
         /**
          * Getter for the sumOfLog1minusProb coefficients.
          * 
@@ -100,60 +106,43 @@ public class BernoulliNaiveBayes extends AbstractNaiveBayes<BernoulliNaiveBayes.
     @Override
     public PredictParallelizable.Prediction _predictRecord(Record r) {
         ModelParameters modelParameters = kb().getModelParameters();
-        Map<List<Object>, Double> logLikelihoods = modelParameters.getLogLikelihoods();
+        FeatureClassMatrix likelihoods = modelParameters.getLogLikelihoods();
         Map<Object, Double> logPriors = modelParameters.getLogPriors();
-        Set<Object> classesSet = modelParameters.getClasses();
         Map<Object, Double> sumOfLog1minusProb = modelParameters.getSumOfLog1minusProb();
+        int c = likelihoods.getC();
         
-        Object someClass = classesSet.iterator().next();
-        
-        
-        //Build new map here! clear the prediction scores with the scores of the classes
-        AssociativeArray predictionScores = new AssociativeArray(new HashMap<>(logPriors));
-
         //in order to avoid looping throug all available features for each record, we have already calculated the Sum of log(1-prob). So we know the score of a record that has no feature activated. We add this score on the initial score below:
-        for(Map.Entry<Object, Double> entry : sumOfLog1minusProb.entrySet()) {
-            Object theClass = entry.getKey();
-            Double value = entry.getValue();
-            Double previousValue = predictionScores.getDouble(theClass);
-            predictionScores.put(theClass, previousValue+value);
+        double[] scores = new double[c];
+        for(int classId=0;classId<c;classId++) {
+            Object theClass = likelihoods.getClassById(classId);
+            scores[classId] = logPriors.get(theClass) + sumOfLog1minusProb.get(theClass);
         }
 
 
         //Then we loop through all the active features of the record, we add the log(prob) and we subtract the log(1-prob)
         for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-            Object feature = entry.getKey();
-
-
             //EVERY feature within our dictionary has a value for EVERY class
-            //So if the feature has no value for one random class (someClass has 
-            //no particular significance), then it will not have for any class
-            //and thus the feature is not in the dictionary and can be ignored.
-            if(!logLikelihoods.containsKey(Arrays.<Object>asList(feature, someClass))) {
+            //so if the feature is not in the dictionary it can be ignored.
+            int featureId = likelihoods.getFeatureId(entry.getKey());
+            if(featureId<0) {
                 continue;
             }
 
-            //extract the feature scores for each class for the particular feature
-            AssociativeArray classLogScoresForThisFeature = new AssociativeArray(); 
-            for(Object theClass : classesSet) {
-                Double logScore = logLikelihoods.get(Arrays.<Object>asList(feature, theClass));
-                classLogScoresForThisFeature.put(theClass, logScore);
-            }
-
-
             Double occurrences= TypeInference.toDouble(entry.getValue());
             if(occurrences==null || occurrences==0.0) { 
                 continue;
             }
             //no need to specifically binarize the occurrences. we will not multiply the score by it
 
-            for(Map.Entry<Object, Object> entry2 : classLogScoresForThisFeature.entrySet()) {
-                Object theClass = entry2.getKey();
-                Double probability = TypeInference.toDouble(entry2.getValue());
-                Double previousValue = predictionScores.getDouble(theClass);
-                predictionScores.put(theClass, previousValue + Math.log(probability)-Math.log(1.0-probability));
+            for(int classId=0;classId<c;classId++) {
+                double probability = likelihoods.get(featureId, classId);
+                scores[classId] += Math.log(probability)-Math.log(1.0-probability);
             }
-            //classLogScoresForThisFeature=null;
+        }
+        
+        AssociativeArray predictionScores = new AssociativeArray();
+        for(int classId=0;classId<c;classId++) {
+            predictionScores.put(likelihoods.getClassById(classId), scores[classId]);
         }
 
         Object predictedClass=getSelectedClassFromClassScores(predictionScores);
@@ -166,105 +155,50 @@ public class BernoulliNaiveBayes extends AbstractNaiveBayes<BernoulliNaiveBayes.
     /** {@inheritDoc} */
     @Override
     protected void _fit(Dataframe trainingData) {
-        ModelParameters modelParameters = kb().getModelParameters();
-        int n = modelParameters.getN();
-        int d = modelParameters.getD();
-        
         kb().getTrainingParameters().setMultiProbabilityWeighted(false);
         
-        
-        Map<List<Object>, Double> likelihoods = modelParameters.getLogLikelihoods();
-        Map<Object, Double> logPriors = modelParameters.getLogPriors();
-        Set<Object> classesSet = modelParameters.getClasses();
-        Map<Object, Double> sumOfLog1minusProb = modelParameters.getSumOfLog1minusProb();
-        
-        
-        //calculate first statistics about the classes
-        Map<Object, Integer> totalFeatureOccurrencesForEachClass = new HashMap<>();
-        for(Record r : trainingData) {
-            Object theClass=r.getY();
-            
-            if(classesSet.add(theClass)) { //is it new class? add it
-                logPriors.put(theClass, 1.0);  
-                totalFeatureOccurrencesForEachClass.put(theClass, 0);
-                sumOfLog1minusProb.put(theClass, 0.0);
-            }
-            else { //already exists? increase counter
-                logPriors.put(theClass,logPriors.get(theClass)+1.0);
-            }
-        }
-        
-        //Loop through all the classes to ensure that the feature-class combination is initialized for ALL the classes
-        //The math REQUIRE us to have scores for all classes to make the probabilities comparable.
-        /*
-            Implementation note:
-            The code below uses the metadata from the Dataframe to avoid looping through all the data. 
-            This means that if the metadata are stale (contain more columns than the actual data due to 
-            updates/removes) we will initialize more parameters here. Nevertheless this should not have 
-            any effects on the results of the algorithm since the scores will be the same in all classes
-            and it will be taken care by the normalization.
-        */
-        streamExecutor.forEach(StreamMethods.stream(trainingData.getXDataTypes().keySet().stream(), isParallelized()), feature -> {
-            for(Object theClass : classesSet) {
-                List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                likelihoods.put(featureClassTuple, 0.0); //the key unique across threads and the map is concurrent
-            }
-        });
-        
-        
-        //now calculate the statistics of features
-        streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> {
-            Object theClass = r.getY();
-            
-            //store the occurrances of the features
-            int sumOfOccurrences = 0;
-            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                Object feature = entry.getKey();
-                Double occurrences=TypeInference.toDouble(entry.getValue());
-                
-                if(occurrences!= null && occurrences>0.0) {
-                    //The below block of code clips occurrences to 1
-                    List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass); 
-                    likelihoods.put(featureClassTuple, likelihoods.get(featureClassTuple)+1.0); //each thread updates a unique key and the map is cuncurrent
-                    
-                    sumOfOccurrences++;
-                }
-            }
-            
-            synchronized(totalFeatureOccurrencesForEachClass) {
-                totalFeatureOccurrencesForEachClass.put(theClass, totalFeatureOccurrencesForEachClass.get(theClass)+sumOfOccurrences);
-            }
-            
-        });
+        super._fit(trainingData);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void estimateParameters() {
+        ModelParameters modelParameters = kb().getModelParameters();
+        int n = modelParameters.getN();
         
         //calculate prior log probabilities
-        for(Map.Entry<Object, Double> entry : logPriors.entrySet()) {
-            Object theClass = entry.getKey();
-            Double count = entry.getValue();
-            
-            //updated log priors
-            logPriors.put(theClass, Math.log(count/n));
+        Map<Object, Double> logPriors = modelParameters.getLogPriors();
+        for(Map.Entry<Object, Double> entry : modelParameters.getClassCounts().entrySet()) {
+            logPriors.put(entry.getKey(), Math.log(entry.getValue()/n));
         }
         
-        //update log likelihood
-        for(Object theClass : classesSet) {
-            double sumLog1minusP = streamExecutor.sum(StreamMethods.stream(trainingData.getXDataTypes().keySet().stream(), isParallelized()).mapToDouble(feature -> {
-                List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass); 
-                Double occurrences = likelihoods.get(featureClassTuple);
+        //update the likelihoods
+        FeatureClassMatrix likelihoods = modelParameters.getFeatureCounts().copy();
+        double[] totalFeatureOccurrencesForEachClass = getTotalFeatureOccurrencesForEachClass(likelihoods);
+        double[] weights = likelihoods.getWeights();
+        int c = likelihoods.getC();
+        int d = likelihoods.getD(); // the d is also known in NLP problems as the Vocabulary size. 
+        double[] sumLog1minusP = new double[c];
+        for(int featureId=0;featureId<d;featureId++) {
+            int offset = featureId*c;
+            for(int classId=0;classId<c;classId++) {
+                double occurrences = weights[offset+classId];
 
                 //We perform laplace smoothing (also known as add-1)
-                Double smoothedProbability = (occurrences+1.0)/(totalFeatureOccurrencesForEachClass.get(theClass)+d); // the d is also known in NLP problems as the Vocabulary size. 
+                double smoothedProbability = (occurrences+1.0)/(totalFeatureOccurrencesForEachClass[classId]+d); 
 
-                likelihoods.put(featureClassTuple, smoothedProbability);
+                weights[offset+classId] = smoothedProbability;
 
-                double log1minusP = Math.log( 1.0-smoothedProbability );
-                
-                return log1minusP;
-            }));
-            
-            sumOfLog1minusProb.put(theClass, sumOfLog1minusProb.get(theClass) + sumLog1minusP); 
+                sumLog1minusP[classId] += Math.log( 1.0-smoothedProbability );
+            }
+        }
+        
+        Map<Object, Double> sumOfLog1minusProb = modelParameters.getSumOfLog1minusProb();
+        for(int classId=0;classId<c;classId++) {
+            sumOfLog1minusProb.put(likelihoods.getClassById(classId), sumLog1minusP[classId]); 
         }
         
-        //Drop the temporary Collection
+        likelihoods.compact();
+        modelParameters.setLogLikelihoods(likelihoods);
     }
 }
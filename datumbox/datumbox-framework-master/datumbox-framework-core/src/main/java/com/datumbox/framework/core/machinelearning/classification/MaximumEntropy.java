@@ -22,22 +22,19 @@ import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.dataobjects.TypeInference;
-import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClassifier;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.FeatureClassMatrix;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.ClassifierValidator;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -57,8 +54,7 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
     public static class ModelParameters extends AbstractClassifier.AbstractModelParameters {
         private static final long serialVersionUID = 1L;
         
-        @BigMap(mapType=MapType.HASHMAP, storageHint=StorageHint.IN_MEMORY, concurrent=true)
-        private Map<List<Object>, Double> lambdas; //the lambda parameters of the model
+        private FeatureClassMatrix lambdas; //the lambda parameters of the model
         
         /** 
          * @param dbc
@@ -73,7 +69,7 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
          * 
          * @return 
          */
-        public Map<List<Object>, Double> getLambdas() {
+        public FeatureClassMatrix getLambdas() {
             return lambdas;
         }
         
@@ -82,7 +78,7 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
          * 
          * @param lambdas 
          */
-        protected void setLambdas(Map<List<Object>, Double> lambdas) {
+        protected void setLambdas(FeatureClassMatrix lambdas) {
             this.lambdas = lambdas;
         }
         
@@ -163,11 +159,13 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
     /** {@inheritDoc} */
     @Override
     public Prediction _predictRecord(Record r) {
-        Set<Object> classesSet = kb().getModelParameters().getClasses();
+        FeatureClassMatrix lambdas = kb().getModelParameters().getLambdas();
+        
+        double[] scores = calculateClassScores(r.getX(), lambdas);
         
         AssociativeArray predictionScores = new AssociativeArray();
-        for(Object theClass : classesSet) {
-            predictionScores.put(theClass, calculateClassScore(r.getX(), theClass));
+        for(int classId=0;classId<scores.length;classId++) {
+            predictionScores.put(lambdas.getClassById(classId), scores[classId]);
         }
         
         Object predictedClass=getSelectedClassFromClassScores(predictionScores);
@@ -184,7 +182,6 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
         int n = modelParameters.getN();
         
         
-        Map<List<Object>, Double> lambdas = modelParameters.getLambdas();
         Set<Object> classesSet = modelParameters.getClasses();
         double Cmax = 0.0; //max number of activated features in the dataset. Required from the IIS algorithm
         
@@ -205,36 +202,32 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
             
         }
         
-        //create a temporary map for the observed probabilities in training set
-        DatabaseConnector dbc = kb().getDbc();
-        Map<List<Object>, Double> tmp_EpFj_observed = dbc.getBigMap("tmp_EpFj_observed", MapType.HASHMAP, StorageHint.IN_MEMORY, true, true);
-        
-        //Loop through all the classes to ensure that the feature-class combination is initialized for ALL the classes
+        //Intern all the features to ensure that the feature-class combination is initialized for ALL the classes
         //The math REQUIRE us to have scores for all classes to make the probabilities comparable.
-        streamExecutor.forEach(StreamMethods.stream(trainingData.getXDataTypes().keySet().stream(), isParallelized()), feature -> {
-            for(Object theClass : classesSet) {
-                List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                tmp_EpFj_observed.put(featureClassTuple, 0.0);
-                lambdas.put(featureClassTuple, 0.0);
-            }
-        });
+        FeatureClassMatrix lambdas = new FeatureClassMatrix(classesSet);
+        for(Object feature : trainingData.getXDataTypes().keySet()) {
+            lambdas.addFeature(feature);
+        }
+        modelParameters.setLambdas(lambdas);
         
+        int c = lambdas.getC();
+        
+        //create a temporary array for the observed probabilities in training set
+        double[] EpFj_observed = new double[lambdas.getD()*c];
     
         double increment = 1.0/n; //this is done for speed reasons. We don't want to repeat the same division over and over
         
         //then we calculate the observed probabilities in training set
         streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> {
-            Object theClass = r.getY();
+            int classId = lambdas.getClassId(r.getY());
             //store the occurrances of the features
             for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
                 Double occurrences=TypeInference.toDouble(entry.getValue());
                 if (occurrences!=null && occurrences>0.0) {
-                    Object feature = entry.getKey();
-
                     //find the class of this particular example
-                    List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                    synchronized(tmp_EpFj_observed) {
-                        tmp_EpFj_observed.put(featureClassTuple, tmp_EpFj_observed.get(featureClassTuple) + increment);
+                    int index = lambdas.getFeatureId(entry.getKey())*c+classId;
+                    synchronized(EpFj_observed) {
+                        EpFj_observed[index] += increment;
                     }
                 }
             }
@@ -243,76 +236,72 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
         
         
         //IIS algorithm
-        IIS(trainingData, tmp_EpFj_observed, Cmax);
+        IIS(trainingData, EpFj_observed, Cmax);
         
-        
-        //Drop the temporary Collection
-        dbc.dropBigMap("tmp_EpFj_observed", tmp_EpFj_observed);
+        lambdas.compact();
     }
     
-    private void IIS(Dataframe trainingData, Map<List<Object>, Double> EpFj_observed, double Cmax) {
+    private void IIS(Dataframe trainingData, double[] EpFj_observed, double Cmax) {
         
         ModelParameters modelParameters = kb().getModelParameters();
 
         int totalIterations = kb().getTrainingParameters().getTotalIterations();
-        Set<Object> classesSet = modelParameters.getClasses();
-        Map<List<Object>, Double> lambdas = modelParameters.getLambdas();
+        FeatureClassMatrix lambdas = modelParameters.getLambdas();
+        int c = lambdas.getC();
+        int size = EpFj_observed.length;
         
         int n = modelParameters.getN();
         
-        DatabaseConnector dbc = kb().getDbc();
         for(int iteration=0;iteration<totalIterations;++iteration) {
             
             logger.debug("Iteration {}", iteration);
             
-            Map<List<Object>, Double> tmp_EpFj_model = dbc.getBigMap("tmp_EpFj_model", MapType.HASHMAP, StorageHint.IN_MEMORY, false, true);
+            double[] EpFj_model = new double[size];
             
             //calculate the model probabilities
             streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> { //slow parallel loop
                 
-                //build a map with the scores of the record for each class
-                AssociativeArray classScores = new AssociativeArray();
+                //build an array with the scores of the record for each class
                 AssociativeArray xData = r.getX();
-                for(Object theClass : classesSet) {
-                    double score = calculateClassScore(xData, theClass);
-                    classScores.put(theClass, score);
-                }
-                
-                Descriptives.normalizeExp(classScores);
+                double[] classScores = calculateClassScores(xData, lambdas);
                 
+                //normalize the scores in the exponential space
+                double max = Double.NEGATIVE_INFINITY;
+                for(double score : classScores) {
+                    max = Math.max(max, score);
+                }
+                double sum = 0.0;
+                for(int classId=0;classId<c;classId++) {
+                    classScores[classId] = Math.exp(classScores[classId]-max);
+                    sum += classScores[classId];
+                }
                 
                 //It is the average probability across all documents for a specific characteristic
-                for(Map.Entry<Object, Object> entry : classScores.entrySet()) {
-                    Object theClass = entry.getKey();
-                    Double score = TypeInference.toDouble(entry.getValue());
-
-                    double probabilityFraction = score/n;
+                for(int classId=0;classId<c;classId++) {
+                    double probabilityFraction = classScores[classId]/sum/n;
                     
-                    synchronized(tmp_EpFj_model) {
-                        for(Map.Entry<Object, Object> entry2 : r.getX().entrySet()) {
+                    synchronized(EpFj_model) {
+                        for(Map.Entry<Object, Object> entry2 : xData.entrySet()) {
                             Double occurrences=TypeInference.toDouble(entry2.getValue());
 
                             if(occurrences==null || occurrences==0.0) {
                                 continue;
                             }
-                            Object feature = entry2.getKey();
-                            List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
+                            int featureId = lambdas.getFeatureId(entry2.getKey());
 
-                            tmp_EpFj_model.put(featureClassTuple, tmp_EpFj_model.getOrDefault(featureClassTuple, 0.0) + probabilityFraction);           
+                            EpFj_model[featureId*c+classId] += probabilityFraction;           
                         }
                     }
                 }
-                //classScores=null;
                 
             });
             
-            AtomicBoolean infiniteValuesDetected = new AtomicBoolean(false);
+            double[] weights = lambdas.getWeights();
+            boolean infiniteValuesDetected = false;
             //Now we have the model probabilities. We will use it to estimate the Deltas and finally update the lamdas
-            streamExecutor.forEach(StreamMethods.stream(tmp_EpFj_model.entrySet().stream(), isParallelized()), featureClassCounts -> {
-                List<Object> tp = featureClassCounts.getKey();
-                
-                Double EpFj_observed_value = EpFj_observed.get(tp);
-                Double EpFj_model_value = featureClassCounts.getValue();    
+            for(int i=0;i<size;i++) {
+                double EpFj_observed_value = EpFj_observed[i];
+                double EpFj_model_value = EpFj_model[i];
                 
                 
                 if(Math.abs(EpFj_observed_value-EpFj_model_value)<=1e-8) {
@@ -344,8 +333,8 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
                     //non-negative infinite weight in the dataset. This is something
                     //similar to the plus1 smoothing.
                     
-                    lambdas.put(tp, Double.NEGATIVE_INFINITY);
-                    infiniteValuesDetected.set(true);
+                    weights[i] = Double.NEGATIVE_INFINITY;
+                    infiniteValuesDetected = true;
                 }
                 else if(EpFj_model_value==0.0) {
                     //the model did not assign any positive probability for this feature in this class
@@ -365,51 +354,44 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
                     //weight.
                     
                     
-                    lambdas.put(tp, Double.POSITIVE_INFINITY);
-                    infiniteValuesDetected.set(true);
+                    weights[i] = Double.POSITIVE_INFINITY;
+                    infiniteValuesDetected = true;
                 }
                 else {
                     //the formula below can't produce a +inf or -inf value
                     double deltaJ = Math.log(EpFj_observed_value/EpFj_model_value)/Cmax;
-                    double newValue = lambdas.get(tp) + deltaJ;
-                    lambdas.put(tp, newValue); //update lamdas by delta
+                    weights[i] += deltaJ; //update lamdas by delta
                 }
-            });
-            
-            
-            if(infiniteValuesDetected.get()) {
+            }
             
             
-                Double minimumNonInfiniteLambdaWeight = streamExecutor.min(StreamMethods.stream(lambdas.values().stream(), isParallelized()).filter(v -> Double.isFinite(v)), Double::compare).get();
-                Double maximumNonInfiniteLambdaWeight = streamExecutor.max(StreamMethods.stream(lambdas.values().stream(), isParallelized()).filter(v -> Double.isFinite(v)), Double::compare).get();
+            if(infiniteValuesDetected) {
+                double minimumNonInfiniteLambdaWeight = Double.POSITIVE_INFINITY;
+                double maximumNonInfiniteLambdaWeight = Double.NEGATIVE_INFINITY;
+                for(int i=0;i<size;i++) {
+                    if(Double.isFinite(weights[i])) {
+                        minimumNonInfiniteLambdaWeight = Math.min(minimumNonInfiniteLambdaWeight, weights[i]);
+                        maximumNonInfiniteLambdaWeight = Math.max(maximumNonInfiniteLambdaWeight, weights[i]);
+                    }
+                }
                 
-                streamExecutor.forEach(StreamMethods.stream(lambdas.entrySet().stream(), isParallelized()), e -> {
-                    List<Object> featureClass = e.getKey();
-                    Double value = e.getValue();
-                    
-                    if(Double.isInfinite(value)) {
-                        if(value<0.0) { //value==Double.NEGATIVE_INFINITY
-                            lambdas.put(featureClass, minimumNonInfiniteLambdaWeight);
+                for(int i=0;i<size;i++) {
+                    if(Double.isInfinite(weights[i])) {
+                        if(weights[i]<0.0) { //value==Double.NEGATIVE_INFINITY
+                            weights[i] = minimumNonInfiniteLambdaWeight;
                         }
                         else { //value==Double.POSITIVE_INFINITY
-                            lambdas.put(featureClass, maximumNonInfiniteLambdaWeight);
+                            weights[i] = maximumNonInfiniteLambdaWeight;
                         }
                     }
-                });
+                }
             }
-            
-            
-            
-            //Drop the temporary Collection
-            dbc.dropBigMap("tmp_EpFj_model", tmp_EpFj_model);
         }
         
     }
     
-    private Double calculateClassScore(AssociativeArray x, Object theClass) {
-        double score = 0;
-        
-        Map<List<Object>, Double> lambdas = kb().getModelParameters().getLambdas();
+    private double[] calculateClassScores(AssociativeArray x, FeatureClassMatrix lambdas) {
+        double[] scores = new double[lambdas.getC()];
         
         for(Map.Entry<Object, Object> entry : x.entrySet()) {
             Double value = TypeInference.toDouble(entry.getValue());
@@ -418,16 +400,13 @@ public class MaximumEntropy extends AbstractClassifier<MaximumEntropy.ModelParam
             }
             //note that we will not use the value any more. MaxEntropy classifier is binarized.
             
-            Object feature = entry.getKey();
-            List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-            
-            Double lambdaWeight = lambdas.get(featureClassTuple);
-            if(lambdaWeight!=null) {//ensure that the feature is in the dictionary
-                score+=lambdaWeight;
+            int featureId = lambdas.getFeatureId(entry.getKey());
+            if(featureId>=0) {//ensure that the feature is in the dictionary
+                lambdas.addRowTo(featureId, 1.0, scores);
             }
         }
         
-        return score;
+        return scores;
     }
 
 }
@@ -31,8 +31,10 @@ import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.Abs
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.OrdinalRegressionValidator;
+import com.datumbox.framework.core.utilities.optimization.MiniBatchGradientDescent;
 import com.datumbox.framework.core.utilities.regularization.L2Regularizer;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -123,6 +125,9 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         private int totalIterations=100; 
         private double learningRate=0.1;
         private double l2=0.0;
+        private int batchSize=0;
+        private MiniBatchGradientDescent.UpdateRule updateRule=MiniBatchGradientDescent.UpdateRule.PLAIN;
+        private double momentum=0.9;
 
         /**
          * Getter for the total iterations of the training process.
@@ -178,6 +183,66 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         public void setL2(double l2) {
             this.l2 = l2;
         }
+
+        /**
+         * Getter for the size of the mini-batches. Zero (the default) or a 
+         * size larger than the training data means that full batch gradient 
+         * descent is used.
+         *
+         * @return
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Setter for the size of the mini-batches. When it is positive, the 
+         * records are shuffled on every iteration and the weights are updated
+         * after every mini-batch.
+         *
+         * @param batchSize
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Getter for the rule which is used to update the weights.
+         *
+         * @return
+         */
+        public MiniBatchGradientDescent.UpdateRule getUpdateRule() {
+            return updateRule;
+        }
+
+        /**
+         * Setter for the rule which is used to update the weights.
+         *
+         * @param updateRule
+         */
+        public void setUpdateRule(MiniBatchGradientDescent.UpdateRule updateRule) {
+            this.updateRule = updateRule;
+        }
+
+        /**
+         * Getter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @return
+         */
+        public double getMomentum() {
+            return momentum;
+        }
+
+        /**
+         * Setter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @param momentum
+         */
+        public void setMomentum(double momentum) {
+            this.momentum = momentum;
+        }
     } 
     
     /** {@inheritDoc} */
@@ -302,52 +367,55 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         Set<Object> classesSet = modelParameters.getClasses();
         classesSet.addAll(sortedClasses);
         
+        //we intern the features and the classes into ids. The parameters array stores the weights of the features followed by the thitas of the classes.
+        Map<Object, Integer> featureIds = new HashMap<>();
         for(Object feature: trainingData.getXDataTypes().keySet()) {
-            weights.put(feature, 0.0);
-        }        
-        
+            featureIds.putIfAbsent(feature, featureIds.size());
+        }
+        int d = featureIds.size();
+        Object[] classes = classesSet.toArray();
+        int c = classes.length;
         
-        //mapping between the thita and the exact previous thita value
-        Map<Object, Object> previousThitaMapping = getPreviousThitaMappings();
+        double[] parameters = new double[d+c];
+        for(int classId=0;classId<c;classId++) {
+            parameters[d+classId] = thitas.get(classes[classId]);
+        }
         
         double minError = Double.POSITIVE_INFINITY;
         
         double learningRate = trainingParameters.getLearningRate();
         int totalIterations = trainingParameters.getTotalIterations();
-        DatabaseConnector dbc = kb().getDbc();
+        MiniBatchGradientDescent optimizer = new MiniBatchGradientDescent(trainingParameters.getUpdateRule(), trainingParameters.getMomentum(), streamExecutor, isParallelized());
         for(int iteration=0;iteration<totalIterations;++iteration) {
             
             logger.debug("Iteration {}", iteration);
             
-            Map<Object, Double> tmp_newThitas = new HashMap<>();
+            double[] newParameters = Arrays.copyOf(parameters, parameters.length);
             
-            Map<Object, Double> tmp_newWeights = dbc.getBigMap("tmp_newWeights", MapType.HASHMAP, StorageHint.IN_MEMORY, false, true);
+            gradientDescent(trainingData, featureIds, classes, newParameters, learningRate, optimizer);
             
-            tmp_newThitas.putAll(thitas);
-            tmp_newWeights.putAll(weights);
-            batchGradientDescent(trainingData, previousThitaMapping, tmp_newWeights, tmp_newThitas, learningRate);
-            
-            double newError = calculateError(trainingData, previousThitaMapping, tmp_newWeights, tmp_newThitas);
+            double newError = calculateError(trainingData, featureIds, classes, newParameters);
             
             //bold driver
             if(newError>minError) {
                 learningRate/=2.0;
+                optimizer.reset();
             }
             else {
                 learningRate*=1.05;
                 minError=newError;
                 
-                //keep the new weights
-                weights.clear();
-                weights.putAll(tmp_newWeights);
-                
-                //keep the new thitas
-                thitas.clear();
-                thitas.putAll(tmp_newThitas);
+                //keep the new weights and thitas
+                parameters = newParameters;
             }
-            
-            //Drop the temporary Collections
-            dbc.dropBigMap("tmp_newWeights", tmp_newWeights);
+        }
+        
+        //store the weights and the thitas of the model
+        for(Map.Entry<Object, Integer> entry : featureIds.entrySet()) {
+            weights.put(entry.getKey(), parameters[entry.getValue()]);
+        }
+        for(int classId=0;classId<c;classId++) {
+            thitas.put(classes[classId], parameters[d+classId]);
         }
     }
    
@@ -368,49 +436,48 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         return validationMetrics;
     }
 
-    private void batchGradientDescent(Dataframe trainingData, Map<Object, Object> previousThitaMapping, Map<Object, Double> newWeights, Map<Object, Double> newThitas, double learningRate) {
-        ModelParameters modelParameters = kb().getModelParameters();
-
-        double multiplier = -learningRate/modelParameters.getN();
-        Map<Object, Double> weights = modelParameters.getWeights();
-        Map<Object, Double> thitas = modelParameters.getThitas();
+    private void gradientDescent(Dataframe trainingData, Map<Object, Integer> featureIds, Object[] classes, double[] newParameters, double learningRate, MiniBatchGradientDescent optimizer) {
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        int d = featureIds.size();
+        int c = classes.length;
         
-        streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> { 
-            Object rClass = r.getY();
-            Object rPreviousClass = previousThitaMapping.get(rClass);
+        Map<Object, Integer> classIds = new HashMap<>();
+        for(int classId=0;classId<c;classId++) {
+            classIds.put(classes[classId], classId);
+        }
+        
+        //only the weights of the features are regularized, not the thitas
+        MiniBatchGradientDescent.Regularization regularization = MiniBatchGradientDescent.regularization(0.0, trainingParameters.getL2(), learningRate, d);
+        
+        optimizer.epoch(trainingData, trainingParameters.getBatchSize(), newParameters, learningRate, (r, multiplier, gradient) -> { 
+            double negativeMultiplier = -multiplier; //the cost function is minimized
+            int rClassId = classIds.get(r.getY());
+            int rPreviousClassId = rClassId-1; //-1 = the left bound thita0 which has thita equal to -inf
             
-            //mind the fact that we use the previous weights and thitas to estimate the new ones! this is because the thitas must be updated simultaniously
+            //mind the fact that we use the weights and thitas of the beginning of the batch to estimate the new ones! this is because the thitas must be updated simultaniously
             
             //first calculate the commonly used dot product between weights and x
-            double xTw = xTw(r.getX(), weights);
+            double xTw = xTw(r.getX(), featureIds, newParameters);
             
-            double gOfCurrent = g(xTw-thitas.get(rClass));
-            double gOfPrevious = (rPreviousClass!=null)?g(thitas.get(rPreviousClass)-xTw):0.0;
+            double gOfCurrent = g(xTw-newParameters[d+rClassId]);
+            double gOfPrevious = (rPreviousClassId>=0)?g(newParameters[d+rPreviousClassId]-xTw):0.0;
                     
-            double dtG_multiplier = (gOfCurrent-gOfPrevious)*multiplier;
+            double dtG_multiplier = (gOfCurrent-gOfPrevious)*negativeMultiplier;
             
             
-            //update weights                
-            synchronized(newWeights) {
-                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                    Object column = entry.getKey();
-                    Double xij = TypeInference.toDouble(entry.getValue());
-
-                    double xij_dtG_multiplier = xij*dtG_multiplier;
-                    newWeights.put(column, newWeights.get(column)+xij_dtG_multiplier);
-                }
+            //update the gradient of the weights
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                Double xij = TypeInference.toDouble(entry.getValue());
+                
+                gradient.add(featureIds.get(entry.getKey()), xij*dtG_multiplier);
             }
             
-            synchronized(newThitas) {
-                //update thitas
-                newThitas.put(rClass, newThitas.get(rClass)+multiplier*(-gOfCurrent));
-                if(rPreviousClass!=null) {
-                    newThitas.put(rPreviousClass, newThitas.get(rPreviousClass)+multiplier*gOfPrevious);
-                }
+            //update the gradient of the thitas
+            gradient.add(d+rClassId, negativeMultiplier*(-gOfCurrent));
+            if(rPreviousClassId>=0) {
+                gradient.add(d+rPreviousClassId, negativeMultiplier*gOfPrevious);
             }
-        });
-
-        L2Regularizer.updateWeights(kb().getTrainingParameters().getL2(), learningRate, weights, newWeights);
+        }, regularization);
 
     }
     
@@ -464,6 +531,34 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         return error;
     }
     
+    private double calculateError(Dataframe trainingData, Map<Object, Integer> featureIds, Object[] classes, double[] parameters) {
+        int d = featureIds.size();
+        Map<Object, Integer> classIds = new HashMap<>();
+        for(int classId=0;classId<classes.length;classId++) {
+            classIds.put(classes[classId], classId);
+        }
+        
+        double error = streamExecutor.sum(StreamMethods.stream(trainingData.stream(), isParallelized()).mapToDouble(r -> { 
+            double e=0.0;
+            double xTw = xTw(r.getX(), featureIds, parameters);
+            
+            int classId = classIds.get(r.getY());
+            
+            if(classId>0) {
+                e += h(parameters[d+classId-1]-xTw);
+            }
+            
+            e += h(xTw-parameters[d+classId]);
+            
+            return e;
+        }));
+        error /= kb().getModelParameters().getN();
+
+        error += L2Regularizer.estimatePenalty(kb().getTrainingParameters().getL2(), Arrays.copyOf(parameters, d));
+        
+        return error;
+    }
+    
     private double h(double z) {
         if(z>30) {
             return z;
@@ -502,6 +597,23 @@ public class OrdinalRegression extends AbstractClassifier<OrdinalRegression.Mode
         return xTw;
     }
     
+    private double xTw(AssociativeArray x, Map<Object, Integer> featureIds, double[] parameters) {
+        double xTw = 0.0;
+        for(Map.Entry<Object, Object> entry : x.entrySet()) {
+            Double value = TypeInference.toDouble(entry.getValue());
+            if(value==null || value==0.0) {
+                continue;
+            }
+            Integer featureId = featureIds.get(entry.getKey());
+            if(featureId==null) {
+                continue; //unsupported feature
+            }
+            xTw += value*parameters[featureId];
+        }
+        
+        return xTw;
+    }
+    
     private Map<Object, Object> getPreviousThitaMappings() {
         Map<Object, Object> previousThitaMapping = new HashMap<>();
         Object previousThita = null; //null = the left bound thita0 which has thita equal to -inf
@@ -22,22 +22,22 @@ import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.dataobjects.TypeInference;
-import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClassifier;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.FeatureClassMatrix;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.SoftMaxRegressionValidator;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 import com.datumbox.framework.core.utilities.regularization.ElasticNetRegularizer;
 import com.datumbox.framework.core.utilities.regularization.L1Regularizer;
+import com.datumbox.framework.core.utilities.optimization.MiniBatchGradientDescent;
 import com.datumbox.framework.core.utilities.regularization.L2Regularizer;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,14 +54,13 @@ import java.util.Set;
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.ModelParameters, SoftMaxRegression.TrainingParameters, SoftMaxRegression.ValidationMetrics> implements PredictParallelizable, TrainParallelizable {
+public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.ModelParameters, SoftMaxRegression.TrainingParameters, SoftMaxRegression.ValidationMetrics> implements PredictParallelizable, TrainParallelizable, IncrementallyTrainable {
     
     /** {@inheritDoc} */
     public static class ModelParameters extends AbstractClassifier.AbstractModelParameters {
         private static final long serialVersionUID = 1L;
 
-        @BigMap(mapType=MapType.HASHMAP, storageHint=StorageHint.IN_MEMORY, concurrent=true)
-        private Map<List<Object>, Double> thitas; //the thita parameters of the model
+        private FeatureClassMatrix thitas; //the thita parameters of the model
         
         /** 
          * @param dbc
@@ -76,7 +75,7 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
          * 
          * @return 
          */
-        public Map<List<Object>, Double> getThitas() {
+        public FeatureClassMatrix getThitas() {
             return thitas;
         }
         
@@ -85,7 +84,7 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
          * 
          * @param thitas 
          */
-        protected void setThitas(Map<List<Object>, Double> thitas) {
+        protected void setThitas(FeatureClassMatrix thitas) {
             this.thitas = thitas;
         }
     } 
@@ -98,6 +97,9 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
         private double learningRate=0.1;
         private double l1=0.0;
         private double l2=0.0;
+        private int batchSize=0;
+        private MiniBatchGradientDescent.UpdateRule updateRule=MiniBatchGradientDescent.UpdateRule.PLAIN;
+        private double momentum=0.9;
         
         /**
          * Getter for the total iterations of the training process.
@@ -172,6 +174,66 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
             this.l2 = l2;
         }
 
+        /**
+         * Getter for the size of the mini-batches. Zero (the default) or a 
+         * size larger than the training data means that full batch gradient 
+         * descent is used.
+         *
+         * @return
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Setter for the size of the mini-batches. When it is positive, the 
+         * records are shuffled on every iteration and the weights are updated
+         * after every mini-batch.
+         *
+         * @param batchSize
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Getter for the rule which is used to update the weights.
+         *
+         * @return
+         */
+        public MiniBatchGradientDescent.UpdateRule getUpdateRule() {
+            return updateRule;
+        }
+
+        /**
+         * Setter for the rule which is used to update the weights.
+         *
+         * @param updateRule
+         */
+        public void setUpdateRule(MiniBatchGradientDescent.UpdateRule updateRule) {
+            this.updateRule = updateRule;
+        }
+
+        /**
+         * Getter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @return
+         */
+        public double getMomentum() {
+            return momentum;
+        }
+
+        /**
+         * Setter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @param momentum
+         */
+        public void setMomentum(double momentum) {
+            this.momentum = momentum;
+        }
+
     } 
     
     /** {@inheritDoc} */
@@ -262,14 +324,13 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
     /** {@inheritDoc} */
     @Override
     public Prediction _predictRecord(Record r) {
-        ModelParameters modelParameters = kb().getModelParameters();
+        FeatureClassMatrix thitas = kb().getModelParameters().getThitas();
         
-        Set<Object> classesSet = modelParameters.getClasses();
-        Map<List<Object>, Double> thitas = modelParameters.getThitas();
+        double[] scores = calculateClassScores(r.getX(), thitas);
         
         AssociativeArray predictionScores = new AssociativeArray();
-        for(Object theClass : classesSet) {
-            predictionScores.put(theClass, calculateClassScore(r.getX(), theClass, thitas));
+        for(int classId=0;classId<scores.length;classId++) {
+            predictionScores.put(thitas.getClassById(classId), scores[classId]);
         }
 
         Object predictedClass=getSelectedClassFromClassScores(predictionScores);
@@ -282,11 +343,17 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
     /** {@inheritDoc} */
     @Override
     protected void _fit(Dataframe trainingData) {
+        //the knowledge base is empty, so fitting is equivalent to updating the empty model
+        _partialFit(trainingData);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void _partialFit(Dataframe trainingData) {
         ModelParameters modelParameters = kb().getModelParameters();
         TrainingParameters trainingParameters = kb().getTrainingParameters();
         
         
-        Map<List<Object>, Double> thitas = modelParameters.getThitas();
         Set<Object> classesSet = modelParameters.getClasses();
         
         //first we need to find all the classes
@@ -296,50 +363,53 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
             classesSet.add(theClass); 
         }
         
-        //we initialize the thitas to zero for all features and all classes compinations
-        for(Object theClass : classesSet) {
-            thitas.put(Arrays.<Object>asList(Dataframe.COLUMN_NAME_CONSTANT, theClass), 0.0);
+        //we initialize the thitas to zero for all the new features and all classes compinations
+        FeatureClassMatrix thitas = modelParameters.getThitas();
+        if(thitas==null) {
+            thitas = new FeatureClassMatrix(classesSet);
+            thitas.addFeature(Dataframe.COLUMN_NAME_CONSTANT);
         }
-        
-        streamExecutor.forEach(StreamMethods.stream(trainingData.getXDataTypes().keySet().stream(), isParallelized()), feature -> {
+        else {
             for(Object theClass : classesSet) {
-                thitas.putIfAbsent(Arrays.<Object>asList(feature, theClass), 0.0);
+                thitas.addClass(theClass);
             }
-        });
+        }
+        for(Object feature : trainingData.getXDataTypes().keySet()) {
+            thitas.addFeature(feature);
+        }
+        modelParameters.setThitas(thitas);
         
         
         double minError = Double.POSITIVE_INFINITY;
         
         double learningRate = trainingParameters.getLearningRate();
         int totalIterations = trainingParameters.getTotalIterations();
-        DatabaseConnector dbc = kb().getDbc();
+        MiniBatchGradientDescent optimizer = new MiniBatchGradientDescent(trainingParameters.getUpdateRule(), trainingParameters.getMomentum(), streamExecutor, isParallelized());
         for(int iteration=0;iteration<totalIterations;++iteration) {
             
             logger.debug("Iteration {}", iteration);
             
-            Map<List<Object>, Double> tmp_newThitas = dbc.getBigMap("tmp_newThitas", MapType.HASHMAP, StorageHint.IN_MEMORY, true, true);
-            
-            tmp_newThitas.putAll(thitas);
-            batchGradientDescent(trainingData, tmp_newThitas, learningRate);
+            FeatureClassMatrix newThitas = modelParameters.getThitas().copy();
+            gradientDescent(trainingData, newThitas, learningRate, optimizer);
             
-            double newError = calculateError(trainingData,tmp_newThitas);
+            double newError = calculateError(trainingData, newThitas);
             
             //bold driver
             if(newError>minError) {
                 learningRate/=2.0;
+                optimizer.reset();
             }
             else {
                 learningRate*=1.05;
                 minError=newError;
                 
                 //keep the new thitas
-                thitas.clear();
-                thitas.putAll(tmp_newThitas);
+                modelParameters.setThitas(newThitas);
             }
-            
-            //Drop the temporary Collection
-            dbc.dropBigMap("tmp_newThitas", tmp_newThitas);
         }
+        
+        modelParameters.getThitas().compact();
+        setModelDimension(modelParameters.getThitas().getD()-1); //the constant is not a feature
     }
     
     /** {@inheritDoc} */
@@ -355,24 +425,27 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
         return validationMetrics;
     }
 
-    private void batchGradientDescent(Dataframe trainingData, Map<List<Object>, Double> newThitas, double learningRate) {
-        //NOTE! This is not the stochastic gradient descent. It is the batch gradient descent optimized for speed (despite it looks more than the stochastic). 
-        //Despite the fact that the loops are inverse, the function still changes the values of Thitas at the end of the function. We use the previous thitas 
-        //to estimate the costs and only at the end we update the new thitas.
-        ModelParameters modelParameters = kb().getModelParameters();
-
-        double multiplier = learningRate/modelParameters.getN();
-        Map<List<Object>, Double> thitas = modelParameters.getThitas();
-        Set<Object> classesSet = modelParameters.getClasses();
+    private void gradientDescent(Dataframe trainingData, FeatureClassMatrix newThitas, double learningRate, MiniBatchGradientDescent optimizer) {
+        //The gradient of every batch is estimated using the thitas of the beginning of the batch and only at the end of the batch the new thitas are updated.
+        //When no batch size is provided, this is the batch gradient descent optimized for speed.
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
         
-        streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> { //slow parallel loop
-            //mind the fact that we use the previous thitas to estimate the new ones! this is because the thitas must be updated simultaniously
-            AssociativeArray classProbabilities = hypothesisFunction(r.getX(), thitas);
-            for(Object theClass : classesSet) {
+        int c = newThitas.getC();
+        int constantId = newThitas.getFeatureId(Dataframe.COLUMN_NAME_CONSTANT);
+        
+        double[] weights = newThitas.getWeights();
+        MiniBatchGradientDescent.Regularization regularization = MiniBatchGradientDescent.regularization(trainingParameters.getL1(), trainingParameters.getL2(), learningRate, weights.length);
+        
+        optimizer.epoch(trainingData, trainingParameters.getBatchSize(), weights, learningRate, (r, multiplier, gradient) -> {
+            //mind the fact that we use the thitas of the beginning of the batch to estimate the new ones! this is because the thitas must be updated simultaniously
+            double[] classProbabilities = hypothesisFunction(r.getX(), newThitas);
+            int yId = newThitas.getClassId(r.getY());
+            
+            for(int classId=0;classId<c;classId++) {
                 
                 double error;
-                double score = classProbabilities.getDouble(theClass);
-                if(r.getY().equals(theClass)) {
+                double score = classProbabilities[classId];
+                if(classId==yId) {
                     error = 1 - score;
                 }
                 else {
@@ -381,62 +454,41 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
                 
                 double errorMultiplier = multiplier*error;
                 
-                synchronized(newThitas) {
-                    //update the weights
-                    for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                        Double value = TypeInference.toDouble(entry.getValue());
-
-                        Object feature = entry.getKey();
-                        List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                        
-                        newThitas.put(featureClassTuple, newThitas.get(featureClassTuple)+errorMultiplier*value);   
-                    }
-                    List<Object> featureClassTuple = Arrays.<Object>asList(Dataframe.COLUMN_NAME_CONSTANT, theClass);
-                    newThitas.put(featureClassTuple, newThitas.get(featureClassTuple)+errorMultiplier); //update the weight of constant
+                //update the gradient
+                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                    Double value = TypeInference.toDouble(entry.getValue());
+                    
+                    gradient.add(newThitas.getFeatureId(entry.getKey())*c+classId, errorMultiplier*value);
                 }
+                gradient.add(constantId*c+classId, errorMultiplier); //update the gradient of constant
             }
-        });
-
-        double l1 = kb().getTrainingParameters().getL1();
-        double l2 = kb().getTrainingParameters().getL2();
-
-        if(l1>0.0 && l2>0.0) {
-            ElasticNetRegularizer.updateWeights(l1, l2, learningRate, thitas, newThitas);
-        }
-        else if(l1>0.0) {
-            L1Regularizer.updateWeights(l1, learningRate, thitas, newThitas);
-        }
-        else if(l2>0.0) {
-            L2Regularizer.updateWeights(l2, learningRate, thitas, newThitas);
-        }
-        
+        }, regularization);
     }
     
-    private Double calculateClassScore(AssociativeArray x, Object theClass, Map<List<Object>, Double> thitas) {
-        double score = thitas.get(Arrays.<Object>asList(Dataframe.COLUMN_NAME_CONSTANT, theClass));
+    private double[] calculateClassScores(AssociativeArray x, FeatureClassMatrix thitas) {
+        double[] scores = new double[thitas.getC()];
+        thitas.addRowTo(thitas.getFeatureId(Dataframe.COLUMN_NAME_CONSTANT), 1.0, scores);
         
         for(Map.Entry<Object, Object> entry : x.entrySet()) {
-            Double value = TypeInference.toDouble(entry.getValue());
-            
-            Object feature = entry.getKey();
-            List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-            
-            Double thitaWeight = thitas.get(featureClassTuple);
-            if(thitaWeight!=null) {//ensure that the feature is in the dictionary
-                score+=thitaWeight*value;
+            int featureId = thitas.getFeatureId(entry.getKey());
+            if(featureId<0) {//ensure that the feature is in the dictionary
+                continue;
             }
+            
+            Double value = TypeInference.toDouble(entry.getValue());
+            thitas.addRowTo(featureId, value, scores);
         }
         
-        return score;
+        return scores;
     }
     
-    private double calculateError(Dataframe trainingData, Map<List<Object>, Double> thitas) {
+    private double calculateError(Dataframe trainingData, FeatureClassMatrix thitas) {
         //The cost function as described on http://ufldl.stanford.edu/wiki/index.php/Softmax_Regression
         //It is optimized for speed to reduce the amount of loops
         
         double error = streamExecutor.sum(StreamMethods.stream(trainingData.stream(), isParallelized()).mapToDouble(r -> { 
-            AssociativeArray classProbabilities = hypothesisFunction(r.getX(), thitas);
-            Double score = classProbabilities.getDouble(r.getY());
+            double[] classProbabilities = hypothesisFunction(r.getX(), thitas);
+            double score = classProbabilities[thitas.getClassId(r.getY())];
             return Math.log(score); //no need to loop through the categories. Just grab the one that we are interested in
         }));
 
@@ -446,31 +498,34 @@ public class SoftMaxRegression extends AbstractClassifier<SoftMaxRegression.Mode
         double l2 = kb().getTrainingParameters().getL2();
 
         if(l1>0.0 && l2>0.0) {
-            error += ElasticNetRegularizer.estimatePenalty(l1, l2, thitas);
+            error += ElasticNetRegularizer.estimatePenalty(l1, l2, thitas.getWeights());
         }
         else if(l1>0.0) {
-            error += L1Regularizer.estimatePenalty(l1, thitas);
+            error += L1Regularizer.estimatePenalty(l1, thitas.getWeights());
         }
         else if(l2>0.0) {
-            error += L2Regularizer.estimatePenalty(l2, thitas);
+            error += L2Regularizer.estimatePenalty(l2, thitas.getWeights());
         }
 
         return error;
     }
     
-    private AssociativeArray hypothesisFunction(AssociativeArray x, Map<List<Object>, Double> thitas) {
-        Set<Object> classesSet = kb().getModelParameters().getClasses();
-        AssociativeArray predictionProbabilities = new AssociativeArray(); 
-        
-        for(Object theClass : classesSet) {
-            double score=calculateClassScore(x, theClass, thitas);
-            if(score<=0) {
-                score=1e-8;
+    private double[] hypothesisFunction(AssociativeArray x, FeatureClassMatrix thitas) {
+        double[] predictionProbabilities = calculateClassScores(x, thitas);
+        
+        double sum = 0.0;
+        for(int classId=0;classId<predictionProbabilities.length;classId++) {
+            if(predictionProbabilities[classId]<=0) {
+                predictionProbabilities[classId]=1e-8;
             }
-            predictionProbabilities.put(theClass, score);
+            sum += predictionProbabilities[classId];
         }
         
-        Descriptives.normalize(predictionProbabilities);
+        if(sum!=0.0) {
+            for(int classId=0;classId<predictionProbabilities.length;classId++) {
+                predictionProbabilities[classId]/=sum;
+            }
+        }
         
         return predictionProbabilities;
     }
@@ -25,6 +25,7 @@ import com.datumbox.framework.core.machinelearning.common.abstracts.algorithms.A
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClusterer;
 import org.apache.commons.math3.linear.*;
 
+import java.util.Arrays;
 import java.util.Map;
 
 
@@ -48,7 +49,12 @@ import java.util.Map;
 public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPMM.ModelParameters, GaussianDPMM.TrainingParameters, GaussianDPMM.ValidationMetrics> {
     
     /**
-     * The AbstractCluster class of the GaussianDPMM model.
+     * The AbstractCluster class of the GaussianDPMM model. The cluster keeps the
+     * scale matrix Psi of the Normal-Inverse-Wishart posterior along with its
+     * Cholesky factor. Adding or removing a point changes Psi by a rank-one
+     * matrix, so the factor is updated or downdated in O(d^2) instead of being
+     * recomputed, and the posterior predictive PDF is estimated from the factor
+     * with a single triangular solve.
      */
     public static class Cluster extends AbstractDPMM.AbstractCluster {
         private static final long serialVersionUID = 1L;
@@ -59,24 +65,21 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
         //hyper parameters
         private final int kappa0;
         private final int nu0;
-        private final RealVector mu0;
-        private final RealMatrix psi0;
+        private final double[] mu0;
+        private final double[] psi0; //row-major
         
         //cluster parameters
-        private RealVector mean;
-        private RealMatrix covariance;
-        
-        //validation - confidence interval vars
-        private RealMatrix meanError;
-        private int meanDf;
+        private double[] mean; //the posterior mean
+        private double[] psi; //row-major posterior scale matrix
+        private double[] choleskyFactor; //row-major lower triangular factor of psi
+        private double psiLogDeterminant;
         
         //internal vars for calculation
-        private RealVector xi_sum;
-        private RealMatrix xi_square_sum; 
+        private double[] xi_sum;
+        private transient double[] buffer; //reused by add and remove
         
-        //Cache
-        private volatile Double cache_covariance_determinant; 
-        private volatile RealMatrix cache_covariance_inverse; 
+        //the clusters are evaluated by several threads during prediction, so the scratch of posteriorLogPdf is per thread
+        private static final ThreadLocal<double[]> SCRATCH = new ThreadLocal<>();
         
         /**
          * @param clusterId
@@ -94,26 +97,20 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
                 nu0 = dimensions;
             }
             
-            if(mu0==null) {
-                mu0 = new ArrayRealVector(dimensions); //0 vector
-            }
-            
-            if(psi0==null) {
-                psi0 = MatrixUtils.createRealIdentityMatrix(dimensions); //identity matrix
-            }
-
-            mean = new ArrayRealVector(dimensions);
-            covariance = MatrixUtils.createRealIdentityMatrix(dimensions);
-            
-            meanError = calculateMeanError(psi0, kappa0, nu0);
-            meanDf = nu0-dimensions+1;
-            
-            
             this.kappa0 = kappa0;
             this.nu0 = nu0;
-            this.mu0 = mu0;
-            this.psi0 = psi0;
             this.dimensions = dimensions;
+            
+            this.mu0 = (mu0!=null)?mu0.toArray():new double[dimensions]; //0 vector
+            
+            this.psi0 = new double[dimensions*dimensions];
+            for(int i=0;i<dimensions;i++) {
+                for(int j=0;j<dimensions;j++) {
+                    this.psi0[i*dimensions+j] = (psi0!=null)?psi0.getEntry(i, j):((i==j)?1.0:0.0); //identity matrix
+                }
+            }
+            
+            reset();
         }
         
         /**
@@ -129,14 +126,11 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
             nu0 = copy.nu0;
             mu0 = copy.mu0;
             psi0 = copy.psi0;
-            mean = copy.mean;
-            covariance = copy.covariance;
-            meanError = copy.meanError;
-            meanDf = copy.meanDf;
-            xi_sum = copy.xi_sum;
-            xi_square_sum = copy.xi_square_sum; 
-            cache_covariance_determinant = copy.cache_covariance_determinant;
-            cache_covariance_inverse = copy.cache_covariance_inverse; 
+            mean = copy.mean.clone();
+            psi = copy.psi.clone();
+            choleskyFactor = copy.choleskyFactor.clone();
+            psiLogDeterminant = copy.psiLogDeterminant;
+            xi_sum = (copy.xi_sum!=null)?copy.xi_sum.clone():null;
         }
 
         /** {@inheritDoc} */
@@ -157,6 +151,14 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
          * @return 
          */
         protected RealMatrix getMeanError() {
+            //Reference: page 18, equation 228 at http://www.cs.ubc.ca/~murphyk/Papers/bayesGauss.pdf
+            double multiplier = 1.0/((kappa0+size)*(nu0+size-dimensions+1.0));
+            RealMatrix meanError = new Array2DRowRealMatrix(dimensions, dimensions);
+            for(int i=0;i<dimensions;i++) {
+                for(int j=0;j<dimensions;j++) {
+                    meanError.setEntry(i, j, psi[i*dimensions+j]*multiplier);
+                }
+            }
             return meanError;
         }
         
@@ -166,51 +168,71 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
          * @return 
          */
         protected int getMeanDf() {
-            return meanDf;
+            return nu0+size-dimensions+1;
         }
         
         /** {@inheritDoc} */
         @Override
         protected double posteriorLogPdf(Record r) {
-            RealVector x_mu = MatrixDataframe.parseRecord(r, featureIds);
-
-            x_mu = x_mu.subtract(mean);
+            double[] x_mu = MatrixDataframe.parseRecord(r, featureIds, getScratch());
             
-            if(cache_covariance_determinant==null || cache_covariance_inverse==null) {
-                synchronized(this) {
-                    if(cache_covariance_determinant==null || cache_covariance_inverse==null) {
-                        LUDecomposition lud = new LUDecomposition(covariance);
-                        cache_covariance_determinant = lud.getDeterminant();
-                        cache_covariance_inverse = lud.getSolver().getInverse();
+            double x_muInvSx_muT = 0.0;
+            double logDeterminant = 0.0;
+            if(size==0) {
+                //empty clusters use the standard multivariate normal
+                for(int i=0;i<dimensions;i++) {
+                    x_muInvSx_muT += x_mu[i]*x_mu[i];
+                }
+            }
+            else {
+                int kappa_n = kappa0 + size;
+                int nu = nu0 + size;
+                
+                //the covariance is the psi multiplied by a scalar
+                double multiplier = (kappa_n+1.0)/(kappa_n*(nu - dimensions + 1.0));
+                
+                //solve L*z = x-mu, so that the Mahalanobis distance is z'z/multiplier
+                for(int i=0;i<dimensions;i++) {
+                    double value = x_mu[i] - mean[i];
+                    int offset = i*dimensions;
+                    for(int j=0;j<i;j++) {
+                        value -= choleskyFactor[offset+j]*x_mu[j];
                     }
+                    x_mu[i] = value/choleskyFactor[offset+i];
+                    x_muInvSx_muT += x_mu[i]*x_mu[i];
                 }
+                x_muInvSx_muT /= multiplier;
+                logDeterminant = dimensions*Math.log(multiplier) + psiLogDeterminant;
             }
             
-            double x_muInvSx_muT = (cache_covariance_inverse.preMultiply(x_mu)).dotProduct(x_mu);
-            double normConst = 1.0/( Math.pow(2*Math.PI, dimensions/2.0) * Math.pow(cache_covariance_determinant, 0.5) );
-            //double pdf = Math.exp(-0.5 * x_muInvSx_muT)*normConst;
-            double logPdf = -0.5 * x_muInvSx_muT + Math.log(normConst);
+            double logNormConst = -0.5*dimensions*Math.log(2*Math.PI) - 0.5*logDeterminant;
+            double logPdf = -0.5 * x_muInvSx_muT + logNormConst;
             return logPdf;
         }
     
         /** {@inheritDoc} */
         @Override
         protected void add(Record r) {
-            RealVector rv = MatrixDataframe.parseRecord(r, featureIds);
-
-            //update cluster clusterParameters
+            double[] x = MatrixDataframe.parseRecord(r, featureIds, getBuffer());
+            
             if(size==0) {
-                xi_sum=rv;
-                xi_square_sum=rv.outerProduct(rv);
-            }
-            else {
-                xi_sum=xi_sum.add(rv);
-                xi_square_sum=xi_square_sum.add(rv.outerProduct(rv));
+                reset();
             }
             
+            //Psi(n+1) = Psi(n) + kappa(n)/kappa(n+1) * (x-mu(n))(x-mu(n))'
+            int kappa_n = kappa0 + size;
+            double weight = kappa_n/(kappa_n+1.0);
+            
+            for(int i=0;i<dimensions;i++) {
+                xi_sum[i] += x[i];
+                x[i] -= mean[i];
+            }
             size++;
             
-            updateClusterParameters();
+            if(weight>0.0) {
+                rankOneUpdate(x, weight, false);
+            }
+            updateMean();
         }
         
         /** {@inheritDoc} */
@@ -218,56 +240,41 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
         protected void remove(Record r) {
             size--;
             
-            RealVector rv = MatrixDataframe.parseRecord(r, featureIds);
-
-            //update cluster clusterParameters
-            xi_sum=xi_sum.subtract(rv);
-            xi_square_sum=xi_square_sum.subtract(rv.outerProduct(rv));
+            if(size==0) {
+                reset();
+                return;
+            }
             
-            updateClusterParameters();
-        }
-        
-        private RealMatrix calculateMeanError(RealMatrix Psi, int kappa, int nu) {
-            //Reference: page 18, equation 228 at http://www.cs.ubc.ca/~murphyk/Papers/bayesGauss.pdf
-            return Psi.scalarMultiply(1.0/(kappa*(nu-dimensions+1.0)));
+            double[] x = MatrixDataframe.parseRecord(r, featureIds, getBuffer());
+            
+            //Psi(n-1) = Psi(n) - kappa(n)/kappa(n-1) * (x-mu(n))(x-mu(n))'
+            int kappa_n = kappa0 + size;
+            double weight = (kappa_n+1.0)/kappa_n;
+            
+            for(int i=0;i<dimensions;i++) {
+                xi_sum[i] -= x[i];
+                x[i] -= mean[i];
+            }
+            
+            rankOneUpdate(x, weight, true);
+            updateMean();
         }
                 
         /** {@inheritDoc} */
         @Override
         protected void clear() {
             xi_sum = null;
-            xi_square_sum = null;
-            cache_covariance_determinant = null;
-            cache_covariance_inverse = null;
+            buffer = null;
         }
         
         /** {@inheritDoc} */
         @Override
         protected void updateClusterParameters() {
-            //fetch hyperparameters
-
-            int kappa_n = kappa0 + size;
-            int nu = nu0 + size;
-
-            RealVector mu = xi_sum.mapDivide(size);
-            RealVector mu_mu0 = mu.subtract(mu0);
-
-            RealMatrix C = xi_square_sum.subtract( ( mu.outerProduct(mu) ).scalarMultiply(size) );
-
-            RealMatrix psi = psi0.add( C.add( ( mu_mu0.outerProduct(mu_mu0) ).scalarMultiply(kappa0*size/(double)kappa_n) ));
-            //C = null;
-            //mu_mu0 = null;
-
-            mean = ( mu0.mapMultiply(kappa0) ).add( mu.mapMultiply(size) ).mapDivide(kappa_n);
-            
-            synchronized(this) {
-                covariance = psi.scalarMultiply(  (kappa_n+1.0)/(kappa_n*(nu - dimensions + 1.0))  );
-                cache_covariance_determinant = null;
-                cache_covariance_inverse = null;
+            //refactorize the scale matrix from scratch
+            if(!cholesky(psi, choleskyFactor, dimensions)) {
+                throw new IllegalStateException("The scale matrix of the cluster is not positive definite.");
             }
-            
-            meanError = calculateMeanError(psi, kappa_n, nu);
-            meanDf = nu-dimensions+1;
+            updateLogDeterminant();
         }
         
         /** {@inheritDoc} */
@@ -275,6 +282,138 @@ public class GaussianDPMM extends AbstractDPMM<GaussianDPMM.Cluster, GaussianDPM
         protected Cluster copy2new(Integer newClusterId) {
             return new Cluster(newClusterId, this);
         }
+        
+        /**
+         * Resets the parameters of the cluster to the prior ones.
+         */
+        private void reset() {
+            mean = mu0.clone();
+            xi_sum = new double[dimensions];
+            psi = psi0.clone();
+            choleskyFactor = new double[dimensions*dimensions];
+            updateClusterParameters();
+        }
+        
+        /**
+         * Returns the buffer which is reused by the modification methods.
+         * 
+         * @return 
+         */
+        private double[] getBuffer() {
+            if(buffer==null) {
+                buffer = new double[dimensions];
+            }
+            return buffer;
+        }
+        
+        /**
+         * Returns the scratch array of the current thread which is reused by the
+         * posteriorLogPdf method.
+         * 
+         * @return 
+         */
+        private double[] getScratch() {
+            double[] scratch = SCRATCH.get();
+            if(scratch==null || scratch.length!=dimensions) {
+                scratch = new double[dimensions];
+                SCRATCH.set(scratch);
+            }
+            return scratch;
+        }
+        
+        /**
+         * Estimates the posterior mean: (kappa0*mu0 + sum(xi))/(kappa0 + n).
+         */
+        private void updateMean() {
+            int kappa_n = kappa0 + size;
+            for(int i=0;i<dimensions;i++) {
+                mean[i] = (kappa0*mu0[i] + xi_sum[i])/kappa_n;
+            }
+        }
+        
+        private void updateLogDeterminant() {
+            psiLogDeterminant = 0.0;
+            for(int i=0;i<dimensions;i++) {
+                psiLogDeterminant += 2.0*Math.log(choleskyFactor[i*dimensions+i]);
+            }
+        }
+        
+        /**
+         * Adds (or subtracts on downdate) the rank-one matrix weight*v*v' to psi
+         * and updates its Cholesky factor accordingly. The v array is modified.
+         * If the downdate is numerically unstable, the factor is recomputed
+         * from the updated psi.
+         * 
+         * @param v
+         * @param weight
+         * @param downdate 
+         */
+        private void rankOneUpdate(double[] v, double weight, boolean downdate) {
+            double signedWeight = (downdate)?-weight:weight;
+            for(int i=0;i<dimensions;i++) {
+                int offset = i*dimensions;
+                for(int j=0;j<dimensions;j++) {
+                    psi[offset+j] += signedWeight*v[i]*v[j];
+                }
+            }
+            
+            double scale = Math.sqrt(weight);
+            for(int i=0;i<dimensions;i++) {
+                v[i] *= scale;
+            }
+            
+            double sign = (downdate)?-1.0:1.0;
+            for(int k=0;k<dimensions;k++) {
+                double Lkk = choleskyFactor[k*dimensions+k];
+                double r2 = Lkk*Lkk + sign*v[k]*v[k];
+                if(!(r2>0.0)) {
+                    updateClusterParameters(); //the downdate lost the positive definiteness
+                    return;
+                }
+                double rkk = Math.sqrt(r2);
+                double c = rkk/Lkk;
+                double s = v[k]/Lkk;
+                choleskyFactor[k*dimensions+k] = rkk;
+                for(int i=k+1;i<dimensions;i++) {
+                    int position = i*dimensions+k;
+                    choleskyFactor[position] = (choleskyFactor[position] + sign*s*v[i])/c;
+                    v[i] = c*v[i] - s*choleskyFactor[position];
+                }
+            }
+            updateLogDeterminant();
+        }
+        
+        /**
+         * Estimates the lower triangular Cholesky factor of the row-major matrix
+         * A and stores it in L. Returns false if A is not positive definite.
+         * 
+         * @param A
+         * @param L
+         * @param d
+         * @return 
+         */
+        private static boolean cholesky(double[] A, double[] L, int d) {
+            Arrays.fill(L, 0.0);
+            for(int j=0;j<d;j++) {
+                double sum = A[j*d+j];
+                for(int p=0;p<j;p++) {
+                    sum -= L[j*d+p]*L[j*d+p];
+                }
+                if(!(sum>0.0)) {
+                    return false;
+                }
+                double diagonal = Math.sqrt(sum);
+                L[j*d+j] = diagonal;
+                for(int i=j+1;i<d;i++) {
+                    double value = A[i*d+j];
+                    for(int p=0;p<j;p++) {
+                        value -= L[i*d+p]*L[j*d+p];
+                    }
+                    L[i*d+j] = value/diagonal;
+                }
+            }
+            return true;
+        }
     }
     
     /** {@inheritDoc} */
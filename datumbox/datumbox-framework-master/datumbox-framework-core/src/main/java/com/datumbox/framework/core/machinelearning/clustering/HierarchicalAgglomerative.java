@@ -27,6 +27,7 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClusterer;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.CondensedDistanceMatrix;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.ClustererValidator;
@@ -34,6 +35,7 @@ import com.datumbox.framework.core.mathematics.distances.Distance;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * This class implements the Hierarchical Agglomerative clustering algorithm
@@ -53,8 +55,6 @@ public class HierarchicalAgglomerative extends AbstractClusterer<HierarchicalAgg
         
         private Record centroid;
         
-        private boolean active = true;
-        
         private final AssociativeArray xi_sum;
         
         /** 
@@ -74,7 +74,6 @@ public class HierarchicalAgglomerative extends AbstractClusterer<HierarchicalAgg
         protected Cluster(Integer clusterId, Cluster copy) {
             super(clusterId, copy);
             centroid = copy.centroid;
-            active = copy.active;
             xi_sum = copy.xi_sum;
         }
         
@@ -118,24 +117,6 @@ public class HierarchicalAgglomerative extends AbstractClusterer<HierarchicalAgg
             return changed;
         }
         
-        /**
-         * Getter for whether the cluster is active.
-         * 
-         * @return 
-         */
-        protected boolean isActive() {
-            return active;
-        }
-        
-        /**
-         * Setter for whether the cluster is active.
-         * 
-         * @param active 
-         */
-        protected void setActive(boolean active) {
-            this.active = active;
-        }
-        
         /** {@inheritDoc} */
         @Override
         protected void add(Record r) {
@@ -418,189 +399,193 @@ public class HierarchicalAgglomerative extends AbstractClusterer<HierarchicalAgg
         TrainingParameters trainingParameters = kb().getTrainingParameters();
         Map<Integer, Cluster> clusterMap = modelParameters.getClusterMap();
         
-        DatabaseConnector dbc = kb().getDbc();
-
-        Map<List<Object>, Double> tmp_distanceArray = dbc.getBigMap("tmp_distanceArray", MapType.HASHMAP, StorageHint.IN_CACHE, true, true); //it holds the distances between clusters
-        Map<Integer, Integer> tmp_minClusterDistanceId = dbc.getBigMap("tmp_minClusterDistanceId", MapType.HASHMAP, StorageHint.IN_CACHE, true, true); //it holds the ids of the min distances
-        
-        
-        //initialize clusters, foreach point create a cluster
-        Integer clusterId = 0;
+        //every record starts as a separate cluster which is identified by the position of the record
+        int n = trainingData.size();
+        Record[] records = new Record[n];
+        int position = 0;
         for(Record r : trainingData.values()) {
-            Cluster c = new Cluster(clusterId);
-            
-            c.add(r);
-            c.updateClusterParameters();
-            clusterMap.put(clusterId, c);
-            
-            ++clusterId;
+            records[position++] = r;
         }
         
-        //calculate distance table and minimum distances
-        streamExecutor.forEach(StreamMethods.stream(clusterMap.entrySet().stream(), isParallelized()), entry1 -> {
-            Integer clusterId1 = entry1.getKey();
-            Cluster c1 = entry1.getValue();
-            
-            for(Map.Entry<Integer, Cluster> entry2 : clusterMap.entrySet()) {
-                Integer clusterId2 = entry2.getKey();
-                Cluster c2 = entry2.getValue();
-                
-                double distance = Double.MAX_VALUE;
-                if(!Objects.equals(clusterId1, clusterId2)) {
-                    distance = calculateDistance(c1.getCentroid(), c2.getCentroid());
-                }
-                
-                tmp_distanceArray.put(Arrays.<Object>asList(clusterId1, clusterId2), distance);
-                tmp_distanceArray.put(Arrays.<Object>asList(clusterId2, clusterId1), distance);
-                
-                Integer minDistanceId = tmp_minClusterDistanceId.get(clusterId1);
-                if(minDistanceId==null || distance < tmp_distanceArray.get(Arrays.<Object>asList(clusterId1, minDistanceId))) {
-                    tmp_minClusterDistanceId.put(clusterId1, clusterId2);
-                }
-            }
-        });
-        
-        //merging process
-        boolean continueMerging = true;
-        while(continueMerging) {
-            continueMerging = mergeClosest(tmp_minClusterDistanceId, tmp_distanceArray);
-            
-            //count all the active clusters
-            int activeClusters = 0;
-            for(Cluster c : clusterMap.values()) {
-                if(c.isActive()) {
-                    ++activeClusters;
+        int[][] merges;
+        double[] mergeDistances = new double[Math.max(n-1, 0)];
+        try (CondensedDistanceMatrix distances = new CondensedDistanceMatrix(n)) {
+            //calculate distance table
+            streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, n).boxed(), isParallelized()), i -> {
+                for(int j=i+1;j<n;j++) {
+                    distances.set(i, j, calculateDistance(records[i], records[j]));
                 }
-            }
+            });
             
-            if(activeClusters<=trainingParameters.getMinClustersThreshold()) {
-                continueMerging = false;
-            }
+            //build the full dendrogram
+            merges = nearestNeighborChain(distances, mergeDistances);
         }
         
-        //update centroids. it does not update their IDs
-        Iterator<Map.Entry<Integer, Cluster>> it = clusterMap.entrySet().iterator();
-        while(it.hasNext()) {
-            Map.Entry<Integer, Cluster> entry = it.next();
-            Integer cId = entry.getKey();
-            Cluster cluster = entry.getValue();
-            if(cluster.isActive()) {
-                cluster.updateClusterParameters();
-                clusterMap.put(cId, cluster);
-            }
-            else {
-                it.remove(); //remove inactive clusters
-            }
+        //replay the merges in increasing distance until one of the thresholds is reached
+        Integer[] mergeOrder = new Integer[merges.length];
+        for(int m=0;m<merges.length;m++) {
+            mergeOrder[m] = m;
         }
+        Arrays.sort(mergeOrder, (m1, m2) -> Double.compare(mergeDistances[m1], mergeDistances[m2])); //stable sort
         
-        //Drop the temporary Collection
-        dbc.dropBigMap("tmp_distanceArray", tmp_distanceArray);
-        dbc.dropBigMap("tmp_minClusterDistanceId", tmp_minClusterDistanceId);
-    }
-    
-    private boolean mergeClosest(Map<Integer, Integer> minClusterDistanceId, Map<List<Object>, Double> distanceArray) {
-        ModelParameters modelParameters = kb().getModelParameters();
-        TrainingParameters trainingParameters = kb().getTrainingParameters();
-        Map<Integer, Cluster> clusterMap = modelParameters.getClusterMap();
-        
-        //find the two closest clusters 
-        Integer minClusterId = null;
-        double minDistance = Double.MAX_VALUE;
-        
-        
-        for(Map.Entry<Integer, Cluster> entry : clusterMap.entrySet()) {
-            Integer clusterId = entry.getKey();
-            if(entry.getValue().isActive()==false) {
-                continue; //skip inactive clusters
+        int[] parents = new int[n];
+        for(int i=0;i<n;i++) {
+            parents[i] = i;
+        }
+        int activeClusters = n;
+        for(Integer m : mergeOrder) {
+            if(mergeDistances[m]>=trainingParameters.getMaxDistanceThreshold()) {
+                break;
             }
             
-            double distance = distanceArray.get(Arrays.<Object>asList(clusterId, minClusterDistanceId.get(clusterId)));
-            if(distance<minDistance) {
-                minClusterId = clusterId;
-                minDistance = distance;
+            //the merged cluster keeps the smallest id
+            int root1 = findRoot(parents, merges[m][0]);
+            int root2 = findRoot(parents, merges[m][1]);
+            parents[Math.max(root1, root2)] = Math.min(root1, root2);
+            --activeClusters;
+            
+            if(activeClusters<=trainingParameters.getMinClustersThreshold()) {
+                break;
             }
         }
         
-        if(minDistance>=trainingParameters.getMaxDistanceThreshold()) {
-            return false;
+        //estimate the centroids of the remaining clusters
+        Map<Integer, Cluster> clusters = new TreeMap<>();
+        for(int i=0;i<n;i++) {
+            Integer clusterId = findRoot(parents, i);
+            Cluster c = clusters.get(clusterId);
+            if(c==null) {
+                c = new Cluster(clusterId);
+                clusters.put(clusterId, c);
+            }
+            c.add(records[i]);
         }
-        
-        final Integer clusterThatMergesId = minClusterId;
-        final Integer clusterToBeMergedId = minClusterDistanceId.get(clusterThatMergesId);        
-        Cluster c1 = clusterMap.get(clusterThatMergesId);
-        Cluster c2 = clusterMap.get(clusterToBeMergedId);
-        
-        double c1Size = c1.size();
-        double c2Size = c2.size();
-        
-        //merge together the two closest clusters
-        c1.merge(c2);
-        clusterMap.put(clusterThatMergesId, c1);
-        c2.setActive(false); //set the cluster that we just merged inactive
-        clusterMap.put(clusterToBeMergedId, c2);
-        
-        //update the distances with the merged cluster
-        TrainingParameters.Linkage linkageMethod = trainingParameters.getLinkageMethod();
-        streamExecutor.forEach(StreamMethods.stream(clusterMap.entrySet().stream(), isParallelized()), entry -> {
-        
-            Integer clusterId = entry.getKey();
-            Cluster ci = entry.getValue();
-            if(ci.isActive()) { //skip inactive clusters
-            
-                double distance;
-                if(Objects.equals(clusterThatMergesId, clusterId)) {
-                    distance = Double.MAX_VALUE;
-                }
-                else if(linkageMethod==TrainingParameters.Linkage.SINGLE) {
-                    double c1ciDistance = distanceArray.get(Arrays.<Object>asList(clusterThatMergesId, clusterId));
-                    double c2ciDistance = distanceArray.get(Arrays.<Object>asList(clusterToBeMergedId, clusterId));
-                    distance = Math.min(c1ciDistance, c2ciDistance);
-                }
-                else if(linkageMethod==TrainingParameters.Linkage.COMPLETE) {
-                    double c1ciDistance = distanceArray.get(Arrays.<Object>asList(clusterThatMergesId, clusterId));
-                    double c2ciDistance = distanceArray.get(Arrays.<Object>asList(clusterToBeMergedId, clusterId));
-                    distance = Math.max(c1ciDistance, c2ciDistance);
+        for(Map.Entry<Integer, Cluster> entry : clusters.entrySet()) {
+            Cluster c = entry.getValue();
+            c.updateClusterParameters();
+            clusterMap.put(entry.getKey(), c);
+        }
+    }
+    
+    /**
+     * Builds the full dendrogram by using the Nearest Neighbor Chain algorithm.
+     * The distances between the clusters are updated with the Lance-Williams
+     * formulas of the selected Linkage method and they are stored on the row 
+     * of the cluster which keeps the smallest id. All the supported Linkage 
+     * methods are reducible and as a result the algorithm produces the same 
+     * merges as the greedy algorithm, in a different order. The method 
+     * returns the pairs of the merged clusters and it stores their distances
+     * in the mergeDistances array.
+     * 
+     * References:
+     * https://arxiv.org/pdf/1109.2378.pdf
+     * 
+     * @param distances
+     * @param mergeDistances
+     * @return 
+     */
+    private int[][] nearestNeighborChain(CondensedDistanceMatrix distances, double[] mergeDistances) {
+        TrainingParameters.Linkage linkageMethod = kb().getTrainingParameters().getLinkageMethod();
+        
+        int n = distances.size();
+        int[][] merges = new int[Math.max(n-1, 0)][];
+        boolean[] active = new boolean[n];
+        Arrays.fill(active, true);
+        int[] sizes = new int[n];
+        Arrays.fill(sizes, 1);
+        
+        int[] chain = new int[n];
+        int chainLength = 0;
+        int nextStart = 0;
+        for(int m=0;m<n-1;m++) {
+            while(true) {
+                if(chainLength==0) {
+                    while(!active[nextStart]) {
+                        ++nextStart;
+                    }
+                    chain[chainLength++] = nextStart;
                 }
-                else if(linkageMethod==TrainingParameters.Linkage.AVERAGE) {
-                    double c1ciDistance = distanceArray.get(Arrays.<Object>asList(clusterThatMergesId, clusterId));
-                    double c2ciDistance = distanceArray.get(Arrays.<Object>asList(clusterToBeMergedId, clusterId));
-                    distance = (c1ciDistance*c1Size + c2ciDistance*c2Size)/(c1Size+c2Size);
+                
+                int a = chain[chainLength-1];
+                int previous = (chainLength>1)?chain[chainLength-2]:-1;
+                
+                //find the nearest neighbor, preferring the previous element of the chain on ties
+                int nearest = previous;
+                double minDistance = (previous>=0)?distances.get(a, previous):Double.POSITIVE_INFINITY;
+                for(int j=0;j<n;j++) {
+                    if(j==a || !active[j]) {
+                        continue;
+                    }
+                    double distance = distances.get(a, j);
+                    if(distance<minDistance || nearest<0) {
+                        minDistance = distance;
+                        nearest = j;
+                    }
                 }
-                else {
-                    distance = calculateDistance(c1.getCentroid(), ci.getCentroid());
+                
+                if(nearest!=previous) {
+                    chain[chainLength++] = nearest;
+                    continue;
                 }
-
-                distanceArray.put(Arrays.<Object>asList(clusterThatMergesId, clusterId), distance);
-                distanceArray.put(Arrays.<Object>asList(clusterId, clusterThatMergesId), distance);
-            }
-        });
-        
-        //update minimum distance ids
-        streamExecutor.forEach(StreamMethods.stream(clusterMap.entrySet().stream(), isParallelized()), entry1 -> {
-            
-            Integer id1 = entry1.getKey();
-            if (entry1.getValue().isActive()) { //skip inactive clusters
-                Integer minDistanceId = minClusterDistanceId.get(id1);
-                if (Objects.equals(minDistanceId, clusterThatMergesId) || Objects.equals(minDistanceId, clusterToBeMergedId)) {
-                    Integer newMinDistanceId = id1;
-                    
-                    for(Map.Entry<Integer, Cluster> entry2 : clusterMap.entrySet()) {
-                        Integer id2 = entry2.getKey();
-                        if(entry2.getValue().isActive()==false) {
-                            continue; //skip inactive clusters
-                        }
-                        
-                        if(distanceArray.get(Arrays.<Object>asList(id1, id2)) < distanceArray.get(Arrays.<Object>asList(id1, newMinDistanceId)) ){
-                            newMinDistanceId = id2;
-                        }
+                
+                //the two last elements of the chain are reciprocal nearest neighbors
+                chainLength -= 2;
+                int keep = Math.min(a, previous);
+                int remove = Math.max(a, previous);
+                merges[m] = new int[]{keep, remove};
+                mergeDistances[m] = minDistance;
+                
+                double keepSize = sizes[keep];
+                double removeSize = sizes[remove];
+                for(int j=0;j<n;j++) {
+                    if(j==keep || j==remove || !active[j]) {
+                        continue;
                     }
+                    double keepDistance = distances.get(keep, j);
+                    double removeDistance = distances.get(remove, j);
                     
-                    minClusterDistanceId.put(id1, newMinDistanceId);
+                    double distance;
+                    if(linkageMethod==TrainingParameters.Linkage.SINGLE) {
+                        distance = Math.min(keepDistance, removeDistance);
+                    }
+                    else if(linkageMethod==TrainingParameters.Linkage.COMPLETE) {
+                        distance = Math.max(keepDistance, removeDistance);
+                    }
+                    else if(linkageMethod==TrainingParameters.Linkage.AVERAGE) {
+                        distance = (keepDistance*keepSize + removeDistance*removeSize)/(keepSize+removeSize);
+                    }
+                    else {
+                        throw new IllegalArgumentException("Unsupported Linkage method.");
+                    }
+                    distances.set(keep, j, distance);
                 }
+                
+                sizes[keep] += sizes[remove];
+                active[remove] = false;
+                break;
             }
-        });
-        
+        }
         
-        return true;
+        return merges;
+    }
+    
+    /**
+     * Returns the root of the cluster and compresses the path.
+     * 
+     * @param parents
+     * @param i
+     * @return 
+     */
+    private int findRoot(int[] parents, int i) {
+        int root = i;
+        while(parents[root]!=root) {
+            root = parents[root];
+        }
+        while(parents[i]!=root) {
+            int next = parents[i];
+            parents[i] = root;
+            i = next;
+        }
+        return root;
     }
-}
\ No newline at end of file
+}
@@ -28,6 +28,7 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.common.utilities.PHPMethods;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClusterer;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
@@ -37,9 +38,15 @@ import com.datumbox.framework.core.mathematics.distances.Distance;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 import com.datumbox.framework.core.statistics.sampling.SimpleRandomSampling;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
 
 
 /**
@@ -146,6 +153,28 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
             xi_sum.clear();
             size = 0;
         }
+        
+        /**
+         * Adds the records of the other cluster, which is typically a partial
+         * cluster estimated by a single thread, to the current cluster.
+         * 
+         * @param other 
+         */
+        private void merge(Cluster other) {
+            size += other.size;
+            xi_sum.addValues(other.xi_sum);
+        }
+        
+        /**
+         * Replaces the centroid of the cluster with the provided values. It is
+         * used by the algorithms which estimate the centroids directly instead
+         * of averaging the records of the cluster.
+         * 
+         * @param centroidValues 
+         */
+        private void setCentroid(AssociativeArray centroidValues) {
+            centroid = new Record(centroidValues, centroid.getY());
+        }
     }
     
     /** {@inheritDoc} */
@@ -246,7 +275,14 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
              * http://ilpubs.stanford.edu:8090/778/1/2006-13.pdf
              * http://www.ima.umn.edu/~iwen/REU/BATS-Means.pdf
              */
-            PLUS_PLUS;
+            PLUS_PLUS,
+            
+            /**
+             * Kmeans|| (Scalable Kmeans++).
+             * References: 
+             * http://theory.stanford.edu/~sergei/papers/vldb12-kmpar.pdf
+             */
+            SCALABLE_PLUS_PLUS;
         }
         
         /**
@@ -280,6 +316,16 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
         
         private boolean weighted = false; //whether the weighted version of the algorithm will run. The weighted version estimates weights for every feature
         
+        private boolean accelerated = true; //whether the triangle inequality is used to skip the distance calculations (Hamerly's algorithm)
+        
+        private double oversamplingFactor = 2.0; //used by Kmeans||, the expected number of candidates sampled on every round is oversamplingFactor*k
+        
+        private int miniBatchSize = 0; //the number of records sampled on every batch, 0 disables the Mini-batch Kmeans
+        
+        private int numberOfBatches = 100; //the number of batches used by Mini-batch Kmeans
+        
+        private double reassignmentRatio = 0.01; //the clusters which receive fewer than reassignmentRatio*max(counts) records are moved to a random record of the batch
+        
         //Getters Setters
         /**
          * Getter for the number of clusters k.
@@ -409,6 +455,119 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
             this.weighted = weighted;
         }
         
+        /**
+         * Getter for whether the assignment step is accelerated by using the 
+         * triangle inequality.
+         * 
+         * @return 
+         */
+        public boolean isAccelerated() {
+            return accelerated;
+        }
+        
+        /**
+         * Setter for whether the assignment step is accelerated by using the 
+         * triangle inequality. The accelerated version keeps for every record
+         * an upper bound of the distance from its centroid and a lower bound 
+         * of the distance from all the other centroids (Hamerly's algorithm).
+         * The distances are recalculated only when the bounds can't guarantee
+         * that the assignment remains the same. The resulting clusters are 
+         * identical to the ones of the standard algorithm.
+         * 
+         * References:
+         * http://cs.baylor.edu/~hamerly/papers/sdm_2010.pdf
+         * http://www.cs.utexas.edu/users/inderjit/elkankmeans.ppt
+         * 
+         * @param accelerated 
+         */
+        public void setAccelerated(boolean accelerated) {
+            this.accelerated = accelerated;
+        }
+        
+        /**
+         * Getter for the oversampling factor of the Kmeans|| initialization.
+         * 
+         * @return 
+         */
+        public double getOversamplingFactor() {
+            return oversamplingFactor;
+        }
+        
+        /**
+         * Setter for the oversampling factor of the Kmeans|| initialization. 
+         * On every round the algorithm samples on expectation 
+         * oversamplingFactor*k candidate centroids.
+         * 
+         * @param oversamplingFactor 
+         */
+        public void setOversamplingFactor(double oversamplingFactor) {
+            this.oversamplingFactor = oversamplingFactor;
+        }
+        
+        /**
+         * Getter for the number of records sampled on every batch of the 
+         * Mini-batch Kmeans.
+         * 
+         * @return 
+         */
+        public int getMiniBatchSize() {
+            return miniBatchSize;
+        }
+        
+        /**
+         * Setter for the number of records sampled on every batch of the 
+         * Mini-batch Kmeans. When it is positive the centroids are updated 
+         * from small random samples of the training data instead of full 
+         * passes. Setting it to 0 runs the standard algorithm.
+         * 
+         * References:
+         * https://www.eecs.tufts.edu/~dsculley/papers/fastkmeans.pdf
+         * 
+         * @param miniBatchSize 
+         */
+        public void setMiniBatchSize(int miniBatchSize) {
+            this.miniBatchSize = miniBatchSize;
+        }
+        
+        /**
+         * Getter for the number of batches of the Mini-batch Kmeans.
+         * 
+         * @return 
+         */
+        public int getNumberOfBatches() {
+            return numberOfBatches;
+        }
+        
+        /**
+         * Setter for the number of batches of the Mini-batch Kmeans.
+         * 
+         * @param numberOfBatches 
+         */
+        public void setNumberOfBatches(int numberOfBatches) {
+            this.numberOfBatches = numberOfBatches;
+        }
+        
+        /**
+         * Getter for the reassignment ratio of the Mini-batch Kmeans.
+         * 
+         * @return 
+         */
+        public double getReassignmentRatio() {
+            return reassignmentRatio;
+        }
+        
+        /**
+         * Setter for the reassignment ratio of the Mini-batch Kmeans. The 
+         * clusters which have received fewer than reassignmentRatio times the
+         * records of the largest cluster are moved to a random record of the
+         * batch. Setting it to 0 disables the reassignments.
+         * 
+         * @param reassignmentRatio 
+         */
+        public void setReassignmentRatio(double reassignmentRatio) {
+            this.reassignmentRatio = reassignmentRatio;
+        }
+        
     } 
 
     /** {@inheritDoc} */
@@ -498,7 +657,12 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
         initializeClusters(trainingData);
         
         //calculate clusters
-        calculateClusters(trainingData);
+        if(kb().getTrainingParameters().getMiniBatchSize()>0) {
+            calculateClustersMiniBatch(trainingData);
+        }
+        else {
+            calculateClusters(trainingData);
+        }
         
         clearClusters();
     }
@@ -764,6 +928,189 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
             }
             //alreadyAddedPoints = null;
         }
+        else if(initializationMethod==TrainingParameters.Initialization.SCALABLE_PLUS_PLUS) {
+            initializeClustersScalablePlusPlus(trainingData);
+        }
+    }
+    
+    /**
+     * Initializes the clusters by using Kmeans|| (Scalable Kmeans++). Instead
+     * of selecting one centroid per pass, every round samples independently 
+     * oversamplingFactor*k candidates with probability proportional to their
+     * squared distance from the existing candidates. After O(log k) rounds the
+     * candidates are weighted by the number of records closest to them and 
+     * they are reclustered locally into k clusters.
+     * 
+     * @param trainingData 
+     */
+    private void initializeClustersScalablePlusPlus(Dataframe trainingData) {
+        ModelParameters modelParameters = kb().getModelParameters();
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        Map<Integer, Cluster> clusterMap = modelParameters.getClusterMap();
+        
+        int k = trainingParameters.getK();
+        double oversampling = trainingParameters.getOversamplingFactor()*k;
+        int rounds = Math.max((int)Math.ceil(PHPMethods.log(k, 2)), 1);
+        
+        //the random draws take place on this thread to keep the results reproducible
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        
+        Integer[] recordIds = getRecordIds(trainingData);
+        int n = recordIds.length;
+        
+        List<Record> candidates = new ArrayList<>();
+        candidates.add(trainingData.get(recordIds[rnd.nextInt(n)]));
+        
+        double[] minSquaredDistances = new double[n];
+        int[] closestCandidates = new int[n];
+        Arrays.fill(minSquaredDistances, Double.MAX_VALUE);
+        
+        int firstNewCandidate = 0;
+        for(int round=0;round<=rounds;round++) {
+            //update the distances by using only the candidates added on the previous round
+            int from = firstNewCandidate;
+            int to = candidates.size();
+            streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, n).boxed(), isParallelized()), position -> {
+                Record r = trainingData.get(recordIds[position]);
+                for(int j=from;j<to;j++) {
+                    double distance = calculateDistance(r, candidates.get(j));
+                    double squaredDistance = distance*distance;
+                    if(squaredDistance<minSquaredDistances[position]) {
+                        minSquaredDistances[position] = squaredDistance;
+                        closestCandidates[position] = j;
+                    }
+                }
+            });
+            firstNewCandidate = to;
+            
+            double cost = 0.0;
+            for(int position=0;position<n;position++) {
+                cost += minSquaredDistances[position];
+            }
+            if(round==rounds || cost==0.0) {
+                break;
+            }
+            
+            for(int position=0;position<n;position++) {
+                if(rnd.nextDouble()<oversampling*minSquaredDistances[position]/cost) {
+                    candidates.add(trainingData.get(recordIds[position]));
+                }
+            }
+        }
+        
+        //weight the candidates by the number of records that are closest to them
+        int m = candidates.size();
+        double[] candidateWeights = new double[m];
+        for(int position=0;position<n;position++) {
+            candidateWeights[closestCandidates[position]]++;
+        }
+        
+        AssociativeArray[] centroidValues = reclusterCandidates(candidates, candidateWeights, k, trainingParameters.getMaxIterations(), rnd);
+        for(int j=0;j<centroidValues.length;j++) {
+            Integer clusterId = j;
+            Cluster c = new Cluster(clusterId);
+            c.setCentroid(centroidValues[j]);
+            clusterMap.put(clusterId, c);
+        }
+    }
+    
+    /**
+     * Reclusters locally the weighted candidates of the Kmeans|| into k 
+     * clusters by using the weighted Kmeans++ initialization followed by
+     * weighted Lloyd iterations.
+     * 
+     * @param candidates
+     * @param candidateWeights
+     * @param k
+     * @param maxIterations
+     * @param rnd
+     * @return 
+     */
+    private AssociativeArray[] reclusterCandidates(List<Record> candidates, double[] candidateWeights, int k, int maxIterations, Random rnd) {
+        int m = candidates.size();
+        if(m<=k) {
+            AssociativeArray[] centroidValues = new AssociativeArray[m];
+            for(int j=0;j<m;j++) {
+                centroidValues[j] = candidates.get(j).getX().copy();
+            }
+            return centroidValues;
+        }
+        
+        //weighted Kmeans++
+        Record[] centroids = new Record[k];
+        double[] minSquaredDistances = new double[m];
+        Arrays.fill(minSquaredDistances, 1.0);
+        for(int j=0;j<k;j++) {
+            double total = 0.0;
+            for(int i=0;i<m;i++) {
+                total += candidateWeights[i]*minSquaredDistances[i];
+            }
+            
+            int selected = -1;
+            double threshold = rnd.nextDouble()*total;
+            for(int i=0;i<m;i++) {
+                double p = candidateWeights[i]*minSquaredDistances[i];
+                if(p>0.0) {
+                    selected = i;
+                    threshold -= p;
+                    if(threshold<0.0) {
+                        break;
+                    }
+                }
+            }
+            if(selected<0) {
+                centroids = Arrays.copyOf(centroids, j); //there are fewer than k distinct candidates
+                break;
+            }
+            
+            centroids[j] = candidates.get(selected);
+            for(int i=0;i<m;i++) {
+                double distance = calculateDistance(candidates.get(i), centroids[j]);
+                minSquaredDistances[i] = (j==0)?distance*distance:Math.min(minSquaredDistances[i], distance*distance);
+            }
+        }
+        
+        //weighted Lloyd iterations
+        int[] assignments = new int[m];
+        Arrays.fill(assignments, -1);
+        for(int iteration=0;iteration<maxIterations;iteration++) {
+            boolean changed = false;
+            for(int i=0;i<m;i++) {
+                int closest = getClosestCentroid(candidates.get(i), centroids);
+                if(closest!=assignments[i]) {
+                    assignments[i] = closest;
+                    changed = true;
+                }
+            }
+            if(changed==false) {
+                break;
+            }
+            
+            AssociativeArray[] sums = new AssociativeArray[centroids.length];
+            double[] weights = new double[centroids.length];
+            for(int i=0;i<m;i++) {
+                int j = assignments[i];
+                AssociativeArray xw = candidates.get(i).getX().copy();
+                xw.multiplyValues(candidateWeights[i]);
+                if(sums[j]==null) {
+                    sums[j] = new AssociativeArray();
+                }
+                sums[j].addValues(xw);
+                weights[j] += candidateWeights[i];
+            }
+            for(int j=0;j<centroids.length;j++) {
+                if(weights[j]>0.0) {
+                    sums[j].multiplyValues(1.0/weights[j]);
+                    centroids[j] = new Record(sums[j], null);
+                }
+            }
+        }
+        
+        AssociativeArray[] centroidValues = new AssociativeArray[centroids.length];
+        for(int j=0;j<centroids.length;j++) {
+            centroidValues[j] = centroids[j].getX().copy();
+        }
+        return centroidValues;
     }
 
     private void calculateClusters(Dataframe trainingData) {
@@ -772,56 +1119,113 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
         Map<Integer, Cluster> clusterMap = modelParameters.getClusterMap();
         
         int maxIterations = trainingParameters.getMaxIterations();
+        boolean accelerated = trainingParameters.isAccelerated();
         modelParameters.setTotalIterations(maxIterations);
         
+        //the clusters are kept in arrays during the training
+        int k = clusterMap.size();
+        Integer[] clusterIds = clusterMap.keySet().toArray(new Integer[k]);
+        Arrays.sort(clusterIds);
+        Record[] centroids = new Record[k];
+        for(int j=0;j<k;j++) {
+            centroids[j] = clusterMap.get(clusterIds[j]).getCentroid();
+        }
+        
+        //the records are accessed by their position, which indexes the bounds
+        Integer[] recordIds = getRecordIds(trainingData);
+        int n = recordIds.length;
+        int[] assignments = new int[n];
+        double[] upperBounds = new double[n];
+        double[] lowerBounds = new double[n];
+        Arrays.fill(assignments, -1);
+        
+        double[] halfMinCentroidDistances = new double[k];
+        
         for(int iteration=0;iteration<maxIterations;++iteration) {
             logger.debug("Iteration {}", iteration);
             
-            //reset cluster points
-            for(Map.Entry<Integer, Cluster> entry1 : clusterMap.entrySet()) {
-                Integer clusterId = entry1.getKey();
-                Cluster cluster = entry1.getValue();
-                cluster.reset();
-                clusterMap.put(clusterId, cluster);
-            }
-            
-            //assign records to clusters
-            Map<Integer, Integer> tmp_clusterAssignments = kb().getDbc().getBigMap("tmp_clusterAssignments", MapType.HASHMAP, StorageHint.IN_MEMORY, true, true);
-            streamExecutor.forEach(StreamMethods.stream(trainingData.entries(), isParallelized()), e -> {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                //we are storing cluster references not clusterIds
-                AssociativeArray clusterDistances = new AssociativeArray();
-                for(Map.Entry<Integer, Cluster> entry : clusterMap.entrySet()) {
-                    Integer cId = entry.getKey();
-                    Cluster c = entry.getValue();
-                    clusterDistances.put(cId, calculateDistance(r, c.getCentroid()));
+            if(accelerated) {
+                //half of the distance of every centroid from its closest centroid
+                Arrays.fill(halfMinCentroidDistances, Double.MAX_VALUE);
+                for(int j=0;j<k;j++) {
+                    for(int jj=j+1;jj<k;jj++) {
+                        double halfDistance = calculateDistance(centroids[j], centroids[jj])/2.0;
+                        halfMinCentroidDistances[j] = Math.min(halfMinCentroidDistances[j], halfDistance);
+                        halfMinCentroidDistances[jj] = Math.min(halfMinCentroidDistances[jj], halfDistance);
+                    }
                 }
-                
-                //find the closest cluster
-                Integer selectedClusterId = (Integer)getSelectedClusterFromDistances(clusterDistances);
-                tmp_clusterAssignments.put(rId, selectedClusterId);
-            });
-            
-            for(Map.Entry<Integer, Record> e : trainingData.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                
-                //add the record in the cluster
-                Integer selectedClusterId = tmp_clusterAssignments.get(rId);
-                Cluster selectedCluster = clusterMap.get(selectedClusterId);
-                selectedCluster.add(r);
-                clusterMap.put(selectedClusterId, selectedCluster);
             }
-            kb().getDbc().dropBigMap("tmp_clusterAssignments", tmp_clusterAssignments);
+            
+            //assign records to clusters and accumulate the partial clusters of every thread
+            Cluster[] partialClusters = streamExecutor.collect(StreamMethods.stream(IntStream.range(0, n).boxed(), isParallelized()), Collector.of(
+                () -> {
+                    Cluster[] partial = new Cluster[k];
+                    for(int j=0;j<k;j++) {
+                        partial[j] = new Cluster(clusterIds[j]);
+                    }
+                    return partial;
+                },
+                (partial, position) -> {
+                    Record r = trainingData.get(recordIds[position]);
+                    int a = assignments[position];
+                    
+                    boolean scanAll = true;
+                    if(accelerated && a>=0) {
+                        double bound = Math.max(halfMinCentroidDistances[a], lowerBounds[position]);
+                        if(upperBounds[position]>bound) {
+                            //tighten the upper bound and check again
+                            upperBounds[position] = calculateDistance(r, centroids[a]);
+                        }
+                        scanAll = upperBounds[position]>bound;
+                    }
+                    
+                    if(scanAll) {
+                        //find the closest and the second closest cluster
+                        int closest = -1;
+                        double minDistance = Double.MAX_VALUE;
+                        double secondMinDistance = Double.MAX_VALUE;
+                        for(int j=0;j<k;j++) {
+                            double distance = calculateDistance(r, centroids[j]);
+                            if(closest<0 || distance<minDistance) {
+                                secondMinDistance = minDistance;
+                                minDistance = distance;
+                                closest = j;
+                            }
+                            else if(distance<secondMinDistance) {
+                                secondMinDistance = distance;
+                            }
+                        }
+                        assignments[position] = closest;
+                        upperBounds[position] = minDistance;
+                        lowerBounds[position] = secondMinDistance;
+                    }
+                    
+                    partial[assignments[position]].add(r);
+                },
+                (partial1, partial2) -> {
+                    for(int j=0;j<k;j++) {
+                        partial1[j].merge(partial2[j]);
+                    }
+                    return partial1;
+                }
+            ));
             
             //update clusters
             boolean changed=false;
-            for(Map.Entry<Integer, Cluster> e : clusterMap.entrySet()) {
-                Integer cId = e.getKey();
-                Cluster c = e.getValue();
+            double[] centroidMoves = new double[k];
+            for(int j=0;j<k;j++) {
+                Integer cId = clusterIds[j];
+                Cluster c = clusterMap.get(cId);
+                c.reset();
+                c.merge(partialClusters[j]);
                 changed|=c.updateClusterParameters();
                 clusterMap.put(cId, c);
+                
+                Record newCentroid = c.getCentroid();
+                if(accelerated) {
+                    centroidMoves[j] = calculateDistance(centroids[j], newCentroid);
+                }
+                centroids[j] = newCentroid;
             }
             
             //if none of the clusters changed then exit
@@ -829,7 +1233,199 @@ public class Kmeans extends AbstractClusterer<Kmeans.Cluster, Kmeans.ModelParame
                 modelParameters.setTotalIterations(iteration);
                 break;
             }
+            
+            if(accelerated) {
+                updateBounds(assignments, upperBounds, lowerBounds, centroidMoves);
+            }
         }
     }
-
-}
\ No newline at end of file
+    
+    /**
+     * Updates the bounds of the records after the centroids have moved. The 
+     * upper bound increases by the move of the assigned centroid and the lower
+     * bound decreases by the largest move of the rest of the centroids.
+     * 
+     * @param assignments
+     * @param upperBounds
+     * @param lowerBounds
+     * @param centroidMoves 
+     */
+    private void updateBounds(int[] assignments, double[] upperBounds, double[] lowerBounds, double[] centroidMoves) {
+        //find the two largest moves
+        int maxMoveId = -1;
+        double maxMove = 0.0;
+        double secondMaxMove = 0.0;
+        for(int j=0;j<centroidMoves.length;j++) {
+            if(maxMoveId<0 || centroidMoves[j]>maxMove) {
+                secondMaxMove = maxMove;
+                maxMove = centroidMoves[j];
+                maxMoveId = j;
+            }
+            else if(centroidMoves[j]>secondMaxMove) {
+                secondMaxMove = centroidMoves[j];
+            }
+        }
+        
+        for(int position=0;position<assignments.length;position++) {
+            int a = assignments[position];
+            upperBounds[position] += centroidMoves[a];
+            lowerBounds[position] -= (a==maxMoveId)?secondMaxMove:maxMove;
+        }
+    }
+    
+    /**
+     * Runs the Mini-batch Kmeans. On every batch a random sample of records is 
+     * assigned to the closest centroids and each centroid moves towards its 
+     * records with a learning rate equal to the inverse of the number of 
+     * records it has received so far. A final pass over the data estimates 
+     * the sizes of the clusters.
+     * 
+     * @param trainingData 
+     */
+    private void calculateClustersMiniBatch(Dataframe trainingData) {
+        ModelParameters modelParameters = kb().getModelParameters();
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        Map<Integer, Cluster> clusterMap = modelParameters.getClusterMap();
+        
+        int batchSize = trainingParameters.getMiniBatchSize();
+        int numberOfBatches = trainingParameters.getNumberOfBatches();
+        double reassignmentRatio = trainingParameters.getReassignmentRatio();
+        
+        int k = clusterMap.size();
+        Integer[] clusterIds = clusterMap.keySet().toArray(new Integer[k]);
+        Arrays.sort(clusterIds);
+        AssociativeArray[] centroidValues = new AssociativeArray[k];
+        Record[] centroids = new Record[k];
+        for(int j=0;j<k;j++) {
+            centroidValues[j] = clusterMap.get(clusterIds[j]).getCentroid().getX().copy();
+            centroids[j] = new Record(centroidValues[j], null);
+        }
+        long[] counts = new long[k];
+        
+        //the random draws take place on this thread to keep the results reproducible
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        
+        Integer[] recordIds = getRecordIds(trainingData);
+        int n = recordIds.length;
+        
+        for(int batch=0;batch<numberOfBatches;batch++) {
+            logger.debug("Batch {}", batch);
+            
+            Record[] batchRecords = new Record[batchSize];
+            for(int i=0;i<batchSize;i++) {
+                batchRecords[i] = trainingData.get(recordIds[rnd.nextInt(n)]);
+            }
+            
+            //find the closest centroids by using the centroids of the previous batch
+            int[] batchAssignments = new int[batchSize];
+            Record[] batchCentroids = centroids.clone();
+            streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, batchSize).boxed(), isParallelized()), i -> {
+                batchAssignments[i] = getClosestCentroid(batchRecords[i], batchCentroids);
+            });
+            
+            //move the centroids by using per center learning rates
+            for(int i=0;i<batchSize;i++) {
+                int j = batchAssignments[i];
+                counts[j]++;
+                double learningRate = 1.0/counts[j];
+                centroidValues[j].multiplyValues(1.0-learningRate);
+                AssociativeArray xi = batchRecords[i].getX().copy();
+                xi.multiplyValues(learningRate);
+                centroidValues[j].addValues(xi);
+            }
+            
+            //move the nearly empty clusters to random records of the batch
+            if(reassignmentRatio>0.0) {
+                long maxCount = 0L;
+                for(int j=0;j<k;j++) {
+                    maxCount = Math.max(maxCount, counts[j]);
+                }
+                long minCount = Long.MAX_VALUE;
+                boolean[] reassign = new boolean[k];
+                for(int j=0;j<k;j++) {
+                    reassign[j] = counts[j]<reassignmentRatio*maxCount;
+                    if(!reassign[j]) {
+                        minCount = Math.min(minCount, counts[j]);
+                    }
+                }
+                for(int j=0;j<k;j++) {
+                    if(reassign[j]) {
+                        centroidValues[j] = batchRecords[rnd.nextInt(batchSize)].getX().copy();
+                        counts[j] = minCount;
+                    }
+                }
+            }
+            
+            for(int j=0;j<k;j++) {
+                centroids[j] = new Record(centroidValues[j], null);
+            }
+        }
+        modelParameters.setTotalIterations(numberOfBatches);
+        
+        //estimate the sizes of the clusters
+        Cluster[] partialClusters = streamExecutor.collect(StreamMethods.stream(trainingData.stream(), isParallelized()), Collector.of(
+            () -> {
+                Cluster[] partial = new Cluster[k];
+                for(int j=0;j<k;j++) {
+                    partial[j] = new Cluster(clusterIds[j]);
+                }
+                return partial;
+            },
+            (partial, r) -> {
+                partial[getClosestCentroid(r, centroids)].add(r);
+            },
+            (partial1, partial2) -> {
+                for(int j=0;j<k;j++) {
+                    partial1[j].merge(partial2[j]);
+                }
+                return partial1;
+            }
+        ));
+        for(int j=0;j<k;j++) {
+            Integer cId = clusterIds[j];
+            Cluster c = clusterMap.get(cId);
+            c.reset();
+            c.merge(partialClusters[j]);
+            c.setCentroid(centroidValues[j]);
+            clusterMap.put(cId, c);
+        }
+    }
+    
+    /**
+     * Returns the position of the closest centroid. Ties are resolved in favour
+     * of the first centroid.
+     * 
+     * @param r
+     * @param centroids
+     * @return 
+     */
+    private int getClosestCentroid(Record r, Record[] centroids) {
+        int closest = -1;
+        double minDistance = Double.MAX_VALUE;
+        for(int j=0;j<centroids.length;j++) {
+            double distance = calculateDistance(r, centroids[j]);
+            if(closest<0 || distance<minDistance) {
+                minDistance = distance;
+                closest = j;
+            }
+        }
+        return closest;
+    }
+    
+    /**
+     * Returns the ids of the records in the order of the index. They are used 
+     * to access the records by their position.
+     * 
+     * @param trainingData
+     * @return 
+     */
+    private Integer[] getRecordIds(Dataframe trainingData) {
+        Integer[] recordIds = new Integer[trainingData.size()];
+        int i = 0;
+        for(Integer rId : trainingData.index()) {
+            recordIds[i++] = rId;
+        }
+        return recordIds;
+    }
+    
+}
@@ -21,6 +21,7 @@ import com.datumbox.framework.common.interfaces.Trainable;
 import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.core.machinelearning.common.dataobjects.DoubleKnowledgeBase;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.KnowledgeBase;
 import com.datumbox.framework.core.machinelearning.common.interfaces.ModelParameters;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainingParameters;
@@ -223,6 +224,45 @@ public abstract class AbstractTrainer<MP extends AbstractTrainer.AbstractModelPa
         logger.info("Saving model");
         kb().save();
     }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void partialFit(Dataframe trainingData) {
+        if(!(this instanceof IncrementallyTrainable)) {
+            throw new UnsupportedOperationException("The algorithm does not support incremental training.");
+        }
+        
+        logger.info("partialFit()");
+        
+        kb().load();
+        
+        if(kb().getModelParameters() == null) {
+            //nothing was trained before, so train the model from scratch with the default training parameters
+            kb().clear();
+            fit(trainingData, kb().getTrainingParameters());
+            return;
+        }
+        
+        AbstractModelParameters modelParameters = (AbstractModelParameters) kb().getModelParameters();
+        modelParameters.setN(modelParameters.getN()+trainingData.size());
+        //the D is set by the algorithm from the union of the old and the new features
+        
+        ((IncrementallyTrainable)this)._partialFit(trainingData);
+        
+        logger.info("Saving model");
+        kb().save();
+    }
+      
+    /**
+     * Sets the dimension of the trained model. The algorithms which support 
+     * incremental training call it with the number of features they have 
+     * interned, which is the size of the union of the old and the new features.
+     * 
+     * @param d 
+     */
+    protected void setModelDimension(int d) {
+        ((AbstractModelParameters) kb().getModelParameters()).setD(d);
+    }
       
     /** {@inheritDoc} */
     @Override
@@ -16,6 +16,8 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.algorithms;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ConcurrencyConfiguration;
+import com.datumbox.framework.common.concurrency.ThreadMethods;
 import com.datumbox.framework.common.dataobjects.*;
 import com.datumbox.framework.common.interfaces.Trainable;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
@@ -24,6 +26,8 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClassifier;
+import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.ClassifierValidator;
 import com.datumbox.framework.core.machinelearning.ensemblelearning.FixedCombinationRules;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
@@ -33,6 +37,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * Base class for Adaboost and BoostrapAgregating.
@@ -42,11 +48,18 @@ import java.util.Set;
  * @param <TP>
  * @param <VM>
  */
-public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging.AbstractModelParameters, TP extends AbstractBoostingBagging.AbstractTrainingParameters, VM extends AbstractBoostingBagging.AbstractValidationMetrics> extends AbstractClassifier<MP, TP, VM> {
+public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging.AbstractModelParameters, TP extends AbstractBoostingBagging.AbstractTrainingParameters, VM extends AbstractBoostingBagging.AbstractValidationMetrics> extends AbstractClassifier<MP, TP, VM> implements PredictParallelizable, TrainParallelizable {
 
     private static final String DB_INDICATOR = "Cmp";
     private static final int MAX_NUM_OF_RETRIES = 2;
     
+    private boolean parallelized = true;
+    
+    /**
+     * The weak classifiers which are kept in memory for predictions.
+     */
+    private List<AbstractClassifier> weakClassifiers = null;
+    
     /** {@inheritDoc} */
     public static abstract class AbstractModelParameters extends AbstractClassifier.AbstractModelParameters {
         
@@ -160,66 +173,55 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
         super(dbName, conf, mpClass, tpClass, vmClass, new ClassifierValidator<>());
     } 
     
+    /** {@inheritDoc} */
+    @Override
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected void _predictDataset(Dataframe newData) {
-        Class<? extends AbstractClassifier> weakClassifierClass = kb().getTrainingParameters().getWeakClassifierClass();
-        List<Double> weakClassifierWeights = kb().getModelParameters().getWeakClassifierWeights();
-        
-        //create a temporary map for the observed probabilities in training set
         DatabaseConnector dbc = kb().getDbc();
-        Map<Object, DataTable2D> tmp_recordDecisions = dbc.getBigMap("tmp_recordDecisions", MapType.HASHMAP, StorageHint.IN_DISK, false, true);
-        
-        //initialize array of recordDecisions
-        for(Integer rId : newData.index()) {
-            tmp_recordDecisions.put(rId, new DataTable2D());
-        }
+        Map<Integer, Prediction> resultsBuffer = dbc.getBigMap("tmp_resultsBuffer", MapType.HASHMAP, StorageHint.IN_DISK, true, true);
+        _predictDatasetParallel(newData, resultsBuffer, kb().getConf().getConcurrencyConfig());
+        dbc.dropBigMap("tmp_resultsBuffer", resultsBuffer);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public Prediction _predictRecord(Record r) {
+        List<AbstractClassifier> classifiers = getWeakClassifiers();
+        List<Double> weakClassifierWeights = kb().getModelParameters().getWeakClassifierWeights();
         
-        //using the weak classifiers
+        //collect the decisions of all the weak classifiers in memory
+        DataTable2D rDecisions = new DataTable2D();
         AssociativeArray classifierWeightsArray = new AssociativeArray();
-        int totalWeakClassifiers = weakClassifierWeights.size();
+        int totalWeakClassifiers = classifiers.size();
         for(int t=0;t<totalWeakClassifiers;++t) {
-            try (AbstractClassifier mlclassifier = Trainable.<AbstractClassifier>newInstance(
-                    (Class<AbstractClassifier>)weakClassifierClass, 
-                    dbName+kb().getConf().getDbConfig().getDBnameSeparator()+DB_INDICATOR+String.valueOf(t), 
-                    kb().getConf())) {
-                mlclassifier.predict(newData);
-            }
-            
+            rDecisions.put(t, classifiers.get(t).predict(r).getYPredictedProbabilities());
             classifierWeightsArray.put(t, weakClassifierWeights.get(t));
-            
-            for(Map.Entry<Integer, Record> e : newData.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                AssociativeArray classProbabilities = r.getYPredictedProbabilities();
-                
-                DataTable2D rDecisions = tmp_recordDecisions.get(rId);
-                rDecisions.put(t, classProbabilities);
-                
-                tmp_recordDecisions.put(rId, rDecisions); //WARNING: Do not remove this! We must put it back to the Map to persist it on Disk-backed maps
-            }
         }
         
-        //for each record find the combined classification by majority vote
-        for(Map.Entry<Integer, Record> e : newData.entries()) {
-            Integer rId = e.getKey();
-            Record r = e.getValue();
-            
-            AssociativeArray combinedClassVotes = FixedCombinationRules.weightedAverage(tmp_recordDecisions.get(rId), classifierWeightsArray);
-            Descriptives.normalize(combinedClassVotes);
-            
-            newData._unsafe_set(rId, new Record(r.getX(), r.getY(), MapMethods.selectMaxKeyValue(combinedClassVotes).getKey(), combinedClassVotes));
-        }
+        //find the combined classification by weighted majority vote
+        AssociativeArray combinedClassVotes = FixedCombinationRules.weightedAverage(rDecisions, classifierWeightsArray);
+        Descriptives.normalize(combinedClassVotes);
         
-        //Drop the temporary Collection
-        dbc.dropBigMap("tmp_recordDecisions", tmp_recordDecisions);
+        return new Prediction(MapMethods.selectMaxKeyValue(combinedClassVotes).getKey(), combinedClassVotes);
     }
     
     /** {@inheritDoc} */
     @Override
     protected void _fit(Dataframe trainingData) {
+        closeWeakClassifiers(); //the stored weak classifiers are replaced
+        
         AbstractModelParameters modelParameters = kb().getModelParameters();
-        AbstractTrainingParameters trainingParameters = kb().getTrainingParameters();
         
         int n = modelParameters.getN();
         
@@ -241,7 +243,25 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
             observationWeights.put(rId, 1.0/n); //initialize observation weights
         }
         
-        Class<? extends AbstractClassifier> weakClassifierClass = trainingParameters.getWeakClassifierClass();
+        if(areWeakClassifiersIndependent()) {
+            fitIndependentWeakClassifiers(trainingData, observationWeights);
+        }
+        else {
+            fitSequentialWeakClassifiers(trainingData, observationWeights);
+        }
+    }
+    
+    /**
+     * Trains the weak classifiers one after the other. After every round the 
+     * weights of the observations and of the classifiers are updated.
+     * 
+     * @param trainingData
+     * @param observationWeights 
+     */
+    private void fitSequentialWeakClassifiers(Dataframe trainingData, AssociativeArray observationWeights) {
+        AbstractTrainingParameters trainingParameters = kb().getTrainingParameters();
+        int n = kb().getModelParameters().getN();
+        
         AbstractClassifier.AbstractTrainingParameters weakClassifierTrainingParameters = trainingParameters.getWeakClassifierTrainingParameters();
         int totalWeakClassifiers = trainingParameters.getMaxWeakClassifiers();
         
@@ -254,13 +274,10 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
             FlatDataList sampledIDs = SimpleRandomSampling.weightedSampling(observationWeights, n, true).toFlatDataList();
             
             //We construct a new Dataframe from the sampledIDs
-            Dataframe sampledTrainingDataset = trainingData.getSubset(sampledIDs);
+            Dataframe sampledTrainingDataset = trainingData.getView(sampledIDs);
             
             Dataframe validationDataset;
-            try (AbstractClassifier mlclassifier = Trainable.<AbstractClassifier>newInstance(
-                    (Class<AbstractClassifier>)weakClassifierClass, 
-                    dbName+kb().getConf().getDbConfig().getDBnameSeparator()+DB_INDICATOR+String.valueOf(t), 
-                    kb().getConf())) {
+            try (AbstractClassifier mlclassifier = newWeakClassifier(t)) {
                 mlclassifier.fit(sampledTrainingDataset, weakClassifierTrainingParameters);
                 sampledTrainingDataset.delete();
                 //sampledTrainingDataset = null;
@@ -292,7 +309,66 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
             
             ++t; //increase counter here. This is because some times we might want to redo the 
         }
+    }
+    
+    /**
+     * Trains the weak classifiers concurrently on the shared pool. It is used
+     * when the rounds do not depend on each other, so the observation weights 
+     * are never updated and all the weak classifiers get equal weights. The 
+     * samples are drawn upfront by the current thread, so the results do not 
+     * depend on the scheduling of the rounds.
+     * 
+     * @param trainingData
+     * @param observationWeights 
+     */
+    private void fitIndependentWeakClassifiers(Dataframe trainingData, AssociativeArray observationWeights) {
+        AbstractTrainingParameters trainingParameters = kb().getTrainingParameters();
+        int n = kb().getModelParameters().getN();
         
+        AbstractClassifier.AbstractTrainingParameters weakClassifierTrainingParameters = trainingParameters.getWeakClassifierTrainingParameters();
+        int totalWeakClassifiers = trainingParameters.getMaxWeakClassifiers();
+        
+        List<FlatDataList> samples = new ArrayList<>(totalWeakClassifiers);
+        for(int t=0;t<totalWeakClassifiers;++t) {
+            samples.add(SimpleRandomSampling.weightedSampling(observationWeights, n, true).toFlatDataList());
+        }
+        
+        ConcurrencyConfiguration concurrencyConfig = kb().getConf().getConcurrencyConfig();
+        int maxConcurrentClassifiers = isParallelized()?concurrencyConfig.getMaxNumberOfThreadsPerTask():1;
+        
+        Map<Integer, RuntimeException> exceptions = new ConcurrentHashMap<>();
+        ThreadMethods.throttledExecution(IntStream.range(0, totalWeakClassifiers).boxed(), t -> {
+            logger.debug("Training Weak learner {}", t);
+            try (AbstractClassifier mlclassifier = newWeakClassifier(t)) {
+                Dataframe sampledTrainingDataset = trainingData.getView(samples.get(t));
+                mlclassifier.fit(sampledTrainingDataset, weakClassifierTrainingParameters);
+                sampledTrainingDataset.delete();
+            }
+            catch(RuntimeException ex) {
+                exceptions.put(t, ex);
+            }
+        }, concurrencyConfig, maxConcurrentClassifiers);
+        
+        if(!exceptions.isEmpty()) {
+            throw exceptions.values().iterator().next();
+        }
+        
+        List<Double> weakClassifierWeights = kb().getModelParameters().getWeakClassifierWeights();
+        for(int t=0;t<totalWeakClassifiers;++t) {
+            weakClassifierWeights.add(1.0/totalWeakClassifiers); //equal weight to all classifiers
+        }
+    }
+    
+    /**
+     * Returns whether the weak classifiers are trained independently. In that
+     * case the observation weights are never updated, the rounds are trained in 
+     * parallel and all the classifiers get equal weights. By default the weak
+     * classifiers are trained sequentially.
+     * 
+     * @return 
+     */
+    protected boolean areWeakClassifiersIndependent() {
+        return false;
     }
     
     /**
@@ -327,10 +403,64 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
     /** {@inheritDoc} */
     @Override
     public void delete() {
+        closeWeakClassifiers();
         deleteWeakClassifiers();
         super.delete();
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        closeWeakClassifiers();
+        super.close();
+    }
+    
+    /**
+     * Returns the weak classifiers of the ensemble. The classifiers are loaded
+     * on the first call and they are kept in memory until the ensemble is 
+     * closed or retrained.
+     * 
+     * @return 
+     */
+    private synchronized List<AbstractClassifier> getWeakClassifiers() {
+        if(weakClassifiers==null) {
+            int totalWeakClassifiers = kb().getModelParameters().getWeakClassifierWeights().size();
+            List<AbstractClassifier> classifiers = new ArrayList<>(totalWeakClassifiers);
+            for(int t=0;t<totalWeakClassifiers;++t) {
+                classifiers.add(newWeakClassifier(t));
+            }
+            weakClassifiers = classifiers;
+        }
+        return weakClassifiers;
+    }
+    
+    /**
+     * Closes the weak classifiers which are kept in memory.
+     */
+    private synchronized void closeWeakClassifiers() {
+        if(weakClassifiers!=null) {
+            for(AbstractClassifier mlclassifier : weakClassifiers) {
+                mlclassifier.close();
+            }
+            weakClassifiers = null;
+        }
+    }
+    
+    /**
+     * Initializes the t-th weak classifier of the ensemble.
+     * 
+     * @param t
+     * @return 
+     */
+    private AbstractClassifier newWeakClassifier(int t) {
+        Class<? extends AbstractClassifier> weakClassifierClass = kb().getTrainingParameters().getWeakClassifierClass();
+        return Trainable.<AbstractClassifier>newInstance(
+                (Class<AbstractClassifier>)weakClassifierClass, 
+                dbName+kb().getConf().getDbConfig().getDBnameSeparator()+DB_INDICATOR+String.valueOf(t), 
+                kb().getConf()
+        );
+    }
+    
     private void deleteWeakClassifiers() {
         AbstractModelParameters modelParameters = kb().getModelParameters();
         AbstractTrainingParameters trainingParameters = kb().getTrainingParameters();
@@ -339,15 +469,10 @@ public abstract class AbstractBoostingBagging<MP extends AbstractBoostingBagging
             return;
         }
         
-        Class<? extends AbstractClassifier> weakClassifierClass = trainingParameters.getWeakClassifierClass();
         //the number of weak classifiers is the minimum between the classifiers that were defined in training parameters AND the number of the weak classifiers that were kept +1 for the one that was abandoned due to high error
         int totalWeakClassifiers = Math.min(modelParameters.getWeakClassifierWeights().size()+1, trainingParameters.getMaxWeakClassifiers());
         for(int t=0;t<totalWeakClassifiers;++t) {
-            AbstractClassifier mlclassifier = Trainable.<AbstractClassifier>newInstance(
-                    (Class<AbstractClassifier>)weakClassifierClass, 
-                    dbName+kb().getConf().getDbConfig().getDBnameSeparator()+DB_INDICATOR+String.valueOf(t), 
-                    kb().getConf()
-            );
+            AbstractClassifier mlclassifier = newWeakClassifier(t);
             mlclassifier.delete();
         }
     }
@@ -16,6 +16,8 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.algorithms;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
@@ -25,17 +27,20 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.common.utilities.PHPMethods;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClusterer;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.ClustererValidator;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
-import com.datumbox.framework.core.statistics.sampling.SimpleRandomSampling;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 
 /**
@@ -48,7 +53,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * @param <VM>
  */
 
-public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP extends AbstractDPMM.AbstractModelParameters, TP extends AbstractDPMM.AbstractTrainingParameters, VM extends AbstractDPMM.AbstractValidationMetrics> extends AbstractClusterer<CL, MP, TP, VM> implements PredictParallelizable {
+public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP extends AbstractDPMM.AbstractModelParameters, TP extends AbstractDPMM.AbstractTrainingParameters, VM extends AbstractDPMM.AbstractValidationMetrics> extends AbstractClusterer<CL, MP, TP, VM> implements PredictParallelizable, TrainParallelizable {
     
     /** {@inheritDoc} */
     public static abstract class AbstractCluster extends AbstractClusterer.AbstractCluster {
@@ -213,6 +218,8 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
         //are generated and the observations are assigned randomly in it.
         private Initialization initializationMethod = Initialization.ONE_CLUSTER_PER_RECORD; 
         
+        private boolean parallelSampling = false;
+        
         /**
          * Getter for Alpha hyperparameter.
          * 
@@ -267,6 +274,30 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
             this.initializationMethod = initializationMethod;
         }
         
+        /**
+         * Getter for whether the parallel sampling is used during training.
+         * 
+         * @return 
+         */
+        public boolean isParallelSampling() {
+            return parallelSampling;
+        }
+        
+        /**
+         * Setter for whether the parallel sampling is used during training. 
+         * When enabled (and the algorithm is parallelized), the records are 
+         * split in as many partitions as the maximum number of threads per task 
+         * of the ConcurrencyConfiguration. Every partition is sampled 
+         * concurrently against a private copy of the clusters and the clusters
+         * are synchronized at the end of every iteration. This is an 
+         * approximation of the sequential Collapsed Gibbs Sampling.
+         * 
+         * @param parallelSampling 
+         */
+        public void setParallelSampling(boolean parallelSampling) {
+            this.parallelSampling = parallelSampling;
+        }
+        
     }
     
     /** 
@@ -279,10 +310,17 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
      */
     protected AbstractDPMM(String dbName, Configuration conf, Class<MP> mpClass, Class<TP> tpClass, Class<VM> vmClass) {
         super(dbName, conf, mpClass, tpClass, vmClass, new ClustererValidator<>());
+        streamExecutor = new ForkJoinStream(kb().getConf().getConcurrencyConfig());
     } 
     
     private boolean parallelized = true;
     
+    /**
+     * This executor is used for the parallel processing of streams with custom 
+     * Thread pool.
+     */
+    protected final ForkJoinStream streamExecutor;
+    
     /** {@inheritDoc} */
     @Override
     public boolean isParallelized() {
@@ -375,7 +413,12 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
     }
     
     /**
-     * Implementation of Collapsed Gibbs Sampling algorithm.
+     * Implementation of Collapsed Gibbs Sampling algorithm. The state of the
+     * clusters is kept on-heap during sampling. When the parallel sampling is
+     * enabled, the records are split in partitions which are sampled 
+     * concurrently; every partition reads the shared clusters and modifies 
+     * private copies of the clusters it touches. The clusters are rebuilt 
+     * from the new assignments at the end of every iteration.
      * 
      * @param dataset The list of points that we want to cluster
      * @param maxIterations The maximum number of iterations
@@ -383,34 +426,43 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
     private int collapsedGibbsSampling(Dataframe dataset) {
         AbstractModelParameters modelParameters = kb().getModelParameters();
         
-        Map<Integer, CL> tempClusterMap = kb().getDbc().getBigMap("tmp_tempClusterMap", MapType.HASHMAP, StorageHint.IN_CACHE, false, true);
-        tempClusterMap.putAll(modelParameters.getClusterMap());
+        Map<Integer, CL> clusterMap = modelParameters.getClusterMap();
+        Map<Integer, CL> tempClusterMap = new HashMap<>();
+        for(Integer clusterId : clusterMap.keySet()) {
+            tempClusterMap.put(clusterId, getFromClusterMap(clusterId, clusterMap));
+        }
         AbstractTrainingParameters trainingParameters = kb().getTrainingParameters();
         
         double alpha = trainingParameters.getAlpha();
         
+        //keep the records and their assignments in arrays
+        int numberOfRecords = dataset.size();
+        Integer[] recordIds = new Integer[numberOfRecords];
+        Record[] records = new Record[numberOfRecords];
+        int[] assignments = new int[numberOfRecords];
+        int position = 0;
+        for(Map.Entry<Integer, Record> e : dataset.entries()) {
+            recordIds[position] = e.getKey();
+            records[position] = e.getValue();
+            ++position;
+        }
+        
         //Initialize clusters, create a cluster for every xi
-        Integer newClusterId = tempClusterMap.size(); //start counting the Ids based on clusters in the list
+        int newClusterId = tempClusterMap.size(); //start counting the Ids based on clusters in the list
 
         if(trainingParameters.getInitializationMethod()==AbstractTrainingParameters.Initialization.ONE_CLUSTER_PER_RECORD) {
-            for(Map.Entry<Integer, Record> e : dataset.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                
-                //generate a new cluster
+            for(int i=0;i<numberOfRecords;i++) {
+                //generate a new cluster and add the record in it
                 CL cluster = createNewCluster(newClusterId);
-                cluster.add(r);
+                cluster.add(records[i]);
                 tempClusterMap.put(newClusterId, cluster);
-
-                //add the record in the new cluster
-                r = new Record(r.getX(), r.getY(), newClusterId, r.getYPredictedProbabilities());
-                dataset._unsafe_set(rId, r);
+                assignments[i] = newClusterId;
 
                 ++newClusterId;
             }            
         }
         else {
-            int numberOfNewClusters = (int)(Math.max(alpha, 1)*Math.log(dataset.size())); //a*log(n) clusters on average
+            int numberOfNewClusters = (int)(Math.max(alpha, 1)*Math.log(numberOfRecords)); //a*log(n) clusters on average
             if(numberOfNewClusters<=0) {
                 numberOfNewClusters=1;
             }
@@ -425,18 +477,11 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
             }
             
             int clusterMapSize = newClusterId;
-            for(Map.Entry<Integer, Record> e : dataset.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
+            for(int i=0;i<numberOfRecords;i++) {
+                int assignedClusterId = PHPMethods.mt_rand(0, clusterMapSize-1);
                 
-                Integer assignedClusterId = PHPMethods.mt_rand(0, clusterMapSize-1);
-                
-                r = new Record(r.getX(), r.getY(), assignedClusterId, r.getYPredictedProbabilities());
-                dataset._unsafe_set(rId, r);
-                
-                CL c = getFromClusterMap(assignedClusterId, tempClusterMap);
-                c.add(r);
-                tempClusterMap.put(assignedClusterId, c);
+                tempClusterMap.get(assignedClusterId).add(records[i]);
+                assignments[i] = assignedClusterId;
             }
         }
 
@@ -445,112 +490,227 @@ public abstract class AbstractDPMM<CL extends AbstractDPMM.AbstractCluster, MP e
         
         int maxIterations = trainingParameters.getMaxIterations();
         
+        int partitions = 1;
+        if(trainingParameters.isParallelSampling() && isParallelized()) {
+            partitions = Math.max(1, Math.min(kb().getConf().getConcurrencyConfig().getMaxNumberOfThreadsPerTask(), numberOfRecords));
+        }
+        
         boolean noChangeMade=false;
         int iteration=0;
         while(iteration<maxIterations && noChangeMade==false) {
             
             logger.debug("Iteration {}", iteration);
             
-            noChangeMade=true;
-            for(Map.Entry<Integer, Record> e : dataset.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                
-                Integer pointClusterId = (Integer) r.getYPredicted();
-                CL ci = getFromClusterMap(pointClusterId, tempClusterMap);
-                
-                //remove the point from the cluster
-                ci.remove(r);
+            if(partitions==1) {
+                noChangeMade = !gibbsSweep(records, assignments, 0, numberOfRecords, tempClusterMap, null, newClusterId, 1, n, alpha, RandomGenerator.getThreadLocalRandom());
                 
-                //if empty cluster remove it
-                if(ci.size()==0) {
-                    tempClusterMap.remove(pointClusterId);
+                for(int clusterId : tempClusterMap.keySet()) {
+                    newClusterId = Math.max(newClusterId, clusterId+1);
                 }
-                else {
-                    tempClusterMap.put(pointClusterId, ci);
+            }
+            else {
+                //the seeds are drawn on the calling thread to make the results reproducible
+                Random rnd = RandomGenerator.getThreadLocalRandom();
+                long[] seeds = new long[partitions];
+                for(int p=0;p<partitions;p++) {
+                    seeds[p] = rnd.nextLong();
                 }
                 
-                AssociativeArray condProbCiGivenXiAndOtherCi = clusterProbabilities(r, n, tempClusterMap);
-                                
-                //Calculate the probabilities of assigning the point to a new cluster
-                //compute P*(X[i]) = P(X[i]|λ)
-                
-                CL cNew = createNewCluster(newClusterId);
-                
-                double priorLogPredictive = cNew.posteriorLogPdf(r);
-
-                //compute P(z[i] = * | z[-i], Data) = α/(α+N-1)
-                double probNewCluster = alpha/(alpha+n-1.0);
-
-                condProbCiGivenXiAndOtherCi.put(newClusterId, priorLogPredictive+Math.log(probNewCluster));
-                
-                //normalize probabilities P(z[i])
-                Descriptives.normalizeExp(condProbCiGivenXiAndOtherCi);
-                
-                Integer sampledClusterId = (Integer) SimpleRandomSampling.weightedSampling(condProbCiGivenXiAndOtherCi, 1, true).iterator().next();
-                //condProbCiGivenXiAndOtherCi=null;
-                
-                //Add Xi back to the sampled AbstractCluster
-                if(Objects.equals(sampledClusterId, newClusterId)) { //if new cluster
-                    //add the record in the new cluster
-                    r = new Record(r.getX(), r.getY(), newClusterId, r.getYPredictedProbabilities());
-                    dataset._unsafe_set(rId, r);
-                    
-                    cNew.add(r);
-                    
-                    tempClusterMap.put(newClusterId, cNew);
-                    
-                    noChangeMade=false;
+                boolean[] changes = new boolean[partitions];
+                int firstNewClusterId = newClusterId;
+                int numberOfPartitions = partitions;
+                streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, partitions).boxed(), true), p -> {
+                    //every partition reads the shared clusters and copies only the ones it modifies
+                    Map<Integer, CL> localClusterMap = new HashMap<>(tempClusterMap);
                     
-                    ++newClusterId;
-                }
-                else {
-                    if(!Objects.equals(pointClusterId, sampledClusterId)) { //if it assigned in a different cluster update the record
-                        r = new Record(r.getX(), r.getY(), sampledClusterId, r.getYPredictedProbabilities());
-                        dataset._unsafe_set(rId, r);
-                        noChangeMade=false;
+                    int from = (int)((long)numberOfRecords*p/numberOfPartitions);
+                    int to = (int)((long)numberOfRecords*(p+1)/numberOfPartitions);
+                    changes[p] = gibbsSweep(records, assignments, from, to, localClusterMap, new HashSet<>(), firstNewClusterId+p, numberOfPartitions, n, alpha, new Random(seeds[p]));
+                });
+                
+                noChangeMade = true;
+                for(boolean changed : changes) {
+                    if(changed) {
+                        noChangeMade = false;
+                        break;
                     }
-                    
-                    CL c = getFromClusterMap(sampledClusterId, tempClusterMap);
-                    c.add(r); //add it to the cluster (or just add it back)
-                    tempClusterMap.put(sampledClusterId, c);
                 }
                 
+                //rebuild the clusters from the assignments of all the partitions
+                tempClusterMap.clear();
+                for(int i=0;i<numberOfRecords;i++) {
+                    int clusterId = assignments[i];
+                    CL c = tempClusterMap.get(clusterId);
+                    if(c==null) {
+                        c = createNewCluster(clusterId);
+                        tempClusterMap.put(clusterId, c);
+                        newClusterId = Math.max(newClusterId, clusterId+1);
+                    }
+                    c.add(records[i]);
+                }
             }
             
             ++iteration;
         }
         
+        //store the assignments on the records
+        for(int i=0;i<numberOfRecords;i++) {
+            Record r = records[i];
+            dataset._unsafe_set(recordIds[i], new Record(r.getX(), r.getY(), assignments[i], r.getYPredictedProbabilities()));
+        }
+        
         //copy the values in the map and update the cluster ids
-        Map<Integer, CL> clusterMap = modelParameters.getClusterMap();
         int cid = clusterMap.size();
         for(CL cluster : tempClusterMap.values()) {
             clusterMap.put(cid, (CL) cluster.copy2new(cid));
             cid++;
         }
-        kb().getDbc().dropBigMap("tmp_tempClusterMap", tempClusterMap);
         
         return iteration;
     }
     
-    private AssociativeArray clusterProbabilities(Record r, int n, Map<Integer, CL> clusterMap) {
-        Map<Object, Object> condProbCiGivenXiAndOtherCi = new ConcurrentHashMap<>();
-        double alpha = kb().getTrainingParameters().getAlpha();
+    /**
+     * Performs a Collapsed Gibbs Sampling pass over the records with positions
+     * in [from, to), updating their assignments and the provided clusters. The
+     * new clusters get the ids newClusterId, newClusterId+step, etc. If the 
+     * clusters are shared with other partitions, the ids of the clusters which
+     * were already copied by this partition are kept in copiedClusterIds and 
+     * every other cluster is copied before it is modified; otherwise the set
+     * is null. Returns true if any record changed cluster.
+     * 
+     * @param records
+     * @param assignments
+     * @param from
+     * @param to
+     * @param clusters
+     * @param copiedClusterIds
+     * @param newClusterId
+     * @param step
+     * @param n
+     * @param alpha
+     * @param rnd
+     * @return 
+     */
+    private boolean gibbsSweep(Record[] records, int[] assignments, int from, int to, Map<Integer, CL> clusters, Set<Integer> copiedClusterIds, int newClusterId, int step, int n, double alpha, Random rnd) {
+        //compute P(z[i] = * | z[-i], Data) = α/(α+N-1)
+        double logProbNewCluster = Math.log(alpha/(alpha+n-1.0));
         
-        //Probabilities that appear on https://www.cs.cmu.edu/~kbe/dp_tutorial.pdf
-        //Calculate the probabilities of assigning the point for every cluster
-        for(Integer clusterId : clusterMap.keySet()) {
-            AbstractCluster ck = getFromClusterMap(clusterId, clusterMap);
-            //compute P_k(X[i]) = P(X[i] | X[-i] = k)
-            double marginalLogLikelihoodXi = ck.posteriorLogPdf(r);
-            //set N_{k,-i} = dim({X[-i] = k})
-            //compute P(z[i] = k | z[-i], Data) = N_{k,-i}/(a+N-1)
-            double mixingXi = ck.size()/(alpha+n-1.0);
+        //an empty cluster which estimates the prior predictive P*(X[i]) = P(X[i]|λ)
+        CL priorCluster = createNewCluster(newClusterId);
+        
+        int[] clusterIds = new int[clusters.size()+2];
+        double[] logScores = new double[clusterIds.length];
+        
+        boolean changed = false;
+        for(int i=from;i<to;i++) {
+            Record r = records[i];
+            int pointClusterId = assignments[i];
+            CL ci = getWritableCluster(pointClusterId, clusters, copiedClusterIds);
+            
+            //remove the point from the cluster
+            ci.remove(r);
             
-            condProbCiGivenXiAndOtherCi.put(clusterId, marginalLogLikelihoodXi+Math.log(mixingXi)); //concurrent map and non-overlapping keys for each thread
+            //if empty cluster remove it
+            if(ci.size()==0) {
+                clusters.remove(pointClusterId);
+            }
+            
+            if(clusterIds.length<clusters.size()+1) {
+                clusterIds = new int[2*clusters.size()+1];
+                logScores = new double[clusterIds.length];
+            }
+            
+            //Probabilities that appear on https://www.cs.cmu.edu/~kbe/dp_tutorial.pdf
+            //Calculate the probabilities of assigning the point for every cluster
+            int k = 0;
+            for(Map.Entry<Integer, CL> e : clusters.entrySet()) {
+                CL ck = e.getValue();
+                //compute P_k(X[i]) = P(X[i] | X[-i] = k)
+                //compute P(z[i] = k | z[-i], Data) = N_{k,-i}/(a+N-1)
+                clusterIds[k] = e.getKey();
+                logScores[k] = ck.posteriorLogPdf(r) + Math.log(ck.size()/(alpha+n-1.0));
+                ++k;
+            }
+            
+            //Calculate the probabilities of assigning the point to a new cluster
+            clusterIds[k] = newClusterId;
+            logScores[k] = priorCluster.posteriorLogPdf(r) + logProbNewCluster;
+            ++k;
+            
+            int sampledClusterId = clusterIds[sampleLogScores(logScores, k, rnd)];
+            
+            //Add Xi back to the sampled AbstractCluster
+            if(sampledClusterId==newClusterId) { //if new cluster
+                CL cNew = createNewCluster(newClusterId);
+                cNew.add(r);
+                clusters.put(newClusterId, cNew);
+                if(copiedClusterIds!=null) {
+                    copiedClusterIds.add(newClusterId);
+                }
+                
+                newClusterId += step;
+                changed = true;
+            }
+            else {
+                if(pointClusterId!=sampledClusterId) {
+                    changed = true;
+                }
+                getWritableCluster(sampledClusterId, clusters, copiedClusterIds).add(r); //add it to the cluster (or just add it back)
+            }
+            assignments[i] = sampledClusterId;
         }
         
-        return new AssociativeArray(condProbCiGivenXiAndOtherCi);
+        return changed;
+    }
+    
+    /**
+     * Returns the cluster with the provided id so that it can be modified. If
+     * the clusters are shared with other partitions, the cluster is replaced
+     * by a private copy the first time it is requested.
+     * 
+     * @param clusterId
+     * @param clusters
+     * @param copiedClusterIds
+     * @return 
+     */
+    private CL getWritableCluster(int clusterId, Map<Integer, CL> clusters, Set<Integer> copiedClusterIds) {
+        CL c = clusters.get(clusterId);
+        if(copiedClusterIds!=null && copiedClusterIds.add(clusterId)) {
+            c = (CL) c.copy2new(clusterId);
+            clusters.put(clusterId, c);
+        }
+        return c;
+    }
+    
+    /**
+     * Samples a position from the first k log scores after normalizing them.
+     * 
+     * @param logScores
+     * @param k
+     * @param rnd
+     * @return 
+     */
+    private static int sampleLogScores(double[] logScores, int k, Random rnd) {
+        double max = Double.NEGATIVE_INFINITY;
+        for(int j=0;j<k;j++) {
+            max = Math.max(max, logScores[j]);
+        }
+        
+        double sum = 0.0;
+        for(int j=0;j<k;j++) {
+            logScores[j] = Math.exp(logScores[j]-max);
+            sum += logScores[j];
+        }
+        
+        double u = rnd.nextDouble()*sum;
+        double cumulative = 0.0;
+        for(int j=0;j<k;j++) {
+            cumulative += logScores[j];
+            if(cumulative>=u) {
+                return j;
+            }
+        }
+        return k-1;
     }
     
     private Object getSelectedClusterFromScores(AssociativeArray clusterScores) {
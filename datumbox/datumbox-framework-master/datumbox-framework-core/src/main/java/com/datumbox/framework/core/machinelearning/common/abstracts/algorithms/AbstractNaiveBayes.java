@@ -21,19 +21,22 @@ import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.dataobjects.SparseDoubleArray;
 import com.datumbox.framework.common.dataobjects.TypeInference;
-import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractClassifier;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.FeatureClassMatrix;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.ClassifierValidator;
 import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
 
 import java.util.*;
+import java.util.stream.Collector;
 
 
 /**
@@ -44,7 +47,7 @@ import java.util.*;
  * @param <TP>
  * @param <VM>
  */
-public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractModelParameters, TP extends AbstractNaiveBayes.AbstractTrainingParameters, VM extends AbstractNaiveBayes.AbstractValidationMetrics> extends AbstractClassifier<MP, TP, VM> implements PredictParallelizable, TrainParallelizable {
+public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractModelParameters, TP extends AbstractNaiveBayes.AbstractTrainingParameters, VM extends AbstractNaiveBayes.AbstractValidationMetrics> extends AbstractClassifier<MP, TP, VM> implements PredictParallelizable, TrainParallelizable, IncrementallyTrainable {
     /**
      * Flag that indicates whether the algorithm binarizes the provided activated 
      * features.
@@ -56,8 +59,14 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
 
         private Map<Object, Double> logPriors = new HashMap<>(); //prior log probabilities of the classes
 
-        @BigMap(mapType=MapType.HASHMAP, storageHint=StorageHint.IN_MEMORY, concurrent=true)
-        private Map<List<Object>, Double> logLikelihoods; //posterior log probabilities of features-classes combination
+        private FeatureClassMatrix logLikelihoods; //posterior log probabilities of features-classes combination
+        
+        //sufficient statistics which are used for the incremental training
+        private Map<Object, Double> classCounts = new HashMap<>(); //number of records of each class
+        
+        private Map<Object, Double> totalFeatureOccurrences = new HashMap<>(); //total occurrences of the features in each class
+        
+        private FeatureClassMatrix featureCounts; //occurrences of the features-classes combination
         
         /** 
          * @param dbc
@@ -90,7 +99,7 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
          * 
          * @return 
          */
-        public Map<List<Object>, Double> getLogLikelihoods() {
+        public FeatureClassMatrix getLogLikelihoods() {
             return logLikelihoods;
         }
         
@@ -99,9 +108,63 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
          * 
          * @param logLikelihoods 
          */
-        protected void setLogLikelihoods(Map<List<Object>, Double> logLikelihoods) {
+        protected void setLogLikelihoods(FeatureClassMatrix logLikelihoods) {
             this.logLikelihoods = logLikelihoods;
         }
+        
+        /**
+         * Getter for the number of records of each class.
+         * 
+         * @return 
+         */
+        public Map<Object, Double> getClassCounts() {
+            return classCounts;
+        }
+        
+        /**
+         * Setter for the number of records of each class.
+         * 
+         * @param classCounts 
+         */
+        protected void setClassCounts(Map<Object, Double> classCounts) {
+            this.classCounts = classCounts;
+        }
+        
+        /**
+         * Getter for the total occurrences of the features in each class.
+         * 
+         * @return 
+         */
+        public Map<Object, Double> getTotalFeatureOccurrences() {
+            return totalFeatureOccurrences;
+        }
+        
+        /**
+         * Setter for the total occurrences of the features in each class.
+         * 
+         * @param totalFeatureOccurrences 
+         */
+        protected void setTotalFeatureOccurrences(Map<Object, Double> totalFeatureOccurrences) {
+            this.totalFeatureOccurrences = totalFeatureOccurrences;
+        }
+        
+        /**
+         * Getter for the occurrences of the features in each class.
+         * 
+         * @return 
+         */
+        public FeatureClassMatrix getFeatureCounts() {
+            return featureCounts;
+        }
+        
+        /**
+         * Setter for the occurrences of the features in each class.
+         * 
+         * @param featureCounts 
+         */
+        protected void setFeatureCounts(FeatureClassMatrix featureCounts) {
+            this.featureCounts = featureCounts;
+        }
     } 
 
     /** {@inheritDoc} */
@@ -177,47 +240,39 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
     @Override
     public Prediction _predictRecord(Record r) {
         AbstractModelParameters modelParameters = kb().getModelParameters();
-        Map<List<Object>, Double> logLikelihoods = modelParameters.getLogLikelihoods();
+        FeatureClassMatrix logLikelihoods = modelParameters.getLogLikelihoods();
         Map<Object, Double> logPriors = modelParameters.getLogPriors();
-        Set<Object> classesSet = modelParameters.getClasses();
-        
-        Object someClass = classesSet.iterator().next();
+        int c = logLikelihoods.getC();
         
         //initialize scores with the scores of the priors
-        AssociativeArray predictionScores = new AssociativeArray(new HashMap<>(logPriors)); 
-
+        double[] scores = new double[c];
+        for(int classId=0;classId<c;classId++) {
+            scores[classId] = logPriors.get(logLikelihoods.getClassById(classId));
+        }
+        
+        boolean binarize = !kb().getTrainingParameters().isMultiProbabilityWeighted() || isBinarized;
         for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-            Object feature = entry.getKey();
-
             //EVERY feature within our dictionary has a value for EVERY class
-            //So if the feature has no value for one random class (someClass has 
-            //no particular significance), then it will not have for any class
-            //and thus the feature is not in the dictionary and can be ignored.
-            if(!logLikelihoods.containsKey(Arrays.<Object>asList(feature, someClass))) {
+            //so if the feature is not in the dictionary it can be ignored.
+            int featureId = logLikelihoods.getFeatureId(entry.getKey());
+            if(featureId<0) {
                 continue;
             }
 
-            //extract the feature scores for each class for the particular feature
-            AssociativeArray classLogScoresForThisFeature = new AssociativeArray();
-
-            for(Object theClass : classesSet) {
-                Double logScore = logLikelihoods.get(Arrays.<Object>asList(feature, theClass));
-                classLogScoresForThisFeature.put(theClass, logScore);
-            }
-
-
             Double occurrences=TypeInference.toDouble(entry.getValue());
-            if((!kb().getTrainingParameters().isMultiProbabilityWeighted() || isBinarized) && occurrences>0) {
-                occurrences=1.0;
+            if(occurrences==null) {
+                continue;
             }
-
-            for(Map.Entry<Object, Object> entry2 : classLogScoresForThisFeature.entrySet()) {
-                Object theClass = entry2.getKey();
-                Double logScore = TypeInference.toDouble(entry2.getValue());
-                Double previousValue = predictionScores.getDouble(theClass);
-                predictionScores.put(theClass, previousValue+occurrences*logScore);
+            if(binarize && occurrences>0) {
+                occurrences=1.0;
             }
-            //classLogScoresForThisFeature=null;
+            
+            logLikelihoods.addRowTo(featureId, occurrences, scores);
+        }
+        
+        AssociativeArray predictionScores = new AssociativeArray();
+        for(int classId=0;classId<c;classId++) {
+            predictionScores.put(logLikelihoods.getClassById(classId), scores[classId]);
         }
 
         Object predictedClass=getSelectedClassFromClassScores(predictionScores);
@@ -229,29 +284,27 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
     /** {@inheritDoc} */
     @Override
     protected void _fit(Dataframe trainingData) {
+        //the knowledge base is empty, so fitting is equivalent to updating the empty sufficient statistics
+        _partialFit(trainingData);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void _partialFit(Dataframe trainingData) {
         AbstractModelParameters modelParameters = kb().getModelParameters();
-        int n = modelParameters.getN();
-        int d = modelParameters.getD();
         
-        Map<List<Object>, Double> logLikelihoods = modelParameters.getLogLikelihoods();
-        Map<Object, Double> logPriors = modelParameters.getLogPriors();
+        Map<Object, Double> classCounts = modelParameters.getClassCounts();
         Set<Object> classesSet = modelParameters.getClasses();
         
         //calculate first statistics about the classes
-        Map<Object, Double> totalFeatureOccurrencesForEachClass = new HashMap<>();
         for(Record r : trainingData) { 
             Object theClass=r.getY();
             
-            if(classesSet.add(theClass)) { //is it new class? add it
-                logPriors.put(theClass, 1.0);  
-                totalFeatureOccurrencesForEachClass.put(theClass, 0.0);
-            }
-            else { //already exists? increase counter
-                logPriors.put(theClass,logPriors.get(theClass)+1.0);  
-            }
+            classesSet.add(theClass);
+            classCounts.put(theClass, classCounts.getOrDefault(theClass, 0.0)+1.0);  
         }
         
-        //Loop through all the classes to ensure that the feature-class combination is initialized for ALL the classes
+        //Intern all the features and classes to ensure that the feature-class combination is initialized for ALL the classes
         //The math REQUIRE us to have scores for all classes to make the probabilities comparable.
         /*
             Implementation note:
@@ -261,63 +314,143 @@ public abstract class AbstractNaiveBayes<MP extends AbstractNaiveBayes.AbstractM
             any effects on the results of the algorithm since the scores will be the same in all classes
             and it will be taken care by the normalization.
         */
-        streamExecutor.forEach(StreamMethods.stream(trainingData.getXDataTypes().keySet().stream(), isParallelized()), feature -> {
+        FeatureClassMatrix featureCounts = modelParameters.getFeatureCounts();
+        if(featureCounts==null) {
+            featureCounts = new FeatureClassMatrix(classesSet);
+            modelParameters.setFeatureCounts(featureCounts);
+        }
+        else {
             for(Object theClass : classesSet) {
-                List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                logLikelihoods.put(featureClassTuple, 0.0); //the key is unique across threads and the map is concurrent
+                featureCounts.addClass(theClass);
             }
-        });
-        
+        }
+        for(Object feature : trainingData.getXDataTypes().keySet()) {
+            featureCounts.addFeature(feature);
+        }
         
         //now calculate the statistics of features
-        streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> {
-            Object theClass = r.getY();
-            //store the occurrances of the features
-            double sumOfOccurrences = 0.0;
-            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                Object feature = entry.getKey();
-                Double occurrences=TypeInference.toDouble(entry.getValue());
-                
-                if(occurrences!= null && occurrences>0.0) {
-                    if(isBinarized) {
-                        occurrences=1.0;
-                    }
-                    
-                    List<Object> featureClassTuple = Arrays.<Object>asList(feature, theClass);
-                    logLikelihoods.put(featureClassTuple, logLikelihoods.get(featureClassTuple)+occurrences); //each thread updates a unique key and the map is cuncurrent
-                    
-                    sumOfOccurrences+=occurrences;
-                }
-            }
-            synchronized(totalFeatureOccurrencesForEachClass) {
-                totalFeatureOccurrencesForEachClass.put(theClass,totalFeatureOccurrencesForEachClass.get(theClass)+sumOfOccurrences);
-            }
-        });
+        double[] occurrences = countFeatureOccurrences(trainingData, featureCounts, isBinarized);
         
-        //calculate prior log probabilities
-        for(Map.Entry<Object, Double> entry : logPriors.entrySet()) {
-            Object theClass = entry.getKey();
-            Double count = entry.getValue();
-            
-            //updated log priors
-            logPriors.put(theClass, Math.log(count/n));
+        Map<Object, Double> totalFeatureOccurrences = modelParameters.getTotalFeatureOccurrences();
+        for(int classId=0;classId<occurrences.length;classId++) {
+            Object theClass = featureCounts.getClassById(classId);
+            totalFeatureOccurrences.put(theClass, totalFeatureOccurrences.getOrDefault(theClass, 0.0)+occurrences[classId]);
         }
+        featureCounts.compact();
+        setModelDimension(featureCounts.getD());
+        
+        estimateParameters();
+    }
+    
+    /**
+     * Estimates the priors and the likelihoods of the model from the sufficient
+     * statistics which are stored in the model parameters.
+     */
+    protected void estimateParameters() {
+        AbstractModelParameters modelParameters = kb().getModelParameters();
+        int n = modelParameters.getN();
         
+        //calculate prior log probabilities
+        Map<Object, Double> logPriors = modelParameters.getLogPriors();
+        for(Map.Entry<Object, Double> entry : modelParameters.getClassCounts().entrySet()) {
+            logPriors.put(entry.getKey(), Math.log(entry.getValue()/n));
+        }
         
         //update log likelihood
-        streamExecutor.forEach(StreamMethods.stream(logLikelihoods.entrySet().stream(), isParallelized()), featureClassCounts -> {
-            List<Object> featureClassTuple = featureClassCounts.getKey();
-            Object theClass = featureClassTuple.get(1);
-            Double occurrences = featureClassCounts.getValue();
-            if(occurrences==null) {
-                occurrences=0.0;
-            }
+        FeatureClassMatrix logLikelihoods = modelParameters.getFeatureCounts().copy();
+        double[] totalFeatureOccurrencesForEachClass = getTotalFeatureOccurrencesForEachClass(logLikelihoods);
+        double[] weights = logLikelihoods.getWeights();
+        int c = logLikelihoods.getC();
+        int d = logLikelihoods.getD(); // the d is also known in NLP problems as the Vocabulary size. 
+        for(int featureId=0;featureId<d;featureId++) {
+            int offset = featureId*c;
+            for(int classId=0;classId<c;classId++) {
+                double occurrences = weights[offset+classId];
+                
+                //We perform laplace smoothing (also known as add-1)
+                double smoothedProbability = (occurrences+1.0)/(totalFeatureOccurrencesForEachClass[classId]+d); 
 
-            //We perform laplace smoothing (also known as add-1)
-            Double smoothedProbability = (occurrences+1.0)/(totalFeatureOccurrencesForEachClass.get(theClass)+d); // the d is also known in NLP problems as the Vocabulary size. 
-            
-            logLikelihoods.put(featureClassTuple, Math.log( smoothedProbability )); //calculate the logScore
-        }); 
+                weights[offset+classId] = Math.log( smoothedProbability ); //calculate the logScore
+            }
+        }
+        
+        logLikelihoods.compact();
+        modelParameters.setLogLikelihoods(logLikelihoods);
+    }
+    
+    /**
+     * Returns the total occurrences of the features for every class, indexed by 
+     * the class ids of the provided matrix.
+     * 
+     * @param matrix
+     * @return 
+     */
+    protected double[] getTotalFeatureOccurrencesForEachClass(FeatureClassMatrix matrix) {
+        Map<Object, Double> totalFeatureOccurrences = kb().getModelParameters().getTotalFeatureOccurrences();
+        double[] totals = new double[matrix.getC()];
+        for(int classId=0;classId<totals.length;classId++) {
+            totals[classId] = totalFeatureOccurrences.get(matrix.getClassById(classId));
+        }
+        return totals;
     }
     
-}
\ No newline at end of file
+    /**
+     * Counts the occurrences of every feature-class combination of the training
+     * data and adds them on the provided matrix. The method returns the total 
+     * occurrences of the features for every class, indexed by the class id.
+     * 
+     * The records are aggregated in parallel without locks; every task of the 
+     * stream accumulates into its own sparse partial table, which holds only the
+     * feature-class combinations of its records, and the partial tables are 
+     * merged at the end. The merges follow the split order of the stream so the
+     * result is deterministic. When the occurrences are whole numbers (counts or
+     * binarized features) the sums are exact and match the serial execution.
+     * 
+     * @param trainingData
+     * @param matrix
+     * @param binarize
+     * @return 
+     */
+    protected double[] countFeatureOccurrences(Dataframe trainingData, FeatureClassMatrix matrix, boolean binarize) {
+        int c = matrix.getC();
+        int size = matrix.getD()*c;
+        
+        //the partial tables store the feature-class counts followed by the totals of each class
+        SparseDoubleArray counts = streamExecutor.collect(StreamMethods.stream(trainingData.stream(), isParallelized()), Collector.of(
+            SparseDoubleArray::new,
+            (partial, r) -> {
+                int classId = matrix.getClassId(r.getY());
+                
+                //store the occurrances of the features
+                double sumOfOccurrences = 0.0;
+                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                    Double occurrences=TypeInference.toDouble(entry.getValue());
+
+                    if(occurrences!= null && occurrences>0.0) {
+                        if(binarize) {
+                            occurrences=1.0;
+                        }
+
+                        partial.add(matrix.getFeatureId(entry.getKey())*c+classId, occurrences);
+
+                        sumOfOccurrences+=occurrences;
+                    }
+                }
+                partial.add(size+classId, sumOfOccurrences);
+            },
+            SparseDoubleArray::merge
+        ));
+        
+        double[] weights = matrix.getWeights();
+        double[] totals = new double[c];
+        counts.forEach((i, value) -> {
+            if(i<size) {
+                weights[i] += value;
+            }
+            else {
+                totals[i-size] = value;
+            }
+        });
+        return totals;
+    }
+}
@@ -174,9 +174,9 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
             TypeInference.DataType columnType = entry.getValue();
 
             if(columnType==TypeInference.DataType.NUMERICAL) {
-                FlatDataList columnValues = dataset.getXColumn(column);
-                Double max = Descriptives.max(columnValues.toFlatDataCollection());
-                Double min = Descriptives.min(columnValues.toFlatDataCollection());
+                //stream the values directly to avoid copying the column; nulls are handled as zeros like in Descriptives
+                double max = dataset.getXColumnAsDoubleStream(column).reduce(Double.NEGATIVE_INFINITY, (a, v) -> (a<v)?v:a);
+                double min = dataset.getXColumnAsDoubleStream(column).reduce(Double.MAX_VALUE, (a, v) -> (a>v)?v:a);
 
                 minColumnValues.put(column, min); //each tread takes a unique key and the map is concurrent
                 maxColumnValues.put(column, max); //each tread takes a unique key and the map is concurrent
@@ -195,42 +195,58 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
         streamExecutor.forEach(StreamMethods.stream(dataset.entries(), isParallelized()), e -> {
             Integer rId = e.getKey();
             Record r = e.getValue();
-            AssociativeArray xData = r.getX().copy();
             
-            boolean modified = false;
-            for(Map.Entry<Object,Double> entry : minColumnValues.entrySet()) {
-                Object column = entry.getKey();
-                Double value = xData.getDouble(column);
-                if(value==null) { //if we have a missing value don't perform any normalization
-                    continue;
-                }
-                
-                Double min = entry.getValue();
-                Double max = maxColumnValues.get(column);
-                
-                //it is important how we will handle 0 normalized values because
-                //0-valued features are considered inactive.
-                double normalizedValue;
-                if(min.equals(max)) {
-                    normalizedValue = (min>0.0)?1.0:0.0; //set it 0.0 ONLY if the feature is always inactive and 1.0 if it has a non-zero value
-                }
-                else {
-                    normalizedValue = (value-min)/(max-min);
-                }
-                
-                xData.put(column, normalizedValue);
-                modified = true;
-            }
-            
-            if(modified) {
-                Record newR = new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
-                
+            Record newR = normalizeX(r, minColumnValues, maxColumnValues);
+            if(newR!=r) {
                 //no modification on the actual columns takes place, safe to do.
                 dataset._unsafe_set(rId, newR);
             }
         });
     }
     
+    /**
+     * Normalizes the X data of a single record. If no column is modified the
+     * same record is returned.
+     * 
+     * @param r
+     * @param minColumnValues
+     * @param maxColumnValues
+     * @return 
+     */
+    protected Record normalizeX(Record r, Map<Object, Double> minColumnValues, Map<Object, Double> maxColumnValues) {
+        AssociativeArray xData = r.getX().copy();
+
+        boolean modified = false;
+        for(Map.Entry<Object,Double> entry : minColumnValues.entrySet()) {
+            Object column = entry.getKey();
+            Double value = xData.getDouble(column);
+            if(value==null) { //if we have a missing value don't perform any normalization
+                continue;
+            }
+
+            Double min = entry.getValue();
+            Double max = maxColumnValues.get(column);
+
+            //it is important how we will handle 0 normalized values because
+            //0-valued features are considered inactive.
+            double normalizedValue;
+            if(min.equals(max)) {
+                normalizedValue = (min>0.0)?1.0:0.0; //set it 0.0 ONLY if the feature is always inactive and 1.0 if it has a non-zero value
+            }
+            else {
+                normalizedValue = (value-min)/(max-min);
+            }
+
+            xData.put(column, normalizedValue);
+            modified = true;
+        }
+
+        if(!modified) {
+            return r;
+        }
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
     /**
      * Denormalizes the X data.
      * 
@@ -242,37 +258,53 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
         streamExecutor.forEach(StreamMethods.stream(dataset.entries(), isParallelized()), e -> {
             Integer rId = e.getKey();
             Record r = e.getValue();
-            AssociativeArray xData = r.getX().copy();
             
-            boolean modified = false;
-            for(Map.Entry<Object,Double> entry : minColumnValues.entrySet()) {
-                Object column = entry.getKey();
-                Double value = xData.getDouble(column);
-                if(value==null) { //if we have a missing value don't perform any denormalization
-                    continue;
-                }
-                
-                Double min = entry.getValue();
-                Double max = maxColumnValues.get(column);
-                
-                if(min.equals(max)) {
-                    xData.put(column, min);
-                }
-                else {
-                    xData.put(column, value*(max-min) + min);
-                }
-                modified = true;
-            }
-            
-            if(modified) {
-                Record newR = new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
-                
+            Record newR = denormalizeX(r, minColumnValues, maxColumnValues);
+            if(newR!=r) {
                 //no modification on the actual columns takes place, safe to do.
                 dataset._unsafe_set(rId, newR);
             }
         });
     }
     
+    /**
+     * Denormalizes the X data of a single record. If no column is modified the
+     * same record is returned.
+     * 
+     * @param r
+     * @param minColumnValues
+     * @param maxColumnValues
+     * @return 
+     */
+    protected Record denormalizeX(Record r, Map<Object, Double> minColumnValues, Map<Object, Double> maxColumnValues) {
+        AssociativeArray xData = r.getX().copy();
+
+        boolean modified = false;
+        for(Map.Entry<Object,Double> entry : minColumnValues.entrySet()) {
+            Object column = entry.getKey();
+            Double value = xData.getDouble(column);
+            if(value==null) { //if we have a missing value don't perform any denormalization
+                continue;
+            }
+
+            Double min = entry.getValue();
+            Double max = maxColumnValues.get(column);
+
+            if(min.equals(max)) {
+                xData.put(column, min);
+            }
+            else {
+                xData.put(column, value*(max-min) + min);
+            }
+            modified = true;
+        }
+
+        if(!modified) {
+            return r;
+        }
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
     /**
      * Learns the normalization parameters for the Y variable.
      * 
@@ -306,25 +338,9 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
             streamExecutor.forEach(StreamMethods.stream(dataset.entries(), isParallelized()), e -> {
                 Integer rId = e.getKey();
                 Record r = e.getValue();
-                Double value = TypeInference.toDouble(r.getY());
                 
-                if(value!=null) { //if we have a missing value don't perform any normalization
-                    //do the same for the response variable Y
-                    Double min = minColumnValues.get(Dataframe.COLUMN_NAME_Y);
-                    Double max = maxColumnValues.get(Dataframe.COLUMN_NAME_Y);
-
-                    //it is important how we will handle 0 normalized values because
-                    //0-valued features are considered inactive.
-                    double normalizedValue;
-                    if(min.equals(max)) {
-                        normalizedValue = (min!=0.0)?1.0:0.0; //set it 0.0 ONLY if the feature is always inactive and 1.0 if it has a non-zero value
-                    }
-                    else {
-                        normalizedValue = (value-min)/(max-min);
-                    }
-
-                    Record newR = new Record(r.getX(), normalizedValue, r.getYPredicted(), r.getYPredictedProbabilities());
-
+                Record newR = normalizeY(r, minColumnValues, maxColumnValues);
+                if(newR!=r) {
                     //no modification on the actual columns takes place, safe to do.
                     dataset._unsafe_set(rId, newR);
                 }
@@ -333,6 +349,39 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
         }
     }
     
+    /**
+     * Normalizes the Y variable of a single record. If the response variable 
+     * is missing or it was not normalized during training, the same record is
+     * returned.
+     * 
+     * @param r
+     * @param minColumnValues
+     * @param maxColumnValues
+     * @return 
+     */
+    protected Record normalizeY(Record r, Map<Object, Double> minColumnValues, Map<Object, Double> maxColumnValues) {
+        //do the same for the response variable Y
+        Double min = minColumnValues.get(Dataframe.COLUMN_NAME_Y);
+        Double max = maxColumnValues.get(Dataframe.COLUMN_NAME_Y);
+        if(min==null || r.getY()==null) { //if we have a missing value don't perform any normalization
+            return r;
+        }
+        
+        double value = TypeInference.toDouble(r.getY());
+
+        //it is important how we will handle 0 normalized values because
+        //0-valued features are considered inactive.
+        double normalizedValue;
+        if(min.equals(max)) {
+            normalizedValue = (min!=0.0)?1.0:0.0; //set it 0.0 ONLY if the feature is always inactive and 1.0 if it has a non-zero value
+        }
+        else {
+            normalizedValue = (value-min)/(max-min);
+        }
+
+        return new Record(r.getX(), normalizedValue, r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
     /**
      * Denormalizes the Y variable.
      * 
@@ -348,32 +397,7 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
                 Integer rId = e.getKey();
                 Record r = e.getValue();
                 
-                //do the same for the response variable Y
-                Double min = minColumnValues.get(Dataframe.COLUMN_NAME_Y);
-                Double max = maxColumnValues.get(Dataframe.COLUMN_NAME_Y);
-                
-                Object denormalizedY = null;
-                Object denormalizedYPredicted = null;
-                if(min.equals(max)) {
-                    if(r.getY()!=null) {
-                        denormalizedY = min;
-                    }
-                    if(r.getYPredicted()!=null) {
-                        denormalizedYPredicted = min;
-                    }
-                }
-                else {
-                    if(r.getY()!=null) {
-                        denormalizedY = TypeInference.toDouble(r.getY())*(max-min) + min;
-                    }
-                    
-                    Double YPredicted = TypeInference.toDouble(r.getYPredicted());
-                    if(YPredicted!=null) {
-                        denormalizedYPredicted = YPredicted*(max-min) + min;
-                    }
-                }
-
-                Record newR = new Record(r.getX(), denormalizedY, denormalizedYPredicted, r.getYPredictedProbabilities());
+                Record newR = denormalizeY(r, minColumnValues, maxColumnValues);
 
                 //no modification on the actual columns takes place, safe to do.
                 dataset._unsafe_set(rId, newR);
@@ -381,6 +405,48 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
         }
     }
     
+    /**
+     * Denormalizes the Y and YPredicted variables of a single record. If the
+     * response variable was not normalized during training, the same record 
+     * is returned.
+     * 
+     * @param r
+     * @param minColumnValues
+     * @param maxColumnValues
+     * @return 
+     */
+    protected Record denormalizeY(Record r, Map<Object, Double> minColumnValues, Map<Object, Double> maxColumnValues) {
+        //do the same for the response variable Y
+        Double min = minColumnValues.get(Dataframe.COLUMN_NAME_Y);
+        Double max = maxColumnValues.get(Dataframe.COLUMN_NAME_Y);
+        if(min==null) {
+            return r;
+        }
+
+        Object denormalizedY = null;
+        Object denormalizedYPredicted = null;
+        if(min.equals(max)) {
+            if(r.getY()!=null) {
+                denormalizedY = min;
+            }
+            if(r.getYPredicted()!=null) {
+                denormalizedYPredicted = min;
+            }
+        }
+        else {
+            if(r.getY()!=null) {
+                denormalizedY = TypeInference.toDouble(r.getY())*(max-min) + min;
+            }
+
+            Double YPredicted = TypeInference.toDouble(r.getYPredicted());
+            if(YPredicted!=null) {
+                denormalizedYPredicted = YPredicted*(max-min) + min;
+            }
+        }
+
+        return new Record(r.getX(), denormalizedY, denormalizedYPredicted, r.getYPredictedProbabilities());
+    }
+    
     /**
      * Learns the reference levels of the categorical variables.
      * 
@@ -416,32 +482,8 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
             Integer rId = e.getKey();
             Record r = e.getValue();
             
-            AssociativeArray xData = r.getX().copy();
-            
-            boolean modified = false;
-            for(Object column : r.getX().keySet()) {
-                if(covert2dummy(columnTypes.get(column))==false) { 
-                    continue;
-                }
-                Object value = xData.remove(column); //remove the original column
-                modified = true;
-                
-                Object referenceLevel= referenceLevels.get(column);
-                
-                if(referenceLevel != null && //not unknown variable
-                   !referenceLevel.equals(value)) { //not equal to reference level
-                    
-                    //create a new column
-                    List<Object> newColumn = Arrays.<Object>asList(column,value);
-                    
-                    //add a new dummy variable for this column-value combination
-                    xData.put(newColumn, true); 
-                }
-            }
-            
-            if(modified) {
-                Record newR = new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
-
+            Record newR = transformDummy(r, columnTypes, referenceLevels);
+            if(newR!=r) {
                 //we call below the recalculateMeta()
                 dataset._unsafe_set(rId, newR);
             }
@@ -451,6 +493,48 @@ public abstract class AbstractDummyMinMaxTransformer extends AbstractTransformer
         dataset.recalculateMeta(); 
     }
     
+    /**
+     * Replaces the categorical variables of a single record with dummy variables.
+     * When no columnTypes are provided, the type of each column is inferred 
+     * from its value. If no column is modified the same record is returned.
+     * 
+     * @param r
+     * @param columnTypes
+     * @param referenceLevels
+     * @return 
+     */
+    protected Record transformDummy(Record r, Map<Object, TypeInference.DataType> columnTypes, Map<Object, Object> referenceLevels) {
+        AssociativeArray xData = r.getX().copy();
+
+        boolean modified = false;
+        for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+            Object column = entry.getKey();
+            TypeInference.DataType columnType = (columnTypes!=null)?columnTypes.get(column):TypeInference.getDataType(entry.getValue());
+            if(covert2dummy(columnType)==false) { 
+                continue;
+            }
+            Object value = xData.remove(column); //remove the original column
+            modified = true;
+
+            Object referenceLevel= referenceLevels.get(column);
+
+            if(referenceLevel != null && //not unknown variable
+               !referenceLevel.equals(value)) { //not equal to reference level
+
+                //create a new column
+                List<Object> newColumn = Arrays.<Object>asList(column,value);
+
+                //add a new dummy variable for this column-value combination
+                xData.put(newColumn, true); 
+            }
+        }
+
+        if(!modified) {
+            return r;
+        }
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
     /**
      * Checks whether the variable should be converted into dummy (boolean). Only
      * categorical and ordinal values are converted.
@@ -17,6 +17,7 @@ package com.datumbox.framework.core.machinelearning.common.abstracts.datatransfo
 
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.dataobjects.DoubleKnowledgeBase;
 
@@ -81,6 +82,33 @@ public abstract class AbstractTransformer<MP extends AbstractTransformer.Abstrac
         _denormalize(data);
     }
     
+    /**
+     * Transforms and Normalizes a single record and returns the result as a new
+     * Record. Unlike transform(Dataframe), it performs all the operations in 
+     * memory and it is safe to be called concurrently.
+     * 
+     * @param r
+     * @return 
+     */
+    public Record transform(Record r) {
+        kb().load();
+        
+        return _normalize(_convert(r));
+    }
+    
+    /**
+     * Denormalizes a single record and returns the result as a new Record. It
+     * is safe to be called concurrently.
+     * 
+     * @param r
+     * @return 
+     */
+    public Record denormalize(Record r) {
+        kb().load();
+        
+        return _denormalize(r);
+    }
+    
     /**
      * Converts the data (adding/modifying/removing columns). The conversions 
      * are not possible to be rolledback.
@@ -104,4 +132,28 @@ public abstract class AbstractTransformer<MP extends AbstractTransformer.Abstrac
      */
     protected abstract void _denormalize(Dataframe data);
     
+    /**
+     * Converts the data of a single record. 
+     * 
+     * @param r
+     * @return 
+     */
+    protected abstract Record _convert(Record r);
+    
+    /**
+     * Normalizes the data of a single record. 
+     * 
+     * @param r
+     * @return 
+     */
+    protected abstract Record _normalize(Record r);
+    
+    /**
+     * Denormalizes the data of a single record. 
+     * 
+     * @param r
+     * @return 
+     */
+    protected abstract Record _denormalize(Record r);
+    
 }
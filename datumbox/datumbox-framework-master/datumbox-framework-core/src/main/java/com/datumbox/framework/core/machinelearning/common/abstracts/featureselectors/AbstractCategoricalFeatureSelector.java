@@ -16,6 +16,7 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.featureselectors;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.dataobjects.TypeInference;
@@ -187,6 +188,36 @@ public abstract class AbstractCategoricalFeatureSelector<MP extends AbstractCate
         filterData(newdata, kb().getDbc(), kb().getModelParameters().getFeatureScores(), kb().getTrainingParameters().isIgnoringNumericalFeatures());
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected Record filterFeatures(Record r) {
+        Map<Object, Double> featureScores = kb().getModelParameters().getFeatureScores();
+        boolean ignoringNumericalFeatures = kb().getTrainingParameters().isIgnoringNumericalFeatures();
+        
+        AssociativeArray xData = r.getX().copy();
+        
+        boolean modified = false;
+        for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+            Object feature = entry.getKey();
+            
+            if(ignoringNumericalFeatures) {
+                if(TypeInference.getDataType(entry.getValue())==TypeInference.DataType.NUMERICAL) { //is it numerical? 
+                    continue; //skip any further analysis
+                }
+            }
+            
+            if(!featureScores.containsKey(feature)) {
+                xData.remove(feature);
+                modified = true;
+            }
+        }
+        
+        if(!modified) {
+            return r;
+        }
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
     private static void filterData(Dataframe data, DatabaseConnector dbc, Map<Object, Double> featureScores, boolean ignoringNumericalFeatures) {
         Logger logger = LoggerFactory.getLogger(AbstractCategoricalFeatureSelector.class);
         logger.debug("filterData()");
@@ -17,6 +17,7 @@ package com.datumbox.framework.core.machinelearning.common.abstracts.featuresele
 
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.dataobjects.DoubleKnowledgeBase;
 
@@ -65,10 +66,32 @@ public abstract class AbstractFeatureSelector<MP extends AbstractFeatureSelector
         filterFeatures(newData);
     }
     
+    /**
+     * Performs feature selection on a single record and returns the result as
+     * a new Record. Unlike transform(Dataframe), it performs all the operations
+     * in memory and it is safe to be called concurrently.
+     * 
+     * @param r
+     * @return 
+     */
+    public Record transform(Record r) {
+        kb().load();
+        
+        return filterFeatures(r);
+    }
+    
     /**
      * Performs the filtering of the features.
      * 
      * @param newdata 
      */
     protected abstract void filterFeatures(Dataframe newdata);
+    
+    /**
+     * Performs the filtering of the features of a single record.
+     * 
+     * @param r
+     * @return 
+     */
+    protected abstract Record filterFeatures(Record r);
 }
@@ -76,6 +76,7 @@ public abstract class AbstractClusterer<CL extends AbstractClusterer.AbstractClu
          */
         protected AbstractCluster(Integer clusterId, AbstractCluster copy) {
             this.clusterId = clusterId;
+            size = copy.size;
             labelY = copy.labelY;
         }
 
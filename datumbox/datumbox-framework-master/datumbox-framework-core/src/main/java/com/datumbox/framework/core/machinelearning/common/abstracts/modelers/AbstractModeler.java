@@ -16,11 +16,15 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.modelers;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.validators.AbstractValidator;
 import com.datumbox.framework.core.machinelearning.common.dataobjects.TripleKnowledgeBase;
 import com.datumbox.framework.core.machinelearning.common.interfaces.KnowledgeBase;
+import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
+import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable.Prediction;
 import com.datumbox.framework.core.machinelearning.common.interfaces.ValidationMetrics;
 
 /**
@@ -84,9 +88,53 @@ public abstract class AbstractModeler<MP extends AbstractModeler.AbstractModelPa
         kb().load();
         
         _predictDataset(newData);
+        
+        newData.getDbc().flush(); //write the buffered predictions
 
     }
     
+    /**
+     * Calculates the prediction of a single record and returns it. For the 
+     * algorithms which are capable of predicting records one by one 
+     * (PredictParallelizable) the prediction is estimated in memory without 
+     * creating any Dataframe or temporary maps and thus the method is safe to 
+     * be called concurrently. For the rest of the algorithms the record is 
+     * wrapped in a single-row Dataframe which is predicted and then deleted.
+     * 
+     * @param r
+     * @return 
+     */
+    public Prediction predict(Record r) {
+        kb().load();
+        
+        if(this instanceof PredictParallelizable) {
+            return ((PredictParallelizable)this)._predictRecord(r);
+        }
+        
+        Dataframe newData = new Dataframe(kb().getConf());
+        try {
+            Integer rId = newData.addRecord(r);
+            _predictDataset(newData);
+            
+            Record predicted = newData.get(rId);
+            return new Prediction(predicted.getYPredicted(), predicted.getYPredictedProbabilities());
+        }
+        finally {
+            newData.delete();
+        }
+    }
+    
+    /**
+     * Calculates the prediction of a single observation.
+     * 
+     * @param x
+     * @return 
+     * @see AbstractModeler#predict(com.datumbox.framework.common.dataobjects.Record) 
+     */
+    public Prediction predict(AssociativeArray x) {
+        return predict(new Record(x, null));
+    }
+    
     /**
      * Validate the model against the testingData and returns the validationMetrics;
      * It does not update the validationMetrics.
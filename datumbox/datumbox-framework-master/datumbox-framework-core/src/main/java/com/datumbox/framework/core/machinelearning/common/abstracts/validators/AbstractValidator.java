@@ -16,6 +16,7 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.validators;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ThreadMethods;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.FlatDataList;
 import com.datumbox.framework.common.interfaces.Trainable;
@@ -30,6 +31,9 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * The AbstractValidator class is an abstract class responsible for the K-fold Cross
@@ -54,7 +58,10 @@ public abstract class AbstractValidator<MP extends ModelParameters, TP extends T
     
     /**
      * Performs K-fold cross validation by using the provided dataset and number
-     * of folds and returns the average metrics across all folds.
+     * of folds and returns the average metrics across all folds. The folds are
+     * lightweight views over the dataset and every fold is trained on its own
+     * database namespace. Up to maxNumberOfConcurrentModels folds of the 
+     * ConcurrencyConfiguration are trained concurrently on the shared pool.
      * 
      * @param dataset
      * @param k
@@ -84,62 +91,26 @@ public abstract class AbstractValidator<MP extends ModelParameters, TP extends T
         
         String foldDBname=dbName+conf.getDbConfig().getDBnameSeparator()+DB_INDICATOR;
         
-        List<VM> validationMetricsList = new LinkedList<>();
-        for(int fold=0;fold<k;++fold) {
-            
-            logger.info("Kfold {}", fold);
-            
-            //as fold window we consider the part of the ids that are used for validation
-            FlatDataList foldTrainingIds = new FlatDataList(new ArrayList<>(n-foldSize));
-            FlatDataList foldValidationIds = new FlatDataList(new ArrayList<>(foldSize));
-            
-            for(int i=0;i<n;++i) {
-                boolean isInValidationFoldRange = false;
-                
-                //determine if the current i value is in the validation fold range
-                if(fold*foldSize<=i && i<(fold+1)*foldSize) {
-                    isInValidationFoldRange = true;
-                }
-                
-                if(isInValidationFoldRange) {
-                    foldValidationIds.add(ids[i]);
-                }
-                else {
-                    foldTrainingIds.add(ids[i]);
-                }
+        Map<Integer, VM> foldValidationMetrics = new ConcurrentHashMap<>();
+        Map<Integer, RuntimeException> foldExceptions = new ConcurrentHashMap<>();
+        
+        ThreadMethods.throttledExecution(IntStream.range(0, k).boxed(), fold -> {
+            try {
+                foldValidationMetrics.put(fold, validateFold(dataset, ids, fold, k, foldDBname, conf, aClass, trainingParameters));
             }
-            
-            if(k==1) {
-                //if the number of k folds is 1 then the trainindIds are empty
-                //and the all the data are on validation fold. In this case
-                //we should set the training and validation sets equal
-                foldTrainingIds = foldValidationIds;
+            catch(RuntimeException ex) {
+                foldExceptions.put(fold, ex);
             }
-            
-            
-            //initialize modeler
-            AbstractModeler modeler = Trainable.<AbstractModeler>newInstance((Class<AbstractModeler>)aClass, foldDBname+(fold+1), conf);
-            
-            
-            Dataframe trainingData = dataset.getSubset(foldTrainingIds);
-            modeler.fit(trainingData, trainingParameters); 
-            trainingData.delete();
-            //trainingData = null;
-                        
-            
-            Dataframe validationData = dataset.getSubset(foldValidationIds);
-            
-            //fetch validation metrics
-            VM entrySample = (VM) modeler.validate(validationData);
-            validationData.delete();
-            //validationData = null;
-            
-            //delete algorithm
-            modeler.delete();
-            //modeler = null;
-            
-            //add the validationMetrics in the list
-            validationMetricsList.add(entrySample);
+        }, conf.getConcurrencyConfig(), conf.getConcurrencyConfig().getMaxNumberOfConcurrentModels());
+        
+        if(!foldExceptions.isEmpty()) {
+            throw foldExceptions.values().iterator().next();
+        }
+        
+        //add the validationMetrics in the list in the order of the folds
+        List<VM> validationMetricsList = new LinkedList<>();
+        for(int fold=0;fold<k;++fold) {
+            validationMetricsList.add(foldValidationMetrics.get(fold));
         }
         
         VM avgValidationMetrics = calculateAverageValidationMetrics(validationMetricsList);
@@ -147,6 +118,78 @@ public abstract class AbstractValidator<MP extends ModelParameters, TP extends T
         return avgValidationMetrics;
     }
     
+    /**
+     * Trains and validates the model of a single fold and returns its 
+     * validation metrics.
+     * 
+     * @param dataset
+     * @param ids
+     * @param fold
+     * @param k
+     * @param foldDBname
+     * @param conf
+     * @param aClass
+     * @param trainingParameters
+     * @return 
+     */
+    private VM validateFold(Dataframe dataset, Integer[] ids, int fold, int k, String foldDBname, Configuration conf, Class<? extends AbstractModeler> aClass, TP trainingParameters) {
+        logger.info("Kfold {}", fold);
+        
+        int n = ids.length;
+        int foldSize= n/k; //floor the number
+        
+        //as fold window we consider the part of the ids that are used for validation
+        FlatDataList foldTrainingIds = new FlatDataList(new ArrayList<>(n-foldSize));
+        FlatDataList foldValidationIds = new FlatDataList(new ArrayList<>(foldSize));
+
+        for(int i=0;i<n;++i) {
+            boolean isInValidationFoldRange = false;
+
+            //determine if the current i value is in the validation fold range
+            if(fold*foldSize<=i && i<(fold+1)*foldSize) {
+                isInValidationFoldRange = true;
+            }
+
+            if(isInValidationFoldRange) {
+                foldValidationIds.add(ids[i]);
+            }
+            else {
+                foldTrainingIds.add(ids[i]);
+            }
+        }
+
+        if(k==1) {
+            //if the number of k folds is 1 then the trainindIds are empty
+            //and the all the data are on validation fold. In this case
+            //we should set the training and validation sets equal
+            foldTrainingIds = foldValidationIds;
+        }
+
+
+        //initialize modeler
+        AbstractModeler modeler = Trainable.<AbstractModeler>newInstance((Class<AbstractModeler>)aClass, foldDBname+(fold+1), conf);
+
+
+        Dataframe trainingData = dataset.getView(foldTrainingIds);
+        modeler.fit(trainingData, trainingParameters); 
+        trainingData.delete();
+        //trainingData = null;
+
+
+        Dataframe validationData = dataset.getView(foldValidationIds);
+
+        //fetch validation metrics
+        VM entrySample = (VM) modeler.validate(validationData);
+        validationData.delete();
+        //validationData = null;
+
+        //delete algorithm
+        modeler.delete();
+        //modeler = null;
+        
+        return entrySample;
+    }
+    
     /**
      * Calculates the average validation metrics by combining the results of the
      * provided list.
@@ -16,6 +16,9 @@
 package com.datumbox.framework.core.machinelearning.common.abstracts.wrappers;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
+import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.interfaces.Trainable;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.datatransformers.AbstractTransformer;
@@ -23,6 +26,7 @@ import com.datumbox.framework.core.machinelearning.common.abstracts.featureselec
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractModeler;
 import com.datumbox.framework.core.machinelearning.common.dataobjects.DoubleKnowledgeBase;
 import com.datumbox.framework.core.machinelearning.common.interfaces.Parallelizable;
+import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable.Prediction;
 import com.datumbox.framework.core.machinelearning.common.interfaces.ValidationMetrics;
 
 /**
@@ -245,6 +249,23 @@ public abstract class AbstractWrapper<MP extends AbstractWrapper.AbstractModelPa
         kb().close();
     }
 
+    /**
+     * Updates incrementally the modeler of a previously trained wrapper. The 
+     * data transformer and the feature selector are applied on the new data 
+     * as they were trained. Since the components of the wrapper are defined 
+     * by its training parameters, the wrapper must be trained with fit() first.
+     * 
+     * @param trainingData 
+     */
+    @Override
+    public void partialFit(Dataframe trainingData) {
+        kb().load();
+        if(kb().getModelParameters() == null) {
+            throw new IllegalArgumentException("The wrapper must be trained with fit() before it can be updated incrementally.");
+        }
+        super.partialFit(trainingData);
+    }
+
     /**
      * Getter for the Validation Metrics of the algorithm.
      * 
@@ -272,6 +293,89 @@ public abstract class AbstractWrapper<MP extends AbstractWrapper.AbstractModelPa
         }
     }
     
+    /**
+     * Generates a prediction for a single record. The record is passed through
+     * the data transformer, the feature selector and the modeler in memory,
+     * without creating any Dataframe or temporary maps. The method is safe to 
+     * be called concurrently.
+     * 
+     * @param r
+     * @return 
+     */
+    public Prediction predict(Record r) {
+        Record newR = predictRecord(r);
+        return new Prediction(newR.getYPredicted(), newR.getYPredictedProbabilities());
+    }
+    
+    /**
+     * Generates a prediction for a single observation.
+     * 
+     * @param x
+     * @return 
+     * @see AbstractWrapper#predict(com.datumbox.framework.common.dataobjects.Record) 
+     */
+    public Prediction predict(AssociativeArray x) {
+        return predict(new Record(x, null));
+    }
+    
+    /**
+     * Passes a single record through all the internal components and returns
+     * the processed Record which contains the predictions.
+     * 
+     * @param r
+     * @return 
+     */
+    protected Record predictRecord(Record r) {
+        //ensure db loaded
+        kb().load();
+        initializeComponents();
+        
+        TP trainingParameters = kb().getTrainingParameters();
+        
+        boolean transformData = (trainingParameters.getDataTransformerClass()!=null);
+        if(transformData) {
+            r = dataTransformer.transform(r);
+        }
+        
+        if(trainingParameters.getFeatureSelectorClass()!=null) {
+            r = featureSelector.transform(r);
+        }
+        
+        Prediction p = modeler.predict(r);
+        r = new Record(r.getX(), r.getY(), p.getYPredicted(), p.getYPredictedProbabilities());
+        
+        if(transformData) {
+            r = dataTransformer.denormalize(r); //optional denormization
+        }
+        
+        return r;
+    }
+    
+    /**
+     * Initializes the internal components of the wrapper which have not been
+     * loaded yet, using the classes stored in the training parameters. It is
+     * synchronized so that concurrent predictions don't create duplicates.
+     */
+    protected synchronized void initializeComponents() {
+        TP trainingParameters = kb().getTrainingParameters();
+        Configuration conf = kb().getConf();
+        
+        Class dtClass = trainingParameters.getDataTransformerClass();
+        if(dtClass!=null && dataTransformer==null) {
+            dataTransformer = Trainable.<AbstractTransformer>newInstance(dtClass, dbName, conf);
+        }
+        
+        Class fsClass = trainingParameters.getFeatureSelectorClass();
+        if(fsClass!=null && featureSelector==null) {
+            featureSelector = Trainable.<AbstractFeatureSelector>newInstance(fsClass, dbName, conf);
+        }
+        
+        if(modeler==null) {
+            Class mlClass = trainingParameters.getModelerClass();
+            modeler = Trainable.<AbstractModeler>newInstance(mlClass, dbName, conf); 
+        }
+    }
+    
     /**
      * Updates the parallelized flag of the component if it supports it. This is
      * done just before the train and predict methods.
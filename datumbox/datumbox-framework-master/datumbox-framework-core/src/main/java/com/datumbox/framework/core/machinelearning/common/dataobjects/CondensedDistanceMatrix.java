@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.dataobjects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores the pairwise distances of n objects in a condensed upper triangular
+ * form, which requires n*(n-1)/2 doubles. The distance of an object from
+ * itself is always 0. Small matrices are kept in a double array on the heap
+ * while large ones, which either exceed the maximum size of an array or a
+ * significant part of the heap, are stored in a memory-mapped temporary file.
+ *
+ * Concurrent reads and writes on different cells are safe. The matrix must be
+ * closed after use to release the temporary file.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class CondensedDistanceMatrix implements AutoCloseable {
+
+    private static final int SEGMENT_BITS = 27; //every mapped segment holds 2^27 doubles (1GB)
+
+    private static final long SEGMENT_MASK = (1L<<SEGMENT_BITS)-1;
+
+    private final int n;
+
+    private final long length;
+
+    //on-heap storage; null when the matrix is memory-mapped
+    private double[] values;
+
+    //memory-mapped storage; null when the matrix is on the heap
+    private DoubleBuffer[] segments;
+
+    private File file;
+
+    /**
+     * Public constructor which accepts the number of objects.
+     *
+     * @param n
+     */
+    public CondensedDistanceMatrix(int n) {
+        this(n, (long)n*(n-1)/2>Math.min(Integer.MAX_VALUE-8, Runtime.getRuntime().maxMemory()/(2*Double.BYTES)));
+    }
+
+    /**
+     * Package-private constructor which allows selecting the storage.
+     *
+     * @param n
+     * @param mapped
+     */
+    CondensedDistanceMatrix(int n, boolean mapped) {
+        this.n = n;
+        length = (long)n*(n-1)/2;
+
+        if(mapped) {
+            mapFile();
+        }
+        else {
+            values = new double[(int)length];
+        }
+    }
+
+    /**
+     * Returns the number of objects.
+     *
+     * @return
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Checks whether the matrix is stored in a memory-mapped file.
+     *
+     * @return
+     */
+    public boolean isMapped() {
+        return segments!=null;
+    }
+
+    /**
+     * Returns the distance between the objects i and j.
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    public double get(int i, int j) {
+        if(i==j) {
+            return 0.0;
+        }
+        long index = index(i, j);
+        if(values!=null) {
+            return values[(int)index];
+        }
+        return segments[(int)(index>>>SEGMENT_BITS)].get((int)(index&SEGMENT_MASK));
+    }
+
+    /**
+     * Sets the distance between the objects i and j, which must be different.
+     *
+     * @param i
+     * @param j
+     * @param distance
+     */
+    public void set(int i, int j, double distance) {
+        if(i==j) {
+            throw new IllegalArgumentException("The distance of an object from itself can't be set.");
+        }
+        long index = index(i, j);
+        if(values!=null) {
+            values[(int)index] = distance;
+        }
+        else {
+            segments[(int)(index>>>SEGMENT_BITS)].put((int)(index&SEGMENT_MASK), distance);
+        }
+    }
+
+    /**
+     * Releases the storage of the matrix and deletes the temporary file.
+     */
+    @Override
+    public void close() {
+        values = null;
+        segments = null;
+        if(file!=null) {
+            file.delete();
+            file = null;
+        }
+    }
+
+    /**
+     * Returns the position of the pair in the condensed storage.
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    private long index(int i, int j) {
+        if(i>j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return (long)i*n - (long)i*(i+1)/2 + (j-i-1);
+    }
+
+    /**
+     * Creates the temporary file and maps it in segments.
+     */
+    private void mapFile() {
+        try {
+            file = File.createTempFile("datumbox_distances", ".bin");
+            file.deleteOnExit();
+
+            int numberOfSegments = (int)((length+SEGMENT_MASK)>>>SEGMENT_BITS);
+            segments = new DoubleBuffer[numberOfSegments];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                for(int s=0;s<numberOfSegments;s++) {
+                    long offset = (long)s<<SEGMENT_BITS;
+                    long segmentLength = Math.min(length-offset, SEGMENT_MASK+1);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, offset*Double.BYTES, segmentLength*Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                }
+            } //the mappings remain valid after the channel is closed
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
@@ -60,12 +60,12 @@ public class DoubleKnowledgeBase<MP extends ModelParameters, TP extends Training
     /**
      * The ModelParameters object of the algorithm.
      */
-    private MP modelParameters;
+    private volatile MP modelParameters;
     
     /**
      * The TrainingParameters object of the algorithm.
      */
-    private TP trainingParameters;
+    private volatile TP trainingParameters;
     
     /**
      * Public constructor of the object.
@@ -103,6 +103,7 @@ public class DoubleKnowledgeBase<MP extends ModelParameters, TP extends Training
             throw new IllegalArgumentException("Can't save an empty KnowledgeBase.");
         }
         
+        dbc.flush(); //write the buffered modifications of the BigMaps before storing the parameters
         dbc.saveObject("modelParameters", modelParameters);
         dbc.saveObject("trainingParameters", trainingParameters);
     }
@@ -110,9 +111,14 @@ public class DoubleKnowledgeBase<MP extends ModelParameters, TP extends Training
     /** {@inheritDoc} */
     @Override
     public void load() {
-        if(!isInitialized()) {
-            modelParameters = dbc.loadObject("modelParameters", mpClass);
-            trainingParameters = dbc.loadObject("trainingParameters", tpClass);
+        if(isInitialized()) {
+            return; //the parameters are volatile, so the loaded KB is read without locking
+        }
+        synchronized(this) {
+            if(!isInitialized()) {
+                modelParameters = dbc.loadObject("modelParameters", mpClass);
+                trainingParameters = dbc.loadObject("trainingParameters", tpClass);
+            }
         }
     }
     
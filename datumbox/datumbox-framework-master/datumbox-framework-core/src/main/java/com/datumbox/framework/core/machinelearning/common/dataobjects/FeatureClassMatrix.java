@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.dataobjects;
+
+import com.datumbox.framework.common.dataobjects.ReadOnlyDoubleArray;
+import com.datumbox.framework.common.dataobjects.ReadOnlyIntArray;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Stores the parameters of the models which have one weight for every
+ * feature-class combination. The features and the classes are interned into
+ * dense int ids and the weights are kept in a flat row-major double array
+ * (features x classes). After training the matrix can be compacted into a
+ * read-only dense or sparse (CSR) representation, whichever requires less 
+ * memory. The read-only arrays can be memory-mapped when the model is loaded,
+ * which allows serving the model without copying its weights on the heap.
+ *
+ * The structure is not synchronized. Concurrent reads are safe but all the
+ * modifications must be synchronized externally.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class FeatureClassMatrix implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<Object, Integer> featureIds;
+
+    private final Map<Object, Integer> classIds;
+
+    private Object[] classes;
+
+    private int c;
+
+    private int d = 0;
+
+    //modifiable dense representation; null when the matrix is compacted
+    private double[] weights;
+
+    //read-only dense representation
+    private ReadOnlyDoubleArray frozenWeights = null;
+
+    //read-only sparse (CSR) representation
+    private ReadOnlyIntArray rowPointers = null;
+    private ReadOnlyIntArray columnIds = null;
+    private ReadOnlyDoubleArray values = null;
+
+    /**
+     * Public constructor which accepts the classes of the model. The order of
+     * the collection defines the ids of the classes.
+     *
+     * @param classes
+     */
+    public FeatureClassMatrix(Collection<Object> classes) {
+        c = classes.size();
+        this.classes = classes.toArray();
+        classIds = new HashMap<>();
+        for(int k=0;k<c;k++) {
+            classIds.put(this.classes[k], k);
+        }
+        featureIds = new HashMap<>();
+        weights = new double[INITIAL_CAPACITY*Math.max(c, 1)];
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     */
+    private FeatureClassMatrix(FeatureClassMatrix other) {
+        c = other.c;
+        d = other.d;
+        classes = other.classes.clone();
+        classIds = new HashMap<>(other.classIds);
+        featureIds = new HashMap<>(other.featureIds);
+        weights = (other.weights!=null)?other.weights.clone():null;
+        //the read-only arrays are immutable and they can be shared
+        frozenWeights = other.frozenWeights;
+        rowPointers = other.rowPointers;
+        columnIds = other.columnIds;
+        values = other.values;
+    }
+
+    /**
+     * Returns a deep copy of the matrix.
+     *
+     * @return
+     */
+    public FeatureClassMatrix copy() {
+        return new FeatureClassMatrix(this);
+    }
+
+    /**
+     * Returns the number of features.
+     *
+     * @return
+     */
+    public int getD() {
+        return d;
+    }
+
+    /**
+     * Returns the number of classes.
+     *
+     * @return
+     */
+    public int getC() {
+        return c;
+    }
+
+    /**
+     * Returns the interned features.
+     *
+     * @return
+     */
+    public Set<Object> getFeatures() {
+        return Collections.unmodifiableSet(featureIds.keySet());
+    }
+
+    /**
+     * Returns the class which has the provided id.
+     *
+     * @param classId
+     * @return
+     */
+    public Object getClassById(int classId) {
+        return classes[classId];
+    }
+
+    /**
+     * Returns the id of the class or -1 if the class is unknown.
+     *
+     * @param theClass
+     * @return
+     */
+    public int getClassId(Object theClass) {
+        Integer id = classIds.get(theClass);
+        return (id!=null)?id:-1;
+    }
+
+    /**
+     * Returns the id of the feature or -1 if the feature is unknown.
+     *
+     * @param feature
+     * @return
+     */
+    public int getFeatureId(Object feature) {
+        Integer id = featureIds.get(feature);
+        return (id!=null)?id:-1;
+    }
+
+    /**
+     * Interns the feature and returns its id. If the feature already exists its
+     * existing id is returned. New features are initialized with zero weights.
+     *
+     * @param feature
+     * @return
+     */
+    public int addFeature(Object feature) {
+        Integer id = featureIds.get(feature);
+        if(id==null) {
+            densify();
+            id = d++;
+            featureIds.put(feature, id);
+            if(d*c>weights.length) {
+                weights = Arrays.copyOf(weights, Math.max(d*c, 2*weights.length));
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Interns the class and returns its id. If the class already exists its
+     * existing id is returned. New classes are initialized with zero weights
+     * for all the features.
+     *
+     * @param theClass
+     * @return
+     */
+    public int addClass(Object theClass) {
+        Integer id = classIds.get(theClass);
+        if(id==null) {
+            densify();
+            id = c;
+            int newC = c+1;
+            double[] newWeights = new double[Math.max(d, INITIAL_CAPACITY)*newC];
+            for(int featureId=0;featureId<d;featureId++) {
+                System.arraycopy(weights, featureId*c, newWeights, featureId*newC, c);
+            }
+            weights = newWeights;
+            classes = Arrays.copyOf(classes, newC);
+            classes[id] = theClass;
+            classIds.put(theClass, id);
+            c = newC;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the weight of the feature-class combination.
+     *
+     * @param featureId
+     * @param classId
+     * @return
+     */
+    public double get(int featureId, int classId) {
+        if(weights!=null) {
+            return weights[featureId*c+classId];
+        }
+        else if(frozenWeights!=null) {
+            return frozenWeights.get(featureId*c+classId);
+        }
+        for(int i=rowPointers.get(featureId);i<rowPointers.get(featureId+1);i++) {
+            if(columnIds.get(i)==classId) {
+                return values.get(i);
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Returns the weight of the feature-class combination or null if the
+     * feature or the class are unknown.
+     *
+     * @param feature
+     * @param theClass
+     * @return
+     */
+    public Double get(Object feature, Object theClass) {
+        int featureId = getFeatureId(feature);
+        int classId = getClassId(theClass);
+        if(featureId<0 || classId<0) {
+            return null;
+        }
+        return get(featureId, classId);
+    }
+
+    /**
+     * Sets the weight of the feature-class combination.
+     *
+     * @param featureId
+     * @param classId
+     * @param value
+     */
+    public void set(int featureId, int classId, double value) {
+        densify();
+        weights[featureId*c+classId] = value;
+    }
+
+    /**
+     * Adds the value to the weight of the feature-class combination.
+     *
+     * @param featureId
+     * @param classId
+     * @param value
+     */
+    public void add(int featureId, int classId, double value) {
+        densify();
+        weights[featureId*c+classId] += value;
+    }
+
+    /**
+     * Adds to the scores array the weights of the feature multiplied by the
+     * provided multiplier: scores[k] += multiplier*w[featureId][k].
+     *
+     * @param featureId
+     * @param multiplier
+     * @param scores
+     */
+    public void addRowTo(int featureId, double multiplier, double[] scores) {
+        if(weights!=null) {
+            int offset = featureId*c;
+            for(int k=0;k<c;k++) {
+                scores[k] += multiplier*weights[offset+k];
+            }
+        }
+        else if(frozenWeights!=null) {
+            int offset = featureId*c;
+            for(int k=0;k<c;k++) {
+                scores[k] += multiplier*frozenWeights.get(offset+k);
+            }
+        }
+        else {
+            for(int i=rowPointers.get(featureId);i<rowPointers.get(featureId+1);i++) {
+                scores[columnIds.get(i)] += multiplier*values.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the flat row-major array of the weights. Modifications on the
+     * array are reflected on the matrix. Only the first getD()*getC() elements
+     * are used.
+     *
+     * @return
+     */
+    public double[] getWeights() {
+        densify();
+        return weights;
+    }
+
+    /**
+     * Checks whether the matrix is stored in the sparse representation.
+     *
+     * @return
+     */
+    public boolean isSparse() {
+        return rowPointers!=null;
+    }
+
+    /**
+     * Checks whether the read-only representation of the matrix is backed by a
+     * memory-mapped file.
+     *
+     * @return
+     */
+    public boolean isMemoryMapped() {
+        if(frozenWeights!=null) {
+            return frozenWeights.isDirect();
+        }
+        return values!=null && values.isDirect();
+    }
+
+    /**
+     * Converts the matrix to a read-only representation, which is sparse (CSR)
+     * if the number of zero weights is large enough to reduce the memory 
+     * footprint and dense otherwise. It is typically called at the end of the
+     * training. Any subsequent modification converts the matrix back to the
+     * modifiable dense representation.
+     */
+    public void compact() {
+        if(weights==null) {
+            return;
+        }
+
+        int n = d*c;
+        int nnz = 0;
+        for(int i=0;i<n;i++) {
+            if(weights[i]!=0.0) {
+                ++nnz;
+            }
+        }
+
+        if(12L*nnz + 4L*(d+1) < 8L*n) { //bytes required by each representation
+            int[] rowPointerArray = new int[d+1];
+            int[] columnIdArray = new int[nnz];
+            double[] valueArray = new double[nnz];
+            int i = 0;
+            for(int featureId=0;featureId<d;featureId++) {
+                rowPointerArray[featureId] = i;
+                int offset = featureId*c;
+                for(int k=0;k<c;k++) {
+                    double w = weights[offset+k];
+                    if(w!=0.0) {
+                        columnIdArray[i] = k;
+                        valueArray[i] = w;
+                        ++i;
+                    }
+                }
+            }
+            rowPointerArray[d] = i;
+            rowPointers = ReadOnlyIntArray.wrap(rowPointerArray);
+            columnIds = ReadOnlyIntArray.wrap(columnIdArray);
+            values = ReadOnlyDoubleArray.wrap(valueArray);
+        }
+        else {
+            frozenWeights = ReadOnlyDoubleArray.wrap((weights.length>n)?Arrays.copyOf(weights, n):weights); //trim the unused capacity
+        }
+        weights = null;
+    }
+
+    /**
+     * Converts the read-only representation back to the modifiable dense one.
+     */
+    private void densify() {
+        if(weights!=null) {
+            return;
+        }
+        weights = new double[Math.max(d*c, INITIAL_CAPACITY*Math.max(c, 1))];
+        if(frozenWeights!=null) {
+            frozenWeights.asBuffer().get(weights, 0, frozenWeights.length());
+            frozenWeights = null;
+            return;
+        }
+        for(int featureId=0;featureId<d;featureId++) {
+            int offset = featureId*c;
+            for(int i=rowPointers.get(featureId);i<rowPointers.get(featureId+1);i++) {
+                weights[offset+columnIds.get(i)] = values.get(i);
+            }
+        }
+        rowPointers = null;
+        columnIds = null;
+        values = null;
+    }
+
+}
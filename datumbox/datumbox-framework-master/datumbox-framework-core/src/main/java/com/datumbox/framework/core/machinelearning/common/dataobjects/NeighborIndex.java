@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.dataobjects;
+
+import com.datumbox.framework.common.dataobjects.ReadOnlyDoubleArray;
+import com.datumbox.framework.common.dataobjects.ReadOnlyIntArray;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Stores the nearest neighbors of a set of items along with their similarities.
+ * The items are interned into dense int ids and the neighbor lists are kept in
+ * a read-only adjacency (CSR) structure of primitive arrays, so the neighbors
+ * of an item are read without scanning the lists of the other items. The 
+ * arrays can be memory-mapped when the model is loaded.
+ *
+ * The structure is immutable and thus thread-safe.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class NeighborIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] items;
+
+    private final Map<Object, Integer> itemIds;
+
+    private final ReadOnlyIntArray rowPointers;
+
+    private final ReadOnlyIntArray neighborIds;
+
+    private final ReadOnlyDoubleArray similarities;
+
+    /**
+     * Public constructor which accepts the items and for every item the ids of
+     * its neighbors and their similarities. The position of the item in the
+     * array is its id.
+     *
+     * @param items
+     * @param neighbors
+     * @param neighborSimilarities
+     */
+    public NeighborIndex(Object[] items, int[][] neighbors, double[][] neighborSimilarities) {
+        int n = items.length;
+        this.items = items.clone();
+        itemIds = new HashMap<>();
+        for(int i=0;i<n;i++) {
+            itemIds.put(items[i], i);
+        }
+
+        int[] rowPointerArray = new int[n+1];
+        for(int i=0;i<n;i++) {
+            rowPointerArray[i+1] = rowPointerArray[i]+neighbors[i].length;
+        }
+        int[] neighborIdArray = new int[rowPointerArray[n]];
+        double[] similarityArray = new double[rowPointerArray[n]];
+        for(int i=0;i<n;i++) {
+            System.arraycopy(neighbors[i], 0, neighborIdArray, rowPointerArray[i], neighbors[i].length);
+            System.arraycopy(neighborSimilarities[i], 0, similarityArray, rowPointerArray[i], neighborSimilarities[i].length);
+        }
+        rowPointers = ReadOnlyIntArray.wrap(rowPointerArray);
+        neighborIds = ReadOnlyIntArray.wrap(neighborIdArray);
+        similarities = ReadOnlyDoubleArray.wrap(similarityArray);
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Returns the total number of stored neighbors.
+     *
+     * @return
+     */
+    public int getNumberOfNeighbors() {
+        return neighborIds.length();
+    }
+
+    /**
+     * Returns the id of the item or -1 if the item is unknown.
+     *
+     * @param item
+     * @return
+     */
+    public int getItemId(Object item) {
+        Integer id = itemIds.get(item);
+        return (id!=null)?id:-1;
+    }
+
+    /**
+     * Returns the item which has the provided id.
+     *
+     * @param itemId
+     * @return
+     */
+    public Object getItem(int itemId) {
+        return items[itemId];
+    }
+
+    /**
+     * Returns the similarity between the item and its neighbor or null if the
+     * neighbor is not stored.
+     *
+     * @param item
+     * @param neighbor
+     * @return
+     */
+    public Double getSimilarity(Object item, Object neighbor) {
+        int itemId = getItemId(item);
+        int neighborId = getItemId(neighbor);
+        if(itemId<0 || neighborId<0) {
+            return null;
+        }
+        for(int p=rowPointers.get(itemId);p<rowPointers.get(itemId+1);p++) {
+            if(neighborIds.get(p)==neighborId) {
+                return similarities.get(p);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Passes every neighbor of the item along with its similarity to the
+     * action. Unknown items have no neighbors.
+     *
+     * @param item
+     * @param action
+     */
+    public void forEachNeighbor(Object item, ObjDoubleConsumer<Object> action) {
+        int itemId = getItemId(item);
+        if(itemId<0) {
+            return;
+        }
+        for(int p=rowPointers.get(itemId);p<rowPointers.get(itemId+1);p++) {
+            action.accept(items[neighborIds.get(p)], similarities.get(p));
+        }
+    }
+
+}
@@ -42,7 +42,7 @@ public class TripleKnowledgeBase<MP extends ModelParameters, TP extends Training
     /**
      * The AbstractValidationMetrics object of the algorithm.
      */
-    private VM validationMetrics;
+    private volatile VM validationMetrics;
     
     /**
      * Public constructor of the object.
@@ -68,9 +68,14 @@ public class TripleKnowledgeBase<MP extends ModelParameters, TP extends Training
     /** {@inheritDoc} */
     @Override
     public void load() {
-        if(!isInitialized()) {
-            super.load();
-            validationMetrics = dbc.loadObject("validationMetrics", vmClass);
+        if(isInitialized()) {
+            return;
+        }
+        synchronized(this) {
+            if(!isInitialized()) {
+                super.load();
+                validationMetrics = dbc.loadObject("validationMetrics", vmClass);
+            }
         }
     }
     
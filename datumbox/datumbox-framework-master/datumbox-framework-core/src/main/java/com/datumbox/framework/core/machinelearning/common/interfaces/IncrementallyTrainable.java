@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.interfaces;
+
+import com.datumbox.framework.common.dataobjects.Dataframe;
+
+/**
+ * All the algorithms which can update incrementally an already trained model 
+ * implement this interface. Only those algorithms support the partialFit() method.
+ * 
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public interface IncrementallyTrainable {
+    
+    /**
+     * Updates the coefficients of an already trained algorithm by using the 
+     * new data. The method assumes that the KnowledgeBase is loaded.
+     * 
+     * @param trainingData 
+     */
+    public void _partialFit(Dataframe trainingData);
+    
+}
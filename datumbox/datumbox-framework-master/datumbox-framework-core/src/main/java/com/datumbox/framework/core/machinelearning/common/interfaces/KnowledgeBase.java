@@ -75,7 +75,8 @@ public interface KnowledgeBase<MP extends ModelParameters, TP extends TrainingPa
     public void save();
     
     /**
-     * Loads the KnowledgeBase from the permanent storage.
+     * Loads the KnowledgeBase from the permanent storage. Implementations must
+     * be safe to call concurrently since it is invoked on every prediction.
      */
     public void load();
     
@@ -15,20 +15,23 @@
  */
 package com.datumbox.framework.core.machinelearning.common.validators;
 
+import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractRecommender;
 import com.datumbox.framework.core.machinelearning.common.abstracts.validators.AbstractValidator;
 import com.datumbox.framework.core.machinelearning.recommendersystem.CollaborativeFiltering;
 
 import java.util.List;
 
 /**
- * Validation class for the Collaborative Filtering algorithm.
+ * Validation class for the Collaborative Filtering algorithm. It is also used
+ * by the other recommenders which estimate the RMSE of their predictions, such
+ * as the Matrix Factorization.
  *
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  * @param <MP>
  * @param <TP>
  * @param <VM>
  */
-public class CollaborativeFilteringValidator<MP extends CollaborativeFiltering.ModelParameters, TP extends CollaborativeFiltering.TrainingParameters, VM extends CollaborativeFiltering.ValidationMetrics> extends AbstractValidator<MP, TP, VM> {
+public class CollaborativeFilteringValidator<MP extends AbstractRecommender.AbstractModelParameters, TP extends AbstractRecommender.AbstractTrainingParameters, VM extends CollaborativeFiltering.ValidationMetrics> extends AbstractValidator<MP, TP, VM> {
  
     /** {@inheritDoc} */
     @Override
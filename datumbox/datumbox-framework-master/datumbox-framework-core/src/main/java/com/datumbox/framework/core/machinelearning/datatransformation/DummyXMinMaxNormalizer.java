@@ -17,6 +17,7 @@ package com.datumbox.framework.core.machinelearning.datatransformation;
 
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.common.abstracts.datatransformers.AbstractDummyMinMaxTransformer;
 
 import java.util.Map;
@@ -73,4 +74,28 @@ public class DummyXMinMaxNormalizer extends AbstractDummyMinMaxTransformer {
 
         denormalizeX(data, minColumnValues, maxColumnValues);
     }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected Record _convert(Record r) {
+        return transformDummy(r, null, kb().getModelParameters().getReferenceLevels());
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected Record _normalize(Record r) {
+        Map<Object, Double> minColumnValues = kb().getModelParameters().getMinColumnValues();
+        Map<Object, Double> maxColumnValues = kb().getModelParameters().getMaxColumnValues();
+
+        return normalizeX(r, minColumnValues, maxColumnValues);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected Record _denormalize(Record r) {
+        Map<Object, Double> minColumnValues = kb().getModelParameters().getMinColumnValues();
+        Map<Object, Double> maxColumnValues = kb().getModelParameters().getMaxColumnValues();
+
+        return denormalizeX(r, minColumnValues, maxColumnValues);
+    }
 }
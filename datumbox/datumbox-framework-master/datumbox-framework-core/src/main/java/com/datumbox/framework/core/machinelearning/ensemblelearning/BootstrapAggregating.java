@@ -74,6 +74,12 @@ public class BootstrapAggregating extends AbstractBoostingBagging<BootstrapAggre
         super(dbName, conf, BootstrapAggregating.ModelParameters.class, BootstrapAggregating.TrainingParameters.class, BootstrapAggregating.ValidationMetrics.class);
     } 
 
+    /** {@inheritDoc} */
+    @Override
+    protected boolean areWeakClassifiersIndependent() {
+        return true; //the bagging rounds use equal observation weights and they can be trained in parallel
+    }
+
     /** {@inheritDoc} */
     @Override
     protected Status updateObservationAndClassifierWeights(Dataframe validationDataset, AssociativeArray observationWeights) {
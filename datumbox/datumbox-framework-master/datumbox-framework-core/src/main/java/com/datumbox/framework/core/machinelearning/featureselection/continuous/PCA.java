@@ -34,6 +34,7 @@ import org.apache.commons.math3.linear.BlockRealMatrix;
 import org.apache.commons.math3.linear.DiagonalMatrix;
 import org.apache.commons.math3.linear.EigenDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.stat.StatUtils;
 
 import java.util.HashMap;
@@ -300,32 +301,19 @@ public class PCA extends AbstractContinuousFeatureSelector<PCA.ModelParameters,
         int n = modelParameters.getN();
         int d = modelParameters.getD();
         
-        //convert data into matrix
+        //index the features without converting the data into matrix
         Map<Object, Integer> featureIds= modelParameters.getFeatureIds();
-        MatrixDataframe matrixDataset = MatrixDataframe.newInstance(originalData, false, null, featureIds);
-        RealMatrix X = matrixDataset.getX();
+        MatrixDataframe.indexFeatures(originalData, false, featureIds);
         
-        //calculate means and subtract them from data
-        double[] meanValues = new double[d];
-        for(Integer columnId : featureIds.values()) {
-            
-            meanValues[columnId] = 0.0;
-            for(double v : X.getColumn(columnId)) {
-                meanValues[columnId] += v;
-            }
-            meanValues[columnId] /= n;
-            
-            for(int row=0;row<n;row++) {
-                X.addToEntry(row, columnId, -meanValues[columnId]);
-            }
-        }
+        //calculate means of the columns
+        double[] meanValues = MatrixDataframe.columnMeans(originalData, featureIds, isParallelized());
         modelParameters.setMean(meanValues);
         
         RealMatrix components;
         double[] eigenValues;
         
-        //dxd matrix
-        RealMatrix covarianceDD = (X.transpose().multiply(X)).scalarMultiply(1.0/(n-1.0)); 
+        //dxd matrix estimated in a single pass over the centered data
+        RealMatrix covarianceDD = MatrixDataframe.crossProduct(originalData, featureIds, meanValues, null, isParallelized()).scalarMultiply(1.0/(n-1.0)); 
 
         EigenDecomposition decomposition = new EigenDecomposition(covarianceDD);
         eigenValues = decomposition.getRealEigenvalues();
@@ -420,4 +408,28 @@ public class PCA extends AbstractContinuousFeatureSelector<PCA.ModelParameters,
         dataset.recalculateMeta(); 
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected Record filterFeatures(Record r) {
+        ModelParameters modelParameters = kb().getModelParameters();
+        
+        RealVector v = MatrixDataframe.parseRecord(r, modelParameters.getFeatureIds());
+        
+        //multiplying the record with the components without building a matrix
+        double[][] components = modelParameters.getComponents();
+        int rows = modelParameters.getRows();
+        int cols = modelParameters.getCols();
+        
+        AssociativeArray xData = new AssociativeArray();
+        for(int componentId=0;componentId<cols;componentId++) {
+            double value = 0.0;
+            for(int i=0;i<rows;i++) {
+                value += v.getEntry(i)*components[i][componentId];
+            }
+            xData.put(componentId, value);
+        }
+        
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
 }
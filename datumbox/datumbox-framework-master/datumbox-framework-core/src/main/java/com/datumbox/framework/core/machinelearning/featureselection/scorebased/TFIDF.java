@@ -18,6 +18,7 @@ package com.datumbox.framework.core.machinelearning.featureselection.scorebased;
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.concurrency.ForkJoinStream;
 import com.datumbox.framework.common.concurrency.StreamMethods;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.dataobjects.TypeInference;
@@ -271,4 +272,25 @@ public class TFIDF extends AbstractScoreBasedFeatureSelector<TFIDF.ModelParamete
         
     }
     
+    /** {@inheritDoc} */
+    @Override
+    protected Record filterFeatures(Record r) {
+        Map<Object, Double> maxTFIDFfeatureScores = kb().getModelParameters().getMaxTFIDFfeatureScores();
+        
+        AssociativeArray xData = r.getX().copy();
+        
+        boolean modified = false;
+        for(Object feature: r.getX().keySet()) {
+            if(!maxTFIDFfeatureScores.containsKey(feature)) {
+                xData.remove(feature);
+                modified = true;
+            }
+        }
+        
+        if(!modified) {
+            return r;
+        }
+        return new Record(xData, r.getY(), r.getYPredicted(), r.getYPredictedProbabilities());
+    }
+    
 }
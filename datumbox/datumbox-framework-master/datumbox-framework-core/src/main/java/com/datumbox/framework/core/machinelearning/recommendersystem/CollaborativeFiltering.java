@@ -16,34 +16,37 @@
 package com.datumbox.framework.core.machinelearning.recommendersystem;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.*;
-import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
-import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
-import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractRecommender;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.NeighborIndex;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.CollaborativeFilteringValidator;
 import com.datumbox.framework.core.mathematics.distances.Distance;
 import com.datumbox.framework.core.statistics.parametrics.relatedsamples.PearsonCorrelation;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 
 /**
- * Implementation of Collaborative Filtering algorithm.
+ * Implementation of Collaborative Filtering algorithm. During training the
+ * similarities of the observations are estimated in parallel and only the most
+ * similar neighbors of every observation are kept in a NeighborIndex.
  *
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFiltering.ModelParameters, CollaborativeFiltering.TrainingParameters, CollaborativeFiltering.ValidationMetrics> {
+public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFiltering.ModelParameters, CollaborativeFiltering.TrainingParameters, CollaborativeFiltering.ValidationMetrics> implements TrainParallelizable {
 
     /** {@inheritDoc} */
     public static class ModelParameters extends AbstractRecommender.AbstractModelParameters {
         private static final long serialVersionUID = 1L;
         
-        @BigMap(mapType=MapType.HASHMAP, storageHint=StorageHint.IN_CACHE, concurrent=false)
-        private Map<List<Object>, Double> similarities; //the similarity map among observations
+        private NeighborIndex neighborIndex; //the nearest neighbors of every observation
         
         /** 
          * @param dbc
@@ -56,21 +59,21 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
         //Getters / Setters
         
         /**
-         * Getter for the similarities map.
+         * Getter for the neighbor index.
          * 
          * @return 
          */
-        public Map<List<Object>, Double> getSimilarities() {
-            return similarities;
+        public NeighborIndex getNeighborIndex() {
+            return neighborIndex;
         }
         
         /**
-         * Setter for the similarities map.
+         * Setter for the neighbor index.
          * 
-         * @param similarities 
+         * @param neighborIndex 
          */
-        protected void setSimilarities(Map<List<Object>, Double> similarities) {
-            this.similarities = similarities;
+        protected void setNeighborIndex(NeighborIndex neighborIndex) {
+            this.neighborIndex = neighborIndex;
         }
    
     }
@@ -101,6 +104,10 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
         
         private SimilarityMeasure similarityMethod = SimilarityMeasure.EUCLIDIAN;
         
+        private int maxNeighbors = 0;
+        
+        private boolean invertedIndex = false;
+        
         /**
          * Getter for the similarity method.
          * 
@@ -118,6 +125,50 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
         public void setSimilarityMethod(SimilarityMeasure similarityMethod) {
             this.similarityMethod = similarityMethod;
         }
+        
+        /**
+         * Getter for the maximum number of neighbors which are kept for every
+         * observation. If it is 0 all the neighbors are kept.
+         * 
+         * @return 
+         */
+        public int getMaxNeighbors() {
+            return maxNeighbors;
+        }
+        
+        /**
+         * Setter for the maximum number of neighbors which are kept for every
+         * observation. Only the most similar neighbors are kept. Set it to 0 to
+         * keep all of them.
+         * 
+         * @param maxNeighbors 
+         */
+        public void setMaxNeighbors(int maxNeighbors) {
+            if(maxNeighbors<0) {
+                throw new IllegalArgumentException("Invalid value for maximum number of neighbors.");
+            }
+            this.maxNeighbors = maxNeighbors;
+        }
+        
+        /**
+         * Getter for whether the inverted index is used during training.
+         * 
+         * @return 
+         */
+        public boolean isInvertedIndex() {
+            return invertedIndex;
+        }
+        
+        /**
+         * Setter for whether an inverted index over the rated columns is used
+         * during training. When enabled, the observations which have no rated
+         * column in common are never compared and they are not neighbors.
+         * 
+         * @param invertedIndex 
+         */
+        public void setInvertedIndex(boolean invertedIndex) {
+            this.invertedIndex = invertedIndex;
+        }
 
     }
     
@@ -154,7 +205,28 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
      */
     public CollaborativeFiltering(String dbName, Configuration conf) {
         super(dbName, conf, CollaborativeFiltering.ModelParameters.class, CollaborativeFiltering.TrainingParameters.class, CollaborativeFiltering.ValidationMetrics.class, new CollaborativeFilteringValidator<>());
+        streamExecutor = new ForkJoinStream(kb().getConf().getConcurrencyConfig());
     } 
+    
+    private boolean parallelized = true;
+    
+    /**
+     * This executor is used for the parallel processing of streams with custom 
+     * Thread pool.
+     */
+    protected final ForkJoinStream streamExecutor;
+    
+    /** {@inheritDoc} */
+    @Override
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
 
     /** {@inheritDoc} */
     @Override
@@ -163,7 +235,7 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
     }
     
     private void _predictDataset(Dataframe newData, boolean includeRated) {
-        Map<List<Object>, Double> similarities = kb().getModelParameters().getSimilarities();
+        NeighborIndex neighborIndex = kb().getModelParameters().getNeighborIndex();
         
         //generate recommendation for each record in the list
         for(Map.Entry<Integer, Record> e : newData.entries()) {
@@ -176,14 +248,8 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
                 Object row = entry.getKey();
                 Double score = TypeInference.toDouble(entry.getValue());
                 
-                for(Map.Entry<List<Object>, Double> entry2 : similarities.entrySet()) {
-                    List<Object> tpk = entry2.getKey();
-                    if(!tpk.get(0).equals(row)) {
-                        continue; //filter the irrelevant two pair key combinations that do not include the row
-                    }
-                    
-                    Object column = tpk.get(1);
-                    
+                //only the neighbors of the row are read from the index
+                neighborIndex.forEachNeighbor(row, (column, similarity) -> {
                     Double previousRecValue = TypeInference.toDouble(recommendations.get(column));
                     Double previousSimsumValue = simSums.get(column);
                     if(previousRecValue==null) {
@@ -191,13 +257,11 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
                         previousSimsumValue=0.0;
                     }
                     
-                    Double similarity = entry2.getValue();
-                    
                     if(includeRated == true || !r.getX().containsKey(column)) {
                         recommendations.put(column, previousRecValue+similarity*score);
                     }
                     simSums.put(column, previousSimsumValue+similarity);
-                }
+                });
             }
             
             for(Map.Entry<Object, Object> entry : recommendations.entrySet()) {
@@ -208,8 +272,8 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
             }
             //simSums = null;
             
-            recommendations = MapMethods.sortNumberMapByValueDescending(recommendations);
-            newData._unsafe_set(rId, new Record(r.getX(), r.getY(), recommendations.keySet().iterator().next(), new AssociativeArray(recommendations)));
+            Map<Object, Object> sortedRecommendations = MapMethods.sortNumberMapByValueDescending(recommendations);
+            newData._unsafe_set(rId, new Record(r.getX(), r.getY(), sortedRecommendations.keySet().iterator().next(), new AssociativeArray(sortedRecommendations)));
         }
     }
     
@@ -217,25 +281,48 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
     @Override
     protected void _fit(Dataframe trainingData) {
         ModelParameters modelParameters = kb().getModelParameters();
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        TrainingParameters.SimilarityMeasure similarityMethod = trainingParameters.getSimilarityMethod();
+        int maxNeighbors = trainingParameters.getMaxNeighbors();
         
-        //calculate similarity matrix
-        Map<List<Object>, Double> similarities = modelParameters.getSimilarities();
-        for(Record r1 : trainingData) {
-            Object y1 = r1.getY();
-            for(Record r2: trainingData) {
-                Object y2 = r2.getY();
-                
-                List<Object> tkp = Arrays.asList(y1, y2);
-                if(similarities.containsKey(tkp)) {
-                    continue;
-                }
-                
-                double similarity = calculateSimilarity(r1, r2);
-                
-                similarities.put(tkp, similarity);
-                similarities.put(Arrays.asList(y2, y1), similarity); //add also for the reverse key because similarity is symmetric
-            }
+        //every observation is identified by its position
+        int n = trainingData.size();
+        Record[] records = new Record[n];
+        Object[] items = new Object[n];
+        int position = 0;
+        for(Record r : trainingData.values()) {
+            records[position] = r;
+            items[position] = r.getY();
+            ++position;
         }
+        
+        Map<Object, int[]> invertedIndex = (trainingParameters.isInvertedIndex())?buildInvertedIndex(records):null;
+        
+        //calculate the similarities of every observation and keep its nearest neighbors
+        int[][] neighbors = new int[n][];
+        double[][] neighborSimilarities = new double[n][];
+        streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, n).boxed(), isParallelized()), i -> {
+            int[] candidates = (invertedIndex!=null)?getCandidates(records[i], invertedIndex):null;
+            int m = (candidates!=null)?candidates.length:n;
+            
+            int[] ids = new int[m];
+            double[] similarities = new double[m];
+            for(int c=0;c<m;c++) {
+                int j = (candidates!=null)?candidates[c]:c;
+                ids[c] = j;
+                similarities[c] = calculateSimilarity(records[i], records[j], similarityMethod);
+            }
+            
+            if(maxNeighbors>0 && maxNeighbors<m) {
+                selectTopK(ids, similarities, maxNeighbors);
+                ids = Arrays.copyOf(ids, maxNeighbors);
+                similarities = Arrays.copyOf(similarities, maxNeighbors);
+            }
+            neighbors[i] = ids;
+            neighborSimilarities[i] = similarities;
+        });
+        
+        modelParameters.setNeighborIndex(new NeighborIndex(items, neighbors, neighborSimilarities));
     }
 
     /** {@inheritDoc} */
@@ -264,11 +351,137 @@ public class CollaborativeFiltering extends AbstractRecommender<CollaborativeFil
         return validationMetrics;
     }
     
-    private double calculateSimilarity(Record r1, Record r2) {        
-        TrainingParameters trainingParameters = kb().getTrainingParameters();
+    /**
+     * Builds an inverted index which maps every rated column to the positions
+     * of the records which rated it.
+     * 
+     * @param records
+     * @return 
+     */
+    private Map<Object, int[]> buildInvertedIndex(Record[] records) {
+        Map<Object, int[]> invertedIndex = new HashMap<>();
+        Map<Object, Integer> postingSizes = new HashMap<>();
+        for(int i=0;i<records.length;i++) {
+            for(Object column : records[i].getX().keySet()) {
+                int[] postings = invertedIndex.get(column);
+                int size = postingSizes.getOrDefault(column, 0);
+                if(postings==null) {
+                    postings = new int[4];
+                }
+                else if(size==postings.length) {
+                    postings = Arrays.copyOf(postings, 2*size);
+                }
+                postings[size] = i;
+                invertedIndex.put(column, postings);
+                postingSizes.put(column, size+1);
+            }
+        }
+        
+        //trim the unused capacity
+        for(Map.Entry<Object, int[]> entry : invertedIndex.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), postingSizes.get(entry.getKey())));
+        }
+        return invertedIndex;
+    }
+    
+    /**
+     * Returns the sorted positions of the records which have at least one rated
+     * column in common with the provided record.
+     * 
+     * @param r
+     * @param invertedIndex
+     * @return 
+     */
+    private int[] getCandidates(Record r, Map<Object, int[]> invertedIndex) {
+        int total = 0;
+        for(Object column : r.getX().keySet()) {
+            total += invertedIndex.get(column).length;
+        }
+        
+        int[] candidates = new int[total];
+        int size = 0;
+        for(Object column : r.getX().keySet()) {
+            int[] postings = invertedIndex.get(column);
+            System.arraycopy(postings, 0, candidates, size, postings.length);
+            size += postings.length;
+        }
+        
+        //remove the duplicates
+        Arrays.sort(candidates);
+        int unique = 0;
+        for(int c=0;c<total;c++) {
+            if(unique==0 || candidates[unique-1]!=candidates[c]) {
+                candidates[unique++] = candidates[c];
+            }
+        }
+        return Arrays.copyOf(candidates, unique);
+    }
+    
+    /**
+     * Reorders the arrays in place so that their first k positions contain the
+     * ids with the highest similarities. It uses a min-heap of size k on the
+     * first positions of the arrays. NaN similarities are treated as the lowest.
+     * 
+     * @param ids
+     * @param similarities
+     * @param k 
+     */
+    private void selectTopK(int[] ids, double[] similarities, int k) {
+        for(int p=k/2-1;p>=0;p--) {
+            siftDown(ids, similarities, p, k);
+        }
+        for(int c=k;c<ids.length;c++) {
+            if(isLower(similarities[0], similarities[c])) {
+                swap(ids, similarities, 0, c);
+                siftDown(ids, similarities, 0, k);
+            }
+        }
+    }
+    
+    /**
+     * Restores the min-heap property of the first k positions of the arrays,
+     * starting from position p.
+     * 
+     * @param ids
+     * @param similarities
+     * @param p
+     * @param k 
+     */
+    private void siftDown(int[] ids, double[] similarities, int p, int k) {
+        while(true) {
+            int smallest = p;
+            int left = 2*p+1;
+            int right = left+1;
+            if(left<k && isLower(similarities[left], similarities[smallest])) {
+                smallest = left;
+            }
+            if(right<k && isLower(similarities[right], similarities[smallest])) {
+                smallest = right;
+            }
+            if(smallest==p) {
+                return;
+            }
+            swap(ids, similarities, p, smallest);
+            p = smallest;
+        }
+    }
+    
+    private boolean isLower(double a, double b) {
+        return a<b || (Double.isNaN(a) && !Double.isNaN(b));
+    }
+    
+    private void swap(int[] ids, double[] similarities, int a, int b) {
+        int tmpId = ids[a];
+        ids[a] = ids[b];
+        ids[b] = tmpId;
         
+        double tmpSimilarity = similarities[a];
+        similarities[a] = similarities[b];
+        similarities[b] = tmpSimilarity;
+    }
+    
+    private double calculateSimilarity(Record r1, Record r2, TrainingParameters.SimilarityMeasure similarityMethod) {        
         double similarity = 0.0;
-        TrainingParameters.SimilarityMeasure similarityMethod = trainingParameters.getSimilarityMethod();
         if(similarityMethod==TrainingParameters.SimilarityMeasure.EUCLIDIAN) {
             similarity = Distance.euclidean(r1.getX(), r2.getX());
             
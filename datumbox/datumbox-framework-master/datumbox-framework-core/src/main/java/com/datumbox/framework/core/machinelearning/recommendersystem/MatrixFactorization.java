@@ -0,0 +1,716 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.recommendersystem;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
+import com.datumbox.framework.common.dataobjects.*;
+import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
+import com.datumbox.framework.common.utilities.MapMethods;
+import com.datumbox.framework.common.utilities.RandomGenerator;
+import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
+import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractRecommender;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
+import com.datumbox.framework.core.machinelearning.common.validators.CollaborativeFilteringValidator;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+
+/**
+ * Implementation of a latent factor recommender which uses Matrix Factorization.
+ * The rating matrix is approximated by the global mean plus the product of
+ * the factors of the observations (items) and the factors of the columns
+ * (users). The factors are estimated either with Alternating Least Squares,
+ * where every row is solved in parallel blocks, or with Stochastic Gradient
+ * Descent.
+ *
+ * The records which are passed for prediction are the rating profiles of new
+ * users. Their factors are estimated by solving the regularized least squares
+ * problem on the item factors and the score of every item is the dot product
+ * of the user and item factors.
+ *
+ * References:
+ * http://dx.doi.org/10.1109/MC.2009.263
+ * http://dx.doi.org/10.1007/978-3-540-68880-8_32
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MatrixFactorization extends AbstractRecommender<MatrixFactorization.ModelParameters, MatrixFactorization.TrainingParameters, MatrixFactorization.ValidationMetrics> implements TrainParallelizable {
+
+    private static final int BLOCK_SIZE = 256; //the number of rows which are solved together by every task of ALS
+
+    /** {@inheritDoc} */
+    public static class ModelParameters extends AbstractRecommender.AbstractModelParameters {
+        private static final long serialVersionUID = 1L;
+
+        private double mean = 0.0; //the global mean of the ratings
+
+        private Map<Object, Integer> itemIds = new HashMap<>(); //the ids of the observations
+
+        private Map<Object, Integer> userIds = new HashMap<>(); //the ids of the columns
+
+        private Object[] items = new Object[0];
+
+        private double[] itemFactors = new double[0]; //row-major items x factors
+
+        private double[] userFactors = new double[0]; //row-major users x factors
+
+        /**
+         * @param dbc
+         * @see AbstractTrainer.AbstractModelParameters#AbstractModelParameters(DatabaseConnector)
+         */
+        protected ModelParameters(DatabaseConnector dbc) {
+            super(dbc);
+        }
+
+        //Getters / Setters
+
+        /**
+         * Getter for the global mean of the ratings.
+         *
+         * @return
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Setter for the global mean of the ratings.
+         *
+         * @param mean
+         */
+        protected void setMean(double mean) {
+            this.mean = mean;
+        }
+
+        /**
+         * Getter for the ids of the items. The id is the row of the item in the
+         * item factors.
+         *
+         * @return
+         */
+        public Map<Object, Integer> getItemIds() {
+            return itemIds;
+        }
+
+        /**
+         * Setter for the ids of the items.
+         *
+         * @param itemIds
+         */
+        protected void setItemIds(Map<Object, Integer> itemIds) {
+            this.itemIds = itemIds;
+        }
+
+        /**
+         * Getter for the ids of the users. The id is the row of the user in the
+         * user factors.
+         *
+         * @return
+         */
+        public Map<Object, Integer> getUserIds() {
+            return userIds;
+        }
+
+        /**
+         * Setter for the ids of the users.
+         *
+         * @param userIds
+         */
+        protected void setUserIds(Map<Object, Integer> userIds) {
+            this.userIds = userIds;
+        }
+
+        /**
+         * Getter for the items ordered by their ids.
+         *
+         * @return
+         */
+        public Object[] getItems() {
+            return items;
+        }
+
+        /**
+         * Setter for the items ordered by their ids.
+         *
+         * @param items
+         */
+        protected void setItems(Object[] items) {
+            this.items = items;
+        }
+
+        /**
+         * Getter for the item factors which are stored in a flat row-major
+         * array of size items x factors.
+         *
+         * @return
+         */
+        public double[] getItemFactors() {
+            return itemFactors;
+        }
+
+        /**
+         * Setter for the item factors.
+         *
+         * @param itemFactors
+         */
+        protected void setItemFactors(double[] itemFactors) {
+            this.itemFactors = itemFactors;
+        }
+
+        /**
+         * Getter for the user factors which are stored in a flat row-major
+         * array of size users x factors.
+         *
+         * @return
+         */
+        public double[] getUserFactors() {
+            return userFactors;
+        }
+
+        /**
+         * Setter for the user factors.
+         *
+         * @param userFactors
+         */
+        protected void setUserFactors(double[] userFactors) {
+            this.userFactors = userFactors;
+        }
+
+    }
+
+    /** {@inheritDoc} */
+    public static class TrainingParameters extends AbstractRecommender.AbstractTrainingParameters {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Enum with the supported optimization methods.
+         */
+        public enum Optimizer {
+            /**
+             * Alternating Least Squares.
+             */
+            ALS,
+
+            /**
+             * Stochastic Gradient Descent.
+             */
+            SGD;
+        }
+
+        private Optimizer optimizer = Optimizer.ALS;
+
+        private int numberOfFactors = 10;
+
+        private int totalIterations = 20;
+
+        private double l2 = 0.1;
+
+        private double learningRate = 0.01; //used only by SGD
+
+        /**
+         * Getter for the optimization method.
+         *
+         * @return
+         */
+        public Optimizer getOptimizer() {
+            return optimizer;
+        }
+
+        /**
+         * Setter for the optimization method.
+         *
+         * @param optimizer
+         */
+        public void setOptimizer(Optimizer optimizer) {
+            this.optimizer = optimizer;
+        }
+
+        /**
+         * Getter for the number of latent factors.
+         *
+         * @return
+         */
+        public int getNumberOfFactors() {
+            return numberOfFactors;
+        }
+
+        /**
+         * Setter for the number of latent factors.
+         *
+         * @param numberOfFactors
+         */
+        public void setNumberOfFactors(int numberOfFactors) {
+            if(numberOfFactors<=0) {
+                throw new IllegalArgumentException("Invalid value for number of factors.");
+            }
+            this.numberOfFactors = numberOfFactors;
+        }
+
+        /**
+         * Getter for the total iterations of the training process. For SGD
+         * every iteration is a pass over all the ratings.
+         *
+         * @return
+         */
+        public int getTotalIterations() {
+            return totalIterations;
+        }
+
+        /**
+         * Setter for the total iterations of the training process.
+         *
+         * @param totalIterations
+         */
+        public void setTotalIterations(int totalIterations) {
+            this.totalIterations = totalIterations;
+        }
+
+        /**
+         * Getter for the value of L2 regularization.
+         *
+         * @return
+         */
+        public double getL2() {
+            return l2;
+        }
+
+        /**
+         * Setter for the value of L2 regularization. ALS scales it by the
+         * number of ratings of every row and it must be positive to ensure
+         * that the rows with few ratings can be solved.
+         *
+         * @param l2
+         */
+        public void setL2(double l2) {
+            this.l2 = l2;
+        }
+
+        /**
+         * Getter for the Learning Rate of SGD.
+         *
+         * @return
+         */
+        public double getLearningRate() {
+            return learningRate;
+        }
+
+        /**
+         * Setter for the Learning Rate of SGD.
+         *
+         * @param learningRate
+         */
+        public void setLearningRate(double learningRate) {
+            this.learningRate = learningRate;
+        }
+
+    }
+
+    /** {@inheritDoc} */
+    public static class ValidationMetrics extends CollaborativeFiltering.ValidationMetrics {
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /**
+     * Public constructor of the algorithm.
+     *
+     * @param dbName
+     * @param conf
+     */
+    public MatrixFactorization(String dbName, Configuration conf) {
+        super(dbName, conf, MatrixFactorization.ModelParameters.class, MatrixFactorization.TrainingParameters.class, MatrixFactorization.ValidationMetrics.class, new CollaborativeFilteringValidator<>());
+        streamExecutor = new ForkJoinStream(kb().getConf().getConcurrencyConfig());
+    }
+
+    private boolean parallelized = true;
+
+    /**
+     * This executor is used for the parallel processing of streams with custom
+     * Thread pool.
+     */
+    protected final ForkJoinStream streamExecutor;
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void _predictDataset(Dataframe newData) {
+        _predictDataset(newData, false);
+    }
+
+    private void _predictDataset(Dataframe newData, boolean includeRated) {
+        ModelParameters modelParameters = kb().getModelParameters();
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        int k = trainingParameters.getNumberOfFactors();
+        double l2 = trainingParameters.getL2();
+
+        double mean = modelParameters.getMean();
+        Map<Object, Integer> itemIds = modelParameters.getItemIds();
+        Object[] items = modelParameters.getItems();
+        double[] itemFactors = modelParameters.getItemFactors();
+
+        double[] A = new double[k*k];
+        double[] userFactor = new double[k];
+        for(Map.Entry<Integer, Record> e : newData.entries()) {
+            Integer rId = e.getKey();
+            Record r = e.getValue();
+
+            //keep the ratings of the known items
+            int[] ratedIds = new int[r.getX().size()];
+            double[] ratings = new double[ratedIds.length];
+            int count = 0;
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                Integer itemId = itemIds.get(entry.getKey());
+                Double rating = TypeInference.toDouble(entry.getValue());
+                if(itemId!=null && rating!=null) {
+                    ratedIds[count] = itemId;
+                    ratings[count] = rating;
+                    ++count;
+                }
+            }
+
+            //estimate the factors of the user given the item factors
+            solveRow(ratedIds, ratings, 0, count, itemFactors, k, l2, mean, A, userFactor);
+
+            Map<Object, Object> recommendations = new HashMap<>();
+            for(int i=0;i<items.length;i++) {
+                if(includeRated == true || !r.getX().containsKey(items[i])) {
+                    recommendations.put(items[i], mean + dot(userFactor, 0, itemFactors, i*k, k));
+                }
+            }
+
+            recommendations = MapMethods.sortNumberMapByValueDescending(recommendations);
+            newData._unsafe_set(rId, new Record(r.getX(), r.getY(), recommendations.keySet().iterator().next(), new AssociativeArray(recommendations)));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void _fit(Dataframe trainingData) {
+        ModelParameters modelParameters = kb().getModelParameters();
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
+        int k = trainingParameters.getNumberOfFactors();
+        int totalIterations = trainingParameters.getTotalIterations();
+        double l2 = trainingParameters.getL2();
+
+        //intern the items and the users and store the ratings in a compressed row storage by item
+        int n = trainingData.size();
+        Object[] items = new Object[n];
+        Map<Object, Integer> itemIds = new HashMap<>();
+        Map<Object, Integer> userIds = new HashMap<>();
+        int[] itemPointers = new int[n+1];
+        int i = 0;
+        for(Record r : trainingData) {
+            items[i] = r.getY();
+            itemIds.put(r.getY(), i);
+            int count = 0;
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                if(entry.getValue()!=null) {
+                    userIds.putIfAbsent(entry.getKey(), userIds.size());
+                    ++count;
+                }
+            }
+            itemPointers[i+1] = itemPointers[i] + count;
+            ++i;
+        }
+        int m = userIds.size();
+        int nnz = itemPointers[n];
+
+        int[] itemUsers = new int[nnz];
+        double[] itemRatings = new double[nnz];
+        double mean = 0.0;
+        int p = 0;
+        for(Record r : trainingData) {
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                Double rating = TypeInference.toDouble(entry.getValue());
+                if(rating!=null) {
+                    itemUsers[p] = userIds.get(entry.getKey());
+                    itemRatings[p] = rating;
+                    mean += rating;
+                    ++p;
+                }
+            }
+        }
+        mean = (nnz>0)?mean/nnz:0.0;
+
+        //initialize the factors with small random values
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        double[] itemFactors = new double[n*k];
+        for(int j=0;j<itemFactors.length;j++) {
+            itemFactors[j] = 0.1*rnd.nextGaussian();
+        }
+        double[] userFactors = new double[m*k];
+        for(int j=0;j<userFactors.length;j++) {
+            userFactors[j] = 0.1*rnd.nextGaussian();
+        }
+
+        TrainingParameters.Optimizer optimizer = trainingParameters.getOptimizer();
+        if(optimizer==TrainingParameters.Optimizer.ALS) {
+            //transpose the ratings to a compressed row storage by user
+            int[] userPointers = new int[m+1];
+            for(int j=0;j<nnz;j++) {
+                ++userPointers[itemUsers[j]+1];
+            }
+            for(int u=0;u<m;u++) {
+                userPointers[u+1] += userPointers[u];
+            }
+            int[] userItems = new int[nnz];
+            double[] userRatings = new double[nnz];
+            int[] next = Arrays.copyOf(userPointers, m);
+            for(int item=0;item<n;item++) {
+                for(int j=itemPointers[item];j<itemPointers[item+1];j++) {
+                    int position = next[itemUsers[j]]++;
+                    userItems[position] = item;
+                    userRatings[position] = itemRatings[j];
+                }
+            }
+
+            for(int iteration=0;iteration<totalIterations;iteration++) {
+                logger.debug("Iteration {}", iteration);
+
+                solveFactors(userPointers, userItems, userRatings, itemFactors, userFactors, k, l2, mean);
+                solveFactors(itemPointers, itemUsers, itemRatings, userFactors, itemFactors, k, l2, mean);
+            }
+        }
+        else if(optimizer==TrainingParameters.Optimizer.SGD) {
+            double learningRate = trainingParameters.getLearningRate();
+
+            int[] ratingItems = new int[nnz];
+            for(int item=0;item<n;item++) {
+                Arrays.fill(ratingItems, itemPointers[item], itemPointers[item+1], item);
+            }
+
+            int[] order = new int[nnz];
+            for(int j=0;j<nnz;j++) {
+                order[j] = j;
+            }
+            for(int iteration=0;iteration<totalIterations;iteration++) {
+                logger.debug("Iteration {}", iteration);
+
+                //shuffle the ratings
+                for(int j=nnz-1;j>0;j--) {
+                    int swapPosition = rnd.nextInt(j+1);
+                    int tmp = order[j];
+                    order[j] = order[swapPosition];
+                    order[swapPosition] = tmp;
+                }
+
+                for(int j : order) {
+                    int itemOffset = ratingItems[j]*k;
+                    int userOffset = itemUsers[j]*k;
+                    double error = itemRatings[j] - mean - dot(userFactors, userOffset, itemFactors, itemOffset, k);
+                    for(int f=0;f<k;f++) {
+                        double userValue = userFactors[userOffset+f];
+                        double itemValue = itemFactors[itemOffset+f];
+                        userFactors[userOffset+f] += learningRate*(error*itemValue - l2*userValue);
+                        itemFactors[itemOffset+f] += learningRate*(error*userValue - l2*itemValue);
+                    }
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported optimizer.");
+        }
+
+        modelParameters.setMean(mean);
+        modelParameters.setItems(items);
+        modelParameters.setItemIds(itemIds);
+        modelParameters.setUserIds(userIds);
+        modelParameters.setItemFactors(itemFactors);
+        modelParameters.setUserFactors(userFactors);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected ValidationMetrics validateModel(Dataframe validationData) {
+        _predictDataset(validationData, true);
+
+        //create new validation metrics object
+        ValidationMetrics validationMetrics = kb().getEmptyValidationMetricsObject();
+
+        double RMSE = 0.0;
+        int i = 0;
+        for(Record r : validationData) {
+            AssociativeArray predictions = r.getYPredictedProbabilities();
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                Object column = entry.getKey();
+                Object value = entry.getValue();
+                if(value==null || !predictions.containsKey(column)) {
+                    continue; //the unknown items can't be scored
+                }
+                RMSE += Math.pow(TypeInference.toDouble(value)-TypeInference.toDouble(predictions.get(column)), 2.0);
+                ++i;
+            }
+        }
+
+        RMSE = Math.sqrt(RMSE/i);
+        validationMetrics.setRMSE(RMSE);
+
+        return validationMetrics;
+    }
+
+    /**
+     * Solves the regularized least squares problems of all the rows given the
+     * fixed factors. The rows are split in blocks which are solved in parallel.
+     *
+     * @param pointers
+     * @param ids
+     * @param ratings
+     * @param fixedFactors
+     * @param factors
+     * @param k
+     * @param l2
+     * @param mean
+     */
+    private void solveFactors(int[] pointers, int[] ids, double[] ratings, double[] fixedFactors, double[] factors, int k, double l2, double mean) {
+        int rows = pointers.length-1;
+        int blocks = (rows+BLOCK_SIZE-1)/BLOCK_SIZE;
+        streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, blocks).boxed(), isParallelized()), block -> {
+            double[] A = new double[k*k];
+            double[] x = new double[k];
+            int to = Math.min(rows, (block+1)*BLOCK_SIZE);
+            for(int row=block*BLOCK_SIZE;row<to;row++) {
+                solveRow(ids, ratings, pointers[row], pointers[row+1], fixedFactors, k, l2, mean, A, x);
+                System.arraycopy(x, 0, factors, row*k, k);
+            }
+        });
+    }
+
+    /**
+     * Estimates the factors x of a single row by solving the regularized least
+     * squares problem (F'F + l2*count*I)x = F'(r - mean), where F contains the
+     * fixed factors of the rated ids. The A array is used as a buffer. Rows
+     * without ratings get zero factors.
+     *
+     * @param ids
+     * @param ratings
+     * @param from
+     * @param to
+     * @param fixedFactors
+     * @param k
+     * @param l2
+     * @param mean
+     * @param A
+     * @param x
+     */
+    private static void solveRow(int[] ids, double[] ratings, int from, int to, double[] fixedFactors, int k, double l2, double mean, double[] A, double[] x) {
+        Arrays.fill(x, 0.0);
+        int count = to-from;
+        if(count==0) {
+            return;
+        }
+
+        Arrays.fill(A, 0.0);
+        for(int j=from;j<to;j++) {
+            int offset = ids[j]*k;
+            double residual = ratings[j] - mean;
+            for(int a=0;a<k;a++) {
+                double value = fixedFactors[offset+a];
+                x[a] += residual*value;
+                for(int b=0;b<=a;b++) {
+                    A[a*k+b] += value*fixedFactors[offset+b];
+                }
+            }
+        }
+        double regularization = l2*count;
+        for(int a=0;a<k;a++) {
+            A[a*k+a] += regularization;
+        }
+
+        choleskySolve(A, x, k);
+    }
+
+    /**
+     * Solves in place the system Ax = b, where A is a symmetric positive
+     * definite matrix of which only the lower triangular part is used. The
+     * Cholesky factor overwrites A and the solution overwrites b.
+     *
+     * @param A
+     * @param b
+     * @param k
+     */
+    private static void choleskySolve(double[] A, double[] b, int k) {
+        for(int j=0;j<k;j++) {
+            double sum = A[j*k+j];
+            for(int p=0;p<j;p++) {
+                sum -= A[j*k+p]*A[j*k+p];
+            }
+            if(sum<=0.0) {
+                throw new IllegalStateException("The system is not positive definite; increase the L2 regularization.");
+            }
+            double diagonal = Math.sqrt(sum);
+            A[j*k+j] = diagonal;
+            for(int i=j+1;i<k;i++) {
+                double value = A[i*k+j];
+                for(int p=0;p<j;p++) {
+                    value -= A[i*k+p]*A[j*k+p];
+                }
+                A[i*k+j] = value/diagonal;
+            }
+        }
+
+        //forward substitution with L
+        for(int i=0;i<k;i++) {
+            double value = b[i];
+            for(int p=0;p<i;p++) {
+                value -= A[i*k+p]*b[p];
+            }
+            b[i] = value/A[i*k+i];
+        }
+
+        //backward substitution with L'
+        for(int i=k-1;i>=0;i--) {
+            double value = b[i];
+            for(int p=i+1;p<k;p++) {
+                value -= A[p*k+i]*b[p];
+            }
+            b[i] = value/A[i*k+i];
+        }
+    }
+
+    /**
+     * Returns the dot product of two vectors of length k which are stored in
+     * flat arrays.
+     *
+     * @param a
+     * @param aOffset
+     * @param b
+     * @param bOffset
+     * @param k
+     * @return
+     */
+    private static double dot(double[] a, int aOffset, double[] b, int bOffset, int k) {
+        double sum = 0.0;
+        for(int f=0;f<k;f++) {
+            sum += a[aOffset+f]*b[bOffset+f];
+        }
+        return sum;
+    }
+
+}
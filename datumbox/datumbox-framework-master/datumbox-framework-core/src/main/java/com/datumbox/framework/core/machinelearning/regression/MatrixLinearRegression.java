@@ -16,9 +16,12 @@
 package com.datumbox.framework.core.machinelearning.regression;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.MatrixDataframe;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.dataobjects.TypeInference;
 import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.MapType;
@@ -27,11 +30,9 @@ import com.datumbox.framework.common.utilities.PHPMethods;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.algorithms.AbstractLinearRegression;
 import com.datumbox.framework.core.machinelearning.common.interfaces.StepwiseCompatible;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.statistics.distributions.ContinuousDistributions;
-import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.LUDecomposition;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.*;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -40,12 +41,15 @@ import java.util.Map;
 /**
  * Performs Linear Regression using Matrices.
  * 
- * WARNING: This class copies the Dataframe to a RealMatrix which forces all of the
- * data to be loaded in memory.
+ * The X'X matrix and the X'Y vector are estimated in a single streaming pass 
+ * over the Dataframe and the coefficients are found by using the Cholesky 
+ * decomposition of X'X. Thus the memory requirements depend on the number of
+ * features and not on the number of records. Nevertheless the predictions
+ * copy the Dataframe to a RealMatrix.
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class MatrixLinearRegression extends AbstractLinearRegression<MatrixLinearRegression.ModelParameters, MatrixLinearRegression.TrainingParameters, MatrixLinearRegression.ValidationMetrics> implements StepwiseCompatible {
+public class MatrixLinearRegression extends AbstractLinearRegression<MatrixLinearRegression.ModelParameters, MatrixLinearRegression.TrainingParameters, MatrixLinearRegression.ValidationMetrics> implements StepwiseCompatible, TrainParallelizable {
 
     /** {@inheritDoc} */
     public static class ModelParameters extends AbstractLinearRegression.AbstractModelParameters {
@@ -131,6 +135,27 @@ public class MatrixLinearRegression extends AbstractLinearRegression<MatrixLinea
      */
     public MatrixLinearRegression(String dbName, Configuration conf) {
         super(dbName, conf, MatrixLinearRegression.ModelParameters.class, MatrixLinearRegression.TrainingParameters.class, MatrixLinearRegression.ValidationMetrics.class);
+        streamExecutor = new ForkJoinStream(kb().getConf().getConcurrencyConfig());
+    }
+    
+    private boolean parallelized = true;
+    
+    /**
+     * This executor is used for the parallel processing of streams with custom 
+     * Thread pool.
+     */
+    protected final ForkJoinStream streamExecutor;
+    
+    /** {@inheritDoc} */
+    @Override
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
     }
 
     /** {@inheritDoc} */
@@ -176,24 +201,23 @@ public class MatrixLinearRegression extends AbstractLinearRegression<MatrixLinea
         
         Map<Object, Double> thitas = modelParameters.getThitas();
         Map<Object, Integer> featureIds = modelParameters.getFeatureIds();
-        //Map<Integer, Integer> recordIdsReference = null;
-        MatrixDataframe matrixDataset = MatrixDataframe.newInstance(trainingData, true, null, featureIds);
-        
-        RealVector Y = matrixDataset.getY();
-        RealMatrix X = matrixDataset.getX();
-        
-        //(X'X)^-1
-        RealMatrix Xt = X.transpose();
-        LUDecomposition lud = new LUDecomposition(Xt.multiply(X));
-        //W = (X'X)^-1 * X'Y
-        RealMatrix XtXinv = lud.getSolver().getInverse();
-        RealVector coefficients = XtXinv.multiply(Xt).operate(Y);
-        // instead of matrix inversion calculate (X'X) * W = X'Y
-        //RealVector coefficients = lud.getSolver().solve(Xt.operate(Y));
-        //lud =null;
+        MatrixDataframe.indexFeatures(trainingData, true, featureIds);
         
+        //X'X and X'Y are estimated in a single pass without building the X matrix
+        RealVector XtY = new ArrayRealVector(featureIds.size());
+        RealMatrix XtX = MatrixDataframe.crossProduct(trainingData, featureIds, null, XtY, isParallelized());
         
-        //Xt = null;
+        //instead of inverting the matrix, solve (X'X) * W = X'Y
+        DecompositionSolver solver;
+        try {
+            solver = new CholeskyDecomposition(XtX).getSolver();
+        }
+        catch(NonPositiveDefiniteMatrixException ex) {
+            //the matrix is not positive definite due to rounding errors or collinearity
+            solver = new QRDecomposition(XtX).getSolver();
+        }
+        RealVector coefficients = solver.solve(XtY);
+        //XtY = null;
         
         //put the features coefficients in the thita map
         thitas.put(Dataframe.COLUMN_NAME_CONSTANT, coefficients.getEntry(0));
@@ -206,12 +230,15 @@ public class MatrixLinearRegression extends AbstractLinearRegression<MatrixLinea
         
         
         //get the predictions and subtact the Y vector. Sum the squared differences to get the error
-        double SSE = 0.0;
-        for(double v : X.operate(coefficients).subtract(Y).toArray()) {
-            SSE += v*v;
-        }
-        //Y = null;
+        double SSE = streamExecutor.sum(StreamMethods.stream(trainingData.stream(), isParallelized()).mapToDouble(r -> {
+            double error = MatrixDataframe.parseRecord(r, featureIds).dotProduct(coefficients) - TypeInference.toDouble(r.getY());
+            return error*error;
+        }));
 
+        //the inverse is required only for the diagonal of the standard error matrix
+        RealMatrix XtXinv = solver.getInverse();
+        //XtX = null;
+        
         //standard error matrix
         double MSE = SSE/(n-(d+1)); //mean square error = SSE / dfResidual
         RealMatrix SE = XtXinv.scalarMultiply(MSE);
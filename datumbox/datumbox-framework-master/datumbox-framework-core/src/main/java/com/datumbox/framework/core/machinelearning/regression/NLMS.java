@@ -27,12 +27,16 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.algorithms.AbstractLinearRegression;
+import com.datumbox.framework.core.machinelearning.common.interfaces.IncrementallyTrainable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.PredictParallelizable;
 import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.utilities.regularization.ElasticNetRegularizer;
 import com.datumbox.framework.core.utilities.regularization.L1Regularizer;
+import com.datumbox.framework.core.utilities.optimization.MiniBatchGradientDescent;
 import com.datumbox.framework.core.utilities.regularization.L2Regularizer;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -48,7 +52,7 @@ import java.util.Map;
  * 
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.TrainingParameters, NLMS.ValidationMetrics> implements PredictParallelizable, TrainParallelizable {
+public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.TrainingParameters, NLMS.ValidationMetrics> implements PredictParallelizable, TrainParallelizable, IncrementallyTrainable {
      
     /** {@inheritDoc} */
     public static class ModelParameters extends AbstractLinearRegression.AbstractModelParameters {
@@ -72,6 +76,9 @@ public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.Tr
         private double learningRate=0.1;
         private double l1=0.0;
         private double l2=0.0;
+        private int batchSize=0;
+        private MiniBatchGradientDescent.UpdateRule updateRule=MiniBatchGradientDescent.UpdateRule.PLAIN;
+        private double momentum=0.9;
 
         /**
          * Getter for the total iterations of the training process.
@@ -146,6 +153,66 @@ public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.Tr
             this.l2 = l2;
         }
 
+        /**
+         * Getter for the size of the mini-batches. Zero (the default) or a 
+         * size larger than the training data means that full batch gradient 
+         * descent is used.
+         *
+         * @return
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Setter for the size of the mini-batches. When it is positive, the 
+         * records are shuffled on every iteration and the weights are updated
+         * after every mini-batch.
+         *
+         * @param batchSize
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Getter for the rule which is used to update the weights.
+         *
+         * @return
+         */
+        public MiniBatchGradientDescent.UpdateRule getUpdateRule() {
+            return updateRule;
+        }
+
+        /**
+         * Setter for the rule which is used to update the weights.
+         *
+         * @param updateRule
+         */
+        public void setUpdateRule(MiniBatchGradientDescent.UpdateRule updateRule) {
+            this.updateRule = updateRule;
+        }
+
+        /**
+         * Getter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @return
+         */
+        public double getMomentum() {
+            return momentum;
+        }
+
+        /**
+         * Setter for the momentum coefficient which is used by the MOMENTUM 
+         * update rule.
+         *
+         * @param momentum
+         */
+        public void setMomentum(double momentum) {
+            this.momentum = momentum;
+        }
+
     } 
     
     /** {@inheritDoc} */
@@ -207,14 +274,31 @@ public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.Tr
     /** {@inheritDoc} */
     @Override
     protected void _fit(Dataframe trainingData) {
+        //the knowledge base is empty, so fitting is equivalent to updating the empty model
+        _partialFit(trainingData);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public void _partialFit(Dataframe trainingData) {
         ModelParameters modelParameters = kb().getModelParameters();
         
         Map<Object, Double> thitas = modelParameters.getThitas();
         
-        //we initialize the thitas to zero for all features
-        thitas.put(Dataframe.COLUMN_NAME_CONSTANT, 0.0);
+        //we intern the existing and the new features into ids. The constant has the id 0.
+        Map<Object, Integer> featureIds = new HashMap<>();
+        featureIds.put(Dataframe.COLUMN_NAME_CONSTANT, 0);
+        for(Object feature : thitas.keySet()) {
+            featureIds.putIfAbsent(feature, featureIds.size());
+        }
         for(Object feature : trainingData.getXDataTypes().keySet()) {
-            thitas.put(feature, 0.0);
+            featureIds.putIfAbsent(feature, featureIds.size());
+        }
+        
+        //we start from the existing thitas and we initialize the new ones to zero
+        double[] weights = new double[featureIds.size()];
+        for(Map.Entry<Object, Integer> entry : featureIds.entrySet()) {
+            weights[entry.getValue()] = thitas.getOrDefault(entry.getKey(), 0.0);
         }
         
         TrainingParameters trainingParameters = kb().getTrainingParameters();
@@ -223,80 +307,64 @@ public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.Tr
         
         double learningRate = trainingParameters.getLearningRate();
         int totalIterations = trainingParameters.getTotalIterations();
-        DatabaseConnector dbc = kb().getDbc();
+        MiniBatchGradientDescent optimizer = new MiniBatchGradientDescent(trainingParameters.getUpdateRule(), trainingParameters.getMomentum(), streamExecutor, isParallelized());
         for(int iteration=0;iteration<totalIterations;++iteration) {
             
             logger.debug("Iteration {}", iteration);
             
-            Map<Object, Double> tmp_newThitas = dbc.getBigMap("tmp_newThitas", MapType.HASHMAP, StorageHint.IN_MEMORY, false, true);
-            
-            tmp_newThitas.putAll(thitas);
+            double[] newWeights = Arrays.copyOf(weights, weights.length);
             
-            batchGradientDescent(trainingData, tmp_newThitas, learningRate);
+            gradientDescent(trainingData, featureIds, newWeights, learningRate, optimizer);
             
-            double newError = calculateError(trainingData,tmp_newThitas);
+            double newError = calculateError(trainingData, featureIds, newWeights);
             
             //bold driver
             if(newError>minError) {
                 learningRate/=2.0;
+                optimizer.reset();
             }
             else {
                 learningRate*=1.05;
                 minError=newError;
                 
                 //keep the new thitas
-                thitas.clear();
-                thitas.putAll(tmp_newThitas);
+                weights = newWeights;
             }
-            
-            //Drop the temporary Collection
-            dbc.dropBigMap("tmp_newThitas", tmp_newThitas);
         }
+        
+        //store the thitas of the model
+        for(Map.Entry<Object, Integer> entry : featureIds.entrySet()) {
+            thitas.put(entry.getKey(), weights[entry.getValue()]);
+        }
+        setModelDimension(featureIds.size()-1); //the constant is not a feature
     }
 
-    private void batchGradientDescent(Dataframe trainingData, Map<Object, Double> newThitas, double learningRate) {
-        ModelParameters modelParameters = kb().getModelParameters();
+    private void gradientDescent(Dataframe trainingData, Map<Object, Integer> featureIds, double[] newWeights, double learningRate, MiniBatchGradientDescent optimizer) {
+        TrainingParameters trainingParameters = kb().getTrainingParameters();
         
-        double multiplier = learningRate/modelParameters.getN();
-        Map<Object, Double> thitas = modelParameters.getThitas();
+        MiniBatchGradientDescent.Regularization regularization = MiniBatchGradientDescent.regularization(trainingParameters.getL1(), trainingParameters.getL2(), learningRate, newWeights.length);
         
-        streamExecutor.forEach(StreamMethods.stream(trainingData.stream(), isParallelized()), r -> { 
-            //mind the fact that we use the previous thitas to estimate the new ones! this is because the thitas must be updated simultaniously
-            double error = TypeInference.toDouble(r.getY()) - hypothesisFunction(r.getX(), thitas);
-
+        optimizer.epoch(trainingData, trainingParameters.getBatchSize(), newWeights, learningRate, (r, multiplier, gradient) -> { 
+            //mind the fact that we use the thitas of the beginning of the batch to estimate the new ones! this is because the thitas must be updated simultaniously
+            double error = TypeInference.toDouble(r.getY()) - hypothesisFunction(r.getX(), featureIds, newWeights);
+            
             double errorMultiplier = multiplier*error;
             
-            synchronized(newThitas) {
-                //update the weights
-                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                    Object feature = entry.getKey();
-                    Double value = TypeInference.toDouble(entry.getValue());
+            //update the gradient
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                Double value = TypeInference.toDouble(entry.getValue());
 
-                    newThitas.put(feature, newThitas.get(feature)+errorMultiplier*value);
-                }
-                newThitas.put(Dataframe.COLUMN_NAME_CONSTANT, newThitas.get(Dataframe.COLUMN_NAME_CONSTANT)+errorMultiplier);
+                gradient.add(featureIds.get(entry.getKey()), errorMultiplier*value);
             }
-        });
-
-        double l1 = kb().getTrainingParameters().getL1();
-        double l2 = kb().getTrainingParameters().getL2();
-
-        if(l1>0.0 && l2>0.0) {
-            ElasticNetRegularizer.updateWeights(l1, l2, learningRate, thitas, newThitas);
-        }
-        else if(l1>0.0) {
-            L1Regularizer.updateWeights(l1, learningRate, thitas, newThitas);
-        }
-        else if(l2>0.0) {
-            L2Regularizer.updateWeights(l2, learningRate, thitas, newThitas);
-        }
+            gradient.add(0, errorMultiplier); //update the gradient of constant
+        }, regularization);
     }
     
-    private double calculateError(Dataframe trainingData, Map<Object, Double> thitas) {
+    private double calculateError(Dataframe trainingData, Map<Object, Integer> featureIds, double[] weights) {
         //It is optimized for speed to reduce the amount of loops
         
         double error = streamExecutor.sum(StreamMethods.stream(trainingData.stream(), isParallelized()).mapToDouble(r -> { 
-            double yPredicted = hypothesisFunction(r.getX(), thitas);
+            double yPredicted = hypothesisFunction(r.getX(), featureIds, weights);
             return Math.pow(TypeInference.toDouble(r.getY()) -yPredicted, 2);
         }));
         error /= kb().getModelParameters().getN();
@@ -305,18 +373,34 @@ public class NLMS extends AbstractLinearRegression<NLMS.ModelParameters, NLMS.Tr
         double l2 = kb().getTrainingParameters().getL2();
 
         if(l1>0.0 && l2>0.0) {
-            error += ElasticNetRegularizer.estimatePenalty(l1, l2, thitas);
+            error += ElasticNetRegularizer.estimatePenalty(l1, l2, weights);
         }
         else if(l1>0.0) {
-            error += L1Regularizer.estimatePenalty(l1, thitas);
+            error += L1Regularizer.estimatePenalty(l1, weights);
         }
         else if(l2>0.0) {
-            error += L2Regularizer.estimatePenalty(l2, thitas);
+            error += L2Regularizer.estimatePenalty(l2, weights);
         }
 
         return error;
     }
     
+    private double hypothesisFunction(AssociativeArray x, Map<Object, Integer> featureIds, double[] weights) {
+        double sum = weights[0];
+        
+        for(Map.Entry<Object, Object> entry : x.entrySet()) {
+            Integer featureId = featureIds.get(entry.getKey());
+            if(featureId==null) {
+                continue;
+            }
+            Double xj = TypeInference.toDouble(entry.getValue());
+            
+            sum+=weights[featureId]*xj;
+        }
+        
+        return sum;
+    }
+    
     private double hypothesisFunction(AssociativeArray x, Map<Object, Double> thitas) {
         double sum = thitas.get(Dataframe.COLUMN_NAME_CONSTANT);
         
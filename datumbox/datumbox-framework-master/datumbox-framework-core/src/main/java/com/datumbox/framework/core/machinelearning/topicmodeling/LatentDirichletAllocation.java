@@ -16,6 +16,8 @@
 package com.datumbox.framework.core.machinelearning.topicmodeling;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
 import com.datumbox.framework.common.dataobjects.*;
 import com.datumbox.framework.common.persistentstorage.interfaces.BigMap;
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector;
@@ -23,15 +25,19 @@ import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnec
 import com.datumbox.framework.common.persistentstorage.interfaces.DatabaseConnector.StorageHint;
 import com.datumbox.framework.common.utilities.MapMethods;
 import com.datumbox.framework.common.utilities.PHPMethods;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.core.machinelearning.common.abstracts.AbstractTrainer;
 import com.datumbox.framework.core.machinelearning.common.abstracts.modelers.AbstractTopicModeler;
+import com.datumbox.framework.core.machinelearning.common.interfaces.TrainParallelizable;
 import com.datumbox.framework.core.machinelearning.common.validators.LatentDirichletAllocationValidator;
-import com.datumbox.framework.core.statistics.descriptivestatistics.Descriptives;
-import com.datumbox.framework.core.statistics.sampling.SimpleRandomSampling;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 
 /**
@@ -55,7 +61,7 @@ import java.util.Map;
  *
  * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
  */
-public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirichletAllocation.ModelParameters, LatentDirichletAllocation.TrainingParameters, LatentDirichletAllocation.ValidationMetrics> {
+public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirichletAllocation.ModelParameters, LatentDirichletAllocation.TrainingParameters, LatentDirichletAllocation.ValidationMetrics> implements TrainParallelizable {
     
     /** {@inheritDoc} */
     public static class ModelParameters extends AbstractTopicModeler.AbstractModelParameters {
@@ -226,6 +232,25 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
     public static class TrainingParameters extends AbstractTopicModeler.AbstractTrainingParameters {  
         private static final long serialVersionUID = 1L;
         
+        /**
+         * The method used to sample the topics of the words.
+         */
+        public enum SamplingMethod {
+            /**
+             * Estimates the probabilities of all the topics for every word.
+             */
+            DENSE,
+            
+            /**
+             * SparseLDA, splits the probability mass in three buckets and 
+             * iterates only over the non-zero counts of the word and the 
+             * document in the common case.
+             * References:
+             * http://people.cs.umass.edu/~mimno/papers/fast-topic-model.pdf
+             */
+            SPARSE;
+        }
+        
         private int k = 2; //number of topics
         private int maxIterations = 50; //both for training and testing
         
@@ -233,6 +258,10 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
         private double alpha = 1.0; //the hyperparameter of dirichlet prior for document topic distribution
         private double beta = 1.0; //the hyperparameter of dirichlet prior for word topic distribution
         
+        private SamplingMethod samplingMethod = SamplingMethod.DENSE;
+        
+        private int partitions = 4; //the number of document partitions of the parallel sampler
+        
         /**
          * Getter for the total number of topics k.
          * 
@@ -305,6 +334,52 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
             this.beta = beta;
         }
         
+        /**
+         * Getter for the method used to sample the topics during training.
+         * 
+         * @return 
+         */
+        public SamplingMethod getSamplingMethod() {
+            return samplingMethod;
+        }
+        
+        /**
+         * Setter for the method used to sample the topics during training. The
+         * SPARSE method produces samples from the same distribution as the 
+         * DENSE but its cost per word depends on the number of topics of the 
+         * word and the document instead of the total number of topics.
+         * 
+         * @param samplingMethod 
+         */
+        public void setSamplingMethod(SamplingMethod samplingMethod) {
+            this.samplingMethod = samplingMethod;
+        }
+        
+        /**
+         * Getter for the number of partitions of the documents which are 
+         * sampled concurrently when the algorithm is parallelized.
+         * 
+         * @return 
+         */
+        public int getPartitions() {
+            return partitions;
+        }
+        
+        /**
+         * Setter for the number of partitions of the documents which are 
+         * sampled concurrently when the algorithm is parallelized (AD-LDA). 
+         * The results depend on the number of partitions but not on the number
+         * of threads which sample them, so they are reproducible on any host.
+         * 
+         * @param partitions 
+         */
+        public void setPartitions(int partitions) {
+            if(partitions<1) {
+                throw new IllegalArgumentException("The number of partitions must be positive.");
+            }
+            this.partitions = partitions;
+        }
+        
     } 
     
     /** {@inheritDoc} */
@@ -341,6 +416,36 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
      */
     public LatentDirichletAllocation(String dbName, Configuration conf) {
         super(dbName, conf, LatentDirichletAllocation.ModelParameters.class, LatentDirichletAllocation.TrainingParameters.class, LatentDirichletAllocation.ValidationMetrics.class, new LatentDirichletAllocationValidator());
+        streamExecutor = new ForkJoinStream(kb().getConf().getConcurrencyConfig());
+    }
+    
+    //The parallel sampler is an approximation of the sequential one, so it is not enabled by default
+    private boolean parallelized = false;
+    
+    /**
+     * This executor is used for the parallel processing of streams with custom 
+     * Thread pool.
+     */
+    protected final ForkJoinStream streamExecutor;
+    
+    /** {@inheritDoc} */
+    @Override
+    public boolean isParallelized() {
+        return parallelized;
+    }
+
+    /**
+     * Setter for the parallelized parameter. When it is enabled, both the 
+     * training and the inference split the documents in the number of 
+     * partitions of the TrainingParameters and sample them concurrently 
+     * (AD-LDA). The counts are synchronized at the 
+     * end of every iteration.
+     * 
+     * @param parallelized 
+     */
+    @Override
+    public void setParallelized(boolean parallelized) {
+        this.parallelized = parallelized;
     }
     
     /**
@@ -402,37 +507,59 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
         
         //get model parameters
         int k = trainingParameters.getK(); //number of topics
-        Map<List<Object>, Integer> topicAssignmentOfDocumentWord = modelParameters.getTopicAssignmentOfDocumentWord();
-        Map<List<Integer>, Integer> documentTopicCounts = modelParameters.getDocumentTopicCounts();
-        Map<List<Object>, Integer> topicWordCounts = modelParameters.getTopicWordCounts();
         Map<Integer, Integer> documentWordCounts = modelParameters.getDocumentWordCounts();
-        Map<Integer, Integer> topicCounts = modelParameters.getTopicCounts();
+        
+        //the words are interned and the counts are kept in primitive arrays during training
+        Map<Object, Integer> wordIds = new HashMap<>();
+        List<int[]> wordTopicCountList = new ArrayList<>();
+        int[] topicCounts = new int[k];
+        
+        int n = trainingData.size();
+        int[][] documentWords = new int[n][];
+        int[][] documentTopics = new int[n][]; //the Z in the graphical model
         
         //initialize topic assignments of each word randomly and update the counters
+        int documentPosition = 0;
         for(Map.Entry<Integer, Record> e : trainingData.entries()) {
-            Integer rId = e.getKey();
-            Record r = e.getValue();
-            Integer documentId = rId;
+            Integer documentId = e.getKey();
+            AssociativeArray x = e.getValue().getX();
             
-            documentWordCounts.put(documentId, r.getX().size());
+            documentWordCounts.put(documentId, x.size());
             
-            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                Object wordPosition = entry.getKey();
-                Object word = entry.getValue();
+            int[] words = new int[x.size()];
+            int[] topics = new int[x.size()];
+            int i = 0;
+            for(Object word : x.values()) {
+                Integer wordId = wordIds.get(word);
+                if(wordId==null) {
+                    wordId = wordIds.size();
+                    wordIds.put(word, wordId);
+                    wordTopicCountList.add(new int[k]);
+                }
                 
                 //sample a topic
-                Integer topic = PHPMethods.mt_rand(0,k-1);
+                int topic = PHPMethods.mt_rand(0,k-1);
                 
-                increase(topicCounts, topic);
-                topicAssignmentOfDocumentWord.put(Arrays.asList(documentId, wordPosition), topic);
-                increase(documentTopicCounts, Arrays.asList(documentId, topic));
-                increase(topicWordCounts, Arrays.asList(topic, word));
+                words[i] = wordId;
+                topics[i] = topic;
+                ++topicCounts[topic];
+                ++wordTopicCountList.get(wordId)[topic];
+                ++i;
             }
+            
+            documentWords[documentPosition] = words;
+            documentTopics[documentPosition] = topics;
+            ++documentPosition;
         }
+        int[][] wordTopicCounts = wordTopicCountList.toArray(new int[wordTopicCountList.size()][]);
         
         
         double alpha = trainingParameters.getAlpha();
         double beta = trainingParameters.getBeta();
+        boolean sparse = trainingParameters.getSamplingMethod()==TrainingParameters.SamplingMethod.SPARSE;
+        
+        GibbsSampler sampler = new GibbsSampler(k, alpha, beta, beta*d, topicCounts, wordTopicCounts, null, null, sparse);
+        Random rnd = RandomGenerator.getThreadLocalRandom();
         
         int maxIterations = trainingParameters.getMaxIterations();
         
@@ -441,84 +568,10 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
             
             logger.debug("Iteration {}", iteration);
             
-            int changedCounter = 0;
             //collapsed gibbs sampler
-            for(Map.Entry<Integer, Record> e : trainingData.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                Integer documentId = rId;
-                
-                AssociativeArray topicAssignments = new AssociativeArray();
-                for(int j=0;j<k;++j) {
-                    topicAssignments.put(j, 0.0);
-                }
-                
-                int totalWords = r.getX().size();
-                
-                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                    Object wordPosition = entry.getKey();
-                    Object word = entry.getValue();
+            sweep(sampler, documentWords, documentTopics, rnd);
             
-                    
-                    //remove the word from the dataset
-                    Integer topic = topicAssignmentOfDocumentWord.get(Arrays.asList(documentId, wordPosition));
-                    //decrease(documentWordCounts, documentId); //slow
-                    decrease(topicCounts, topic);
-                    decrease(documentTopicCounts, Arrays.asList(documentId, topic));
-                    decrease(topicWordCounts, Arrays.asList(topic, word));
-                    
-                    //int numberOfDocumentWords = r.getX().size()-1; //fast - decreased by 1
-                    
-                    //compute the posteriors of the topics and sample from it
-                    AssociativeArray topicProbabilities = new AssociativeArray();
-                    for(int j=0;j<k;++j) {
-                        Integer njw = topicWordCounts.get(Arrays.asList(j,word));
-                        double enumerator;
-                        if(njw !=null) {
-                            enumerator = njw + beta;
-                        }
-                        else {
-                            enumerator = beta;
-                        }
-                        
-                        Integer njd = documentTopicCounts.get(Arrays.asList(documentId, j));
-                        if(njd != null) {
-                            enumerator *= (njd + alpha);
-                        }
-                        else {
-                            enumerator *= alpha;
-                        }
-                        
-                        double denominator = topicCounts.get((Integer)j)+beta*d;
-                        //denominator *= numberOfDocumentWords+alpha*k; //this is not necessary because it is the same for all categories, so it can be omited
-                        
-                        topicProbabilities.put(j, enumerator/denominator);
-                    }
-
-                    //normalize probabilities
-                    //Descriptives.normalize(topicProbabilities);
-                    
-                    //sample from these probabilieis
-                    Integer newTopic = (Integer) SimpleRandomSampling.weightedSampling(topicProbabilities, 1, true).iterator().next();
-                    topic = newTopic; //new topic assigment
-                    
-                    //add back the word in the dataset
-                    topicAssignmentOfDocumentWord.put(Arrays.asList(documentId, wordPosition), topic);
-                    //increase(documentWordCounts, documentId); //slow
-                    increase(topicCounts, topic);
-                    increase(documentTopicCounts, Arrays.asList(documentId, topic));
-                    increase(topicWordCounts, Arrays.asList(topic, word));
-                    
-                    topicAssignments.put(topic, TypeInference.toDouble(topicAssignments.get(topic))+1.0/totalWords);
-                }
-                
-                Object mainTopic=MapMethods.selectMaxKeyValue(topicAssignments).getKey();
-                
-                if(!mainTopic.equals(r.getYPredicted())) {
-                    ++changedCounter;
-                }
-                trainingData._unsafe_set(rId, new Record(r.getX(), r.getY(), mainTopic, topicAssignments));
-            }
+            int changedCounter = updateTopicAssignments(trainingData, documentTopics, k);
             ++iteration;
             
             logger.debug("Reassigned Records {}", changedCounter);
@@ -530,6 +583,44 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
         
         modelParameters.setTotalIterations(iteration);
         
+        //store the counts in the model parameters
+        Map<List<Object>, Integer> topicAssignmentOfDocumentWord = modelParameters.getTopicAssignmentOfDocumentWord();
+        Map<List<Integer>, Integer> documentTopicCountsMap = modelParameters.getDocumentTopicCounts();
+        Map<List<Object>, Integer> topicWordCountsMap = modelParameters.getTopicWordCounts();
+        Map<Integer, Integer> topicCountsMap = modelParameters.getTopicCounts();
+        
+        documentPosition = 0;
+        int[] documentTopicCounts = new int[k];
+        for(Map.Entry<Integer, Record> e : trainingData.entries()) {
+            Integer documentId = e.getKey();
+            int[] topics = documentTopics[documentPosition];
+            ++documentPosition;
+            
+            int i = 0;
+            for(Object wordPosition : e.getValue().getX().keySet()) {
+                topicAssignmentOfDocumentWord.put(Arrays.asList(documentId, wordPosition), topics[i]);
+                ++documentTopicCounts[topics[i]];
+                ++i;
+            }
+            for(int j=0;j<k;++j) {
+                if(documentTopicCounts[j]>0) {
+                    documentTopicCountsMap.put(Arrays.asList(documentId, j), documentTopicCounts[j]);
+                    documentTopicCounts[j] = 0;
+                }
+            }
+        }
+        for(Map.Entry<Object, Integer> entry : wordIds.entrySet()) {
+            Object word = entry.getKey();
+            int[] counts = wordTopicCounts[entry.getValue()];
+            for(int j=0;j<k;++j) {
+                if(counts[j]>0) {
+                    topicWordCountsMap.put(Arrays.asList(j, word), counts[j]);
+                }
+            }
+        }
+        for(int j=0;j<k;++j) {
+            topicCountsMap.put(j, topicCounts[j]);
+        }
     }
 
     /** {@inheritDoc} */
@@ -538,35 +629,6 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
         return predictAndValidate(validationData);
     }
     
-    /**
-     * Utility method that increases the map value by 1.
-     * 
-     * @param <K>
-     * @param map
-     * @param key 
-     */
-    private <K> void increase(Map<K, Integer> map, K key) {
-        Integer previousValue = map.get(key);
-        if(previousValue==null) {
-            previousValue=0;
-        }
-        map.put(key, previousValue+1);
-    }
-
-    /**
-     * Utility method that decreases the map value by 1.
-     * @param <K>
-     * @param map
-     * @param key 
-     */
-    private <K> void decrease(Map<K, Integer> map, K key) {
-        Integer previousValue = map.get(key);
-        if(previousValue==null) {
-            previousValue=0;
-        }
-        map.put(key, previousValue-1);
-    }
-    
     private ValidationMetrics predictAndValidate(Dataframe newData) {
         //This method uses similar approach to the training but the most important
         //difference is that we do not wish to modify the original training params.
@@ -585,44 +647,86 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
         int k = trainingParameters.getK(); //number of topics
         
         
-        Map<List<Object>, Integer> topicWordCounts = modelParameters.getTopicWordCounts();
-        Map<Integer, Integer> topicCounts = modelParameters.getTopicCounts();
-        
+        //load the counts of the training data in primitive arrays
+        Map<Object, Integer> wordIds = new HashMap<>();
+        List<int[]> wordTopicCountList = new ArrayList<>();
+        for(Map.Entry<List<Object>, Integer> entry : modelParameters.getTopicWordCounts().entrySet()) {
+            List<Object> tpk = entry.getKey();
+            Object word = tpk.get(1);
+            Integer wordId = wordIds.get(word);
+            if(wordId==null) {
+                wordId = wordIds.size();
+                wordIds.put(word, wordId);
+                wordTopicCountList.add(new int[k]);
+            }
+            wordTopicCountList.get(wordId)[(Integer)tpk.get(0)] = entry.getValue();
+        }
+        int[] topicCounts = new int[k];
+        for(Map.Entry<Integer, Integer> entry : modelParameters.getTopicCounts().entrySet()) {
+            topicCounts[entry.getKey()] = entry.getValue();
+        }
         
-        DatabaseConnector dbc = kb().getDbc();
+        //we use temporary counts for the prediction sets to avoid modifing the ones that we already learned
+        int[] tmp_topicCounts = new int[k];
+        List<int[]> tmp_wordTopicCountList = new ArrayList<>();
         
-        //we create temporary maps for the prediction sets to avoid modifing the maps that we already learned
-        Map<List<Object>, Integer> tmp_topicAssignmentOfDocumentWord = dbc.getBigMap("tmp_topicAssignmentOfDocumentWord", MapType.HASHMAP, StorageHint.IN_CACHE, false, true);
-        Map<List<Integer>, Integer> tmp_documentTopicCounts = dbc.getBigMap("tmp_documentTopicCounts", MapType.HASHMAP, StorageHint.IN_MEMORY, false, true);
-        Map<List<Object>, Integer> tmp_topicWordCounts = dbc.getBigMap("tmp_topicWordCounts", MapType.HASHMAP, StorageHint.IN_CACHE, false, true);
-        Map<Integer, Integer> tmp_topicCounts = dbc.getBigMap("tmp_topicCounts", MapType.HASHMAP, StorageHint.IN_MEMORY, false, true);
+        int n = newData.size();
+        int[][] documentWords = new int[n][];
+        int[][] documentTopics = new int[n][];
         
         //initialize topic assignments of each word randomly and update the counters
-        for(Map.Entry<Integer, Record> e : newData.entries()) {
-            Integer rId = e.getKey();
-            Record r = e.getValue();
-            Integer documentId = rId;
+        int documentPosition = 0;
+        for(Record r : newData.values()) {
+            AssociativeArray x = r.getX();
             
-            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                Object wordPosition = entry.getKey();
-                Object word = entry.getValue();
+            int[] words = new int[x.size()];
+            int[] topics = new int[x.size()];
+            int i = 0;
+            for(Object word : x.values()) {
+                Integer wordId = wordIds.get(word);
+                if(wordId==null) {
+                    wordId = wordIds.size();
+                    wordIds.put(word, wordId);
+                    wordTopicCountList.add(new int[k]);
+                }
+                while(tmp_wordTopicCountList.size()<=wordId) {
+                    tmp_wordTopicCountList.add(new int[k]);
+                }
                 
                 //sample a topic
-                Integer topic = PHPMethods.mt_rand(0,k-1);
+                int topic = PHPMethods.mt_rand(0,k-1);
                 
-                increase(tmp_topicCounts, topic);
-                tmp_topicAssignmentOfDocumentWord.put(Arrays.asList(documentId, wordPosition), topic);
-                increase(tmp_documentTopicCounts, Arrays.asList(documentId, topic));
-                increase(tmp_topicWordCounts, Arrays.asList(topic, word));
+                words[i] = wordId;
+                topics[i] = topic;
+                ++tmp_topicCounts[topic];
+                ++tmp_wordTopicCountList.get(wordId)[topic];
+                ++i;
             }
+            
+            documentWords[documentPosition] = words;
+            documentTopics[documentPosition] = topics;
+            ++documentPosition;
+        }
+        while(tmp_wordTopicCountList.size()<wordTopicCountList.size()) {
+            tmp_wordTopicCountList.add(new int[k]);
         }
+        int[][] wordTopicCounts = wordTopicCountList.toArray(new int[wordTopicCountList.size()][]);
+        int[][] tmp_wordTopicCounts = tmp_wordTopicCountList.toArray(new int[tmp_wordTopicCountList.size()][]);
         
         
         double alpha = trainingParameters.getAlpha();
         double beta = trainingParameters.getBeta();
         
+        GibbsSampler sampler = new GibbsSampler(k, alpha, beta, beta*d, tmp_topicCounts, tmp_wordTopicCounts, topicCounts, wordTopicCounts, false);
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        
         int maxIterations = trainingParameters.getMaxIterations();
         
+        double totalDatasetWords = 0.0;
+        for(int[] words : documentWords) {
+            totalDatasetWords += words.length;
+        }
+        
         double perplexity = Double.MAX_VALUE;
         for(int iteration=0;iteration<maxIterations;++iteration) {
             
@@ -630,118 +734,566 @@ public class LatentDirichletAllocation extends AbstractTopicModeler<LatentDirich
             
             
             //collapsed gibbs sampler
-            int changedCounter = 0;
-            perplexity = 0.0;
-            double totalDatasetWords = 0.0;
-            for(Map.Entry<Integer, Record> e : newData.entries()) {
-                Integer rId = e.getKey();
-                Record r = e.getValue();
-                Integer documentId = rId;
-                
-                
-                AssociativeArray topicAssignments = new AssociativeArray();
-                for(int j=0;j<k;++j) {
-                    topicAssignments.put(j, 0.0);
+            sampler.resetLogLikelihood();
+            sweep(sampler, documentWords, documentTopics, rnd);
+            
+            int changedCounter = updateTopicAssignments(newData, documentTopics, k);
+            
+            perplexity=Math.exp(-sampler.getLogLikelihood()/totalDatasetWords);
+            
+            logger.debug("Reassigned Records {} - Perplexity: {}", changedCounter, perplexity);
+            
+            if(changedCounter==0) {
+                break;
+            }            
+        }
+        
+        
+        validationMetrics.setPerplexity(perplexity);
+        
+        return validationMetrics;
+    }
+    
+    /**
+     * Runs one sweep of the collapsed Gibbs sampler over all the documents. If
+     * the algorithm is parallelized, the documents are split in partitions 
+     * which are sampled concurrently against local copies of the counts and 
+     * the changes are merged at the end of the sweep (AD-LDA). Every partition
+     * uses its own Random object which is seeded by the provided one, so the
+     * results are reproducible for a given seed and number of partitions.
+     * 
+     * References:
+     * http://www.jmlr.org/papers/volume10/newman09a/newman09a.pdf
+     * 
+     * @param sampler
+     * @param documentWords
+     * @param documentTopics
+     * @param rnd 
+     */
+    private void sweep(GibbsSampler sampler, int[][] documentWords, int[][] documentTopics, Random rnd) {
+        int n = documentWords.length;
+        int partitions = (isParallelized())?Math.min(kb().getTrainingParameters().getPartitions(), n):1;
+        if(partitions<=1) {
+            sampler.sampleDocuments(documentWords, documentTopics, 0, n, rnd);
+            return;
+        }
+        
+        //the seeds are drawn on this thread to keep the results reproducible
+        long[] seeds = new long[partitions];
+        for(int p=0;p<partitions;p++) {
+            seeds[p] = rnd.nextLong();
+        }
+        
+        GibbsSampler[] partitionSamplers = new GibbsSampler[partitions];
+        streamExecutor.forEach(StreamMethods.stream(IntStream.range(0, partitions).boxed(), true), p -> {
+            GibbsSampler partitionSampler = new GibbsSampler(sampler);
+            int from = (int)((long)p*n/partitions);
+            int to = (int)((long)(p+1)*n/partitions);
+            partitionSampler.sampleDocuments(documentWords, documentTopics, from, to, new Random(seeds[p]));
+            partitionSamplers[p] = partitionSampler;
+        });
+        sampler.merge(partitionSamplers);
+    }
+    
+    /**
+     * Stores on the Records the topic frequencies of the documents and the main
+     * topic. It returns the number of Records which changed main topic.
+     * 
+     * @param data
+     * @param documentTopics
+     * @param k
+     * @return 
+     */
+    private int updateTopicAssignments(Dataframe data, int[][] documentTopics, int k) {
+        int changedCounter = 0;
+        int documentPosition = 0;
+        for(Map.Entry<Integer, Record> e : data.entries()) {
+            Integer rId = e.getKey();
+            Record r = e.getValue();
+            
+            int[] topics = documentTopics[documentPosition];
+            ++documentPosition;
+            
+            int totalWords = topics.length;
+            double[] topicFrequencies = new double[k];
+            for(int topic : topics) {
+                topicFrequencies[topic] += 1.0/totalWords;
+            }
+            
+            AssociativeArray topicAssignments = new AssociativeArray();
+            for(int j=0;j<k;++j) {
+                topicAssignments.put(j, topicFrequencies[j]);
+            }
+            
+            Object mainTopic=MapMethods.selectMaxKeyValue(topicAssignments).getKey();
+            
+            if(!mainTopic.equals(r.getYPredicted())) {
+                ++changedCounter;
+            }
+            data._unsafe_set(rId, new Record(r.getX(), r.getY(), mainTopic, topicAssignments));
+        }
+        return changedCounter;
+    }
+    
+    /**
+     * Returns the first position of the cumulative probabilities which is 
+     * greater or equal to the provided value.
+     * 
+     * @param cumulativeProbabilities
+     * @param length
+     * @param value
+     * @return 
+     */
+    private static int sampleCumulative(double[] cumulativeProbabilities, int length, double value) {
+        for(int i=0;i<length;i++) {
+            if(cumulativeProbabilities[i]>=value) {
+                return i;
+            }
+        }
+        return length-1;
+    }
+    
+    /**
+     * Collapsed Gibbs sampler which works on primitive count arrays. It keeps
+     * the topic counts and the word-topic counts of the whole corpus and the 
+     * topic counts of the current document. In the sparse mode it also keeps
+     * the lists of the non-zero topics of every word and of the document along
+     * with the cached bucket masses of SparseLDA. 
+     * 
+     * During inference the sampler also receives the read-only counts of the
+     * training data. A sampler can be copied for a partition of the documents;
+     * the copy shares the rows of the counts with the original and copies them
+     * on the first modification.
+     */
+    private static class GibbsSampler {
+        
+        private final int k;
+        
+        private final double alpha;
+        
+        private final double beta;
+        
+        private final double betaD;
+        
+        private final int[] topicCounts;
+        
+        private final int[][] wordTopicCounts;
+        
+        private final int[] priorTopicCounts; //the counts of the training data, used only during inference
+        
+        private final int[][] priorWordTopicCounts;
+        
+        private final boolean[] ownedWords; //the rows which were copied by a partition sampler, null for the main sampler
+        
+        private final int[] documentTopicCounts;
+        
+        private final double[] cumulativeProbabilities;
+        
+        private final boolean sparse;
+        
+        private int documentLength;
+        
+        private double logLikelihood = 0.0;
+        
+        //the fields below are used only by the sparse mode
+        private int[][] wordNonZeroTopics;
+        
+        private int[] wordNonZeroSizes;
+        
+        private int[] documentNonZeroTopics;
+        
+        private int documentNonZeroSize;
+        
+        private double[] coefficients; //(alpha+n_td)/(betaD+n_t) for every topic
+        
+        private double smoothingMass; //sum of alpha*beta/(betaD+n_t)
+        
+        private double documentMass; //sum of n_td*beta/(betaD+n_t)
+        
+        /**
+         * Constructor of the sampler. The provided count arrays are updated
+         * directly.
+         * 
+         * @param k
+         * @param alpha
+         * @param beta
+         * @param betaD
+         * @param topicCounts
+         * @param wordTopicCounts
+         * @param priorTopicCounts
+         * @param priorWordTopicCounts
+         * @param sparse 
+         */
+        GibbsSampler(int k, double alpha, double beta, double betaD, int[] topicCounts, int[][] wordTopicCounts, int[] priorTopicCounts, int[][] priorWordTopicCounts, boolean sparse) {
+            this.k = k;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.betaD = betaD;
+            this.topicCounts = topicCounts;
+            this.wordTopicCounts = wordTopicCounts;
+            this.priorTopicCounts = priorTopicCounts;
+            this.priorWordTopicCounts = priorWordTopicCounts;
+            this.sparse = sparse;
+            ownedWords = null;
+            documentTopicCounts = new int[k];
+            cumulativeProbabilities = new double[k];
+            
+            if(sparse) {
+                int v = wordTopicCounts.length;
+                wordNonZeroTopics = new int[v][];
+                wordNonZeroSizes = new int[v];
+                for(int w=0;w<v;w++) {
+                    buildNonZeroTopics(w);
                 }
-                
-                int totalDocumentWords = r.getX().size();
-                totalDatasetWords+=totalDocumentWords;
-                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
-                    Object wordPosition = entry.getKey();
-                    Object word = entry.getValue();
+                documentNonZeroTopics = new int[k];
+                coefficients = new double[k];
+            }
+        }
+        
+        /**
+         * Constructor which copies the sampler for a partition of the documents.
+         * 
+         * @param sampler 
+         */
+        GibbsSampler(GibbsSampler sampler) {
+            k = sampler.k;
+            alpha = sampler.alpha;
+            beta = sampler.beta;
+            betaD = sampler.betaD;
+            topicCounts = sampler.topicCounts.clone();
+            wordTopicCounts = sampler.wordTopicCounts.clone(); //the rows are copied on write
+            priorTopicCounts = sampler.priorTopicCounts;
+            priorWordTopicCounts = sampler.priorWordTopicCounts;
+            sparse = sampler.sparse;
+            ownedWords = new boolean[wordTopicCounts.length];
+            documentTopicCounts = new int[k];
+            cumulativeProbabilities = new double[k];
             
-                    
-                    //remove the word from the dataset
-                    Integer topic = tmp_topicAssignmentOfDocumentWord.get(Arrays.asList(documentId, wordPosition));
-                    decrease(tmp_topicCounts, topic);
-                    decrease(tmp_documentTopicCounts, Arrays.asList(documentId, topic));
-                    decrease(tmp_topicWordCounts, Arrays.asList(topic, word));
-                        
-                    int numberOfDocumentWords = r.getX().size()-1;
-                    
-                    //compute the posteriors of the topics and sample from it
-                    AssociativeArray topicProbabilities = new AssociativeArray();
-                    for(int j=0;j<k;++j) {
-                        //get the counts from the current testing data
-                        List<Object> topicWordKey = Arrays.asList(j,word);
-                        Integer njw = tmp_topicWordCounts.get(topicWordKey);
-                        
-                        double enumerator;
-                        if(njw !=null) {
-                            enumerator = njw + beta;
-                        }
-                        else {
-                            enumerator = beta;
-                        }
-                        
-                        //get also the counts from the training data
-                        Integer njw_original = topicWordCounts.get(topicWordKey);
-                        if(njw_original!=null) {
-                            enumerator+=njw_original;
-                        }
-                        
-                        Integer njd = tmp_documentTopicCounts.get(Arrays.asList(documentId, j));
-                        if(njd != null) {
-                            enumerator *= (njd + alpha);
+            if(sparse) {
+                wordNonZeroTopics = sampler.wordNonZeroTopics.clone(); //the rows are copied on write
+                wordNonZeroSizes = sampler.wordNonZeroSizes.clone();
+                documentNonZeroTopics = new int[k];
+                coefficients = new double[k];
+            }
+        }
+        
+        /**
+         * Returns the sum of the log of the normalizing constants of the 
+         * posteriors since the last reset. It is estimated only during 
+         * inference and it is used for the perplexity.
+         * 
+         * @return 
+         */
+        double getLogLikelihood() {
+            return logLikelihood;
+        }
+        
+        /**
+         * Resets the log likelihood.
+         */
+        void resetLogLikelihood() {
+            logLikelihood = 0.0;
+        }
+        
+        /**
+         * Samples the topics of the words of the documents in the range 
+         * [from, to).
+         * 
+         * @param documentWords
+         * @param documentTopics
+         * @param from
+         * @param to
+         * @param rnd 
+         */
+        void sampleDocuments(int[][] documentWords, int[][] documentTopics, int from, int to, Random rnd) {
+            for(int documentPosition=from;documentPosition<to;documentPosition++) {
+                int[] words = documentWords[documentPosition];
+                int[] topics = documentTopics[documentPosition];
+                
+                startDocument(topics);
+                for(int i=0;i<words.length;i++) {
+                    topics[i] = sample(words[i], topics[i], rnd); //new topic assigment
+                }
+                endDocument(topics);
+            }
+        }
+        
+        /**
+         * Merges the changes of the partition samplers. Every document belongs
+         * to a single partition, so the merged counts are equal to the counts 
+         * of the current topic assignments.
+         * 
+         * @param partitionSamplers 
+         */
+        void merge(GibbsSampler[] partitionSamplers) {
+            int[] mergedTopicCounts = topicCounts.clone();
+            int[][] mergedWordTopicCounts = new int[wordTopicCounts.length][];
+            for(GibbsSampler partitionSampler : partitionSamplers) {
+                for(int j=0;j<k;j++) {
+                    mergedTopicCounts[j] += partitionSampler.topicCounts[j]-topicCounts[j];
+                }
+                for(int w=0;w<wordTopicCounts.length;w++) {
+                    if(partitionSampler.ownedWords[w]) {
+                        if(mergedWordTopicCounts[w]==null) {
+                            mergedWordTopicCounts[w] = wordTopicCounts[w].clone();
                         }
-                        else {
-                            enumerator *= alpha;
+                        for(int j=0;j<k;j++) {
+                            mergedWordTopicCounts[w][j] += partitionSampler.wordTopicCounts[w][j]-wordTopicCounts[w][j];
                         }
-                        
-                        //add the counts from testing data
-                        double denominator = tmp_topicCounts.get((Integer)j)+beta*d -1;
-                        //and the ones from training data
-                        denominator+=topicCounts.get((Integer)j);
-                        denominator *= numberOfDocumentWords+alpha*k;
-                        
-                        topicProbabilities.put(j, enumerator/denominator);
                     }
+                }
+                logLikelihood += partitionSampler.logLikelihood;
+            }
+            
+            System.arraycopy(mergedTopicCounts, 0, topicCounts, 0, k);
+            for(int w=0;w<wordTopicCounts.length;w++) {
+                if(mergedWordTopicCounts[w]!=null) {
+                    wordTopicCounts[w] = mergedWordTopicCounts[w];
+                    if(sparse) {
+                        buildNonZeroTopics(w);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Loads the topic assignments of the document.
+         * 
+         * @param topics 
+         */
+        private void startDocument(int[] topics) {
+            documentLength = topics.length;
+            for(int topic : topics) {
+                ++documentTopicCounts[topic];
+            }
+            
+            if(sparse) {
+                //the masses are estimated again on every document to avoid accumulating rounding errors
+                smoothingMass = 0.0;
+                documentMass = 0.0;
+                documentNonZeroSize = 0;
+                for(int j=0;j<k;j++) {
+                    double denominator = betaD+topicCounts[j];
+                    smoothingMass += alpha*beta/denominator;
+                    coefficients[j] = (alpha+documentTopicCounts[j])/denominator;
+                    if(documentTopicCounts[j]>0) {
+                        documentMass += documentTopicCounts[j]*beta/denominator;
+                        documentNonZeroTopics[documentNonZeroSize++] = j;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Clears the topic assignments of the document.
+         * 
+         * @param topics 
+         */
+        private void endDocument(int[] topics) {
+            for(int topic : topics) {
+                documentTopicCounts[topic] = 0;
+            }
+        }
+        
+        /**
+         * Removes the current assignment of the word, samples a new topic 
+         * from the posterior and assigns it to the word.
+         * 
+         * @param wordId
+         * @param topic
+         * @param rnd
+         * @return 
+         */
+        private int sample(int wordId, int topic, Random rnd) {
+            if(ownedWords!=null && !ownedWords[wordId]) {
+                wordTopicCounts[wordId] = wordTopicCounts[wordId].clone();
+                if(sparse) {
+                    wordNonZeroTopics[wordId] = wordNonZeroTopics[wordId].clone();
+                }
+                ownedWords[wordId] = true;
+            }
+            
+            //remove the word from the dataset
+            update(wordId, topic, -1);
+            
+            //sample from the posterior
+            int newTopic = (sparse)?sampleSparse(wordId, rnd):sampleDense(wordId, rnd);
+            
+            //add back the word in the dataset
+            update(wordId, newTopic, +1);
+            
+            return newTopic;
+        }
+        
+        /**
+         * Samples by estimating the probabilities of all the topics.
+         * 
+         * @param wordId
+         * @param rnd
+         * @return 
+         */
+        private int sampleDense(int wordId, Random rnd) {
+            int[] counts = wordTopicCounts[wordId];
+            double sum = 0.0;
+            if(priorTopicCounts==null) {
+                for(int j=0;j<k;++j) {
+                    //the denominator of the document is the same for all topics, so it can be omited
+                    sum += (counts[j] + beta)*(documentTopicCounts[j] + alpha)/(topicCounts[j]+betaD);
+                    cumulativeProbabilities[j] = sum;
+                }
+            }
+            else {
+                int[] priorCounts = priorWordTopicCounts[wordId];
+                for(int j=0;j<k;++j) {
+                    //get the counts from the current testing data and the training data
+                    double enumerator = counts[j] + beta;
+                    enumerator += priorCounts[j];
+                    enumerator *= (documentTopicCounts[j] + alpha);
                     
-                    perplexity += Math.log(Descriptives.sum(topicProbabilities.toFlatDataCollection()));
-                    
-                    //normalize probabilities
-                    //Descriptives.normalize(topicProbabilities);
-                    
-                    //sample from these probabilieis
-                    Integer newTopic = (Integer)SimpleRandomSampling.weightedSampling(topicProbabilities, 1, true).iterator().next();
-                    topic = newTopic; //new topic assignment
-                    
-                    
-                    //add back the word in the dataset
-                    tmp_topicAssignmentOfDocumentWord.put(Arrays.asList(documentId, wordPosition), topic);
-                    increase(tmp_topicCounts, topic);
-                    increase(tmp_documentTopicCounts, Arrays.asList(documentId, topic));
-                    increase(tmp_topicWordCounts, Arrays.asList(topic, word));
+                    double denominator = topicCounts[j]+betaD -1;
+                    denominator += priorTopicCounts[j];
+                    denominator *= (documentLength-1)+alpha*k;
                     
-                    topicAssignments.put(topic, TypeInference.toDouble(topicAssignments.get(topic))+1.0/totalDocumentWords);
+                    sum += enumerator/denominator;
+                    cumulativeProbabilities[j] = sum;
                 }
-                
-                Object mainTopic=MapMethods.selectMaxKeyValue(topicAssignments).getKey();
-                
-                if(!mainTopic.equals(r.getYPredicted())) {
-                    ++changedCounter;
-                }                
-                newData._unsafe_set(rId, new Record(r.getX(), r.getY(), mainTopic, topicAssignments));
+                logLikelihood += Math.log(sum);
             }
-
-            perplexity=Math.exp(-perplexity/totalDatasetWords);
+            return sampleCumulative(cumulativeProbabilities, k, rnd.nextDouble()*sum);
+        }
+        
+        /**
+         * Samples by splitting the probability mass in the topic-word, the 
+         * document-topic and the smoothing buckets. The first two are sparse
+         * and they contain most of the mass, so the dense smoothing bucket is
+         * rarely visited.
+         * 
+         * @param wordId
+         * @param rnd
+         * @return 
+         */
+        private int sampleSparse(int wordId, Random rnd) {
+            int[] counts = wordTopicCounts[wordId];
+            int[] nonZeroTopics = wordNonZeroTopics[wordId];
+            int size = wordNonZeroSizes[wordId];
             
-            logger.debug("Reassigned Records {} - Perplexity: {}", changedCounter, perplexity);
+            double wordMass = 0.0;
+            for(int i=0;i<size;i++) {
+                int j = nonZeroTopics[i];
+                wordMass += coefficients[j]*counts[j];
+                cumulativeProbabilities[i] = wordMass;
+            }
             
-            if(changedCounter==0) {
-                break;
-            }            
+            double value = rnd.nextDouble()*(smoothingMass+documentMass+wordMass);
+            if(value<wordMass) {
+                return nonZeroTopics[sampleCumulative(cumulativeProbabilities, size, value)];
+            }
+            value -= wordMass;
+            
+            if(value<documentMass) {
+                for(int i=0;i<documentNonZeroSize;i++) {
+                    int j = documentNonZeroTopics[i];
+                    value -= documentTopicCounts[j]*beta/(betaD+topicCounts[j]);
+                    if(value<=0.0) {
+                        return j;
+                    }
+                }
+            }
+            else {
+                value -= documentMass;
+            }
+            
+            for(int j=0;j<k;j++) {
+                value -= alpha*beta/(betaD+topicCounts[j]);
+                if(value<=0.0) {
+                    return j;
+                }
+            }
+            return k-1;
         }
         
-        //Drop the temporary Collection
-        dbc.dropBigMap("tmp_topicAssignmentOfDocumentWord", tmp_topicAssignmentOfDocumentWord);
-        dbc.dropBigMap("tmp_documentTopicCounts", tmp_documentTopicCounts);
-        dbc.dropBigMap("tmp_topicWordCounts", tmp_topicWordCounts);
-        dbc.dropBigMap("tmp_topicCounts", tmp_topicCounts);
-        
+        /**
+         * Updates the counts of the topic by the provided delta.
+         * 
+         * @param wordId
+         * @param topic
+         * @param delta 
+         */
+        private void update(int wordId, int topic, int delta) {
+            if(sparse) {
+                double denominator = betaD+topicCounts[topic];
+                smoothingMass -= alpha*beta/denominator;
+                documentMass -= documentTopicCounts[topic]*beta/denominator;
+            }
+            
+            topicCounts[topic] += delta;
+            documentTopicCounts[topic] += delta;
+            wordTopicCounts[wordId][topic] += delta;
+            
+            if(sparse) {
+                double denominator = betaD+topicCounts[topic];
+                smoothingMass += alpha*beta/denominator;
+                documentMass += documentTopicCounts[topic]*beta/denominator;
+                coefficients[topic] = (alpha+documentTopicCounts[topic])/denominator;
+                
+                if(delta<0) {
+                    if(wordTopicCounts[wordId][topic]==0) {
+                        wordNonZeroSizes[wordId] = removeTopic(wordNonZeroTopics[wordId], wordNonZeroSizes[wordId], topic);
+                    }
+                    if(documentTopicCounts[topic]==0) {
+                        documentNonZeroSize = removeTopic(documentNonZeroTopics, documentNonZeroSize, topic);
+                    }
+                }
+                else {
+                    if(wordTopicCounts[wordId][topic]==1) {
+                        wordNonZeroTopics[wordId][wordNonZeroSizes[wordId]++] = topic;
+                    }
+                    if(documentTopicCounts[topic]==1) {
+                        documentNonZeroTopics[documentNonZeroSize++] = topic;
+                    }
+                }
+            }
+        }
         
-        validationMetrics.setPerplexity(perplexity);
+        /**
+         * Builds the list of the non-zero topics of the word.
+         * 
+         * @param wordId 
+         */
+        private void buildNonZeroTopics(int wordId) {
+            int[] counts = wordTopicCounts[wordId];
+            int frequency = 0;
+            for(int j=0;j<k;j++) {
+                frequency += counts[j];
+            }
+            int[] nonZeroTopics = new int[Math.min(k, frequency)]; //a word can't be assigned to more topics than its frequency
+            int size = 0;
+            for(int j=0;j<k;j++) {
+                if(counts[j]>0) {
+                    nonZeroTopics[size++] = j;
+                }
+            }
+            wordNonZeroTopics[wordId] = nonZeroTopics;
+            wordNonZeroSizes[wordId] = size;
+        }
         
-        return validationMetrics;
+        /**
+         * Removes the topic from the list by replacing it with the last element
+         * and returns the new size of the list.
+         * 
+         * @param topics
+         * @param size
+         * @param topic
+         * @return 
+         */
+        private static int removeTopic(int[] topics, int size, int topic) {
+            for(int i=0;i<size;i++) {
+                if(topics[i]==topic) {
+                    topics[i] = topics[size-1];
+                    return size-1;
+                }
+            }
+            return size;
+        }
     }
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.utilities.optimization;
+
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.concurrency.StreamMethods;
+import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.dataobjects.SparseDoubleArray;
+import com.datumbox.framework.common.utilities.PHPMethods;
+
+import com.datumbox.framework.core.utilities.regularization.ElasticNetRegularizer;
+import com.datumbox.framework.core.utilities.regularization.L1Regularizer;
+import com.datumbox.framework.core.utilities.regularization.L2Regularizer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Gradient Descent optimizer which supports both the full batch and the mini-batch
+ * modes. In mini-batch mode the records are shuffled on every epoch and the 
+ * weights are updated after every batch. The gradient of every batch is estimated
+ * in parallel; every task accumulates into its own sparse gradient buffer and the
+ * buffers are reduced at the end of the batch, so no locks are used during the 
+ * estimation and the cost of a batch depends on the weights it touches and not on
+ * the size of the model.
+ * 
+ * The weights can be updated with the plain rule, with Momentum or with AdaGrad.
+ * The regularization is applied lazily: the weights which are not touched by a
+ * batch are shrunk only when a later batch touches them or at the end of the 
+ * epoch, as in the cumulative penalty of Tsuruoka et al. The Momentum rule moves
+ * all the weights on every batch, so its updates remain dense.
+ * 
+ * References:
+ * http://sebastianruder.com/optimizing-gradient-descent/
+ * http://jmlr.org/papers/volume12/duchi11a/duchi11a.pdf
+ * http://www.aclweb.org/anthology/P09-1054
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MiniBatchGradientDescent {
+    
+    /**
+     * The rules which can be used to update the weights.
+     */
+    public enum UpdateRule {
+        /**
+         * Plain gradient descent: w += learningRate*g.
+         */
+        PLAIN,
+        
+        /**
+         * Momentum: v = momentum*v + learningRate*g; w += v.
+         */
+        MOMENTUM,
+        
+        /**
+         * AdaGrad: G += g^2; w += learningRate*g/sqrt(G).
+         */
+        ADAGRAD;
+    }
+    
+    /**
+     * Estimates the contribution of a single record on the gradient.
+     */
+    @FunctionalInterface
+    public interface GradientFunction {
+        
+        /**
+         * Adds on the gradient buffer the contribution of the record multiplied
+         * by the provided multiplier. The values must point to the direction of
+         * the update (the negative of the gradient of the cost function). The 
+         * buffer must not be shared outside the call.
+         * 
+         * @param r
+         * @param multiplier
+         * @param gradient 
+         */
+        public void accumulate(Record r, double multiplier, SparseDoubleArray gradient);
+    }
+    
+    /**
+     * Regularizes the weights one by one.
+     */
+    public interface Regularization {
+        
+        /**
+         * Returns the regularized value of the weight with the provided index,
+         * given its values before and after the update of a batch.
+         * 
+         * @param index
+         * @param weight
+         * @param updatedWeight
+         * @return 
+         */
+        public double regularize(int index, double weight, double updatedWeight);
+        
+        /**
+         * Returns the value of the weight with the provided index after the 
+         * regularization of the given number of batches which did not update it.
+         * 
+         * @param index
+         * @param weight
+         * @param batches
+         * @return 
+         */
+        public double shrink(int index, double weight, int batches);
+    }
+    
+    private static final double EPSILON = 1e-8;
+    
+    private final UpdateRule updateRule;
+    
+    private final double momentum;
+    
+    private final ForkJoinStream streamExecutor;
+    
+    private final boolean parallelized;
+    
+    private double[] velocity = null;
+    
+    private double[] squaredGradients = null;
+    
+    /**
+     * Public constructor.
+     * 
+     * @param updateRule
+     * @param momentum
+     * @param streamExecutor
+     * @param parallelized 
+     */
+    public MiniBatchGradientDescent(UpdateRule updateRule, double momentum, ForkJoinStream streamExecutor, boolean parallelized) {
+        this.updateRule = updateRule;
+        this.momentum = momentum;
+        this.streamExecutor = streamExecutor;
+        this.parallelized = parallelized;
+    }
+    
+    /**
+     * Returns the L1, L2 or ElasticNet regularization of the first weights, 
+     * or null if both the l1 and l2 are zero.
+     * 
+     * @param l1
+     * @param l2
+     * @param learningRate
+     * @param length
+     * @return 
+     */
+    public static Regularization regularization(double l1, double l2, double learningRate, int length) {
+        if(l1<=0.0 && l2<=0.0) {
+            return null;
+        }
+        return new Regularization() {
+            
+            /** {@inheritDoc} */
+            @Override
+            public double regularize(int index, double weight, double updatedWeight) {
+                if(index>=length) {
+                    return updatedWeight;
+                }
+                else if(l1>0.0 && l2>0.0) {
+                    return ElasticNetRegularizer.updateWeight(l1, l2, learningRate, weight, updatedWeight);
+                }
+                else if(l1>0.0) {
+                    return L1Regularizer.updateWeight(l1, learningRate, weight, updatedWeight);
+                }
+                else {
+                    return L2Regularizer.updateWeight(l2, learningRate, weight, updatedWeight);
+                }
+            }
+            
+            /** {@inheritDoc} */
+            @Override
+            public double shrink(int index, double weight, int batches) {
+                if(index>=length) {
+                    return weight;
+                }
+                else if(l1>0.0 && l2>0.0) {
+                    return ElasticNetRegularizer.shrinkWeight(l1, l2, learningRate, weight, batches);
+                }
+                else if(l1>0.0) {
+                    return L1Regularizer.shrinkWeight(l1, learningRate, weight, batches);
+                }
+                else {
+                    return L2Regularizer.shrinkWeight(l2, learningRate, weight, batches);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Performs one pass over the data and updates the provided weights. If the
+     * batchSize is not positive or it is larger than the size of the data, a 
+     * single full batch is used and the records are not shuffled. The optional
+     * regularization is applied on the weights which are touched by each batch
+     * and on the rest of them at the end of the epoch.
+     * 
+     * @param trainingData
+     * @param batchSize
+     * @param weights
+     * @param learningRate
+     * @param gradientFunction
+     * @param regularization 
+     */
+    public void epoch(Dataframe trainingData, int batchSize, double[] weights, double learningRate, GradientFunction gradientFunction, Regularization regularization) {
+        int n = trainingData.size();
+        int[] regularizedBatch = (regularization!=null)?new int[weights.length]:null; //the last batch which regularized every weight
+        int batchId = 0;
+        if(batchSize<=0 || batchSize>=n) {
+            update(trainingData.stream(), n, ++batchId, weights, learningRate, gradientFunction, regularization, regularizedBatch);
+        }
+        else {
+            Integer[] ids = new Integer[n];
+            int i = 0;
+            Iterator<Integer> it = trainingData.index().iterator();
+            while(it.hasNext()) {
+                ids[i++] = it.next();
+            }
+            PHPMethods.shuffle(ids);
+
+            for(int from=0;from<n;from+=batchSize) {
+                int to = Math.min(from+batchSize, n);
+                Stream<Record> batch = Arrays.stream(ids, from, to).map(id -> trainingData.get(id));
+                update(batch, to-from, ++batchId, weights, learningRate, gradientFunction, regularization, regularizedBatch);
+            }
+        }
+        
+        if(regularization!=null) {
+            //apply the pending regularization of the weights which were not touched by the last batches
+            for(int i=0;i<weights.length;i++) {
+                int pending = batchId-regularizedBatch[i];
+                if(pending>0) {
+                    weights[i] = regularization.shrink(i, weights[i], pending);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Clears the accumulated velocity of the Momentum rule. It should be called
+     * when the weights are reverted to a previous state.
+     */
+    public void reset() {
+        velocity = null;
+    }
+    
+    private void update(Stream<Record> batch, int batchSize, int batchId, double[] weights, double learningRate, GradientFunction gradientFunction, Regularization regularization, int[] regularizedBatch) {
+        int size = weights.length;
+        
+        //the learning rate is applied directly on the gradient unless AdaGrad is used
+        double multiplier = (updateRule==UpdateRule.ADAGRAD)?1.0/batchSize:learningRate/batchSize;
+        SparseDoubleArray gradient = streamExecutor.collect(StreamMethods.stream(batch, parallelized), Collector.of(
+            SparseDoubleArray::new,
+            (buffer, r) -> gradientFunction.accumulate(r, multiplier, buffer),
+            SparseDoubleArray::merge
+        ));
+        
+        if(updateRule==UpdateRule.MOMENTUM) {
+            //the velocity moves all the weights, so they are all updated and regularized
+            if(velocity==null) {
+                velocity = new double[size];
+            }
+            for(int i=0;i<size;i++) {
+                velocity[i] *= momentum;
+            }
+            gradient.forEach((i, g) -> velocity[i] += g);
+            for(int i=0;i<size;i++) {
+                double weight = weights[i];
+                weights[i] = (regularization!=null)?regularization.regularize(i, weight, weight+velocity[i]):weight+velocity[i];
+            }
+            if(regularization!=null) {
+                Arrays.fill(regularizedBatch, batchId);
+            }
+            return;
+        }
+        
+        if(updateRule==UpdateRule.ADAGRAD && squaredGradients==null) {
+            squaredGradients = new double[size];
+        }
+        gradient.forEach((i, g) -> {
+            double weight = weights[i];
+            if(regularization!=null) {
+                //catch up with the regularization of the batches which did not touch the weight
+                int pending = batchId-1-regularizedBatch[i];
+                if(pending>0) {
+                    weight = regularization.shrink(i, weight, pending);
+                }
+                regularizedBatch[i] = batchId;
+            }
+            
+            double updatedWeight;
+            if(updateRule==UpdateRule.PLAIN) {
+                updatedWeight = weight + g;
+            }
+            else if(updateRule==UpdateRule.ADAGRAD) {
+                squaredGradients[i] += g*g;
+                updatedWeight = weight + learningRate*g/(Math.sqrt(squaredGradients[i])+EPSILON);
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported update rule.");
+            }
+            
+            weights[i] = (regularization!=null)?regularization.regularize(i, weight, updatedWeight):updatedWeight;
+        });
+    }
+}
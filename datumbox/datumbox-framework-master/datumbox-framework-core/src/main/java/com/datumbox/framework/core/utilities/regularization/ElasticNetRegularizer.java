@@ -58,4 +58,60 @@ public class ElasticNetRegularizer {
         return penalty;
     }
 
+    /**
+     * Returns the new value of a single weight by applying the ElasticNet 
+     * regularization.
+     *
+     * @param l1
+     * @param l2
+     * @param learningRate
+     * @param weight
+     * @param newWeight
+     * @return
+     */
+    public static double updateWeight(double l1, double l2, double learningRate, double weight, double newWeight) {
+        newWeight = L2Regularizer.updateWeight(l2, learningRate, weight, newWeight);
+        return L1Regularizer.updateWeight(l1, learningRate, weight, newWeight);
+    }
+
+    /**
+     * Returns the value of a single weight after applying the ElasticNet 
+     * regularization the provided number of times without any other update.
+     * It is equivalent to calling updateWeight() repeatedly with an unchanged
+     * weight.
+     *
+     * @param l1
+     * @param l2
+     * @param learningRate
+     * @param weight
+     * @param times
+     * @return
+     */
+    public static double shrinkWeight(double l1, double l2, double learningRate, double weight, int times) {
+        if(l2*learningRate <= 1.0) {
+            //both scale the magnitude of the weight towards zero without changing its sign, so they can be applied one after the other
+            return L1Regularizer.shrinkWeight(l1, learningRate, L2Regularizer.shrinkWeight(l2, learningRate, weight, times), times);
+        }
+        for(int i=0;i<times;i++) {
+            weight = updateWeight(l1, l2, learningRate, weight, weight);
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the penalty of the weights stored in a flat array by adding 
+     * the ElasticNet regularization.
+     *
+     * @param l1
+     * @param l2
+     * @param weights
+     * @return
+     */
+    public static double estimatePenalty(double l1, double l2, double[] weights) {
+        double penalty = 0.0;
+        penalty += L2Regularizer.estimatePenalty(l2, weights);
+        penalty += L1Regularizer.estimatePenalty(l1, weights);
+        return penalty;
+    }
+
 }
@@ -54,7 +54,7 @@ public class L1Regularizer {
 
                 }
                 else if(wi_k_intermediate < 0.0) {
-                    newWeights.put(column, Math.min(0.0, wi_k_intermediate + l1*wi_k_intermediate));
+                    newWeights.put(column, Math.min(0.0, wi_k_intermediate - l1*wi_k_intermediate));
                 }
             }
         }
@@ -80,4 +80,66 @@ public class L1Regularizer {
         return penalty;
     }
 
+    /**
+     * Returns the new value of a single weight by applying the L1 regularization.
+     *
+     * @param l1
+     * @param learningRate
+     * @param weight
+     * @param newWeight
+     * @return
+     */
+    public static double updateWeight(double l1, double learningRate, double weight, double newWeight) {
+        if(l1 > 0.0) {
+            //SGDL1 (Clipping)
+            double wi_k_intermediate = newWeight; //the weight wi_k+1/2 as seen on the paper
+            if(wi_k_intermediate > 0.0) {
+                return Math.max(0.0, wi_k_intermediate - l1*wi_k_intermediate);
+            }
+            else if(wi_k_intermediate < 0.0) {
+                return Math.min(0.0, wi_k_intermediate - l1*wi_k_intermediate);
+            }
+        }
+        return newWeight;
+    }
+
+    /**
+     * Returns the value of a single weight after applying the L1 regularization
+     * the provided number of times without any other update. It is equivalent
+     * to calling updateWeight() repeatedly with an unchanged weight.
+     *
+     * @param l1
+     * @param learningRate
+     * @param weight
+     * @param times
+     * @return
+     */
+    public static double shrinkWeight(double l1, double learningRate, double weight, int times) {
+        if(l1 > 0.0 && times > 0) {
+            //the clipping moves the weight towards zero and never changes its sign
+            return (l1 >= 1.0)?0.0:weight*Math.pow(1.0 - l1, times);
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the penalty of the weights stored in a flat array by adding 
+     * the L1 regularization.
+     *
+     * @param l1
+     * @param weights
+     * @return
+     */
+    public static double estimatePenalty(double l1, double[] weights) {
+        double penalty = 0.0;
+        if(l1 > 0.0) {
+            double sumAbsWeights = 0.0;
+            for(double w : weights) {
+                sumAbsWeights += Math.abs(w);
+            }
+            penalty = l1*sumAbsWeights;
+        }
+        return penalty;
+    }
+
 }
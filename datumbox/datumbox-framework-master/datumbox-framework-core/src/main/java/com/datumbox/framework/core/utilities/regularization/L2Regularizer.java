@@ -62,4 +62,58 @@ public class L2Regularizer {
         return penalty;
     }
 
+    /**
+     * Returns the new value of a single weight by applying the L2 regularization.
+     *
+     * @param l2
+     * @param learningRate
+     * @param weight
+     * @param newWeight
+     * @return
+     */
+    public static double updateWeight(double l2, double learningRate, double weight, double newWeight) {
+        if(l2 > 0.0) {
+            return newWeight + l2*weight*(-learningRate);
+        }
+        return newWeight;
+    }
+
+    /**
+     * Returns the value of a single weight after applying the L2 regularization
+     * the provided number of times without any other update. It is equivalent
+     * to calling updateWeight() repeatedly with an unchanged weight.
+     *
+     * @param l2
+     * @param learningRate
+     * @param weight
+     * @param times
+     * @return
+     */
+    public static double shrinkWeight(double l2, double learningRate, double weight, int times) {
+        if(l2 > 0.0 && times > 0) {
+            return weight*Math.pow(1.0 - l2*learningRate, times);
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the penalty of the weights stored in a flat array by adding 
+     * the L2 regularization.
+     *
+     * @param l2
+     * @param weights
+     * @return
+     */
+    public static double estimatePenalty(double l2, double[] weights) {
+        double penalty = 0.0;
+        if(l2 > 0.0) {
+            double sumWeightsSquared = 0.0;
+            for(double w : weights) {
+                sumWeightsSquared += w*w;
+            }
+            penalty = l2*sumWeightsSquared/2.0;
+        }
+        return penalty;
+    }
+
 }
@@ -97,6 +97,39 @@ public class BernoulliNaiveBayesTest extends AbstractTest {
         data[1].delete();
         
         
+        String dbName = this.getClass().getSimpleName();
+        BernoulliNaiveBayes instance = new BernoulliNaiveBayes(dbName, conf);
+        
+        BernoulliNaiveBayes.TrainingParameters param = new BernoulliNaiveBayes.TrainingParameters();
+        
+        BernoulliNaiveBayes.ValidationMetrics vm = instance.kFoldCrossValidation(trainingData, param, k);
+        
+        double expResult = 0.6631318681318682;
+        double result = vm.getMacroF1();
+        assertEquals(expResult, result, Constants.DOUBLE_ACCURACY_HIGH);
+        instance.delete();
+        
+        trainingData.delete();
+    }
+    
+    /**
+     * Test of kFoldCrossValidation method, of class BernoulliNaiveBayes, when
+     * the folds are trained concurrently.
+     */
+    @Test
+    public void testKFoldCrossValidationConcurrentFolds() {
+        logger.info("kFoldCrossValidationConcurrentFolds");
+        
+        Configuration conf = Configuration.getConfiguration();
+        conf.getConcurrencyConfig().setMaxNumberOfConcurrentModels(0);
+        
+        int k = 5;
+        
+        Dataframe[] data = Datasets.carsNumeric(conf);
+        Dataframe trainingData = data[0];
+        data[1].delete();
+        
+        
         String dbName = this.getClass().getSimpleName();
         BernoulliNaiveBayes instance = new BernoulliNaiveBayes(dbName, conf);
         
@@ -16,18 +16,30 @@
 package com.datumbox.framework.core.machinelearning.classification;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.FlatDataList;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.persistentstorage.inmemory.InMemoryConfiguration;
+import com.datumbox.framework.common.utilities.RandomGenerator;
+import com.datumbox.framework.core.machinelearning.common.dataobjects.FeatureClassMatrix;
 import com.datumbox.framework.core.machinelearning.datatransformation.DummyXYMinMaxNormalizer;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for MultinomialNaiveBayes.
@@ -98,6 +110,125 @@ public class MultinomialNaiveBayesTest extends AbstractTest {
     }
 
 
+    /**
+     * Test of fit method, of class MultinomialNaiveBayes, comparing the parallel
+     * and the serial training.
+     */
+    @Test
+    public void testParallelFit() {
+        logger.info("parallelFit");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.carsNumeric(conf);
+        Dataframe trainingData = data[0];
+        data[1].delete();
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        MultinomialNaiveBayes.TrainingParameters param = new MultinomialNaiveBayes.TrainingParameters();
+        param.setMultiProbabilityWeighted(true);
+        
+        MultinomialNaiveBayes serial = new MultinomialNaiveBayes(dbName+"_serial", conf);
+        serial.setParallelized(false);
+        serial.fit(trainingData, param);
+        
+        MultinomialNaiveBayes parallel = new MultinomialNaiveBayes(dbName+"_parallel", conf);
+        parallel.setParallelized(true);
+        parallel.fit(trainingData, param);
+        
+        FeatureClassMatrix expResult = serial.getModelParameters().getLogLikelihoods();
+        FeatureClassMatrix result = parallel.getModelParameters().getLogLikelihoods();
+        assertEquals(expResult.getD(), result.getD());
+        for(Object feature : expResult.getFeatures()) {
+            for(int classId=0;classId<expResult.getC();classId++) {
+                Object theClass = expResult.getClassById(classId);
+                assertEquals(expResult.get(feature, theClass), result.get(feature, theClass), 0.0);
+            }
+        }
+        
+        serial.delete();
+        parallel.delete();
+        
+        trainingData.delete();
+    }
+
+    /**
+     * Test of partialFit method, of class MultinomialNaiveBayes.
+     */
+    @Test
+    public void testPartialFit() {
+        logger.info("partialFit");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.carsNumeric(conf);
+        Dataframe trainingData = data[0];
+        data[1].delete();
+        
+        FlatDataList firstIds = new FlatDataList();
+        FlatDataList secondIds = new FlatDataList();
+        for(Integer rId : trainingData.index()) {
+            if(firstIds.size()<trainingData.size()/2) {
+                firstIds.add(rId);
+            }
+            else {
+                secondIds.add(rId);
+            }
+        }
+        Dataframe firstData = trainingData.getSubset(firstIds);
+        Dataframe secondData = trainingData.getSubset(secondIds);
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        MultinomialNaiveBayes.TrainingParameters param = new MultinomialNaiveBayes.TrainingParameters();
+        param.setMultiProbabilityWeighted(true);
+        
+        MultinomialNaiveBayes full = new MultinomialNaiveBayes(dbName+"_full", conf);
+        full.fit(trainingData, param);
+        
+        MultinomialNaiveBayes instance = new MultinomialNaiveBayes(dbName+"_incremental", conf);
+        instance.fit(firstData, param);
+        instance.close();
+        
+        instance = new MultinomialNaiveBayes(dbName+"_incremental", conf);
+        instance.partialFit(secondData);
+        
+        assertEquals(full.getModelParameters().getN(), instance.getModelParameters().getN());
+        assertEquals(full.getModelParameters().getD(), instance.getModelParameters().getD());
+        assertEquals(full.getModelParameters().getClasses(), instance.getModelParameters().getClasses());
+        
+        Map<Object, Double> expPriors = full.getModelParameters().getLogPriors();
+        Map<Object, Double> priors = instance.getModelParameters().getLogPriors();
+        for(Map.Entry<Object, Double> entry : expPriors.entrySet()) {
+            assertEquals(entry.getValue(), priors.get(entry.getKey()), Constants.DOUBLE_ACCURACY_HIGH);
+        }
+        
+        FeatureClassMatrix expResult = full.getModelParameters().getLogLikelihoods();
+        FeatureClassMatrix result = instance.getModelParameters().getLogLikelihoods();
+        assertEquals(expResult.getD(), result.getD());
+        for(Object feature : expResult.getFeatures()) {
+            for(int classId=0;classId<expResult.getC();classId++) {
+                Object theClass = expResult.getClassById(classId);
+                assertEquals(expResult.get(feature, theClass), result.get(feature, theClass), Constants.DOUBLE_ACCURACY_HIGH);
+            }
+        }
+        
+        //a model which was never trained is trained from scratch with the default parameters
+        MultinomialNaiveBayes fresh = new MultinomialNaiveBayes(dbName+"_fresh", conf);
+        fresh.partialFit(trainingData);
+        assertEquals(full.getModelParameters().getN(), fresh.getModelParameters().getN());
+        assertEquals(full.getModelParameters().getLogPriors(), fresh.getModelParameters().getLogPriors());
+        
+        full.delete();
+        instance.delete();
+        fresh.delete();
+        
+        firstData.delete();
+        secondData.delete();
+        trainingData.delete();
+    }
+
     /**
      * Test of kFoldCrossValidation method, of class MultinomialNaiveBayes.
      */
@@ -130,4 +261,69 @@ public class MultinomialNaiveBayesTest extends AbstractTest {
         trainingData.delete();
     }
     
+    /**
+     * Test of predict method, of class MultinomialNaiveBayes, on a model which
+     * is loaded from memory-mapped files.
+     */
+    @Test
+    public void testPredictMemoryMapped() {
+        logger.info("predictMemoryMapped");
+        
+        Path outputFolder;
+        try {
+            outputFolder = Files.createTempDirectory("datumbox");
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        Configuration conf = Configuration.getConfiguration();
+        InMemoryConfiguration dbConf = new InMemoryConfiguration();
+        dbConf.setOutputFolder(outputFolder.toString());
+        conf.setDbConfig(dbConf);
+        
+        //a vocabulary large enough for the weights to be memory-mapped
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        Dataframe trainingData = new Dataframe(conf);
+        for(int i=0;i<200;i++) {
+            String theClass = "class" + (i%3);
+            AssociativeArray xData = new AssociativeArray();
+            for(int j=0;j<20;j++) {
+                xData.put("word" + ((i%3)*100 + rnd.nextInt(400)), 1.0);
+            }
+            trainingData.add(new Record(xData, theClass));
+        }
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        MultinomialNaiveBayes instance = new MultinomialNaiveBayes(dbName, conf);
+        instance.fit(trainingData, new MultinomialNaiveBayes.TrainingParameters());
+        instance.close();
+        
+        instance = new MultinomialNaiveBayes(dbName, conf);
+        instance.predict(trainingData);
+        assertFalse(instance.getModelParameters().getLogLikelihoods().isMemoryMapped());
+        Map<Integer, AssociativeArray> expResult = new HashMap<>();
+        for(Map.Entry<Integer, Record> e : trainingData.entries()) {
+            expResult.put(e.getKey(), e.getValue().getYPredictedProbabilities());
+        }
+        instance.close();
+        
+        dbConf.setMemoryMapped(true);
+        instance = new MultinomialNaiveBayes(dbName, conf);
+        instance.predict(trainingData);
+        assertTrue(instance.getModelParameters().getLogLikelihoods().isMemoryMapped());
+        for(Map.Entry<Integer, Record> e : trainingData.entries()) {
+            assertEquals(expResult.get(e.getKey()), e.getValue().getYPredictedProbabilities());
+        }
+        
+        instance.delete();
+        trainingData.delete();
+        try {
+            Files.delete(outputFolder);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.core.machinelearning.datatransformation.DummyXYMinMaxNormalizer;
+import com.datumbox.framework.core.utilities.optimization.MiniBatchGradientDescent;
 import com.datumbox.framework.core.machinelearning.datatransformation.XMinMaxNormalizer;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
@@ -100,6 +101,64 @@ public class SoftMaxRegressionTest extends AbstractTest {
     }
 
 
+    /**
+     * Test of validate method, of class SoftMaxRegression, using mini-batch 
+     * gradient descent with momentum.
+     */
+    @Test
+    public void testValidateMiniBatch() {
+        logger.info("validateMiniBatch");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        
+        Dataframe[] data = Datasets.carsCategorical(conf);
+        
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+        
+        
+        String dbName = this.getClass().getSimpleName();
+        DummyXYMinMaxNormalizer df = new DummyXYMinMaxNormalizer(dbName, conf);
+        
+        df.fit_transform(trainingData, new DummyXYMinMaxNormalizer.TrainingParameters());
+        df.transform(validationData);
+
+        
+        SoftMaxRegression instance = new SoftMaxRegression(dbName, conf);
+        
+        SoftMaxRegression.TrainingParameters param = new SoftMaxRegression.TrainingParameters();
+        param.setTotalIterations(200);
+        param.setL2(0.001);
+        param.setBatchSize(5);
+        param.setUpdateRule(MiniBatchGradientDescent.UpdateRule.MOMENTUM);
+        
+        instance.fit(trainingData, param);
+        
+        instance.validate(validationData);
+        	        
+        df.denormalize(trainingData);
+        df.denormalize(validationData);
+
+
+        Map<Integer, Object> expResult = new HashMap<>();
+        Map<Integer, Object> result = new HashMap<>();
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Integer rId = e.getKey();
+            Record r = e.getValue();
+            expResult.put(rId, r.getY());
+            result.put(rId, r.getYPredicted());
+        }
+        assertEquals(expResult, result);
+        
+        df.delete();
+        instance.delete();
+        
+        trainingData.delete();
+        validationData.delete();
+    }
+
+
     /**
      * Test of kFoldCrossValidation method, of class SoftMaxRegression.
      */
@@ -131,7 +190,7 @@ public class SoftMaxRegressionTest extends AbstractTest {
 
         df.denormalize(trainingData);
         
-        double expResult = 0.7557492507492508;
+        double expResult = 0.7258591408591409;
         double result = vm.getMacroF1();
         assertEquals(expResult, result, Constants.DOUBLE_ACCURACY_HIGH);
         df.delete();
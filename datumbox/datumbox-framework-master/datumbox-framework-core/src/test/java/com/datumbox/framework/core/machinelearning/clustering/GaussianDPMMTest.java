@@ -16,17 +16,24 @@
 package com.datumbox.framework.core.machinelearning.clustering;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for GaussianDPMM.
@@ -134,5 +141,187 @@ public class GaussianDPMMTest extends AbstractTest {
         trainingData.delete();
     }
 
+
+    /**
+     * Test of fit method, of class GaussianDPMM, using the parallel sampling. Under
+     * a fixed seed, the parallel sampler must label the records the same way as
+     * the sequential one and find the same number of clusters, allowing for a
+     * group which is split in two.
+     */
+    @Test
+    public void testFitParallelSampling() {
+        logger.info("fitParallelSampling");
+        
+        Configuration conf = Configuration.getConfiguration();
+        conf.getConcurrencyConfig().setParallelized(true);
+        conf.getConcurrencyConfig().setMaxNumberOfThreadsPerTask(4); //the number of partitions of the parallel sampler
+        
+        Dataframe[] data = Datasets.gaussianClusters(conf);
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        Map<Integer, Object> expResult = new HashMap<>();
+        int expClusters = fitPredictLabels(dbName + "_sequential", false, trainingData, validationData, expResult, conf);
+        
+        Map<Integer, Object> result = new HashMap<>();
+        int clusters = fitPredictLabels(dbName + "_parallel", true, trainingData, validationData, result, conf);
+        
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            assertEquals(e.getValue().getY(), expResult.get(e.getKey()));
+        }
+        assertEquals(expResult, result);
+        assertTrue(clusters>=expClusters && clusters<=expClusters+1);
+        
+        trainingData.delete();
+        validationData.delete();
+    }
+    
+    /**
+     * Trains a model from a fixed seed and labels every cluster with the most
+     * frequent class of the training records which are assigned to it. Then it
+     * predicts the validation data and stores the label of the cluster of every
+     * record. Returns the number of clusters.
+     * 
+     * @param dbName
+     * @param parallelSampling
+     * @param trainingData
+     * @param validationData
+     * @param labels
+     * @param conf
+     * @return 
+     */
+    private int fitPredictLabels(String dbName, boolean parallelSampling, Dataframe trainingData, Dataframe validationData, Map<Integer, Object> labels, Configuration conf) {
+        RandomGenerator.getThreadLocalRandom().setSeed(Constants.RANDOM_SEED);
+        
+        GaussianDPMM instance = new GaussianDPMM(dbName, conf);
+        
+        GaussianDPMM.TrainingParameters param = new GaussianDPMM.TrainingParameters();
+        param.setAlpha(0.01);
+        param.setMaxIterations(100);
+        param.setInitializationMethod(GaussianDPMM.TrainingParameters.Initialization.ONE_CLUSTER_PER_RECORD);
+        param.setKappa0(0);
+        param.setNu0(1);
+        param.setMu0(new double[]{0.0, 0.0});
+        param.setPsi0(new double[][]{{1.0,0.0},{0.0,1.0}});
+        param.setParallelSampling(parallelSampling);
+        
+        instance.fit(trainingData, param);
+        instance.predict(trainingData);
+        instance.predict(validationData);
+        
+        Map<Object, Map<Object, Integer>> clusterCounts = new HashMap<>();
+        for(Record r : trainingData) {
+            Map<Object, Integer> counts = clusterCounts.computeIfAbsent(r.getYPredicted(), k -> new HashMap<>());
+            counts.merge(r.getY(), 1, Integer::sum);
+        }
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Map<Object, Integer> counts = clusterCounts.get(e.getValue().getYPredicted());
+            Object label = counts==null?null:Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+            labels.put(e.getKey(), label);
+        }
+        
+        Map<Integer, GaussianDPMM.Cluster> clusters = instance.getClusters();
+        int numberOfClusters = clusters.size();
+        
+        instance.delete();
+        return numberOfClusters;
+    }
+
+    
+    /**
+     * Test of add and remove methods, of class GaussianDPMM.Cluster. The
+     * Cholesky factor which is updated and downdated in place must match the 
+     * one which is recomputed from scratch.
+     */
+    @Test
+    public void testClusterRankOneUpdate() {
+        logger.info("clusterRankOneUpdate");
+        
+        int d = 3;
+        Random rnd = new Random(42);
+        
+        List<Record> records = new ArrayList<>();
+        for(int i=0;i<40;i++) {
+            records.add(randomRecord(rnd, d));
+        }
+        List<Record> probes = new ArrayList<>();
+        for(int i=0;i<10;i++) {
+            probes.add(randomRecord(rnd, d));
+        }
+        
+        GaussianDPMM.Cluster cluster = newCluster(d);
+        List<Record> assigned = new ArrayList<>();
+        List<Record> unassigned = new ArrayList<>(records);
+        for(int step=1;step<=300;step++) {
+            if(assigned.isEmpty() || !unassigned.isEmpty() && rnd.nextDouble()<0.6) {
+                Record r = unassigned.remove(rnd.nextInt(unassigned.size()));
+                cluster.add(r);
+                assigned.add(r);
+            }
+            else {
+                Record r = assigned.remove(rnd.nextInt(assigned.size()));
+                cluster.remove(r);
+                unassigned.add(r);
+            }
+            
+            if(step%10==0) {
+                //refactorize a copy of the cluster from its scale matrix
+                GaussianDPMM.Cluster fresh = cluster.copy2new(0);
+                fresh.updateClusterParameters();
+                
+                assertEquals(assigned.size(), fresh.size());
+                for(Record p : probes) {
+                    assertEquals(fresh.posteriorLogPdf(p), cluster.posteriorLogPdf(p), Constants.DOUBLE_ACCURACY_HIGH);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Test of copy2new method, of class GaussianDPMM.Cluster.
+     */
+    @Test
+    public void testClusterCopy2new() {
+        logger.info("clusterCopy2new");
+        
+        int d = 2;
+        Random rnd = new Random(42);
+        
+        GaussianDPMM.Cluster cluster = newCluster(d);
+        for(int i=0;i<5;i++) {
+            cluster.add(randomRecord(rnd, d));
+        }
+        
+        GaussianDPMM.Cluster copy = cluster.copy2new(7);
+        assertEquals(cluster.size(), copy.size());
+        assertEquals(cluster.getMeanDf(), copy.getMeanDf());
+        
+        Record p = randomRecord(rnd, d);
+        assertEquals(cluster.posteriorLogPdf(p), copy.posteriorLogPdf(p), Constants.DOUBLE_ACCURACY_HIGH);
+        
+        //the copy is independent from the original
+        copy.add(randomRecord(rnd, d));
+        assertEquals(cluster.size()+1, copy.size());
+    }
+    
+    private GaussianDPMM.Cluster newCluster(int d) {
+        GaussianDPMM.Cluster cluster = new GaussianDPMM.Cluster(0, d, 1, d, null, null);
+        Map<Object, Integer> featureIds = new HashMap<>();
+        for(int j=0;j<d;j++) {
+            featureIds.put(j, j);
+        }
+        cluster.setFeatureIds(featureIds);
+        return cluster;
+    }
+    
+    private Record randomRecord(Random rnd, int d) {
+        AssociativeArray x = new AssociativeArray();
+        for(int j=0;j<d;j++) {
+            x.put(j, 3.0*rnd.nextGaussian() + j);
+        }
+        return new Record(x, null);
+    }
     
 }
@@ -16,18 +16,24 @@
 package com.datumbox.framework.core.machinelearning.clustering;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.dataobjects.TypeInference;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.core.machinelearning.datatransformation.DummyXYMinMaxNormalizer;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for Kmeans.
@@ -160,6 +166,173 @@ public class KmeansTest extends AbstractTest {
         
         trainingData.delete();
     }
-
+    
+    /**
+     * Test of fit method, of class Kmeans, with the accelerated training. Starting
+     * from the same initialization, Hamerly's algorithm must assign the records
+     * to the same clusters and reach the same centroids as the plain Lloyd one.
+     */
+    @Test
+    public void testFitAccelerated() {
+        logger.info("fitAccelerated");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.heartDiseaseClusters(conf);
+        Dataframe trainingData = data[0];
+        data[1].delete();
+        
+        String dbName = this.getClass().getSimpleName();
+        DummyXYMinMaxNormalizer df = new DummyXYMinMaxNormalizer(dbName, conf);
+        df.fit_transform(trainingData, new DummyXYMinMaxNormalizer.TrainingParameters());
+        
+        Kmeans.TrainingParameters param = new Kmeans.TrainingParameters();
+        param.setK(4);
+        param.setMaxIterations(200);
+        param.setInitializationMethod(Kmeans.TrainingParameters.Initialization.FORGY);
+        param.setDistanceMethod(Kmeans.TrainingParameters.Distance.EUCLIDIAN);
+        param.setWeighted(false);
+        
+        param.setAccelerated(false);
+        Map<Integer, Object> expAssignments = new HashMap<>();
+        Map<Integer, AssociativeArray> expResult = fitClusters(dbName, param, trainingData, expAssignments, conf);
+        
+        param.setAccelerated(true);
+        Map<Integer, Object> assignments = new HashMap<>();
+        Map<Integer, AssociativeArray> result = fitClusters(dbName, param, trainingData, assignments, conf);
+        
+        assertEquals(expAssignments, assignments);
+        assertEquals(expResult.keySet(), result.keySet());
+        for(Map.Entry<Integer, AssociativeArray> e : expResult.entrySet()) {
+            AssociativeArray actual = result.get(e.getKey());
+            assertEquals(e.getValue().keySet(), actual.keySet());
+            for(Map.Entry<Object, Object> e2 : e.getValue().entrySet()) {
+                assertEquals(TypeInference.toDouble(e2.getValue()), TypeInference.toDouble(actual.get(e2.getKey())), Constants.DOUBLE_ACCURACY_HIGH);
+            }
+        }
+        
+        df.denormalize(trainingData);
+        df.delete();
+        
+        trainingData.delete();
+    }
+    
+    /**
+     * Trains a model from a fixed seed, stores the cluster of every training
+     * record and returns the centroids of the clusters.
+     * 
+     * @param dbName
+     * @param param
+     * @param trainingData
+     * @param assignments
+     * @param conf
+     * @return 
+     */
+    private Map<Integer, AssociativeArray> fitClusters(String dbName, Kmeans.TrainingParameters param, Dataframe trainingData, Map<Integer, Object> assignments, Configuration conf) {
+        RandomGenerator.getThreadLocalRandom().setSeed(Constants.RANDOM_SEED);
+        
+        Kmeans instance = new Kmeans(dbName, conf);
+        instance.fit(trainingData, param);
+        instance.predict(trainingData);
+        
+        for(Map.Entry<Integer, Record> e : trainingData.entries()) {
+            assignments.put(e.getKey(), e.getValue().getYPredicted());
+        }
+        
+        Map<Integer, AssociativeArray> centroids = new HashMap<>();
+        for(Map.Entry<Integer, Kmeans.Cluster> e : instance.getClusters().entrySet()) {
+            centroids.put(e.getKey(), e.getValue().getCentroid().getX().copy());
+        }
+        
+        instance.delete();
+        return centroids;
+    }
+    
+    /**
+     * Test of fit method, of class Kmeans, with the Kmeans|| initialization and
+     * the Mini-batch training. Under a fixed seed, both must reach centroids 
+     * which are close to the ones of the full-batch Lloyd algorithm.
+     */
+    @Test
+    public void testFitMiniBatch() {
+        logger.info("fitMiniBatch");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.gaussianClusters(conf);
+        Dataframe trainingData = data[0];
+        data[1].delete();
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        Kmeans.TrainingParameters param = new Kmeans.TrainingParameters();
+        param.setK(3);
+        param.setMaxIterations(200);
+        param.setInitializationMethod(Kmeans.TrainingParameters.Initialization.PLUS_PLUS);
+        param.setDistanceMethod(Kmeans.TrainingParameters.Distance.EUCLIDIAN);
+        param.setWeighted(false);
+        List<AssociativeArray> expResult = fitCentroids(dbName, param, trainingData, conf);
+        
+        param.setInitializationMethod(Kmeans.TrainingParameters.Initialization.SCALABLE_PLUS_PLUS);
+        param.setOversamplingFactor(2.0);
+        List<AssociativeArray> result = fitCentroids(dbName, param, trainingData, conf);
+        assertCentroidsClose(expResult, result, Constants.DOUBLE_ACCURACY_HIGH);
+        
+        param.setMiniBatchSize(30);
+        param.setNumberOfBatches(20);
+        param.setReassignmentRatio(0.01);
+        result = fitCentroids(dbName, param, trainingData, conf);
+        assertCentroidsClose(expResult, result, 0.5);
+        
+        trainingData.delete();
+    }
+    
+    /**
+     * Trains a model from a fixed seed and returns its centroids.
+     * 
+     * @param dbName
+     * @param param
+     * @param trainingData
+     * @param conf
+     * @return 
+     */
+    private List<AssociativeArray> fitCentroids(String dbName, Kmeans.TrainingParameters param, Dataframe trainingData, Configuration conf) {
+        RandomGenerator.getThreadLocalRandom().setSeed(Constants.RANDOM_SEED);
+        
+        Kmeans instance = new Kmeans(dbName, conf);
+        instance.fit(trainingData, param);
+        
+        List<AssociativeArray> centroids = new ArrayList<>();
+        for(Kmeans.Cluster c : instance.getClusters().values()) {
+            centroids.add(c.getCentroid().getX().copy());
+        }
+        
+        instance.delete();
+        return centroids;
+    }
+    
+    /**
+     * Checks that every expected centroid has a centroid in the result within 
+     * the provided Euclidean distance.
+     * 
+     * @param expResult
+     * @param result
+     * @param tolerance 
+     */
+    private void assertCentroidsClose(List<AssociativeArray> expResult, List<AssociativeArray> result, double tolerance) {
+        assertEquals(expResult.size(), result.size());
+        for(AssociativeArray expected : expResult) {
+            double minDistance = Double.MAX_VALUE;
+            for(AssociativeArray actual : result) {
+                double distance = 0.0;
+                for(Map.Entry<Object, Object> e : expected.entrySet()) {
+                    double diff = TypeInference.toDouble(e.getValue()) - TypeInference.toDouble(actual.get(e.getKey()));
+                    distance += diff*diff;
+                }
+                minDistance = Math.min(minDistance, Math.sqrt(distance));
+            }
+            assertTrue(minDistance<=tolerance);
+        }
+    }
     
 }
@@ -18,12 +18,14 @@ package com.datumbox.framework.core.machinelearning.clustering;
 import com.datumbox.framework.common.Configuration;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.utilities.RandomGenerator;
 import com.datumbox.framework.tests.Constants;
 import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -129,5 +131,90 @@ public class MultinomialDPMMTest extends AbstractTest {
         trainingData.delete();
     }
 
+
+    /**
+     * Test of fit method, of class MultinomialDPMM, using the parallel sampling. Under
+     * a fixed seed, the parallel sampler must label the records the same way as
+     * the sequential one and find the same number of clusters, allowing for a
+     * group which is split in two.
+     */
+    @Test
+    public void testFitParallelSampling() {
+        logger.info("fitParallelSampling");
+        
+        Configuration conf = Configuration.getConfiguration();
+        conf.getConcurrencyConfig().setParallelized(true);
+        conf.getConcurrencyConfig().setMaxNumberOfThreadsPerTask(4); //the number of partitions of the parallel sampler
+        
+        Dataframe[] data = Datasets.multinomialClusters(conf);
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        Map<Integer, Object> expResult = new HashMap<>();
+        int expClusters = fitPredictLabels(dbName + "_sequential", false, trainingData, validationData, expResult, conf);
+        
+        Map<Integer, Object> result = new HashMap<>();
+        int clusters = fitPredictLabels(dbName + "_parallel", true, trainingData, validationData, result, conf);
+        
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Assert.assertEquals(e.getValue().getY(), expResult.get(e.getKey()));
+        }
+        Assert.assertEquals(expResult, result);
+        Assert.assertTrue(clusters>=expClusters && clusters<=expClusters+1);
+        
+        trainingData.delete();
+        validationData.delete();
+    }
+    
+    /**
+     * Trains a model from a fixed seed and labels every cluster with the most
+     * frequent class of the training records which are assigned to it. Then it
+     * predicts the validation data and stores the label of the cluster of every
+     * record. Returns the number of clusters.
+     * 
+     * @param dbName
+     * @param parallelSampling
+     * @param trainingData
+     * @param validationData
+     * @param labels
+     * @param conf
+     * @return 
+     */
+    private int fitPredictLabels(String dbName, boolean parallelSampling, Dataframe trainingData, Dataframe validationData, Map<Integer, Object> labels, Configuration conf) {
+        RandomGenerator.getThreadLocalRandom().setSeed(Constants.RANDOM_SEED);
+        
+        MultinomialDPMM instance = new MultinomialDPMM(dbName, conf);
+        
+        MultinomialDPMM.TrainingParameters param = new MultinomialDPMM.TrainingParameters();
+        param.setAlpha(0.01);
+        param.setMaxIterations(100);
+        param.setInitializationMethod(MultinomialDPMM.TrainingParameters.Initialization.ONE_CLUSTER_PER_RECORD);
+        param.setAlphaWords(1);
+        param.setParallelSampling(parallelSampling);
+        
+        instance.fit(trainingData, param);
+        instance.predict(trainingData);
+        instance.predict(validationData);
+        
+        Map<Object, Map<Object, Integer>> clusterCounts = new HashMap<>();
+        for(Record r : trainingData) {
+            Map<Object, Integer> counts = clusterCounts.computeIfAbsent(r.getYPredicted(), k -> new HashMap<>());
+            counts.merge(r.getY(), 1, Integer::sum);
+        }
+        for(Map.Entry<Integer, Record> e : validationData.entries()) {
+            Map<Object, Integer> counts = clusterCounts.get(e.getValue().getYPredicted());
+            Object label = counts==null?null:Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+            labels.put(e.getKey(), label);
+        }
+        
+        Map<Integer, MultinomialDPMM.Cluster> clusters = instance.getClusters();
+        int numberOfClusters = clusters.size();
+        
+        instance.delete();
+        return numberOfClusters;
+    }
+
     
 }
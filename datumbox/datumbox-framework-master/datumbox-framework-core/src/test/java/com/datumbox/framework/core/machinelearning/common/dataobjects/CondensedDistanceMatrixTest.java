@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.dataobjects;
+
+import com.datumbox.framework.tests.Constants;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for CondensedDistanceMatrix.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class CondensedDistanceMatrixTest extends AbstractTest {
+
+    /**
+     * Test of get and set methods, of class CondensedDistanceMatrix.
+     */
+    @Test
+    public void testGetSet() {
+        logger.info("testGetSet");
+
+        int n = 50;
+        for(boolean mapped : new boolean[]{false, true}) {
+            try (CondensedDistanceMatrix instance = new CondensedDistanceMatrix(n, mapped)) {
+                assertEquals(mapped, instance.isMapped());
+                assertEquals(n, instance.size());
+
+                for(int i=0;i<n;i++) {
+                    for(int j=i+1;j<n;j++) {
+                        instance.set(j, i, i*1000.0+j);
+                    }
+                }
+                for(int i=0;i<n;i++) {
+                    assertEquals(0.0, instance.get(i, i), Constants.DOUBLE_ACCURACY_HIGH);
+                    for(int j=i+1;j<n;j++) {
+                        assertEquals(i*1000.0+j, instance.get(i, j), Constants.DOUBLE_ACCURACY_HIGH);
+                        assertEquals(i*1000.0+j, instance.get(j, i), Constants.DOUBLE_ACCURACY_HIGH);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.common.dataobjects;
+
+import com.datumbox.framework.tests.Constants;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for FeatureClassMatrix.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class FeatureClassMatrixTest extends AbstractTest {
+
+    /**
+     * Test of addFeature, get, add and addRowTo methods, of class FeatureClassMatrix.
+     */
+    @Test
+    public void testAddAndGet() {
+        logger.info("testAddAndGet");
+
+        FeatureClassMatrix instance = new FeatureClassMatrix(Arrays.<Object>asList("a", "b", "c"));
+        for(int i=0;i<100;i++) {
+            assertEquals(i, instance.addFeature("f"+i));
+        }
+        assertEquals(0, instance.addFeature("f0"));
+        assertEquals(100, instance.getD());
+        assertEquals(3, instance.getC());
+        assertEquals(-1, instance.getFeatureId("unknown"));
+        assertNull(instance.get("unknown", "a"));
+
+        instance.add(instance.getFeatureId("f10"), instance.getClassId("b"), 2.0);
+        instance.add(instance.getFeatureId("f10"), instance.getClassId("b"), 1.0);
+        instance.set(instance.getFeatureId("f10"), instance.getClassId("c"), -1.0);
+        assertEquals(3.0, instance.get("f10", "b"), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(0.0, instance.get("f10", "a"), Constants.DOUBLE_ACCURACY_HIGH);
+
+        double[] scores = new double[instance.getC()];
+        instance.addRowTo(instance.getFeatureId("f10"), 2.0, scores);
+        assertArrayEquals(new double[]{0.0, 6.0, -2.0}, scores, Constants.DOUBLE_ACCURACY_HIGH);
+    }
+
+    /**
+     * Test of compact method, of class FeatureClassMatrix.
+     */
+    @Test
+    public void testCompact() {
+        logger.info("testCompact");
+
+        FeatureClassMatrix instance = new FeatureClassMatrix(Arrays.<Object>asList("w", "x", "y", "z"));
+        for(int i=0;i<50;i++) {
+            instance.addFeature(i);
+        }
+        instance.set(5, 1, 1.5);
+        instance.set(20, 3, -2.5);
+
+        FeatureClassMatrix copy = instance.copy();
+        instance.compact();
+        assertTrue(instance.isSparse());
+        assertEquals(1.5, instance.get(5, 1), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(-2.5, instance.get(20, 3), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(0.0, instance.get(20, 0), Constants.DOUBLE_ACCURACY_HIGH);
+
+        double[] scores = new double[instance.getC()];
+        instance.addRowTo(20, 1.0, scores);
+        assertArrayEquals(new double[]{0.0, 0.0, 0.0, -2.5}, scores, Constants.DOUBLE_ACCURACY_HIGH);
+
+        //modifications convert the matrix back to the dense representation
+        instance.add(5, 1, 1.0);
+        assertFalse(instance.isSparse());
+        assertEquals(2.5, instance.get(5, 1), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(1.5, copy.get(5, 1), Constants.DOUBLE_ACCURACY_HIGH);
+    }
+
+    /**
+     * Test of compact method, of class FeatureClassMatrix, on a dense matrix.
+     */
+    @Test
+    public void testCompactDense() {
+        logger.info("testCompactDense");
+
+        FeatureClassMatrix instance = new FeatureClassMatrix(Arrays.<Object>asList("x", "y"));
+        for(int i=0;i<20;i++) {
+            instance.addFeature(i);
+            instance.set(i, 0, i);
+            instance.set(i, 1, -i);
+        }
+
+        instance.compact();
+        assertFalse(instance.isSparse());
+        assertEquals(7.0, instance.get(7, 0), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(-7.0, instance.get(7, 1), Constants.DOUBLE_ACCURACY_HIGH);
+
+        double[] scores = new double[instance.getC()];
+        instance.addRowTo(3, 2.0, scores);
+        assertArrayEquals(new double[]{6.0, -6.0}, scores, Constants.DOUBLE_ACCURACY_HIGH);
+
+        //the compacted weights are read-only; modifications work on a copy
+        FeatureClassMatrix copy = instance.copy();
+        instance.add(3, 0, 1.0);
+        assertEquals(4.0, instance.get(3, 0), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(3.0, copy.get(3, 0), Constants.DOUBLE_ACCURACY_HIGH);
+    }
+
+}
@@ -86,6 +86,11 @@ public class BootstrapAggregatingTest extends AbstractTest {
         
         instance.validate(validationData);
         
+        //the resident weak classifiers must give the same predictions for single records
+        for(Record r : validationData) {
+            assertEquals(r.getYPredicted(), instance.predict(r).getYPredicted());
+        }
+        
         df.denormalize(trainingData);
         df.denormalize(validationData);
         
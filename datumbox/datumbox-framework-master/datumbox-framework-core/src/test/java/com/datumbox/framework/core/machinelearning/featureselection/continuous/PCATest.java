@@ -24,7 +24,9 @@ import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -63,23 +65,31 @@ public class PCATest extends AbstractTest {
         
         instance = new PCA(dbName, conf);
         
+        List<Record> singleResults = new ArrayList<>();
+        for(Record r : validationdata) {
+            singleResults.add(instance.transform(r));
+        }
+        
         instance.transform(validationdata);
         
         assertEquals(validationdata.size(), expResult.size());
         
         Iterator<Record> itResult = validationdata.iterator();
         Iterator<Record> itExpectedResult = expResult.iterator();
+        Iterator<Record> itSingleResult = singleResults.iterator();
         
         
         while(itResult.hasNext()) {
             Record r1 = itResult.next();
             Record r2 = itExpectedResult.next();
+            Record r3 = itSingleResult.next();
             
             for(Map.Entry<Object, Object> entry : r1.getX().entrySet()) {
                 Object feature = entry.getKey();
                 Double value = TypeInference.toDouble(entry.getValue());
                 
                 assertEquals(TypeInference.toDouble(r2.getX().get(feature)), value, Constants.DOUBLE_ACCURACY_MEDIUM);
+                assertEquals(TypeInference.toDouble(r3.getX().get(feature)), value, Constants.DOUBLE_ACCURACY_HIGH);
             }
         }
         
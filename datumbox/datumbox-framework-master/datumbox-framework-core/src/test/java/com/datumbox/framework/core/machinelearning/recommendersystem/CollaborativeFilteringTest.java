@@ -91,5 +91,45 @@ public class CollaborativeFilteringTest extends AbstractTest {
         validationData.delete();
     }
 
-    
+
+    /**
+     * Test of validate method, of class CollaborativeFiltering, keeping only
+     * the nearest neighbors of every observation.
+     */
+    @Test
+    public void testValidateNearestNeighbors() {
+        logger.info("validateNearestNeighbors");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.recommenderSystemFood(conf);
+        
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+        
+        
+        String dbName = this.getClass().getSimpleName();
+        CollaborativeFiltering instance = new CollaborativeFiltering(dbName, conf);
+        
+        CollaborativeFiltering.TrainingParameters param = new CollaborativeFiltering.TrainingParameters();
+        param.setSimilarityMethod(CollaborativeFiltering.TrainingParameters.SimilarityMeasure.PEARSONS_CORRELATION);
+        param.setMaxNeighbors(5);
+        param.setInvertedIndex(true);
+        
+        instance.fit(trainingData, param);
+        
+        instance.close();
+        //instance = null;
+        instance = new CollaborativeFiltering(dbName, conf);
+        
+        CollaborativeFiltering.ValidationMetrics vm = instance.validate(validationData);
+        
+        assertEquals(5*trainingData.size(), instance.getModelParameters().getNeighborIndex().getNumberOfNeighbors());
+        assertEquals(vm.getRMSE(), 0.12854245397613218, Constants.DOUBLE_ACCURACY_HIGH);
+        
+        instance.delete();
+        
+        trainingData.delete();
+        validationData.delete();
+    }
 }
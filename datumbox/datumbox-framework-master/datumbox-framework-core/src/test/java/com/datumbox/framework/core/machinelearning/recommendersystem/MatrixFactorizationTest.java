@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.machinelearning.recommendersystem;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.tests.Constants;
+import com.datumbox.framework.tests.Datasets;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test cases for MatrixFactorization.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MatrixFactorizationTest extends AbstractTest {
+
+    /**
+     * Test of validate method, of class MatrixFactorization.
+     */
+    @Test
+    public void testValidate() {
+        logger.info("validate");
+        validate(MatrixFactorization.TrainingParameters.Optimizer.ALS, 0.44415492917069244);
+    }
+
+    /**
+     * Test of validate method, of class MatrixFactorization, using SGD.
+     */
+    @Test
+    public void testValidateSGD() {
+        logger.info("validateSGD");
+        validate(MatrixFactorization.TrainingParameters.Optimizer.SGD, 0.6908850715233577);
+    }
+
+    /**
+     * Trains the model with the provided optimizer and checks the RMSE on the
+     * validation data.
+     *
+     * @param optimizer
+     * @param expRMSE
+     */
+    private void validate(MatrixFactorization.TrainingParameters.Optimizer optimizer, double expRMSE) {
+        Configuration conf = Configuration.getConfiguration();
+
+        Dataframe[] data = Datasets.recommenderSystemFood(conf);
+
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+
+
+        String dbName = this.getClass().getSimpleName();
+        MatrixFactorization instance = new MatrixFactorization(dbName, conf);
+
+        MatrixFactorization.TrainingParameters param = new MatrixFactorization.TrainingParameters();
+        param.setOptimizer(optimizer);
+        param.setNumberOfFactors(3);
+        param.setTotalIterations(50);
+
+        instance.fit(trainingData, param);
+
+        instance.close();
+        //instance = null;
+        instance = new MatrixFactorization(dbName, conf);
+
+        MatrixFactorization.ValidationMetrics vm = instance.validate(validationData);
+
+        assertEquals(3*trainingData.size(), instance.getModelParameters().getItemFactors().length);
+        assertEquals(expRMSE, vm.getRMSE(), Constants.DOUBLE_ACCURACY_HIGH);
+
+        instance.delete();
+
+        trainingData.delete();
+        validationData.delete();
+    }
+
+}
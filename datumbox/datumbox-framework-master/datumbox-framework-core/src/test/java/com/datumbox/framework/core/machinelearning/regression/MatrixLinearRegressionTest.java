@@ -90,6 +90,42 @@ public class MatrixLinearRegressionTest extends AbstractTest {
     }
 
 
+    /**
+     * Test of predict method, of class MatrixLinearRegression. The algorithm
+     * does not predict records one by one, so each record is predicted through
+     * a single-row Dataframe.
+     */
+    @Test
+    public void testPredictRecord() {
+        logger.info("predictRecord");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        Dataframe[] data = Datasets.regressionNumeric(conf);
+        
+        Dataframe trainingData = data[0];
+        Dataframe validationData = data[1];
+        
+        String dbName = this.getClass().getSimpleName();
+        MatrixLinearRegression instance = new MatrixLinearRegression(dbName, conf);
+        instance.fit(trainingData, new MatrixLinearRegression.TrainingParameters());
+        instance.close();
+        
+        instance = new MatrixLinearRegression(dbName, conf);
+        instance.predict(validationData);
+        
+        for(Record r : validationData) {
+            Object result = instance.predict(r).getYPredicted();
+            assertEquals(TypeInference.toDouble(r.getYPredicted()), TypeInference.toDouble(result), Constants.DOUBLE_ACCURACY_HIGH);
+        }
+        
+        instance.delete();
+        
+        trainingData.delete();
+        validationData.delete();
+    }
+
+
     /**
      * Test of kFoldCrossValidation method, of class MatrixLinearRegression.
      */
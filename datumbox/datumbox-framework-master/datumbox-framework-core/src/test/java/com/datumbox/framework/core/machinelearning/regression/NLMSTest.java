@@ -16,6 +16,7 @@
 package com.datumbox.framework.core.machinelearning.regression;
 
 import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
 import com.datumbox.framework.common.dataobjects.Dataframe;
 import com.datumbox.framework.common.dataobjects.Record;
 import com.datumbox.framework.common.dataobjects.TypeInference;
@@ -26,6 +27,8 @@ import com.datumbox.framework.tests.Datasets;
 import com.datumbox.framework.tests.abstracts.AbstractTest;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -134,7 +137,7 @@ public class NLMSTest extends AbstractTest {
         df.denormalize(trainingData);
 
         
-        double expResult = 0.7748106446239166;
+        double expResult = 0.7761796216975014;
         double result = vm.getRSquare();
         assertEquals(expResult, result, Constants.DOUBLE_ACCURACY_HIGH);
         
@@ -144,4 +147,56 @@ public class NLMSTest extends AbstractTest {
         trainingData.delete();
     }
 
+
+    /**
+     * Test of partialFit method, of class NLMS, with a batch whose features do
+     * not overlap the features of the first batch.
+     */
+    @Test
+    public void testPartialFitNewFeatures() {
+        logger.info("partialFitNewFeatures");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        int n = 50;
+        Random rnd = new Random(42);
+        Dataframe firstData = new Dataframe(conf);
+        Dataframe secondData = new Dataframe(conf);
+        for(int i=0;i<n;i++) {
+            AssociativeArray x = new AssociativeArray();
+            x.put("x1", rnd.nextDouble());
+            x.put("x2", rnd.nextDouble());
+            firstData.add(new Record(x, 1.0 + 2.0*x.getDouble("x1") - x.getDouble("x2") + 0.01*rnd.nextGaussian()));
+            
+            x = new AssociativeArray();
+            x.put("x3", rnd.nextDouble());
+            x.put("x4", rnd.nextDouble());
+            secondData.add(new Record(x, 1.0 + x.getDouble("x3") + 3.0*x.getDouble("x4") + 0.01*rnd.nextGaussian()));
+        }
+        
+        String dbName = this.getClass().getSimpleName();
+        
+        NLMS.TrainingParameters param = new NLMS.TrainingParameters();
+        param.setTotalIterations(100);
+        
+        NLMS instance = new NLMS(dbName, conf);
+        instance.fit(firstData, param);
+        assertEquals(2, (int)instance.getModelParameters().getD());
+        instance.close();
+        
+        instance = new NLMS(dbName, conf);
+        instance.partialFit(secondData);
+        assertEquals(2*n, (int)instance.getModelParameters().getN());
+        assertEquals(4, (int)instance.getModelParameters().getD());
+        
+        NLMS.ValidationMetrics vm = instance.validate(secondData);
+        assertEquals(4.0, vm.getDfRegression(), Constants.DOUBLE_ACCURACY_HIGH);
+        assertEquals(n-5.0, vm.getDfResidual(), Constants.DOUBLE_ACCURACY_HIGH);
+        
+        instance.delete();
+        
+        firstData.delete();
+        secondData.delete();
+    }
+
 }
@@ -46,6 +46,40 @@ public class LatentDirichletAllocationTest extends AbstractTest {
     public void testValidate() {
         logger.info("validate");
         
+        validate(LatentDirichletAllocation.TrainingParameters.SamplingMethod.DENSE, false, 0.6843125117743629);
+    }
+    
+    /**
+     * Test of validate method, of class LatentDirichletAllocation, with the 
+     * sparse sampler.
+     */
+    @Test
+    public void testValidateSparse() {
+        logger.info("validateSparse");
+        
+        validate(LatentDirichletAllocation.TrainingParameters.SamplingMethod.SPARSE, false, 0.6803614342016726);
+    }
+    
+    /**
+     * Test of validate method, of class LatentDirichletAllocation, with the 
+     * parallel sampler.
+     */
+    @Test
+    public void testValidateParallel() {
+        logger.info("validateParallel");
+        
+        validate(LatentDirichletAllocation.TrainingParameters.SamplingMethod.SPARSE, true, 0.6817607543448786);
+    }
+    
+    /**
+     * Trains and validates the LDA with the provided sampling method and checks
+     * the Macro F1 of the SoftMaxRegression which uses the topics as features.
+     * 
+     * @param samplingMethod
+     * @param parallelized
+     * @param expResult 
+     */
+    private void validate(LatentDirichletAllocation.TrainingParameters.SamplingMethod samplingMethod, boolean parallelized, double expResult) {
         Configuration conf = Configuration.getConfiguration();
         
         
@@ -68,12 +102,15 @@ public class LatentDirichletAllocationTest extends AbstractTest {
         
         
         LatentDirichletAllocation lda = new LatentDirichletAllocation(dbName, conf);
+        lda.setParallelized(parallelized);
         
         LatentDirichletAllocation.TrainingParameters trainingParameters = new LatentDirichletAllocation.TrainingParameters();
         trainingParameters.setMaxIterations(15);
         trainingParameters.setAlpha(0.01);
         trainingParameters.setBeta(0.01);
         trainingParameters.setK(25);        
+        trainingParameters.setSamplingMethod(samplingMethod);
+        trainingParameters.setPartitions(4);
         
         lda.fit(trainingData, trainingParameters); 
         
@@ -92,7 +129,6 @@ public class LatentDirichletAllocationTest extends AbstractTest {
         
         SoftMaxRegression.ValidationMetrics vm = smr.kFoldCrossValidation(reducedTrainingData, tp, 1);
         
-        double expResult = 0.6843125117743629;
         double result = vm.getMacroF1();
         assertEquals(expResult, result, Constants.DOUBLE_ACCURACY_HIGH);
 
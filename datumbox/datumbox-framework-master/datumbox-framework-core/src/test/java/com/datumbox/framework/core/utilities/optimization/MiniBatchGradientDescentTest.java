@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2013-2016 Vasilis Vryniotis <bbriniotis@datumbox.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datumbox.framework.core.utilities.optimization;
+
+import com.datumbox.framework.common.Configuration;
+import com.datumbox.framework.common.concurrency.ForkJoinStream;
+import com.datumbox.framework.common.dataobjects.AssociativeArray;
+import com.datumbox.framework.common.dataobjects.Dataframe;
+import com.datumbox.framework.common.dataobjects.Record;
+import com.datumbox.framework.common.utilities.RandomGenerator;
+import com.datumbox.framework.core.utilities.regularization.ElasticNetRegularizer;
+import com.datumbox.framework.tests.abstracts.AbstractTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for MiniBatchGradientDescent.
+ *
+ * @author Vasilis Vryniotis <bbriniotis@datumbox.com>
+ */
+public class MiniBatchGradientDescentTest extends AbstractTest {
+    
+    /**
+     * Test of epoch method, of class MiniBatchGradientDescent. The lazily 
+     * regularized mini-batch updates are compared with dense updates which 
+     * regularize all the weights after every batch.
+     */
+    @Test
+    public void testEpochLazyRegularization() {
+        logger.info("epochLazyRegularization");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        int d = 20;
+        int n = 50;
+        int batchSize = 8;
+        double learningRate = 0.1;
+        double l1 = 0.01;
+        double l2 = 0.5;
+        
+        Random rnd = RandomGenerator.getThreadLocalRandom();
+        Dataframe trainingData = new Dataframe(conf);
+        for(int r=0;r<n;r++) {
+            AssociativeArray x = new AssociativeArray();
+            for(int j=0;j<2;j++) {
+                x.put(rnd.nextInt(d), rnd.nextGaussian());
+            }
+            trainingData.add(new Record(x, null));
+        }
+        
+        double[] initialWeights = new double[d];
+        for(int i=0;i<d;i++) {
+            initialWeights[i] = rnd.nextGaussian();
+        }
+        
+        //the gradient does not depend on the weights, so the order of the regularization does not affect it
+        List<Record> visited = new ArrayList<>();
+        MiniBatchGradientDescent.GradientFunction gradientFunction = (r, multiplier, gradient) -> {
+            visited.add(r);
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                gradient.add((Integer)entry.getKey(), multiplier*(Double)entry.getValue());
+            }
+        };
+        
+        double[] weights = Arrays.copyOf(initialWeights, d);
+        MiniBatchGradientDescent instance = new MiniBatchGradientDescent(MiniBatchGradientDescent.UpdateRule.PLAIN, 0.0, new ForkJoinStream(conf.getConcurrencyConfig()), false);
+        instance.epoch(trainingData, batchSize, weights, learningRate, gradientFunction, MiniBatchGradientDescent.regularization(l1, l2, learningRate, d));
+        assertEquals(n, visited.size());
+        
+        double[] expResult = Arrays.copyOf(initialWeights, d);
+        for(int from=0;from<n;from+=batchSize) {
+            int to = Math.min(from+batchSize, n);
+            double[] gradient = new double[d];
+            for(Record r : visited.subList(from, to)) {
+                for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                    gradient[(Integer)entry.getKey()] += learningRate/(to-from)*(Double)entry.getValue();
+                }
+            }
+            for(int i=0;i<d;i++) {
+                expResult[i] = ElasticNetRegularizer.updateWeight(l1, l2, learningRate, expResult[i], expResult[i]+gradient[i]);
+            }
+        }
+        
+        assertArrayEquals(expResult, weights, 1e-12);
+        
+        trainingData.delete();
+    }
+    
+    /**
+     * Test of epoch method, of class MiniBatchGradientDescent. The L1 
+     * regularization must move the negative weights towards zero, both when
+     * they are updated on every batch and when they are skipped by all of them.
+     */
+    @Test
+    public void testEpochL1NegativeWeights() {
+        logger.info("epochL1NegativeWeights");
+        
+        Configuration conf = Configuration.getConfiguration();
+        
+        int d = 10;
+        int n = 300;
+        int batchSize = 1;
+        double learningRate = 0.1;
+        double l1 = 0.01;
+        
+        //all the records contain only the first feature, so the rest are skipped by every batch
+        Dataframe trainingData = new Dataframe(conf);
+        for(int r=0;r<n;r++) {
+            AssociativeArray x = new AssociativeArray();
+            x.put(0, 0.0);
+            trainingData.add(new Record(x, null));
+        }
+        
+        double[] initialWeights = new double[d];
+        for(int i=0;i<d;i++) {
+            initialWeights[i] = -(i+1.0);
+        }
+        
+        MiniBatchGradientDescent.GradientFunction gradientFunction = (r, multiplier, gradient) -> {
+            for(Map.Entry<Object, Object> entry : r.getX().entrySet()) {
+                gradient.add((Integer)entry.getKey(), multiplier*(Double)entry.getValue());
+            }
+        };
+        
+        double[] weights = Arrays.copyOf(initialWeights, d);
+        MiniBatchGradientDescent instance = new MiniBatchGradientDescent(MiniBatchGradientDescent.UpdateRule.PLAIN, 0.0, new ForkJoinStream(conf.getConcurrencyConfig()), false);
+        instance.epoch(trainingData, batchSize, weights, learningRate, gradientFunction, MiniBatchGradientDescent.regularization(l1, 0.0, learningRate, d));
+        
+        for(int i=0;i<d;i++) {
+            assertTrue(weights[i] < 0.0);
+            assertTrue(Math.abs(weights[i]) < Math.abs(initialWeights[i]));
+            assertEquals(initialWeights[i]*Math.pow(1.0 - l1, n/batchSize), weights[i], 1e-9);
+        }
+        
+        trainingData.delete();
+    }
+    
+}